@@ -0,0 +1,128 @@
+package cn.jmessage.api.benchmarks;
+
+import cn.jiguang.common.resp.APIConnectionException;
+import cn.jiguang.common.resp.APIRequestException;
+import cn.jmessage.api.JMessageClient;
+import cn.jmessage.api.common.JMessageConfig;
+import cn.jmessage.api.common.model.message.MessagePayload;
+import cn.jmessage.api.message.MessageListResult;
+import cn.jmessage.api.message.SendMessageResult;
+import cn.jmessage.api.user.UserInfoResult;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Whole calls through JMessageClient against a local MockWebServer: request building, the http client,
+ * connection reuse and response decoding, without the network latency of the real API.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class ClientRoundTripBenchmark {
+
+    private static final String USER_INFO = "{\"username\":\"user_0\",\"nickname\":\"nickname\","
+            + "\"signature\":\"signature of the user\",\"gender\":1,\"region\":\"Shenzhen\","
+            + "\"address\":\"Nanshan District\",\"mtime\":\"2017-01-01 00:00:00\",\"ctime\":\"2017-01-01 00:00:00\"}";
+
+    private static final String SEND_MESSAGE = "{\"msg_id\":1,\"msg_ctime\":1500000000000}";
+
+    @Param({"false", "true"})
+    public boolean streamingDecode;
+
+    @Param({"100"})
+    public int messages;
+
+    private MockWebServer server;
+    private JMessageClient client;
+    private MessagePayload payload;
+    private int taken;
+
+    @Setup
+    public void setUp() throws IOException {
+        Logger.getLogger(MockWebServer.class.getName()).setLevel(java.util.logging.Level.WARNING);
+        final String messageList = Fixtures.messageList(messages);
+        server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                String path = request.getPath();
+                if (path.startsWith("/v1/users/")) {
+                    return new MockResponse().setBody(USER_INFO);
+                } else if (path.startsWith("/v1/messages")) {
+                    return new MockResponse().setResponseCode(201).setBody(SEND_MESSAGE);
+                } else if (path.startsWith("/v2/messages")) {
+                    return new MockResponse().setBody(messageList);
+                }
+                return new MockResponse().setResponseCode(404)
+                        .setBody("{\"error\":{\"code\":899003,\"message\":\"not found\"}}");
+            }
+        });
+        server.play();
+
+        String host = "http://" + server.getHostName() + ":" + server.getPort();
+        JMessageConfig config = JMessageConfig.getInstance()
+                .setApiHostName(host)
+                .setReportHostName(host)
+                .setMaxRetryTimes(0)
+                .setStreamingDecode(streamingDecode);
+        client = new JMessageClient("7b4b94cca0d185d611e53cca", "860803b3be6d4ef5cfaa5e9c", null, config);
+        payload = Fixtures.messagePayload(10);
+        taken = 0;
+    }
+
+    /**
+     * MockWebServer keeps every request it served, drop them so the heap does not grow with the run.
+     */
+    @TearDown(Level.Iteration)
+    public void drainRequests() throws InterruptedException {
+        int count = server.getRequestCount();
+        for (; taken < count; taken++) {
+            server.takeRequest();
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        server.shutdown();
+    }
+
+    @Benchmark
+    public UserInfoResult getUserInfo() throws APIConnectionException, APIRequestException {
+        return client.getUserInfo("user_0");
+    }
+
+    @Benchmark
+    public SendMessageResult sendMessage() throws APIConnectionException, APIRequestException {
+        return client.sendMessage(payload);
+    }
+
+    @Benchmark
+    public MessageListResult v2GetMessageList() throws APIConnectionException, APIRequestException {
+        return client.v2GetMessageList(messages, "2017-01-01 00:00:00", "2017-01-02 00:00:00");
+    }
+
+}
@@ -0,0 +1,125 @@
+package cn.jmessage.api.benchmarks;
+
+import cn.jmessage.api.common.model.RegisterInfo;
+import cn.jmessage.api.common.model.UserPayload;
+import cn.jmessage.api.common.model.message.MessageBody;
+import cn.jmessage.api.common.model.message.MessagePayload;
+import cn.jmessage.api.message.MessageType;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Payloads and response bodies shaped like the production ones.
+ */
+final class Fixtures {
+
+    static final String TEXT = "Hello, this is a message of a realistic length, 你好，这是一条长度接近真实的消息。";
+
+    private Fixtures() {
+    }
+
+    static Map<String, String> extras(int count) {
+        Map<String, String> extras = new LinkedHashMap<String, String>();
+        for (int i = 0; i < count; i++) {
+            extras.put("key_" + i, "value of extra " + i);
+        }
+        return extras;
+    }
+
+    static MessageBody messageBody(int extras) {
+        return MessageBody.newBuilder()
+                .setText(TEXT)
+                .addExtras(extras(extras))
+                .build();
+    }
+
+    static MessagePayload messagePayload(int extras) {
+        return messagePayloadBuilder(extras)
+                .setTargetType("single")
+                .setTargetId("target_user_0001")
+                .build();
+    }
+
+    static MessagePayload.Builder messagePayloadBuilder(int extras) {
+        return MessagePayload.newBuilder()
+                .setVersion(1)
+                .setFromType("admin")
+                .setFromId("admin_user")
+                .setMessageType(MessageType.TEXT)
+                .setMessageBody(messageBody(extras));
+    }
+
+    static RegisterInfo[] registerInfos(int count) {
+        RegisterInfo[] users = new RegisterInfo[count];
+        for (int i = 0; i < count; i++) {
+            users[i] = RegisterInfo.newBuilder()
+                    .setUsername("user_" + i)
+                    .setPassword("password_" + i)
+                    .setNickname("nickname " + i)
+                    .addExtra("source", "benchmark")
+                    .addExtra("level", i)
+                    .build();
+        }
+        return users;
+    }
+
+    static UserPayload userPayload(int extras) {
+        UserPayload.Builder builder = UserPayload.newBuilder()
+                .setNickname("nickname")
+                .setSignature("signature of the user")
+                .setGender(1)
+                .setRegion("Shenzhen")
+                .setAddress("Nanshan District");
+        builder.addExtras(extras(extras));
+        return builder.build();
+    }
+
+    static String message(long msgId) {
+        return "{\"target_type\":\"single\",\"msg_type\":\"text\",\"target_name\":\"target\",\"target_id\":\"user_"
+                + msgId + "\",\"from_id\":\"admin_user\",\"from_name\":\"admin\",\"from_type\":\"admin\","
+                + "\"from_platform\":\"api\",\"msg_body\":{\"text\":\"" + TEXT + "\",\"extras\":{\"key_0\":"
+                + "\"value of extra 0\",\"key_1\":\"value of extra 1\"}},\"create_time\":" + (1500000000000L + msgId)
+                + ",\"version\":1,\"msgid\":" + msgId + ",\"msg_level\":0,\"msg_ctime\":" + (1500000000000L + msgId)
+                + "}";
+    }
+
+    /**
+     * Body of the report message list API.
+     */
+    static String messageList(int count) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("{\"total\":").append(count).append(",\"cursor\":\"ODA2MjY2NjA4ODY1\",\"count\":")
+                .append(count).append(",\"messages\":[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append(message(i));
+        }
+        return builder.append("]}").toString();
+    }
+
+    /**
+     * Body of the chatroom history API.
+     */
+    static String chatRoomHistory(int count) {
+        StringBuilder builder = new StringBuilder();
+        builder.append("{\"total\":").append(count).append(",\"cursor\":\"ODA2MjY2NjA4ODY1\",\"count\":")
+                .append(count).append(",\"messages\":[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                builder.append(',');
+            }
+            builder.append("{\"set_from_name\":0,\"from_platform\":\"api\",\"target_name\":\"room\",")
+                    .append("\"msg_type\":\"text\",\"version\":1,\"target_id\":\"10000\",\"from_appkey\":\"appkey\",")
+                    .append("\"from_name\":\"admin\",\"from_id\":\"admin_user\",\"msg_body\":{\"text\":\"")
+                    .append(TEXT).append("\",\"extras\":{}},\"create_time\":").append(1500000000000L + i)
+                    .append(",\"from_type\":\"admin\",\"target_appkey\":\"appkey\",\"target_type\":\"chatroom\",")
+                    .append("\"msgid\":").append(i).append(",\"msg_ctime\":").append(1500000000000L + i)
+                    .append(",\"msg_level\":0}");
+        }
+        return builder.append("]}").toString();
+    }
+
+}
@@ -0,0 +1,93 @@
+package cn.jmessage.api.benchmarks;
+
+import cn.jmessage.api.common.model.JsonBuffer;
+import cn.jmessage.api.common.model.UserPayload;
+import cn.jmessage.api.common.model.message.MessageBody;
+import cn.jmessage.api.common.model.message.MessagePayload;
+import cn.jmessage.api.common.model.message.MessageTemplate;
+import com.google.gson.JsonElement;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of the payloads sent with every message or user update, by size of the extras map.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PayloadBenchmark {
+
+    @Param({"0", "10", "200"})
+    public int extras;
+
+    private MessagePayload messagePayload;
+    private MessageBody messageBody;
+    private UserPayload userPayload;
+    private MessageTemplate template;
+
+    @Setup
+    public void setUp() {
+        messagePayload = Fixtures.messagePayload(extras);
+        messageBody = Fixtures.messageBody(extras);
+        userPayload = Fixtures.userPayload(extras);
+        template = Fixtures.messagePayloadBuilder(extras).buildTemplate();
+    }
+
+    @Benchmark
+    public String messagePayloadToString() {
+        return messagePayload.toString();
+    }
+
+    /**
+     * The path of sendMessage, written into a pooled buffer.
+     */
+    @Benchmark
+    public int messagePayloadWriteJSON() {
+        JsonBuffer buffer = JsonBuffer.acquire();
+        try {
+            messagePayload.writeJSON(buffer);
+            return buffer.size();
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * A fan-out send, only the target is validated and serialized.
+     */
+    @Benchmark
+    public int templateRender() {
+        JsonBuffer buffer = JsonBuffer.acquire();
+        try {
+            template.render("target_user_0001", "single").writeJSON(buffer);
+            return buffer.size();
+        } finally {
+            buffer.release();
+        }
+    }
+
+    @Benchmark
+    public JsonElement messageBodyToJSON() {
+        return messageBody.toJSON();
+    }
+
+    @Benchmark
+    public String userPayloadToString() {
+        return userPayload.toString();
+    }
+
+}
@@ -0,0 +1,48 @@
+package cn.jmessage.api.benchmarks;
+
+import cn.jmessage.api.common.model.RegisterInfo;
+import cn.jmessage.api.common.model.RegisterPayload;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building and serializing a register request, up to the 500 users one request accepts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RegisterPayloadBenchmark {
+
+    @Param({"1", "100", "500"})
+    public int users;
+
+    private RegisterInfo[] infos;
+
+    @Setup
+    public void setUp() {
+        infos = Fixtures.registerInfos(users);
+    }
+
+    @Benchmark
+    public String registerPayloadToString() {
+        return RegisterPayload.newBuilder()
+                .addUsers(infos)
+                .build()
+                .toString();
+    }
+
+}
@@ -0,0 +1,95 @@
+package cn.jmessage.api.benchmarks;
+
+import cn.jiguang.common.resp.ResponseWrapper;
+import cn.jmessage.api.chatroom.ChatRoomHistoryResult;
+import cn.jmessage.api.common.ElementVisitor;
+import cn.jmessage.api.message.MessageListResult;
+import cn.jmessage.api.message.MessageResult;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of history pages, from the buffered String as fromResponse does and from the byte stream as the
+ * streaming decoder does, by number of messages in the page.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResultDecodeBenchmark {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Param({"1", "100", "1000"})
+    public int messages;
+
+    private String messageList;
+    private byte[] messageListBytes;
+    private String chatRoomHistory;
+
+    @Setup
+    public void setUp() {
+        messageList = Fixtures.messageList(messages);
+        messageListBytes = messageList.getBytes(UTF_8);
+        chatRoomHistory = Fixtures.chatRoomHistory(messages);
+    }
+
+    @Benchmark
+    public MessageListResult messageListFromResponse() {
+        return MessageListResult.fromResponse(response(messageList), MessageListResult.class);
+    }
+
+    /**
+     * Includes the String decoding of the bytes, which the buffered path pays when it reads the response.
+     */
+    @Benchmark
+    public MessageListResult messageListFromBytes() {
+        return MessageListResult.fromResponse(response(new String(messageListBytes, UTF_8)), MessageListResult.class);
+    }
+
+    @Benchmark
+    public MessageListResult messageListStreaming() throws IOException {
+        return MessageListResult.DECODER.handle(response(null), new ByteArrayInputStream(messageListBytes));
+    }
+
+    @Benchmark
+    public MessageListResult messageListVisitor(final Blackhole blackhole) throws IOException {
+        return MessageListResult.DECODER.decode(response(null), new ByteArrayInputStream(messageListBytes),
+                new ElementVisitor<MessageResult>() {
+                    @Override
+                    public void visit(MessageResult element) {
+                        blackhole.consume(element);
+                    }
+                });
+    }
+
+    @Benchmark
+    public ChatRoomHistoryResult chatRoomHistoryFromResponse() {
+        return ChatRoomHistoryResult.fromResponse(response(chatRoomHistory), ChatRoomHistoryResult.class);
+    }
+
+    private static ResponseWrapper response(String content) {
+        ResponseWrapper wrapper = new ResponseWrapper();
+        wrapper.responseCode = 200;
+        wrapper.responseContent = content;
+        return wrapper;
+    }
+
+}
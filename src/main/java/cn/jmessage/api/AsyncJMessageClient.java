@@ -0,0 +1,904 @@
+package cn.jmessage.api;
+
+import cn.jiguang.common.resp.APIConnectionException;
+import cn.jiguang.common.resp.APIRequestException;
+import cn.jiguang.common.resp.ResponseWrapper;
+import cn.jmessage.api.chatroom.ChatRoomListResult;
+import cn.jmessage.api.chatroom.ChatRoomMemberList;
+import cn.jmessage.api.chatroom.CreateChatRoomResult;
+import cn.jmessage.api.common.ElementVisitor;
+import cn.jmessage.api.common.async.ApiCall;
+import cn.jmessage.api.common.async.ApiFuture;
+import cn.jmessage.api.common.async.AsyncDispatcher;
+import cn.jmessage.api.common.model.Members;
+import cn.jmessage.api.common.model.NoDisturbPayload;
+import cn.jmessage.api.common.model.RegisterInfo;
+import cn.jmessage.api.common.model.UserPayload;
+import cn.jmessage.api.common.model.chatroom.ChatRoomPayload;
+import cn.jmessage.api.common.model.cross.CrossBlacklist;
+import cn.jmessage.api.common.model.cross.CrossFriendPayload;
+import cn.jmessage.api.common.model.cross.CrossGroup;
+import cn.jmessage.api.common.model.cross.CrossNoDisturb;
+import cn.jmessage.api.common.model.friend.FriendNote;
+import cn.jmessage.api.common.model.group.GroupShieldPayload;
+import cn.jmessage.api.common.model.message.MessageBody;
+import cn.jmessage.api.common.model.message.MessagePayload;
+import cn.jmessage.api.common.model.message.MessageTemplate;
+import cn.jmessage.api.group.CreateGroupResult;
+import cn.jmessage.api.group.GroupInfoResult;
+import cn.jmessage.api.group.GroupListResult;
+import cn.jmessage.api.group.MemberListResult;
+import cn.jmessage.api.group.MemberResult;
+import cn.jmessage.api.message.MessageListResult;
+import cn.jmessage.api.message.MessageResult;
+import cn.jmessage.api.message.MessageType;
+import cn.jmessage.api.message.SendMessageResult;
+import cn.jmessage.api.message.SendToAllOptions;
+import cn.jmessage.api.message.SendToAllResult;
+import cn.jmessage.api.reportv2.GroupStatListResult;
+import cn.jmessage.api.reportv2.MessageStatListResult;
+import cn.jmessage.api.reportv2.UserStatListResult;
+import cn.jmessage.api.resource.DownloadResult;
+import cn.jmessage.api.resource.UploadAllResult;
+import cn.jmessage.api.resource.UploadResult;
+import cn.jmessage.api.resource.UploadSource;
+import cn.jmessage.api.sensitiveword.SensitiveWordListResult;
+import cn.jmessage.api.sensitiveword.SensitiveWordStatusResult;
+import cn.jmessage.api.user.UserGroupsResult;
+import cn.jmessage.api.user.UserInfoResult;
+import cn.jmessage.api.user.UserListResult;
+import cn.jmessage.api.user.UserStateListResult;
+import cn.jmessage.api.user.UserStateResult;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Asynchronous view of a {@link JMessageClient}.
+ * <p>
+ * Every method mirrors the {@link JMessageClient} method of the same name and parameters, and returns at once
+ * an {@link ApiFuture} of the same result. A void method returns {@code ApiFuture<Void>}. The blocking calls run
+ * on the executor given by the caller, with at most {@code maxConcurrentRequests} in flight, the others wait in
+ * a queue without holding a thread. Use {@link ApiFuture#addCallback} to get the result without blocking, or
+ * {@link ApiFuture#getResult()} to wait for it with the original API exceptions.
+ * </p>
+ * All the calls share the connection pool of the underlying client, so the pool size
+ * ({@link cn.jmessage.api.common.JMessageConfig#setConnectionPoolMaxPerRoute(int)}) should not be less than
+ * maxConcurrentRequests.
+ */
+public class AsyncJMessageClient {
+
+    private final JMessageClient _client;
+    private final AsyncDispatcher _dispatcher;
+
+    /**
+     * @param client                The blocking client which does the calls.
+     * @param executor              The executor which runs the blocking calls.
+     * @param maxConcurrentRequests Max calls in flight at the same time.
+     */
+    public AsyncJMessageClient(JMessageClient client, Executor executor, int maxConcurrentRequests) {
+        this(client, new AsyncDispatcher(executor, maxConcurrentRequests));
+    }
+
+    public AsyncJMessageClient(JMessageClient client, AsyncDispatcher dispatcher) {
+        this._client = client;
+        this._dispatcher = dispatcher;
+    }
+
+    public JMessageClient getClient() {
+        return _client;
+    }
+
+    public AsyncDispatcher getDispatcher() {
+        return _dispatcher;
+    }
+
+    // ------------------------------- User API
+
+    public ApiFuture<String> registerUsers(final RegisterInfo[] users) {
+        return _dispatcher.submit(new ApiCall<String>() {
+            @Override
+            public String call() throws APIConnectionException, APIRequestException {
+                return _client.registerUsers(users);
+            }
+        });
+    }
+
+    public ApiFuture<String> registerAdmins(final String username, final String password) {
+        return _dispatcher.submit(new ApiCall<String>() {
+            @Override
+            public String call() throws APIConnectionException, APIRequestException {
+                return _client.registerAdmins(username, password);
+            }
+        });
+    }
+
+    public ApiFuture<UserInfoResult> getUserInfo(final String username) {
+        return _dispatcher.submit(new ApiCall<UserInfoResult>() {
+            @Override
+            public UserInfoResult call() throws APIConnectionException, APIRequestException {
+                return _client.getUserInfo(username);
+            }
+        });
+    }
+
+    public ApiFuture<UserStateResult> getUserState(final String username) {
+        return _dispatcher.submit(new ApiCall<UserStateResult>() {
+            @Override
+            public UserStateResult call() throws APIConnectionException, APIRequestException {
+                return _client.getUserState(username);
+            }
+        });
+    }
+
+    public ApiFuture<UserStateListResult[]> getUsersState(final String... users) {
+        return _dispatcher.submit(new ApiCall<UserStateListResult[]>() {
+            @Override
+            public UserStateListResult[] call() throws APIConnectionException, APIRequestException {
+                return _client.getUsersState(users);
+            }
+        });
+    }
+
+    public ApiFuture<Void> updateUserPassword(final String username, final String password) {
+        return _dispatcher.submit(new ApiCall<Void>() {
+            @Override
+            public Void call() throws APIConnectionException, APIRequestException {
+                _client.updateUserPassword(username, password);
+                return null;
+            }
+        });
+    }
+
+    public ApiFuture<Void> updateUserInfo(final String username, final String nickname, final String birthday, final String signature, final int gender, final String region, final String address, final String avatar) {
+        return _dispatcher.submit(new ApiCall<Void>() {
+            @Override
+            public Void call() throws APIConnectionException, APIRequestException {
+                _client.updateUserInfo(username, nickname, birthday, signature, gender, region, address, avatar);
+                return null;
+            }
+        });
+    }
+
+    public ApiFuture<Void> updateUserInfo(final String username, final UserPayload payload) {
+        return _dispatcher.submit(new ApiCall<Void>() {
+            @Override
+            public Void call() throws APIConnectionException, APIRequestException {
+                _client.updateUserInfo(username, payload);
+                return null;
+            }
+        });
+    }
+
+    public ApiFuture<UserListResult> getUserList(final int start, final int count) {
+        return _dispatcher.submit(new ApiCall<UserListResult>() {
+            @Override
+            public UserListResult call() throws APIConnectionException, APIRequestException {
+                return _client.getUserList(start, count);
+            }
+        });
+    }
+
+    public ApiFuture<UserListResult> getUserList(final int start, final int count, final ElementVisitor<? super UserInfoResult> visitor) {
+        return _dispatcher.submit(new ApiCall<UserListResult>() {
+            @Override
+            public UserListResult call() throws APIConnectionException, APIRequestException {
+                return _client.getUserList(start, count, visitor);
+            }
+        });
+    }
+
+    public ApiFuture<UserListResult> getAdminListByAppkey(final int start, final int count) {
+        return _dispatcher.submit(new ApiCall<UserListResult>() {
+            @Override
+            public UserListResult call() throws APIConnectionException, APIRequestException {
+                return _client.getAdminListByAppkey(start, count);
+            }
+        });
+    }
+
+    public ApiFuture<UserInfoResult[]> getBlackList(final String username) {
+        return _dispatcher.submit(new ApiCall<UserInfoResult[]>() {
+            @Override
+            public UserInfoResult[] call() throws APIConnectionException, APIRequestException {
+                return _client.getBlackList(username);
+            }
+        });
+    }
+
+    public ApiFuture<ResponseWrapper> addBlackList(final String username, final String... users) {
+        return _dispatcher.submit(new ApiCall<ResponseWrapper>() {
+            @Override
+            public ResponseWrapper call() throws APIConnectionException, APIRequestException {
+                return _client.addBlackList(username, users);
+            }
+        });
+    }
+
+    public ApiFuture<ResponseWrapper> removeBlacklist(final String username, final String... users) {
+        return _dispatcher.submit(new ApiCall<ResponseWrapper>() {
+            @Override
+            public ResponseWrapper call() throws APIConnectionException, APIRequestException {
+                return _client.removeBlacklist(username, users);
+            }
+        });
+    }
+
+    public ApiFuture<UserGroupsResult> getGroupListByUser(final String username) {
+        return _dispatcher.submit(new ApiCall<UserGroupsResult>() {
+            @Override
+            public UserGroupsResult call() throws APIConnectionException, APIRequestException {
+                return _client.getGroupListByUser(username);
+            }
+        });
+    }
+
+    public ApiFuture<Void> deleteUser(final String username) {
+        return _dispatcher.submit(new ApiCall<Void>() {
+            @Override
+            public Void call() throws APIConnectionException, APIRequestException {
+                _client.deleteUser(username);
+                return null;
+            }
+        });
+    }
+
+    public ApiFuture<ResponseWrapper> setNoDisturb(final String username, final NoDisturbPayload payload) {
+        return _dispatcher.submit(new ApiCall<ResponseWrapper>() {
+            @Override
+            public ResponseWrapper call() throws APIConnectionException, APIRequestException {
+                return _client.setNoDisturb(username, payload);
+            }
+        });
+    }
+
+    public ApiFuture<ResponseWrapper> addFriends(final String username, final String... users) {
+        return _dispatcher.submit(new ApiCall<ResponseWrapper>() {
+            @Override
+            public ResponseWrapper call() throws APIConnectionException, APIRequestException {
+                return _client.addFriends(username, users);
+            }
+        });
+    }
+
+    public ApiFuture<ResponseWrapper> deleteFriends(final String username, final String... users) {
+        return _dispatcher.submit(new ApiCall<ResponseWrapper>() {
+            @Override
+            public ResponseWrapper call() throws APIConnectionException, APIRequestException {
+                return _client.deleteFriends(username, users);
+            }
+        });
+    }
+
+    public ApiFuture<ResponseWrapper> updateFriendsNote(final String username, final FriendNote[] array) {
+        return _dispatcher.submit(new ApiCall<ResponseWrapper>() {
+            @Override
+            public ResponseWrapper call() throws APIConnectionException, APIRequestException {
+                return _client.updateFriendsNote(username, array);
+            }
+        });
+    }
+
+    public ApiFuture<UserInfoResult[]> getFriendsInfo(final String username) {
+        return _dispatcher.submit(new ApiCall<UserInfoResult[]>() {
+            @Override
+            public UserInfoResult[] call() throws APIConnectionException, APIRequestException {
+                return _client.getFriendsInfo(username);
+            }
+        });
+    }
+
+    public ApiFuture<ResponseWrapper> setGroupShield(final GroupShieldPayload payload, final String username) {
+        return _dispatcher.submit(new ApiCall<ResponseWrapper>() {
+            @Override
+            public ResponseWrapper call() throws APIConnectionException, APIRequestException {
+                return _client.setGroupShield(payload, username);
+            }
+        });
+    }
+
+    public ApiFuture<ResponseWrapper> forbidUser(final String username, final boolean disable) {
+        return _dispatcher.submit(new ApiCall<ResponseWrapper>() {
+            @Override
+            public ResponseWrapper call() throws APIConnectionException, APIRequestException {
+                return _client.forbidUser(username, disable);
+            }
+        });
+    }
+
+    // ------------------------------- Group API
+
+    public ApiFuture<GroupInfoResult> getGroupInfo(final long gid) {
+        return _dispatcher.submit(new ApiCall<GroupInfoResult>() {
+            @Override
+            public GroupInfoResult call() throws APIConnectionException, APIRequestException {
+                return _client.getGroupInfo(gid);
+            }
+        });
+    }
+
+    public ApiFuture<MemberListResult> getGroupMembers(final long gid) {
+        return _dispatcher.submit(new ApiCall<MemberListResult>() {
+            @Override
+            public MemberListResult call() throws APIConnectionException, APIRequestException {
+                return _client.getGroupMembers(gid);
+            }
+        });
+    }
+
+    public ApiFuture<MemberListResult> getGroupMembers(final long gid, final ElementVisitor<? super MemberResult> visitor) {
+        return _dispatcher.submit(new ApiCall<MemberListResult>() {
+            @Override
+            public MemberListResult call() throws APIConnectionException, APIRequestException {
+                return _client.getGroupMembers(gid, visitor);
+            }
+        });
+    }
+
+    public ApiFuture<GroupListResult> getGroupListByAppkey(final int start, final int count) {
+        return _dispatcher.submit(new ApiCall<GroupListResult>() {
+            @Override
+            public GroupListResult call() throws APIConnectionException, APIRequestException {
+                return _client.getGroupListByAppkey(start, count);
+            }
+        });
+    }
+
+    public ApiFuture<GroupListResult> getGroupListByAppkey(final int start, final int count,
+            final ElementVisitor<? super GroupInfoResult> visitor) {
+        return _dispatcher.submit(new ApiCall<GroupListResult>() {
+            @Override
+            public GroupListResult call() throws APIConnectionException, APIRequestException {
+                return _client.getGroupListByAppkey(start, count, visitor);
+            }
+        });
+    }
+
+    public ApiFuture<CreateGroupResult> createGroup(final String owner, final String gname, final String desc, final String avatar, final int flag, final String...  userlist) {
+        return _dispatcher.submit(new ApiCall<CreateGroupResult>() {
+            @Override
+            public CreateGroupResult call() throws APIConnectionException, APIRequestException {
+                return _client.createGroup(owner, gname, desc, avatar, flag, userlist);
+            }
+        });
+    }
+
+    public ApiFuture<Void> addOrRemoveMembers(final long gid, final String[] addList, final String[] removeList) {
+        return _dispatcher.submit(new ApiCall<Void>() {
+            @Override
+            public Void call() throws APIConnectionException, APIRequestException {
+                _client.addOrRemoveMembers(gid, addList, removeList);
+                return null;
+            }
+        });
+    }
+
+    public ApiFuture<Void> deleteGroup(final long gid) {
+        return _dispatcher.submit(new ApiCall<Void>() {
+            @Override
+            public Void call() throws APIConnectionException, APIRequestException {
+                _client.deleteGroup(gid);
+                return null;
+            }
+        });
+    }
+
+    public ApiFuture<Void> updateGroupInfo(final long gid, final String groupName, final String groupDesc, final String avatar) {
+        return _dispatcher.submit(new ApiCall<Void>() {
+            @Override
+            public Void call() throws APIConnectionException, APIRequestException {
+                _client.updateGroupInfo(gid, groupName, groupDesc, avatar);
+                return null;
+            }
+        });
+    }
+
+    public ApiFuture<Void> changeGroupAdmin(final long gid, final String appKey, final String username) {
+        return _dispatcher.submit(new ApiCall<Void>() {
+            @Override
+            public Void call() throws APIConnectionException, APIRequestException {
+                _client.changeGroupAdmin(gid, appKey, username);
+                return null;
+            }
+        });
+    }
+
+    // ------------------------------- Message API
+
+    public ApiFuture<SendMessageResult> sendMessage(final Integer version, final String targetType, final String targetId, final String fromType, final String fromId, final MessageType messageType, final MessageBody messageBody) {
+        return _dispatcher.submit(new ApiCall<SendMessageResult>() {
+            @Override
+            public SendMessageResult call() throws APIConnectionException, APIRequestException {
+                return _client.sendMessage(version, targetType, targetId, fromType, fromId, messageType, messageBody);
+            }
+        });
+    }
+
+    public ApiFuture<SendMessageResult> sendMessage(final MessagePayload payload) {
+        return _dispatcher.submit(new ApiCall<SendMessageResult>() {
+            @Override
+            public SendMessageResult call() throws APIConnectionException, APIRequestException {
+                return _client.sendMessage(payload);
+            }
+        });
+    }
+
+    public ApiFuture<SendMessageResult> sendMessage(final MessageTemplate template, final String targetId, final String targetType) {
+        return _dispatcher.submit(new ApiCall<SendMessageResult>() {
+            @Override
+            public SendMessageResult call() throws APIConnectionException, APIRequestException {
+                return _client.sendMessage(template, targetId, targetType);
+            }
+        });
+    }
+
+    public ApiFuture<SendToAllResult> sendToAll(final MessageBody body, final Collection<String> targets, final SendToAllOptions options) {
+        return _dispatcher.submit(new ApiCall<SendToAllResult>() {
+            @Override
+            public SendToAllResult call() throws APIConnectionException, APIRequestException {
+                return _client.sendToAll(body, targets, options);
+            }
+        });
+    }
+
+    public ApiFuture<SendMessageResult> sendSingleTextByAdmin(final String targetId, final String fromId, final MessageBody body) {
+        return _dispatcher.submit(new ApiCall<SendMessageResult>() {
+            @Override
+            public SendMessageResult call() throws APIConnectionException, APIRequestException {
+                return _client.sendSingleTextByAdmin(targetId, fromId, body);
+            }
+        });
+    }
+
+    public ApiFuture<SendMessageResult> sendGroupTextByAdmin(final String targetId, final String fromId, final MessageBody body) {
+        return _dispatcher.submit(new ApiCall<SendMessageResult>() {
+            @Override
+            public SendMessageResult call() throws APIConnectionException, APIRequestException {
+                return _client.sendGroupTextByAdmin(targetId, fromId, body);
+            }
+        });
+    }
+
+    public ApiFuture<MessageListResult> getMessageList(final int count, final String begin_time, final String end_time) {
+        return _dispatcher.submit(new ApiCall<MessageListResult>() {
+            @Override
+            public MessageListResult call() throws APIConnectionException, APIRequestException {
+                return _client.getMessageList(count, begin_time, end_time);
+            }
+        });
+    }
+
+    public ApiFuture<MessageListResult> getMessageListByCursor(final String cursor) {
+        return _dispatcher.submit(new ApiCall<MessageListResult>() {
+            @Override
+            public MessageListResult call() throws APIConnectionException, APIRequestException {
+                return _client.getMessageListByCursor(cursor);
+            }
+        });
+    }
+
+    public ApiFuture<MessageListResult> getUserMessages(final String username, final int count, final String begin_time, final String end_time) {
+        return _dispatcher.submit(new ApiCall<MessageListResult>() {
+            @Override
+            public MessageListResult call() throws APIConnectionException, APIRequestException {
+                return _client.getUserMessages(username, count, begin_time, end_time);
+            }
+        });
+    }
+
+    public ApiFuture<MessageListResult> getUserMessagesByCursor(final String username, final String cursor) {
+        return _dispatcher.submit(new ApiCall<MessageListResult>() {
+            @Override
+            public MessageListResult call() throws APIConnectionException, APIRequestException {
+                return _client.getUserMessagesByCursor(username, cursor);
+            }
+        });
+    }
+
+    public ApiFuture<ResponseWrapper> retractMessage(final String username, final long msgId) {
+        return _dispatcher.submit(new ApiCall<ResponseWrapper>() {
+            @Override
+            public ResponseWrapper call() throws APIConnectionException, APIRequestException {
+                return _client.retractMessage(username, msgId);
+            }
+        });
+    }
+
+    // ------------------------------- Resource API
+
+    public ApiFuture<DownloadResult> downloadFile(final String mediaId) {
+        return _dispatcher.submit(new ApiCall<DownloadResult>() {
+            @Override
+            public DownloadResult call() throws APIConnectionException, APIRequestException {
+                return _client.downloadFile(mediaId);
+            }
+        });
+    }
+
+    public ApiFuture<Map<String, DownloadResult>> prefetchDownloads(final MessageListResult page,
+                                                                    final int concurrency) {
+        return _dispatcher.submit(new ApiCall<Map<String, DownloadResult>>() {
+            @Override
+            public Map<String, DownloadResult> call() throws APIConnectionException {
+                return _client.prefetchDownloads(page, concurrency);
+            }
+        });
+    }
+
+    public ApiFuture<Map<String, DownloadResult>> prefetchDownloads(final Collection<String> mediaIds,
+                                                                    final int concurrency) {
+        return _dispatcher.submit(new ApiCall<Map<String, DownloadResult>>() {
+            @Override
+            public Map<String, DownloadResult> call() throws APIConnectionException {
+                return _client.prefetchDownloads(mediaIds, concurrency);
+            }
+        });
+    }
+
+    public ApiFuture<UploadResult> uploadFile(final String path, final String fileType) {
+        return _dispatcher.submit(new ApiCall<UploadResult>() {
+            @Override
+            public UploadResult call() throws APIConnectionException, APIRequestException {
+                return _client.uploadFile(path, fileType);
+            }
+        });
+    }
+
+    public ApiFuture<UploadResult> upload(final UploadSource source, final String fileType) {
+        return _dispatcher.submit(new ApiCall<UploadResult>() {
+            @Override
+            public UploadResult call() throws APIConnectionException, APIRequestException {
+                return _client.upload(source, fileType);
+            }
+        });
+    }
+
+    public ApiFuture<UploadAllResult> uploadAll(final List<UploadSource> sources, final String fileType,
+                                                final int concurrency) {
+        return _dispatcher.submit(new ApiCall<UploadAllResult>() {
+            @Override
+            public UploadAllResult call() throws APIConnectionException {
+                return _client.uploadAll(sources, fileType, concurrency);
+            }
+        });
+    }
+
+    // ------------------------------- Cross APP API
+
+    public ApiFuture<ResponseWrapper> addOrRemoveCrossGroupMember(final long gid, final CrossGroup[] groups) {
+        return _dispatcher.submit(new ApiCall<ResponseWrapper>() {
+            @Override
+            public ResponseWrapper call() throws APIConnectionException, APIRequestException {
+                return _client.addOrRemoveCrossGroupMember(gid, groups);
+            }
+        });
+    }
+
+    public ApiFuture<MemberListResult> getCrossGroupMembers(final long gid) {
+        return _dispatcher.submit(new ApiCall<MemberListResult>() {
+            @Override
+            public MemberListResult call() throws APIConnectionException, APIRequestException {
+                return _client.getCrossGroupMembers(gid);
+            }
+        });
+    }
+
+    public ApiFuture<ResponseWrapper> addCrossBlacklist(final String username, final CrossBlacklist[] blacklists) {
+        return _dispatcher.submit(new ApiCall<ResponseWrapper>() {
+            @Override
+            public ResponseWrapper call() throws APIConnectionException, APIRequestException {
+                return _client.addCrossBlacklist(username, blacklists);
+            }
+        });
+    }
+
+    public ApiFuture<ResponseWrapper> deleteCrossBlacklist(final String username, final CrossBlacklist[] blacklists) {
+        return _dispatcher.submit(new ApiCall<ResponseWrapper>() {
+            @Override
+            public ResponseWrapper call() throws APIConnectionException, APIRequestException {
+                return _client.deleteCrossBlacklist(username, blacklists);
+            }
+        });
+    }
+
+    public ApiFuture<UserInfoResult[]> getCrossBlacklist(final String username) {
+        return _dispatcher.submit(new ApiCall<UserInfoResult[]>() {
+            @Override
+            public UserInfoResult[] call() throws APIConnectionException, APIRequestException {
+                return _client.getCrossBlacklist(username);
+            }
+        });
+    }
+
+    public ApiFuture<ResponseWrapper> setCrossNoDisturb(final String username, final CrossNoDisturb[] array) {
+        return _dispatcher.submit(new ApiCall<ResponseWrapper>() {
+            @Override
+            public ResponseWrapper call() throws APIConnectionException, APIRequestException {
+                return _client.setCrossNoDisturb(username, array);
+            }
+        });
+    }
+
+    public ApiFuture<ResponseWrapper> addCrossFriends(final String username, final CrossFriendPayload payload) {
+        return _dispatcher.submit(new ApiCall<ResponseWrapper>() {
+            @Override
+            public ResponseWrapper call() throws APIConnectionException, APIRequestException {
+                return _client.addCrossFriends(username, payload);
+            }
+        });
+    }
+
+    public ApiFuture<ResponseWrapper> deleteCrossFriends(final String username, final CrossFriendPayload payload) {
+        return _dispatcher.submit(new ApiCall<ResponseWrapper>() {
+            @Override
+            public ResponseWrapper call() throws APIConnectionException, APIRequestException {
+                return _client.deleteCrossFriends(username, payload);
+            }
+        });
+    }
+
+    // ------------------------------- Sensitive Word API
+
+    public ApiFuture<ResponseWrapper> addSensitiveWords(final String... words) {
+        return _dispatcher.submit(new ApiCall<ResponseWrapper>() {
+            @Override
+            public ResponseWrapper call() throws APIConnectionException, APIRequestException {
+                return _client.addSensitiveWords(words);
+            }
+        });
+    }
+
+    public ApiFuture<ResponseWrapper> addSensitiveWords(final Set<String> words) {
+        return _dispatcher.submit(new ApiCall<ResponseWrapper>() {
+            @Override
+            public ResponseWrapper call() throws APIConnectionException, APIRequestException {
+                return _client.addSensitiveWords(words);
+            }
+        });
+    }
+
+    public ApiFuture<ResponseWrapper> updateSensitiveWord(final String newWord, final String oldWord) {
+        return _dispatcher.submit(new ApiCall<ResponseWrapper>() {
+            @Override
+            public ResponseWrapper call() throws APIConnectionException, APIRequestException {
+                return _client.updateSensitiveWord(newWord, oldWord);
+            }
+        });
+    }
+
+    public ApiFuture<ResponseWrapper> deleteSensitiveWord(final String word) {
+        return _dispatcher.submit(new ApiCall<ResponseWrapper>() {
+            @Override
+            public ResponseWrapper call() throws APIConnectionException, APIRequestException {
+                return _client.deleteSensitiveWord(word);
+            }
+        });
+    }
+
+    public ApiFuture<SensitiveWordListResult> getSensitiveWordList(final int start, final int count) {
+        return _dispatcher.submit(new ApiCall<SensitiveWordListResult>() {
+            @Override
+            public SensitiveWordListResult call() throws APIConnectionException, APIRequestException {
+                return _client.getSensitiveWordList(start, count);
+            }
+        });
+    }
+
+    public ApiFuture<ResponseWrapper> updateSensitiveWordStatus(final int status) {
+        return _dispatcher.submit(new ApiCall<ResponseWrapper>() {
+            @Override
+            public ResponseWrapper call() throws APIConnectionException, APIRequestException {
+                return _client.updateSensitiveWordStatus(status);
+            }
+        });
+    }
+
+    public ApiFuture<SensitiveWordStatusResult> getSensitiveWordStatus() {
+        return _dispatcher.submit(new ApiCall<SensitiveWordStatusResult>() {
+            @Override
+            public SensitiveWordStatusResult call() throws APIConnectionException, APIRequestException {
+                return _client.getSensitiveWordStatus();
+            }
+        });
+    }
+
+    // =========================    Chat room API    ==============================
+
+    public ApiFuture<CreateChatRoomResult> createChatRoom(final ChatRoomPayload payload) {
+        return _dispatcher.submit(new ApiCall<CreateChatRoomResult>() {
+            @Override
+            public CreateChatRoomResult call() throws APIConnectionException, APIRequestException {
+                return _client.createChatRoom(payload);
+            }
+        });
+    }
+
+    public ApiFuture<ChatRoomListResult> getBatchChatRoomInfo(final long... roomIds) {
+        return _dispatcher.submit(new ApiCall<ChatRoomListResult>() {
+            @Override
+            public ChatRoomListResult call() throws APIConnectionException, APIRequestException {
+                return _client.getBatchChatRoomInfo(roomIds);
+            }
+        });
+    }
+
+    public ApiFuture<ChatRoomListResult> getUserChatRoomInfo(final String username) {
+        return _dispatcher.submit(new ApiCall<ChatRoomListResult>() {
+            @Override
+            public ChatRoomListResult call() throws APIConnectionException, APIRequestException {
+                return _client.getUserChatRoomInfo(username);
+            }
+        });
+    }
+
+    public ApiFuture<ChatRoomListResult> getAppChatRoomInfo(final int start, final int count) {
+        return _dispatcher.submit(new ApiCall<ChatRoomListResult>() {
+            @Override
+            public ChatRoomListResult call() throws APIConnectionException, APIRequestException {
+                return _client.getAppChatRoomInfo(start, count);
+            }
+        });
+    }
+
+    public ApiFuture<ResponseWrapper> updateChatRoomInfo(final long roomId, final String ownerUsername, final String name, final String desc) {
+        return _dispatcher.submit(new ApiCall<ResponseWrapper>() {
+            @Override
+            public ResponseWrapper call() throws APIConnectionException, APIRequestException {
+                return _client.updateChatRoomInfo(roomId, ownerUsername, name, desc);
+            }
+        });
+    }
+
+    public ApiFuture<ResponseWrapper> deleteChatRoom(final long roomId) {
+        return _dispatcher.submit(new ApiCall<ResponseWrapper>() {
+            @Override
+            public ResponseWrapper call() throws APIConnectionException, APIRequestException {
+                return _client.deleteChatRoom(roomId);
+            }
+        });
+    }
+
+    public ApiFuture<ResponseWrapper> updateUserSpeakStatus(final long roomId, final String username, final int flag) {
+        return _dispatcher.submit(new ApiCall<ResponseWrapper>() {
+            @Override
+            public ResponseWrapper call() throws APIConnectionException, APIRequestException {
+                return _client.updateUserSpeakStatus(roomId, username, flag);
+            }
+        });
+    }
+
+    public ApiFuture<ChatRoomMemberList> getChatRoomMembers(final long roomId, final int start, final int count) {
+        return _dispatcher.submit(new ApiCall<ChatRoomMemberList>() {
+            @Override
+            public ChatRoomMemberList call() throws APIConnectionException, APIRequestException {
+                return _client.getChatRoomMembers(roomId, start, count);
+            }
+        });
+    }
+
+    public ApiFuture<ResponseWrapper> addChatRoomMember(final long roomId, final String...  members) {
+        return _dispatcher.submit(new ApiCall<ResponseWrapper>() {
+            @Override
+            public ResponseWrapper call() throws APIConnectionException, APIRequestException {
+                return _client.addChatRoomMember(roomId, members);
+            }
+        });
+    }
+
+    public ApiFuture<ResponseWrapper> addChatRoomMember(final long roomId, final Members members) {
+        return _dispatcher.submit(new ApiCall<ResponseWrapper>() {
+            @Override
+            public ResponseWrapper call() throws APIConnectionException, APIRequestException {
+                return _client.addChatRoomMember(roomId, members);
+            }
+        });
+    }
+
+    public ApiFuture<ResponseWrapper> removeChatRoomMembers(final long roomId, final String...  members) {
+        return _dispatcher.submit(new ApiCall<ResponseWrapper>() {
+            @Override
+            public ResponseWrapper call() throws APIConnectionException, APIRequestException {
+                return _client.removeChatRoomMembers(roomId, members);
+            }
+        });
+    }
+
+    public ApiFuture<ResponseWrapper> removeChatRoomMembers(final long roomId, final Members members) {
+        return _dispatcher.submit(new ApiCall<ResponseWrapper>() {
+            @Override
+            public ResponseWrapper call() throws APIConnectionException, APIRequestException {
+                return _client.removeChatRoomMembers(roomId, members);
+            }
+        });
+    }
+
+    // ===========================    Report API     ==============================
+
+    public ApiFuture<MessageListResult> v2GetMessageList(final int count, final String begin_time, final String end_time) {
+        return _dispatcher.submit(new ApiCall<MessageListResult>() {
+            @Override
+            public MessageListResult call() throws APIConnectionException, APIRequestException {
+                return _client.v2GetMessageList(count, begin_time, end_time);
+            }
+        });
+    }
+
+    public ApiFuture<MessageListResult> v2GetMessageListByCursor(final String cursor) {
+        return _dispatcher.submit(new ApiCall<MessageListResult>() {
+            @Override
+            public MessageListResult call() throws APIConnectionException, APIRequestException {
+                return _client.v2GetMessageListByCursor(cursor);
+            }
+        });
+    }
+
+    public ApiFuture<MessageListResult> v2GetMessageList(final int count, final String begin_time, final String end_time,
+            final ElementVisitor<? super MessageResult> visitor) {
+        return _dispatcher.submit(new ApiCall<MessageListResult>() {
+            @Override
+            public MessageListResult call() throws APIConnectionException, APIRequestException {
+                return _client.v2GetMessageList(count, begin_time, end_time, visitor);
+            }
+        });
+    }
+
+    public ApiFuture<MessageListResult> v2GetMessageListByCursor(final String cursor, final ElementVisitor<? super MessageResult> visitor) {
+        return _dispatcher.submit(new ApiCall<MessageListResult>() {
+            @Override
+            public MessageListResult call() throws APIConnectionException, APIRequestException {
+                return _client.v2GetMessageListByCursor(cursor, visitor);
+            }
+        });
+    }
+
+    public ApiFuture<MessageListResult> v2GetUserMessages(final String username, final int count, final String begin_time, final String end_time) {
+        return _dispatcher.submit(new ApiCall<MessageListResult>() {
+            @Override
+            public MessageListResult call() throws APIConnectionException, APIRequestException {
+                return _client.v2GetUserMessages(username, count, begin_time, end_time);
+            }
+        });
+    }
+
+    public ApiFuture<MessageListResult> v2GetUserMessagesByCursor(final String username, final String cursor) {
+        return _dispatcher.submit(new ApiCall<MessageListResult>() {
+            @Override
+            public MessageListResult call() throws APIConnectionException, APIRequestException {
+                return _client.v2GetUserMessagesByCursor(username, cursor);
+            }
+        });
+    }
+
+    // ============================   Report v2   VIP Only     ====================
+
+    public ApiFuture<UserStatListResult> getUserStatistic(final String startTime, final int duration) {
+        return _dispatcher.submit(new ApiCall<UserStatListResult>() {
+            @Override
+            public UserStatListResult call() throws APIConnectionException, APIRequestException {
+                return _client.getUserStatistic(startTime, duration);
+            }
+        });
+    }
+
+    public ApiFuture<MessageStatListResult> getMessageStatistic(final String timeUnit, final String start, final int duration) {
+        return _dispatcher.submit(new ApiCall<MessageStatListResult>() {
+            @Override
+            public MessageStatListResult call() throws APIConnectionException, APIRequestException {
+                return _client.getMessageStatistic(timeUnit, start, duration);
+            }
+        });
+    }
+
+    public ApiFuture<GroupStatListResult> getGroupStatistic(final String start, final int duration) {
+        return _dispatcher.submit(new ApiCall<GroupStatListResult>() {
+            @Override
+            public GroupStatListResult call() throws APIConnectionException, APIRequestException {
+                return _client.getGroupStatistic(start, duration);
+            }
+        });
+    }
+
+}
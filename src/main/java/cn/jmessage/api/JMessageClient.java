@@ -1,5 +1,6 @@
 package cn.jmessage.api;
 
+import cn.jiguang.common.ServiceHelper;
 import cn.jiguang.common.connection.HttpProxy;
 import cn.jiguang.common.connection.IHttpClient;
 import cn.jiguang.common.resp.APIConnectionException;
@@ -12,8 +13,22 @@ import cn.jmessage.api.chatroom.CreateChatRoomResult;
 import cn.jmessage.api.common.model.chatroom.ChatRoomPayload;
 import cn.jmessage.api.common.model.group.GroupPayload;
 import cn.jmessage.api.common.model.group.GroupShieldPayload;
+import cn.jmessage.api.crossapp.CachingCrossAppClient;
 import cn.jmessage.api.crossapp.CrossAppClient;
+import cn.jmessage.api.common.ElementVisitor;
+import cn.jmessage.api.common.HttpClientChain;
 import cn.jmessage.api.common.JMessageConfig;
+import cn.jmessage.api.common.cache.MetadataCaches;
+import cn.jmessage.api.common.hedge.HedgedHttpClient;
+import cn.jmessage.api.common.hedge.HedgingPolicy;
+import cn.jmessage.api.common.hostpool.HostPoolHttpClient;
+import cn.jmessage.api.common.hostpool.HostPoolPolicy;
+import cn.jmessage.api.common.isolation.CallFamily;
+import cn.jmessage.api.common.isolation.IsolatedHttpClient;
+import cn.jmessage.api.common.isolation.IsolationPolicy;
+import cn.jmessage.api.common.metrics.MetricsRegistry;
+import cn.jmessage.api.common.ratelimit.ApiFamily;
+import cn.jmessage.api.common.ratelimit.RateLimitThrottler;
 import cn.jmessage.api.common.model.*;
 import cn.jmessage.api.common.model.cross.CrossBlacklist;
 import cn.jmessage.api.common.model.cross.CrossFriendPayload;
@@ -22,28 +37,45 @@ import cn.jmessage.api.common.model.cross.CrossNoDisturb;
 import cn.jmessage.api.common.model.friend.FriendNote;
 import cn.jmessage.api.common.model.message.MessageBody;
 import cn.jmessage.api.common.model.message.MessagePayload;
+import cn.jmessage.api.common.model.message.MessageTemplate;
+import cn.jmessage.api.group.CachingGroupClient;
 import cn.jmessage.api.group.CreateGroupResult;
 import cn.jmessage.api.group.GroupClient;
 import cn.jmessage.api.group.GroupInfoResult;
 import cn.jmessage.api.group.GroupListResult;
 import cn.jmessage.api.group.MemberListResult;
+import cn.jmessage.api.group.MemberResult;
 import cn.jmessage.api.message.MessageClient;
 import cn.jmessage.api.message.MessageListResult;
+import cn.jmessage.api.message.MessageResult;
+import cn.jmessage.api.message.MessageSender;
 import cn.jmessage.api.message.MessageType;
 import cn.jmessage.api.message.SendMessageResult;
+import cn.jmessage.api.message.SendToAllOptions;
+import cn.jmessage.api.message.SendToAllResult;
 import cn.jmessage.api.reportv2.GroupStatListResult;
+import cn.jmessage.api.reportv2.MessageIterator;
 import cn.jmessage.api.reportv2.MessageStatListResult;
 import cn.jmessage.api.reportv2.ReportClient;
 import cn.jmessage.api.reportv2.UserStatListResult;
+import cn.jmessage.api.resource.CachingResourceClient;
 import cn.jmessage.api.resource.DownloadResult;
+import cn.jmessage.api.resource.DownloadUrlCache;
 import cn.jmessage.api.resource.ResourceClient;
+import cn.jmessage.api.resource.UploadAllResult;
+import cn.jmessage.api.resource.UploadCache;
 import cn.jmessage.api.resource.UploadResult;
+import cn.jmessage.api.resource.UploadSource;
 import cn.jmessage.api.sensitiveword.SensitiveWordClient;
 import cn.jmessage.api.sensitiveword.SensitiveWordListResult;
 import cn.jmessage.api.sensitiveword.SensitiveWordStatusResult;
 import cn.jmessage.api.user.*;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 public class JMessageClient {
 
@@ -56,6 +88,10 @@ public class JMessageClient {
     private final ChatRoomClient _chatRoomClient;
     private final ReportClient _reportClient;
     private final int _sendVersion;
+    private final HttpClientChain _httpClients;
+    private final MetadataCaches _metadataCaches;
+    private final UploadCache _uploadCache;
+    private final MetricsRegistry _metricsRegistry;
 
     /**
      * Create a JMessage Client.
@@ -68,14 +104,16 @@ public class JMessageClient {
     }
 
     /**
-     * Create a JMessage Client with custom maxRetryTimes.
+     * Create a JMessage Client with custom maxRetryTimes, other clients keep the max retry times of the shared
+     * config.
      *
      * @param appkey The KEY of one application on JPush.
      * @param masterSecret API access secret of the appKey.
      * @param maxRetryTimes The max retry times.
      */
     public JMessageClient(String appkey, String masterSecret, int maxRetryTimes) {
-        this(appkey, masterSecret, null, JMessageConfig.getInstance().setMaxRetryTimes(maxRetryTimes));
+        this(appkey, masterSecret, null, JMessageConfig.getInstance().toBuilder()
+                .setMaxRetryTimes(maxRetryTimes).build());
     }
 
     /**
@@ -91,14 +129,16 @@ public class JMessageClient {
 
     /**
      * Create a JMessage Client with a custom hostname.
-     * If you are using JPush/JMessage privacy cloud, maybe this constructor is what you needed.
+     * If you are using JPush/JMessage privacy cloud, maybe this constructor is what you needed. Other clients
+     * keep the host name of the shared config.
      *
      * @param appkey The KEY of one application on JPush.
      * @param masterSecret API access secret of the appKey.
      * @param hostname The custom hostname.
      */
     public JMessageClient(String appkey, String masterSecret, String hostname) {
-        this(appkey, masterSecret, null, JMessageConfig.getInstance().setApiHostName(hostname));
+        this(appkey, masterSecret, null, JMessageConfig.getInstance().toBuilder()
+                .setApiHostName(hostname).build());
     }
 
 
@@ -109,18 +149,38 @@ public class JMessageClient {
      * @param appkey The KEY of one application on JPush.
      * @param masterSecret API access secret of the appKey.
      * @param proxy The proxy, if there is no proxy, should be null.
-     * @param config The client configuration. Can use JMessageConfig.getInstance() as default.
+     * @param config The client configuration. Can use JMessageConfig.getInstance() as default, or a snapshot
+     *               built by {@link JMessageConfig#newBuilder()} for settings of this client only.
      */
     public JMessageClient(String appkey, String masterSecret, HttpProxy proxy, JMessageConfig config) {
-        _userClient = new UserClient(appkey, masterSecret, proxy, config);
-        _groupClient = new GroupClient(appkey, masterSecret, proxy, config);
-        _messageClient = new MessageClient(appkey, masterSecret, proxy, config);
-        _crossAppClient = new CrossAppClient(appkey, masterSecret, proxy, config);
-        _resourceClient = new ResourceClient(appkey, masterSecret, proxy, config);
-        _sensitiveWordClient = new SensitiveWordClient(appkey, masterSecret, proxy, config);
-        _chatRoomClient = new ChatRoomClient(appkey, masterSecret, proxy, config);
-        _reportClient = new ReportClient(appkey, masterSecret, proxy, config);
+        ServiceHelper.checkBasic(appkey, masterSecret);
+        // all sub clients share one connection pool and one rate limit budget
+        _httpClients = new HttpClientChain(ServiceHelper.getBasicAuthorization(appkey, masterSecret), proxy, config);
+        IHttpClient httpClient = _httpClients.getHttpClient();
+        if ((Boolean) config.get(JMessageConfig.METADATA_CACHE)) {
+            _metadataCaches = new MetadataCaches(config);
+            _userClient = new CachingUserClient(appkey, masterSecret, config, httpClient, _metadataCaches);
+            _groupClient = new CachingGroupClient(appkey, masterSecret, config, httpClient, _metadataCaches);
+            _crossAppClient = new CachingCrossAppClient(appkey, masterSecret, config, httpClient, _metadataCaches);
+        } else {
+            _metadataCaches = null;
+            _userClient = new UserClient(appkey, masterSecret, config, httpClient);
+            _groupClient = new GroupClient(appkey, masterSecret, config, httpClient);
+            _crossAppClient = new CrossAppClient(appkey, masterSecret, config, httpClient);
+        }
+        _messageClient = new MessageClient(appkey, masterSecret, config, httpClient);
+        if ((Boolean) config.get(JMessageConfig.UPLOAD_CACHE)) {
+            _uploadCache = new UploadCache(config);
+            _resourceClient = new CachingResourceClient(appkey, masterSecret, config, httpClient, _uploadCache);
+        } else {
+            _uploadCache = null;
+            _resourceClient = new ResourceClient(appkey, masterSecret, config, httpClient);
+        }
+        _sensitiveWordClient = new SensitiveWordClient(appkey, masterSecret, config, httpClient);
+        _chatRoomClient = new ChatRoomClient(appkey, masterSecret, config, httpClient);
+        _reportClient = new ReportClient(appkey, masterSecret, config, httpClient);
         _sendVersion = (Integer) config.get(JMessageConfig.SEND_VERSION);
+        _metricsRegistry = (MetricsRegistry) config.get(JMessageConfig.METRICS_REGISTRY);
     }
 
     // ------------------------------- User API
@@ -204,6 +264,20 @@ public class JMessageClient {
             throws APIConnectionException, APIRequestException {
         return _userClient.getUserList(start, count);
     }
+
+    /**
+     * Get user list, the users are handed to the visitor while the response is read
+     * @param start The start index of the list
+     * @param count The number that how many you want to get from list
+     * @param visitor Gets the users one by one, they are not kept in the result
+     * @return User list result without users
+     * @throws APIConnectionException connect exception
+     * @throws APIRequestException request exception
+     */
+    public UserListResult getUserList(int start, int count, ElementVisitor<? super UserInfoResult> visitor)
+            throws APIConnectionException, APIRequestException {
+        return _userClient.getUserList(start, count, visitor);
+    }
     
     /**
      * Get admins by appkey
@@ -368,11 +442,21 @@ public class JMessageClient {
         return _groupClient.getGroupMembers(gid);
     }
 
+    public MemberListResult getGroupMembers(long gid, ElementVisitor<? super MemberResult> visitor)
+            throws APIConnectionException, APIRequestException {
+        return _groupClient.getGroupMembers(gid, visitor);
+    }
+
     public GroupListResult getGroupListByAppkey(int start, int count)
             throws APIConnectionException, APIRequestException {
         return _groupClient.getGroupListByAppkey(start, count);
     }
 
+    public GroupListResult getGroupListByAppkey(int start, int count, ElementVisitor<? super GroupInfoResult> visitor)
+            throws APIConnectionException, APIRequestException {
+        return _groupClient.getGroupListByAppkey(start, count, visitor);
+    }
+
     public CreateGroupResult createGroup(String owner, String gname, String desc,  String avatar, int flag, String... userlist)
             throws APIConnectionException, APIRequestException {
         Members members = Members.newBuilder().addMember(userlist).build();
@@ -460,6 +544,33 @@ public class JMessageClient {
         return _messageClient.sendMessage(payload);
     }
 
+    /**
+     * Send the message of a template to one target
+     * @param template Message built by {@link MessagePayload.Builder#buildTemplate()}
+     * @param targetId The message receiver
+     * @param targetType Group or single
+     * @return return msg_id
+     * @throws APIConnectionException connect exception
+     * @throws APIRequestException request exception
+     */
+    public SendMessageResult sendMessage(MessageTemplate template, String targetId, String targetType)
+            throws APIConnectionException, APIRequestException {
+        return _messageClient.sendMessage(template, targetId, targetType);
+    }
+
+    /**
+     * Send one message to many targets in parallel
+     * @param body The message body
+     * @param targets Usernames, or gids if the target type of the options is group
+     * @param options Sender, message type and max requests in flight
+     * @return msg_id of every target sent to, failures by error code and latencies
+     * @throws APIConnectionException if interrupted
+     */
+    public SendToAllResult sendToAll(MessageBody body, Collection<String> targets, SendToAllOptions options)
+            throws APIConnectionException {
+        return _messageClient.sendToAll(body, targets, options);
+    }
+
     /**
      * Send single text message by admin
      * @param targetId target user's id
@@ -567,6 +678,30 @@ public class JMessageClient {
         return _resourceClient.downloadFile(mediaId);
     }
 
+    /**
+     * Resolve the download urls of the media in a page of messages in parallel.
+     * @param page Necessary, messages from the history API
+     * @param concurrency max number of requests in flight
+     * @return the download results by media id, a media id which failed is left out
+     * @throws APIConnectionException if interrupted while waiting for the requests
+     */
+    public Map<String, DownloadResult> prefetchDownloads(MessageListResult page, int concurrency)
+            throws APIConnectionException {
+        return _resourceClient.prefetchDownloads(page, concurrency);
+    }
+
+    /**
+     * Resolve the download urls of several media in parallel.
+     * @param mediaIds Necessary, the media ids
+     * @param concurrency max number of requests in flight
+     * @return the download results by media id, a media id which failed is left out
+     * @throws APIConnectionException if interrupted while waiting for the requests
+     */
+    public Map<String, DownloadResult> prefetchDownloads(Collection<String> mediaIds, int concurrency)
+            throws APIConnectionException {
+        return _resourceClient.prefetchDownloads(mediaIds, concurrency);
+    }
+
     /**
      * Upload file, only support image file(jpg, bmp, gif, png) currently,
      * file size should not larger than 8M.
@@ -581,6 +716,32 @@ public class JMessageClient {
         return _resourceClient.uploadFile(path, fileType);
     }
 
+    /**
+     * Upload a file, a stream or a buffer, streamed to the connection.
+     * @param source Necessary, the content to upload
+     * @param fileType Current support type: image, file, voice
+     * @return UploadResult
+     * @throws APIConnectionException connect exception
+     * @throws APIRequestException request exception
+     */
+    public UploadResult upload(UploadSource source, String fileType)
+            throws APIConnectionException, APIRequestException {
+        return _resourceClient.upload(source, fileType);
+    }
+
+    /**
+     * Upload several files in parallel.
+     * @param sources Necessary, the contents to upload
+     * @param fileType Current support type: image, file, voice
+     * @param concurrency max number of uploads in flight
+     * @return UploadAllResult
+     * @throws APIConnectionException if interrupted while waiting for the uploads
+     */
+    public UploadAllResult uploadAll(List<UploadSource> sources, String fileType, int concurrency)
+            throws APIConnectionException {
+        return _resourceClient.uploadAll(sources, fileType, concurrency);
+    }
+
     // ------------------------------- Cross APP API
 
     /**
@@ -955,6 +1116,41 @@ public class JMessageClient {
         return _reportClient.v2GetMessageListByCursor(cursor);
     }
 
+    /**
+     * Get message list from history, the messages are handed to the visitor while the response is read
+     * and are not kept in the result.
+     * @param count Necessary parameter. The count of the message list.
+     * @param begin_time Necessary parameter. The format must follow by 'yyyy-MM-dd HH:mm:ss'
+     * @param end_time Necessary parameter. The format must follow by 'yyyy-MM-dd HH:mm:ss'
+     * @param visitor Gets the messages one by one
+     * @return MessageListResult without messages
+     * @throws APIConnectionException connect exception
+     * @throws APIRequestException request exception
+     */
+    public MessageListResult v2GetMessageList(int count, String begin_time, String end_time,
+                                              ElementVisitor<? super MessageResult> visitor)
+            throws APIConnectionException, APIRequestException {
+        return _reportClient.v2GetMessageList(count, begin_time, end_time, visitor);
+    }
+
+    public MessageListResult v2GetMessageListByCursor(String cursor, ElementVisitor<? super MessageResult> visitor)
+            throws APIConnectionException, APIRequestException {
+        return _reportClient.v2GetMessageListByCursor(cursor, visitor);
+    }
+
+    /**
+     * Iterate messages of any time range, the range is split into 7 days queries and the pages are
+     * prefetched in the background.
+     * @param count Necessary parameter. The count of messages of one page.
+     * @param begin_time Necessary parameter. The format must follow by 'yyyy-MM-dd HH:mm:ss'
+     * @param end_time Necessary parameter. The format must follow by 'yyyy-MM-dd HH:mm:ss'
+     * @param executor Runs the prefetch, if null the iterator uses its own thread.
+     * @return MessageIterator
+     */
+    public MessageIterator iterateMessages(int count, String begin_time, String end_time, Executor executor) {
+        return _reportClient.iterateMessages(count, begin_time, end_time, executor);
+    }
+
     /**
      * Get message list from user's record, messages will store 60 days.
      * @param username Necessary parameter.
@@ -984,6 +1180,21 @@ public class JMessageClient {
         return _reportClient.v2GetUserMessagesByCursor(username, cursor);
     }
 
+    /**
+     * Iterate messages of one user of any time range, the range is split into 7 days queries and the pages
+     * are prefetched in the background.
+     * @param username Necessary parameter.
+     * @param count Necessary parameter. The count of messages of one page.
+     * @param begin_time Necessary parameter. The format must follow by 'yyyy-MM-dd HH:mm:ss'
+     * @param end_time Necessary parameter. The format must follow by 'yyyy-MM-dd HH:mm:ss'
+     * @param executor Runs the prefetch, if null the iterator uses its own thread.
+     * @return MessageIterator
+     */
+    public MessageIterator iterateUserMessages(String username, int count, String begin_time, String end_time,
+                                               Executor executor) {
+        return _reportClient.iterateUserMessages(username, count, begin_time, end_time, executor);
+    }
+
     // ============================   Report v2   VIP Only     ====================
     /**
      * Get user statistic, now time unit only supports DAY
@@ -1036,4 +1247,121 @@ public class JMessageClient {
         this._reportClient.setHttpClient(httpClient);
     }
 
+    /**
+     * Get an asynchronous view of this client, every call returns an {@link cn.jmessage.api.common.async.ApiFuture}.
+     *
+     * @param executor The executor which runs the blocking calls.
+     * @param maxConcurrentRequests Max calls in flight at the same time.
+     * @return {@link AsyncJMessageClient}
+     */
+    public AsyncJMessageClient async(Executor executor, int maxConcurrentRequests) {
+        return new AsyncJMessageClient(this, executor, maxConcurrentRequests);
+    }
+
+    /**
+     * Get a builder of a {@link MessageSender} which queues messages and sends them with a pool of workers.
+     *
+     * @return {@link MessageSender.Builder}
+     */
+    public MessageSender.Builder newMessageSender() {
+        return MessageSender.newBuilder(_messageClient);
+    }
+
+    /**
+     * Get a builder of a {@link UserRegistrar} which registers any number of users in parallel chunks.
+     *
+     * @return {@link UserRegistrar.Builder}
+     */
+    public UserRegistrar.Builder newUserRegistrar() {
+        return UserRegistrar.newBuilder(_userClient);
+    }
+
+    /**
+     * Get the throttler which paces the calls to stay under the quota of the X-Rate-Limit response headers,
+     * its {@link RateLimitThrottler#getBudget(ApiFamily)} gives the current budget of one API family.
+     *
+     * @return {@link RateLimitThrottler}, null unless enabled by {@link JMessageConfig#setRateLimitThrottle(boolean)}
+     */
+    public RateLimitThrottler getRateLimitThrottler() {
+        return _httpClients.getRateLimitThrottler();
+    }
+
+    /**
+     * Get the client which isolates the API families, its {@link IsolatedHttpClient#getCircuitBreaker(CallFamily)}
+     * and {@link IsolatedHttpClient#getBulkhead(CallFamily)} give the state of one family.
+     *
+     * @return {@link IsolatedHttpClient}, null unless enabled by
+     * {@link JMessageConfig#setIsolationPolicy(IsolationPolicy)}
+     */
+    public IsolatedHttpClient getIsolatedHttpClient() {
+        return _httpClients.getIsolatedHttpClient();
+    }
+
+    /**
+     * Get the client which hedges slow GET calls, its {@link HedgedHttpClient#getPolicy()} gives the counters of
+     * the hedges.
+     *
+     * @return {@link HedgedHttpClient}, null unless enabled by {@link JMessageConfig#setHedgingPolicy(HedgingPolicy)}
+     */
+    public HedgedHttpClient getHedgedHttpClient() {
+        return _httpClients.getHedgedHttpClient();
+    }
+
+    /**
+     * Get the client which spreads the calls over the hosts, its {@link HostPoolHttpClient#getHostPools()} give
+     * the state of each host.
+     *
+     * @return {@link HostPoolHttpClient}, null unless enabled by
+     * {@link JMessageConfig#setHostPoolPolicy(HostPoolPolicy)}
+     */
+    public HostPoolHttpClient getHostPoolHttpClient() {
+        return _httpClients.getHostPoolHttpClient();
+    }
+
+    /**
+     * Get the caches of user and group metadata, {@link MetadataCaches#getStats()} gives their counters.
+     *
+     * @return {@link MetadataCaches}, null unless enabled by {@link JMessageConfig#setMetadataCache(boolean)}
+     */
+    public MetadataCaches getMetadataCaches() {
+        return _metadataCaches;
+    }
+
+    /**
+     * Get the cache of uploaded contents, which gives its counters.
+     *
+     * @return {@link UploadCache}, null unless enabled by {@link JMessageConfig#setUploadCache(boolean)}
+     */
+    public UploadCache getUploadCache() {
+        return _uploadCache;
+    }
+
+    /**
+     * Get the registry the calls of this client are recorded into.
+     *
+     * @return {@link MetricsRegistry}, null unless set by {@link JMessageConfig#setMetricsRegistry(MetricsRegistry)}
+     */
+    public MetricsRegistry getMetricsRegistry() {
+        return _metricsRegistry;
+    }
+
+    /**
+     * Get the cache of download urls, {@link DownloadUrlCache#getStats()} gives its counters.
+     *
+     * @return {@link DownloadUrlCache}, null unless enabled by {@link JMessageConfig#setDownloadCache(boolean)}
+     */
+    public DownloadUrlCache getDownloadCache() {
+        return _resourceClient.getDownloadCache();
+    }
+
+    /**
+     * Close the idle pooled connections. Calls made after close fail with APIConnectionException.
+     */
+    public void close() {
+        if (null != _uploadCache) {
+            _uploadCache.close();
+        }
+        _httpClients.close();
+    }
+
 }
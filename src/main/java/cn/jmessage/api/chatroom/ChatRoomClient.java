@@ -1,11 +1,13 @@
 package cn.jmessage.api.chatroom;
 
 import cn.jiguang.common.connection.HttpProxy;
+import cn.jiguang.common.connection.IHttpClient;
 import cn.jiguang.common.resp.APIConnectionException;
 import cn.jiguang.common.resp.APIRequestException;
 import cn.jiguang.common.resp.ResponseWrapper;
 import cn.jiguang.common.utils.Preconditions;
 import cn.jmessage.api.common.BaseClient;
+import cn.jmessage.api.common.HttpClientChain;
 import cn.jmessage.api.common.JMessageConfig;
 import cn.jmessage.api.common.model.Members;
 import cn.jmessage.api.common.model.chatroom.ChatRoomPayload;
@@ -37,7 +39,24 @@ public class ChatRoomClient extends BaseClient {
      * @param config       The client configuration. Can use JMessageConfig.getInstance() as default.
      */
     public ChatRoomClient(String appKey, String masterSecret, HttpProxy proxy, JMessageConfig config) {
-        super(appKey, masterSecret, proxy, config);
+        this(appKey, masterSecret, config, newHttpClientChain(appKey, masterSecret, proxy, config));
+    }
+
+    private ChatRoomClient(String appKey, String masterSecret, JMessageConfig config, HttpClientChain httpClients) {
+        this(appKey, masterSecret, config, httpClients.getHttpClient());
+        _httpClientChain = httpClients;
+    }
+
+    /**
+     * Create a client sending its calls with a client shared with other clients.
+     *
+     * @param appKey The KEY of one application on JPush.
+     * @param masterSecret API access secret of the appKey.
+     * @param config The client configuration. Can use JMessageConfig.getInstance() as default.
+     * @param httpClient The client sending the calls, shared with other clients.
+     */
+    public ChatRoomClient(String appKey, String masterSecret, JMessageConfig config, IHttpClient httpClient) {
+        super(appKey, masterSecret, config, httpClient);
         mChatRoomPath = (String) config.get(JMessageConfig.CHAT_ROOM_PATH);
         mUserPath = (String) config.get(JMessageConfig.USER_PATH);
     }
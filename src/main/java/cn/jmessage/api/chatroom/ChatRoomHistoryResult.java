@@ -1,12 +1,20 @@
 package cn.jmessage.api.chatroom;
 
 import cn.jiguang.common.resp.BaseResult;
+import cn.jmessage.api.common.ListResultDecoder;
 import com.google.gson.annotations.Expose;
 
 import java.util.Map;
 
 public class ChatRoomHistoryResult extends BaseResult {
 
+    /**
+     * Decodes the result straight from the response stream, see {@link ListResultDecoder}.
+     */
+    public static final ListResultDecoder<ChatRoomHistoryResult, ChatRoomBaseMessageResult> DECODER =
+            new ListResultDecoder<ChatRoomHistoryResult, ChatRoomBaseMessageResult>(ChatRoomHistoryResult.class,
+                    "messages", ChatRoomBaseMessageResult.class);
+
     @Expose
     private Integer total;
 
@@ -31,6 +39,10 @@ public class ChatRoomHistoryResult extends BaseResult {
         return count;
     }
 
+    public ChatRoomBaseMessageResult[] getMessages() {
+        return messages;
+    }
+
     public static class ChatRoomBaseMessageResult {
 
         @Expose
@@ -3,14 +3,29 @@ package cn.jmessage.api.common;
 import cn.jiguang.common.ServiceHelper;
 import cn.jiguang.common.connection.HttpProxy;
 import cn.jiguang.common.connection.IHttpClient;
-import cn.jiguang.common.connection.NativeHttpClient;
+import cn.jiguang.common.resp.APIConnectionException;
+import cn.jiguang.common.resp.APIRequestException;
+import cn.jiguang.common.resp.ResponseWrapper;
+import cn.jmessage.api.common.async.VirtualThreads;
+import cn.jmessage.api.common.connection.HttpClients;
+import cn.jmessage.api.common.connection.ResponseBodyHandler;
+import cn.jmessage.api.common.model.JsonBuffer;
+import cn.jmessage.api.common.model.JsonWritable;
 import com.google.gson.Gson;
 
+import java.util.concurrent.ThreadFactory;
+
 public class BaseClient {
 
     protected IHttpClient _httpClient;
     protected String _baseUrl;
     protected Gson _gson = new Gson();
+    protected boolean _streamingDecode;
+    protected boolean _virtualThreads;
+    /**
+     * The http client chain created by this client, null if the http client is shared.
+     */
+    protected HttpClientChain _httpClientChain;
 
     /**
      * Create a JMessage Base Client
@@ -21,14 +36,107 @@ public class BaseClient {
      * @param config The client configuration. Can use JMessageConfig.getInstance() as default.
      */
     public BaseClient(String appKey, String masterSecret, HttpProxy proxy, JMessageConfig config) {
+        this(appKey, masterSecret, config, newHttpClientChain(appKey, masterSecret, proxy, config));
+    }
+
+    private BaseClient(String appKey, String masterSecret, JMessageConfig config, HttpClientChain httpClients) {
+        this(appKey, masterSecret, config, httpClients.getHttpClient());
+        _httpClientChain = httpClients;
+    }
+
+    /**
+     * Create a JMessage Base Client sending its calls with a client shared with other clients, such as the
+     * {@link HttpClientChain} of a JMessageClient.
+     *
+     * @param appKey The KEY of one application on JPush.
+     * @param masterSecret API access secret of the appKey.
+     * @param config The client configuration. Can use JMessageConfig.getInstance() as default.
+     * @param httpClient The client sending the calls.
+     */
+    public BaseClient(String appKey, String masterSecret, JMessageConfig config, IHttpClient httpClient) {
+        ServiceHelper.checkBasic(appKey, masterSecret);
+        this._baseUrl = config.getApiHostName();
+        this._streamingDecode = (Boolean) config.get(JMessageConfig.STREAMING_DECODE);
+        this._virtualThreads = (Boolean) config.get(JMessageConfig.VIRTUAL_THREADS);
+        this._httpClient = httpClient;
+    }
+
+    protected static HttpClientChain newHttpClientChain(String appKey, String masterSecret, HttpProxy proxy,
+                                                        JMessageConfig config) {
         ServiceHelper.checkBasic(appKey, masterSecret);
         String authCode = ServiceHelper.getBasicAuthorization(appKey, masterSecret);
-        this._baseUrl = (String) config.get(JMessageConfig.API_HOST_NAME);
-        this._httpClient = new NativeHttpClient(authCode, proxy, config.getClientConfig());
+        return new HttpClientChain(authCode, proxy, config);
+    }
+
+    /**
+     * @return true if the workers of the bulk operations run on virtual threads
+     */
+    public boolean isVirtualThreads() {
+        return _virtualThreads;
+    }
+
+    /**
+     * Get a factory of the worker threads of a bulk operation.
+     *
+     * @param name prefix of the thread names
+     * @return ThreadFactory of virtual threads if enabled by {@link JMessageConfig#setVirtualThreads(boolean)}
+     */
+    public ThreadFactory newThreadFactory(String name) {
+        return VirtualThreads.newThreadFactory(name, _virtualThreads);
     }
 
     public void setHttpClient(IHttpClient httpClient) {
         this._httpClient = httpClient;
     }
 
+    public IHttpClient getHttpClient() {
+        return _httpClient;
+    }
+
+    /**
+     * Close the http client chain created by this client, calls made after close fail with
+     * APIConnectionException. A client sharing the http client of a JMessageClient is closed by
+     * {@link cn.jmessage.api.JMessageClient#close()} instead, this does nothing.
+     */
+    public void close() {
+        if (null != _httpClientChain) {
+            _httpClientChain.close();
+        }
+    }
+
+    /**
+     * Send a GET request, the handler reads the body of a successful response while it is received.
+     *
+     * @param url The request url
+     * @param handler Decodes the response body
+     * @return The value returned by the handler
+     * @throws APIConnectionException connect exception
+     * @throws APIRequestException request exception
+     */
+    protected <T> T streamGet(String url, ResponseBodyHandler<T> handler)
+            throws APIConnectionException, APIRequestException {
+        return HttpClients.sendGet(_httpClient, url, handler);
+    }
+
+    /**
+     * Send a POST request, the payload is written into a pooled buffer instead of being built as a JsonObject
+     * and serialized to a String.
+     *
+     * @param url The request url
+     * @param payload The request body
+     * @return The response
+     * @throws APIConnectionException connect exception
+     * @throws APIRequestException request exception
+     */
+    protected ResponseWrapper sendPost(String url, JsonWritable payload)
+            throws APIConnectionException, APIRequestException {
+        JsonBuffer buffer = JsonBuffer.acquire();
+        try {
+            payload.writeJSON(buffer);
+            return HttpClients.sendPost(_httpClient, url, buffer);
+        } finally {
+            buffer.release();
+        }
+    }
+
 }
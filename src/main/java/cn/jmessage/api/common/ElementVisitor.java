@@ -0,0 +1,12 @@
+package cn.jmessage.api.common;
+
+/**
+ * Gets the elements of a list result one by one while the response is read, the list itself is never built.
+ *
+ * @param <E> element type
+ */
+public interface ElementVisitor<E> {
+
+    void visit(E element);
+
+}
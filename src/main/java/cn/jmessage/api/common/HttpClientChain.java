@@ -0,0 +1,128 @@
+package cn.jmessage.api.common;
+
+import cn.jiguang.common.connection.HttpProxy;
+import cn.jiguang.common.connection.IHttpClient;
+import cn.jmessage.api.common.async.VirtualThreads;
+import cn.jmessage.api.common.connection.HttpClients;
+import cn.jmessage.api.common.connection.PooledHttpClient;
+import cn.jmessage.api.common.hedge.HedgedHttpClient;
+import cn.jmessage.api.common.hedge.HedgingPolicy;
+import cn.jmessage.api.common.hostpool.HostPoolHttpClient;
+import cn.jmessage.api.common.hostpool.HostPoolPolicy;
+import cn.jmessage.api.common.isolation.IsolatedHttpClient;
+import cn.jmessage.api.common.isolation.IsolationPolicy;
+import cn.jmessage.api.common.ratelimit.RateLimitThrottler;
+import cn.jmessage.api.common.ratelimit.ThrottledHttpClient;
+
+/**
+ * The http client of the config: the transport wrapped, from inside out, by the host pool, the rate limit
+ * throttler, the isolation and the hedging, each only if enabled.
+ * <p>
+ * The clients of a {@link cn.jmessage.api.JMessageClient} share one chain, so one connection pool, one rate limit
+ * budget and one set of circuit breakers.
+ * </p>
+ */
+public class HttpClientChain {
+
+    private final PooledHttpClient _transport;
+    private final HostPoolHttpClient _hostPoolHttpClient;
+    private final RateLimitThrottler _throttler;
+    private final IsolatedHttpClient _isolatedHttpClient;
+    private final HedgedHttpClient _hedgedHttpClient;
+    private final IHttpClient _httpClient;
+
+    /**
+     * @param authCode Basic authorization of the appKey and masterSecret.
+     * @param proxy    The proxy, if there is no proxy, should be null.
+     * @param config   The client configuration. Can use JMessageConfig.getInstance() as default.
+     */
+    public HttpClientChain(String authCode, HttpProxy proxy, JMessageConfig config) {
+        this._transport = HttpClients.newHttpClient(authCode, proxy, config);
+        IHttpClient httpClient = _transport;
+        HostPoolPolicy hostPoolPolicy = (HostPoolPolicy) config.get(JMessageConfig.HOST_POOL_POLICY);
+        if (null != hostPoolPolicy) {
+            _hostPoolHttpClient = new HostPoolHttpClient(httpClient, hostPoolPolicy, config.getApiHostName(),
+                    config.getReportHostName());
+            httpClient = _hostPoolHttpClient;
+        } else {
+            _hostPoolHttpClient = null;
+        }
+        if ((Boolean) config.get(JMessageConfig.RATE_LIMIT_THROTTLE)) {
+            _throttler = new RateLimitThrottler(config);
+            httpClient = new ThrottledHttpClient(httpClient, _throttler);
+        } else {
+            _throttler = null;
+        }
+        IsolationPolicy isolationPolicy = (IsolationPolicy) config.get(JMessageConfig.ISOLATION_POLICY);
+        if (null != isolationPolicy) {
+            _isolatedHttpClient = new IsolatedHttpClient(httpClient, isolationPolicy);
+            httpClient = _isolatedHttpClient;
+        } else {
+            _isolatedHttpClient = null;
+        }
+        HedgingPolicy hedgingPolicy = (HedgingPolicy) config.get(JMessageConfig.HEDGING_POLICY);
+        if (null != hedgingPolicy) {
+            _hedgedHttpClient = new HedgedHttpClient(httpClient, hedgingPolicy, _transport,
+                    VirtualThreads.newThreadFactory("jmessage-hedge",
+                            (Boolean) config.get(JMessageConfig.VIRTUAL_THREADS)));
+            httpClient = _hedgedHttpClient;
+        } else {
+            _hedgedHttpClient = null;
+        }
+        this._httpClient = httpClient;
+    }
+
+    /**
+     * @return the outermost client, the one to send the calls with
+     */
+    public IHttpClient getHttpClient() {
+        return _httpClient;
+    }
+
+    public PooledHttpClient getTransport() {
+        return _transport;
+    }
+
+    /**
+     * @return null unless enabled by {@link JMessageConfig#setHostPoolPolicy}
+     */
+    public HostPoolHttpClient getHostPoolHttpClient() {
+        return _hostPoolHttpClient;
+    }
+
+    /**
+     * @return null unless enabled by {@link JMessageConfig#setRateLimitThrottle(boolean)}
+     */
+    public RateLimitThrottler getRateLimitThrottler() {
+        return _throttler;
+    }
+
+    /**
+     * @return null unless enabled by {@link JMessageConfig#setIsolationPolicy}
+     */
+    public IsolatedHttpClient getIsolatedHttpClient() {
+        return _isolatedHttpClient;
+    }
+
+    /**
+     * @return null unless enabled by {@link JMessageConfig#setHedgingPolicy}
+     */
+    public HedgedHttpClient getHedgedHttpClient() {
+        return _hedgedHttpClient;
+    }
+
+    /**
+     * Stop the hedges and the probes, and close the transport. Calls made after close fail with
+     * APIConnectionException.
+     */
+    public void close() {
+        if (null != _hedgedHttpClient) {
+            _hedgedHttpClient.close();
+        }
+        if (null != _hostPoolHttpClient) {
+            _hostPoolHttpClient.close();
+        }
+        _transport.close();
+    }
+
+}
@@ -1,7 +1,32 @@
 package cn.jmessage.api.common;
 
 import cn.jiguang.common.ClientConfig;
+import cn.jiguang.common.utils.Preconditions;
+import cn.jmessage.api.common.connection.ConnectionPool;
+import cn.jmessage.api.common.hedge.HedgingPolicy;
+import cn.jmessage.api.common.hostpool.HostPoolPolicy;
+import cn.jmessage.api.common.isolation.IsolationPolicy;
+import cn.jmessage.api.common.metrics.MetricsRegistry;
+import cn.jmessage.api.common.ratelimit.RateLimitThrottler;
+import cn.jmessage.api.common.retry.RetryPolicy;
+import cn.jmessage.api.common.trace.CallListener;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Settings of the clients, read when a client is created.
+ * <p>
+ * {@link #getInstance()} is the shared config of the JVM, kept in the {@link ClientConfig} of jiguang-common;
+ * its setters change the clients created afterwards everywhere in the process. {@link #newBuilder()} and
+ * {@link #toBuilder()} build an immutable snapshot instead, owned by the clients it is given to, so that
+ * clients of different app keys with their own hosts, retries and timeouts live side by side in one JVM.
+ * The setters of a snapshot throw UnsupportedOperationException, change a copy by {@link #toBuilder()}.
+ * </p>
+ */
 public class JMessageConfig {
 
     private static ClientConfig clientConfig = ClientConfig.getInstance();
@@ -34,60 +59,722 @@ public class JMessageConfig {
     public static final String CHAT_ROOM_PATH = "im.chat.room.path";
 
     public static final String MAX_RETRY_TIMES = ClientConfig.MAX_RETRY_TIMES;
+    public static final String CONNECTION_TIMEOUT = ClientConfig.CONNECTION_TIMEOUT;
+    public static final String READ_TIMEOUT = ClientConfig.READ_TIMEOUT;
+
+    public static final String CONNECTION_POOL_MAX_TOTAL = "im.connection.pool.max.total";
+    public static final String CONNECTION_POOL_MAX_PER_ROUTE = "im.connection.pool.max.per.route";
+    public static final String CONNECTION_POOL_KEEP_ALIVE = "im.connection.pool.keep.alive";
+
+    public static final String RATE_LIMIT_THROTTLE = "im.rate.limit.throttle";
+    public static final String RATE_LIMIT_MAX_WAIT = "im.rate.limit.max.wait";
+
+    public static final String STREAMING_DECODE = "im.streaming.decode";
+
+    public static final String METADATA_CACHE = "im.metadata.cache";
+    public static final String METADATA_CACHE_MAX_SIZE = "im.metadata.cache.max.size";
+    public static final String METADATA_CACHE_USER_TTL = "im.metadata.cache.user.ttl";
+    public static final String METADATA_CACHE_GROUP_TTL = "im.metadata.cache.group.ttl";
+    public static final String METADATA_CACHE_MEMBER_TTL = "im.metadata.cache.member.ttl";
+
+    public static final String UPLOAD_CACHE = "im.upload.cache";
+    public static final String UPLOAD_CACHE_FILE = "im.upload.cache.file";
+    public static final String UPLOAD_CACHE_MAX_SIZE = "im.upload.cache.max.size";
+    public static final String UPLOAD_CACHE_TTL = "im.upload.cache.ttl";
+    public static final String UPLOAD_CACHE_VERIFY_INTERVAL = "im.upload.cache.verify.interval";
+
+    public static final String DOWNLOAD_CACHE = "im.download.cache";
+    public static final String DOWNLOAD_CACHE_MAX_SIZE = "im.download.cache.max.size";
+    public static final String DOWNLOAD_CACHE_TTL = "im.download.cache.ttl";
+    public static final String DOWNLOAD_CACHE_EXPIRY_MARGIN = "im.download.cache.expiry.margin";
+
+    public static final String METRICS_REGISTRY = "im.metrics.registry";
+
+    public static final String CALL_LISTENERS = "im.call.listeners";
+
+    public static final String RETRY_POLICY = "im.retry.policy";
+
+    public static final String ISOLATION_POLICY = "im.isolation.policy";
+
+    public static final String HEDGING_POLICY = "im.hedging.policy";
+
+    public static final String HOST_POOL_POLICY = "im.host.pool.policy";
+
+    public static final String HTTP2 = "im.http2";
+    public static final String HTTP2_MAX_CONCURRENT_STREAMS = "im.http2.max.concurrent.streams";
+
+    public static final String VIRTUAL_THREADS = "im.virtual.threads";
 
     public static final String SEND_VERSION = "send.version";
     public static final Object SEND_VERSION_SCHMEA = Integer.class;
 
+    // the ClientConfig for the shared instance, an unmodifiable copy for a snapshot
+    private final Map<String, Object> values;
+    private final boolean snapshot;
+    // read by the transport of every client, fields of a snapshot instead of lookups into the map
+    private final String apiHostName;
+    private final String reportHostName;
+    private final int maxRetryTimes;
+    private final int connectionTimeout;
+    private final int readTimeout;
+    private final String sslVersion;
+
     private JMessageConfig() {
-        clientConfig.put(API_HOST_NAME, "https://api.im.jpush.cn");
-        clientConfig.put(API_REPORT_HOST_NAME, "https://report.im.jpush.cn");
-        clientConfig.put(ADMIN_PATH, "/v1/admins");
-        clientConfig.put(USER_PATH, "/v1/users");
-        clientConfig.put(V2_USER_PATH, "/v2/users");
-        clientConfig.put(GROUP_PATH, "/v1/groups");
-        clientConfig.put(V2_GROUP_PATH, "/v2/groups");
-        clientConfig.put(MESSAGE_PATH, "/v1/messages");
-        clientConfig.put(V2_MESSAGE_PATH, "/v2/messages");
-        clientConfig.put(RESOURCE_PATH, "/v1/resource");
-        clientConfig.put(CROSS_USER_PATH, "/v1/cross/users");
-        clientConfig.put(CROSS_GROUP_PATH, "/v1/cross/groups");
-        clientConfig.put(SENSITIVE_WORD_PATH, "/v1/sensitiveword");
-        clientConfig.put(CHAT_ROOM_PATH, "/v1/chatroom");
-        clientConfig.put(V2_CHATROOM_PATH, "/v2/chatrooms");
-        clientConfig.put(V2_STATISTIC_PATH, "/v2/statistic");
-        clientConfig.put(MAX_RETRY_TIMES, 3);
-        clientConfig.put(SEND_VERSION, 1);
+        putDefaults(clientConfig);
+        this.values = clientConfig;
+        this.snapshot = false;
+        this.apiHostName = null;
+        this.reportHostName = null;
+        this.maxRetryTimes = 0;
+        this.connectionTimeout = 0;
+        this.readTimeout = 0;
+        this.sslVersion = null;
+    }
+
+    private JMessageConfig(Map<String, Object> values) {
+        this.values = Collections.unmodifiableMap(new HashMap<String, Object>(values));
+        this.snapshot = true;
+        this.apiHostName = (String) values.get(API_HOST_NAME);
+        this.reportHostName = (String) values.get(API_REPORT_HOST_NAME);
+        this.maxRetryTimes = ((Number) values.get(MAX_RETRY_TIMES)).intValue();
+        this.connectionTimeout = ((Number) values.get(CONNECTION_TIMEOUT)).intValue();
+        this.readTimeout = ((Number) values.get(READ_TIMEOUT)).intValue();
+        this.sslVersion = (String) values.get(ClientConfig.SSL_VERSION);
     }
 
+    private static void putDefaults(Map<String, Object> config) {
+        config.put(API_HOST_NAME, "https://api.im.jpush.cn");
+        config.put(API_REPORT_HOST_NAME, "https://report.im.jpush.cn");
+        config.put(ADMIN_PATH, "/v1/admins");
+        config.put(USER_PATH, "/v1/users");
+        config.put(V2_USER_PATH, "/v2/users");
+        config.put(GROUP_PATH, "/v1/groups");
+        config.put(V2_GROUP_PATH, "/v2/groups");
+        config.put(MESSAGE_PATH, "/v1/messages");
+        config.put(V2_MESSAGE_PATH, "/v2/messages");
+        config.put(RESOURCE_PATH, "/v1/resource");
+        config.put(CROSS_USER_PATH, "/v1/cross/users");
+        config.put(CROSS_GROUP_PATH, "/v1/cross/groups");
+        config.put(SENSITIVE_WORD_PATH, "/v1/sensitiveword");
+        config.put(CHAT_ROOM_PATH, "/v1/chatroom");
+        config.put(V2_CHATROOM_PATH, "/v2/chatrooms");
+        config.put(V2_STATISTIC_PATH, "/v2/statistic");
+        config.put(MAX_RETRY_TIMES, 3);
+        config.put(CONNECTION_POOL_MAX_TOTAL, ConnectionPool.DEFAULT_MAX_TOTAL);
+        config.put(CONNECTION_POOL_MAX_PER_ROUTE, ConnectionPool.DEFAULT_MAX_PER_ROUTE);
+        config.put(CONNECTION_POOL_KEEP_ALIVE, ConnectionPool.DEFAULT_KEEP_ALIVE_MILLIS);
+        config.put(RATE_LIMIT_THROTTLE, false);
+        config.put(RATE_LIMIT_MAX_WAIT, RateLimitThrottler.DEFAULT_MAX_WAIT_MILLIS);
+        config.put(STREAMING_DECODE, false);
+        config.put(METADATA_CACHE, false);
+        config.put(METADATA_CACHE_MAX_SIZE, 10000);
+        config.put(METADATA_CACHE_USER_TTL, 60 * 1000L);
+        config.put(METADATA_CACHE_GROUP_TTL, 60 * 1000L);
+        config.put(METADATA_CACHE_MEMBER_TTL, 30 * 1000L);
+        config.put(UPLOAD_CACHE, false);
+        config.put(UPLOAD_CACHE_FILE, null);
+        config.put(UPLOAD_CACHE_MAX_SIZE, 10000);
+        config.put(UPLOAD_CACHE_TTL, 7 * 24 * 3600 * 1000L);
+        config.put(UPLOAD_CACHE_VERIFY_INTERVAL, 3600 * 1000L);
+        config.put(DOWNLOAD_CACHE, false);
+        config.put(DOWNLOAD_CACHE_MAX_SIZE, 10000);
+        config.put(DOWNLOAD_CACHE_TTL, 10 * 60 * 1000L);
+        config.put(DOWNLOAD_CACHE_EXPIRY_MARGIN, 60 * 1000L);
+        config.put(METRICS_REGISTRY, null);
+        config.put(CALL_LISTENERS, Collections.<CallListener>emptyList());
+        config.put(RETRY_POLICY, null);
+        config.put(ISOLATION_POLICY, null);
+        config.put(HEDGING_POLICY, null);
+        config.put(HOST_POOL_POLICY, null);
+        config.put(HTTP2, false);
+        config.put(HTTP2_MAX_CONCURRENT_STREAMS, 100);
+        config.put(VIRTUAL_THREADS, false);
+        config.put(SEND_VERSION, 1);
+    }
+
+    /**
+     * @return the shared config of the JVM
+     */
     public static JMessageConfig getInstance() {
         return instance;
     }
 
+    /**
+     * Start a snapshot from the default settings, the changes made to the shared config are not seen.
+     */
+    public static Builder newBuilder() {
+        Map<String, Object> values = new HashMap<String, Object>();
+        values.put(ClientConfig.SSL_VERSION, ClientConfig.DEFAULT_SSL_VERSION);
+        values.put(CONNECTION_TIMEOUT, ClientConfig.DEFAULT_CONNECTION_TIMEOUT);
+        values.put(READ_TIMEOUT, ClientConfig.DEFAULT_READ_TIMEOUT);
+        putDefaults(values);
+        return new Builder(values);
+    }
+
+    /**
+     * Start a snapshot from the current settings of this config, which is left unchanged.
+     */
+    public Builder toBuilder() {
+        return new Builder(values);
+    }
+
+    /**
+     * @return true if this config is an immutable snapshot, false for the shared config
+     */
+    public boolean isSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * @return the ClientConfig of jiguang-common the shared config is kept in
+     * @throws UnsupportedOperationException if this config is a snapshot, use the getters instead
+     */
     public ClientConfig getClientConfig() {
+        if (snapshot) {
+            throw new UnsupportedOperationException("A snapshot is not kept in the ClientConfig");
+        }
         return clientConfig;
     }
 
+    public String getApiHostName() {
+        return snapshot ? apiHostName : (String) values.get(API_HOST_NAME);
+    }
+
+    public String getReportHostName() {
+        return snapshot ? reportHostName : (String) values.get(API_REPORT_HOST_NAME);
+    }
+
+    public int getMaxRetryTimes() {
+        return snapshot ? maxRetryTimes : clientConfig.getMaxRetryTimes();
+    }
+
+    public int getConnectionTimeout() {
+        return snapshot ? connectionTimeout : clientConfig.getConnectionTimeout();
+    }
+
+    public int getReadTimeout() {
+        return snapshot ? readTimeout : clientConfig.getReadTimeout();
+    }
+
+    public String getSSLVersion() {
+        return snapshot ? sslVersion : clientConfig.getSSLVersion();
+    }
+
     public JMessageConfig setApiHostName(String hostName) {
-        clientConfig.put(API_HOST_NAME, hostName);
+        set(API_HOST_NAME, hostName);
         return this;
     }
 
     public JMessageConfig setReportHostName(String hostName) {
-        clientConfig.put(API_REPORT_HOST_NAME, hostName);
+        set(API_REPORT_HOST_NAME, hostName);
         return this;
     }
 
     public JMessageConfig setMaxRetryTimes(int maxRetryTimes) {
-        clientConfig.setMaxRetryTimes(maxRetryTimes);
+        set(MAX_RETRY_TIMES, maxRetryTimes);
+        return this;
+    }
+
+    public JMessageConfig setConnectionTimeout(int connectionTimeout) {
+        set(CONNECTION_TIMEOUT, connectionTimeout);
+        return this;
+    }
+
+    public JMessageConfig setReadTimeout(int readTimeout) {
+        set(READ_TIMEOUT, readTimeout);
+        return this;
+    }
+
+    /**
+     * Max connections in use at the same time over all hosts, shared by the sub clients of one JMessageClient.
+     */
+    public JMessageConfig setConnectionPoolMaxTotal(int maxTotal) {
+        set(CONNECTION_POOL_MAX_TOTAL, maxTotal);
+        return this;
+    }
+
+    /**
+     * Max connections in use at the same time to one host, also the max idle connections kept for one host.
+     */
+    public JMessageConfig setConnectionPoolMaxPerRoute(int maxPerRoute) {
+        set(CONNECTION_POOL_MAX_PER_ROUTE, maxPerRoute);
+        return this;
+    }
+
+    /**
+     * How long an idle connection is kept alive in the pool, in milliseconds. 0 disables keep alive.
+     */
+    public JMessageConfig setConnectionPoolKeepAlive(long keepAliveMillis) {
+        set(CONNECTION_POOL_KEEP_ALIVE, keepAliveMillis);
+        return this;
+    }
+
+    /**
+     * Pace the calls to stay under the quota reported by the X-Rate-Limit response headers, default is false.
+     */
+    public JMessageConfig setRateLimitThrottle(boolean throttle) {
+        set(RATE_LIMIT_THROTTLE, throttle);
+        return this;
+    }
+
+    /**
+     * Longest time one call waits for the rate limit budget, in milliseconds. Calls which would wait longer
+     * fail with APIConnectionException.
+     */
+    public JMessageConfig setRateLimitMaxWait(long maxWaitMillis) {
+        set(RATE_LIMIT_MAX_WAIT, maxWaitMillis);
+        return this;
+    }
+
+    /**
+     * Decode list results straight from the response stream instead of buffering the whole body first,
+     * default is false. getOriginalContent() of the streamed results is null.
+     */
+    public JMessageConfig setStreamingDecode(boolean streaming) {
+        set(STREAMING_DECODE, streaming);
+        return this;
+    }
+
+    /**
+     * Cache user info, group info, group members and the groups of a user in JMessageClient, default is false.
+     * Writes through the same client invalidate the cached entries, writes from elsewhere are seen once the
+     * entries expire.
+     */
+    public JMessageConfig setMetadataCache(boolean cache) {
+        set(METADATA_CACHE, cache);
+        return this;
+    }
+
+    /**
+     * Max entries of each metadata cache, the least recently used entries are evicted.
+     */
+    public JMessageConfig setMetadataCacheMaxSize(int maxSize) {
+        set(METADATA_CACHE_MAX_SIZE, maxSize);
+        return this;
+    }
+
+    /**
+     * Time to live of cached user info, in milliseconds.
+     */
+    public JMessageConfig setMetadataCacheUserTtl(long ttlMillis) {
+        set(METADATA_CACHE_USER_TTL, ttlMillis);
+        return this;
+    }
+
+    /**
+     * Time to live of cached group info, in milliseconds.
+     */
+    public JMessageConfig setMetadataCacheGroupTtl(long ttlMillis) {
+        set(METADATA_CACHE_GROUP_TTL, ttlMillis);
+        return this;
+    }
+
+    /**
+     * Time to live of cached group members and groups of a user, in milliseconds.
+     */
+    public JMessageConfig setMetadataCacheMemberTtl(long ttlMillis) {
+        set(METADATA_CACHE_MEMBER_TTL, ttlMillis);
+        return this;
+    }
+
+    /**
+     * Skip the upload of a file whose content was uploaded before by JMessageClient, default is false.
+     * Uploads from an InputStream are never cached.
+     */
+    public JMessageConfig setUploadCache(boolean cache) {
+        set(UPLOAD_CACHE, cache);
+        return this;
+    }
+
+    /**
+     * File keeping the media ids of uploaded contents between runs, default is null, the ids are then kept in
+     * memory only.
+     */
+    public JMessageConfig setUploadCacheFile(String path) {
+        set(UPLOAD_CACHE_FILE, path);
+        return this;
+    }
+
+    /**
+     * Max entries of the upload cache, the least recently used entries are evicted.
+     */
+    public JMessageConfig setUploadCacheMaxSize(int maxSize) {
+        set(UPLOAD_CACHE_MAX_SIZE, maxSize);
+        return this;
+    }
+
+    /**
+     * Time to live of a cached upload, in milliseconds, default is 7 days.
+     */
+    public JMessageConfig setUploadCacheTtl(long ttlMillis) {
+        set(UPLOAD_CACHE_TTL, ttlMillis);
+        return this;
+    }
+
+    /**
+     * A cached media id not checked for this long is checked with the download API before it is reused, in
+     * milliseconds, default is 1 hour. 0 checks it on every reuse, a negative value never checks it.
+     */
+    public JMessageConfig setUploadCacheVerifyInterval(long intervalMillis) {
+        set(UPLOAD_CACHE_VERIFY_INTERVAL, intervalMillis);
+        return this;
+    }
+
+    /**
+     * Cache the download url of a media id, default is false. Concurrent lookups of one media id share one
+     * request.
+     */
+    public JMessageConfig setDownloadCache(boolean cache) {
+        set(DOWNLOAD_CACHE, cache);
+        return this;
+    }
+
+    /**
+     * Max entries of the download url cache, the least recently used entries are evicted.
+     */
+    public JMessageConfig setDownloadCacheMaxSize(int maxSize) {
+        set(DOWNLOAD_CACHE_MAX_SIZE, maxSize);
+        return this;
+    }
+
+    /**
+     * Time to live of a cached download url, in milliseconds, default is 10 minutes. A signed url is dropped
+     * earlier if it expires before.
+     */
+    public JMessageConfig setDownloadCacheTtl(long ttlMillis) {
+        set(DOWNLOAD_CACHE_TTL, ttlMillis);
+        return this;
+    }
+
+    /**
+     * How long before its expiry a signed download url is dropped from the cache, in milliseconds, default is
+     * 1 minute.
+     */
+    public JMessageConfig setDownloadCacheExpiryMargin(long marginMillis) {
+        set(DOWNLOAD_CACHE_EXPIRY_MARGIN, marginMillis);
+        return this;
+    }
+
+    /**
+     * Record the count, latency, bytes, status, error code and retries of every API call, and the rate limit
+     * headers, into the registry. Default is null, nothing is recorded. Use a
+     * {@link cn.jmessage.api.common.metrics.DefaultMetricsRegistry} to keep them in memory, or an adapter to
+     * a metrics library.
+     */
+    public JMessageConfig setMetricsRegistry(MetricsRegistry registry) {
+        set(METRICS_REGISTRY, registry);
+        return this;
+    }
+
+    /**
+     * Add a listener receiving the start, the phase timings and the end of every API call of the clients
+     * created afterwards. Listeners are called in the order they are added.
+     */
+    @SuppressWarnings("unchecked")
+    public JMessageConfig addCallListener(CallListener listener) {
+        List<CallListener> listeners = new ArrayList<CallListener>(
+                (List<CallListener>) values.get(CALL_LISTENERS));
+        listeners.add(listener);
+        set(CALL_LISTENERS, Collections.unmodifiableList(listeners));
+        return this;
+    }
+
+    /**
+     * Remove a listener added by {@link #addCallListener(CallListener)}, clients created before keep it.
+     */
+    @SuppressWarnings("unchecked")
+    public JMessageConfig removeCallListener(CallListener listener) {
+        List<CallListener> listeners = new ArrayList<CallListener>(
+                (List<CallListener>) values.get(CALL_LISTENERS));
+        listeners.remove(listener);
+        set(CALL_LISTENERS, Collections.unmodifiableList(listeners));
+        return this;
+    }
+
+    /**
+     * Retry policy of the clients created afterwards. Default is null, each client retries up to max retry
+     * times with the defaults of {@link RetryPolicy.Builder}. A policy holds the retry budget, clients sharing
+     * it share the budget.
+     */
+    public JMessageConfig setRetryPolicy(RetryPolicy policy) {
+        set(RETRY_POLICY, policy);
+        return this;
+    }
+
+    /**
+     * Give each API family of the clients created afterwards its own bulkhead and circuit breaker, so that
+     * a failing or slow family is rejected at once instead of starving the others. Default is null, disabled.
+     */
+    public JMessageConfig setIsolationPolicy(IsolationPolicy policy) {
+        set(ISOLATION_POLICY, policy);
+        return this;
+    }
+
+    /**
+     * Send the GET calls of the clients created afterwards a second time when they are slower than the delay
+     * of the policy, the first response wins. Default is null, disabled.
+     */
+    public JMessageConfig setHedgingPolicy(HedgingPolicy policy) {
+        set(HEDGING_POLICY, policy);
+        return this;
+    }
+
+    /**
+     * Spread the calls of the clients created afterwards over the API and report hosts of the policy, instead of
+     * the single API and report host name. Default is null, disabled.
+     */
+    public JMessageConfig setHostPoolPolicy(HostPoolPolicy policy) {
+        set(HOST_POOL_POLICY, policy);
+        return this;
+    }
+
+    /**
+     * Send the requests of the clients created afterwards as streams of HTTP/2 connections, default is false.
+     * Needs Java 11 or later and no proxy, the clients use pooled HTTP/1.1 connections otherwise.
+     */
+    public JMessageConfig setHttp2(boolean enabled) {
+        set(HTTP2, enabled);
+        return this;
+    }
+
+    /**
+     * Max requests in flight over HTTP/2, default is 100.
+     */
+    public JMessageConfig setHttp2MaxConcurrentStreams(int maxConcurrentStreams) {
+        set(HTTP2_MAX_CONCURRENT_STREAMS, maxConcurrentStreams);
+        return this;
+    }
+
+    /**
+     * Run the workers of the bulk operations of the clients created afterwards, such as sendToAll, uploadAll
+     * or the user registrar, on virtual threads, default is false. Needs Java 21 or later, platform threads
+     * are used otherwise.
+     */
+    public JMessageConfig setVirtualThreads(boolean enabled) {
+        set(VIRTUAL_THREADS, enabled);
         return this;
     }
 
     public void put(String key, Object value) {
-        clientConfig.put(key, value);
+        set(key, value);
     }
 
     public Object get(String key) {
-        return clientConfig.get(key);
+        return values.get(key);
+    }
+
+    private void set(String key, Object value) {
+        if (snapshot) {
+            throw new UnsupportedOperationException("A snapshot is immutable, change a copy by toBuilder()");
+        }
+        clientConfig.put(key, value);
+    }
+
+    /**
+     * Settings of a snapshot, the setters are the ones of {@link JMessageConfig}. Each {@link #build()} takes
+     * a copy, the builder can go on to build other snapshots.
+     */
+    public static class Builder {
+
+        private final Map<String, Object> values;
+
+        private Builder(Map<String, Object> values) {
+            this.values = new HashMap<String, Object>(values);
+        }
+
+        public Builder setApiHostName(String hostName) {
+            values.put(API_HOST_NAME, hostName);
+            return this;
+        }
+
+        public Builder setReportHostName(String hostName) {
+            values.put(API_REPORT_HOST_NAME, hostName);
+            return this;
+        }
+
+        public Builder setMaxRetryTimes(int maxRetryTimes) {
+            values.put(MAX_RETRY_TIMES, maxRetryTimes);
+            return this;
+        }
+
+        public Builder setConnectionTimeout(int connectionTimeout) {
+            values.put(CONNECTION_TIMEOUT, connectionTimeout);
+            return this;
+        }
+
+        public Builder setReadTimeout(int readTimeout) {
+            values.put(READ_TIMEOUT, readTimeout);
+            return this;
+        }
+
+        public Builder setConnectionPoolMaxTotal(int maxTotal) {
+            values.put(CONNECTION_POOL_MAX_TOTAL, maxTotal);
+            return this;
+        }
+
+        public Builder setConnectionPoolMaxPerRoute(int maxPerRoute) {
+            values.put(CONNECTION_POOL_MAX_PER_ROUTE, maxPerRoute);
+            return this;
+        }
+
+        public Builder setConnectionPoolKeepAlive(long keepAliveMillis) {
+            values.put(CONNECTION_POOL_KEEP_ALIVE, keepAliveMillis);
+            return this;
+        }
+
+        public Builder setRateLimitThrottle(boolean throttle) {
+            values.put(RATE_LIMIT_THROTTLE, throttle);
+            return this;
+        }
+
+        public Builder setRateLimitMaxWait(long maxWaitMillis) {
+            values.put(RATE_LIMIT_MAX_WAIT, maxWaitMillis);
+            return this;
+        }
+
+        public Builder setStreamingDecode(boolean streaming) {
+            values.put(STREAMING_DECODE, streaming);
+            return this;
+        }
+
+        public Builder setMetadataCache(boolean cache) {
+            values.put(METADATA_CACHE, cache);
+            return this;
+        }
+
+        public Builder setMetadataCacheMaxSize(int maxSize) {
+            values.put(METADATA_CACHE_MAX_SIZE, maxSize);
+            return this;
+        }
+
+        public Builder setMetadataCacheUserTtl(long ttlMillis) {
+            values.put(METADATA_CACHE_USER_TTL, ttlMillis);
+            return this;
+        }
+
+        public Builder setMetadataCacheGroupTtl(long ttlMillis) {
+            values.put(METADATA_CACHE_GROUP_TTL, ttlMillis);
+            return this;
+        }
+
+        public Builder setMetadataCacheMemberTtl(long ttlMillis) {
+            values.put(METADATA_CACHE_MEMBER_TTL, ttlMillis);
+            return this;
+        }
+
+        public Builder setUploadCache(boolean cache) {
+            values.put(UPLOAD_CACHE, cache);
+            return this;
+        }
+
+        public Builder setUploadCacheFile(String path) {
+            values.put(UPLOAD_CACHE_FILE, path);
+            return this;
+        }
+
+        public Builder setUploadCacheMaxSize(int maxSize) {
+            values.put(UPLOAD_CACHE_MAX_SIZE, maxSize);
+            return this;
+        }
+
+        public Builder setUploadCacheTtl(long ttlMillis) {
+            values.put(UPLOAD_CACHE_TTL, ttlMillis);
+            return this;
+        }
+
+        public Builder setUploadCacheVerifyInterval(long intervalMillis) {
+            values.put(UPLOAD_CACHE_VERIFY_INTERVAL, intervalMillis);
+            return this;
+        }
+
+        public Builder setDownloadCache(boolean cache) {
+            values.put(DOWNLOAD_CACHE, cache);
+            return this;
+        }
+
+        public Builder setDownloadCacheMaxSize(int maxSize) {
+            values.put(DOWNLOAD_CACHE_MAX_SIZE, maxSize);
+            return this;
+        }
+
+        public Builder setDownloadCacheTtl(long ttlMillis) {
+            values.put(DOWNLOAD_CACHE_TTL, ttlMillis);
+            return this;
+        }
+
+        public Builder setDownloadCacheExpiryMargin(long marginMillis) {
+            values.put(DOWNLOAD_CACHE_EXPIRY_MARGIN, marginMillis);
+            return this;
+        }
+
+        public Builder setMetricsRegistry(MetricsRegistry registry) {
+            values.put(METRICS_REGISTRY, registry);
+            return this;
+        }
+
+        public Builder setRetryPolicy(RetryPolicy policy) {
+            values.put(RETRY_POLICY, policy);
+            return this;
+        }
+
+        public Builder setIsolationPolicy(IsolationPolicy policy) {
+            values.put(ISOLATION_POLICY, policy);
+            return this;
+        }
+
+        public Builder setHedgingPolicy(HedgingPolicy policy) {
+            values.put(HEDGING_POLICY, policy);
+            return this;
+        }
+
+        public Builder setHostPoolPolicy(HostPoolPolicy policy) {
+            values.put(HOST_POOL_POLICY, policy);
+            return this;
+        }
+
+        public Builder setHttp2(boolean enabled) {
+            values.put(HTTP2, enabled);
+            return this;
+        }
+
+        public Builder setHttp2MaxConcurrentStreams(int maxConcurrentStreams) {
+            values.put(HTTP2_MAX_CONCURRENT_STREAMS, maxConcurrentStreams);
+            return this;
+        }
+
+        public Builder setVirtualThreads(boolean enabled) {
+            values.put(VIRTUAL_THREADS, enabled);
+            return this;
+        }
+
+        @SuppressWarnings("unchecked")
+        public Builder addCallListener(CallListener listener) {
+            List<CallListener> listeners = new ArrayList<CallListener>(
+                    (List<CallListener>) values.get(CALL_LISTENERS));
+            listeners.add(listener);
+            values.put(CALL_LISTENERS, Collections.unmodifiableList(listeners));
+            return this;
+        }
+
+        @SuppressWarnings("unchecked")
+        public Builder removeCallListener(CallListener listener) {
+            List<CallListener> listeners = new ArrayList<CallListener>(
+                    (List<CallListener>) values.get(CALL_LISTENERS));
+            listeners.remove(listener);
+            values.put(CALL_LISTENERS, Collections.unmodifiableList(listeners));
+            return this;
+        }
+
+        public Builder put(String key, Object value) {
+            values.put(key, value);
+            return this;
+        }
+
+        public JMessageConfig build() {
+            Preconditions.checkArgument(null != values.get(API_HOST_NAME), "apiHostName should not be null");
+            Preconditions.checkArgument(null != values.get(API_REPORT_HOST_NAME), "reportHostName should not be null");
+            return new JMessageConfig(values);
+        }
     }
 
 }
@@ -0,0 +1,157 @@
+package cn.jmessage.api.common;
+
+import cn.jiguang.common.connection.IHttpClient;
+import cn.jiguang.common.resp.BaseResult;
+import cn.jiguang.common.resp.ResponseWrapper;
+import cn.jmessage.api.common.connection.ResponseBodyHandler;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes a list result with a {@link JsonReader} straight from the response stream, the body is never held
+ * as a String. The list may be the whole body or a field of the body object, like "messages" of
+ * {"total": 1, "cursor": "...", "messages": [...]}.
+ * <p>
+ * With an {@link ElementVisitor} the elements are handed over one by one and the list field of the
+ * result stays null.
+ * </p>
+ *
+ * @param <R> result type
+ * @param <E> element type
+ */
+public class ListResultDecoder<R extends BaseResult, E> implements ResponseBodyHandler<R> {
+
+    // same settings as BaseResult uses
+    private static final Gson GSON = new GsonBuilder().excludeFieldsWithoutExposeAnnotation().create();
+
+    private final Class<R> resultType;
+    private final String listName;
+    private final Field listField;
+    private final TypeAdapter<E> elementAdapter;
+    private final Class<E> elementType;
+
+    /**
+     * @param resultType  result type
+     * @param listName    name of the list field, both in JSON and in the result class
+     * @param elementType element type
+     */
+    public ListResultDecoder(Class<R> resultType, String listName, Class<E> elementType) {
+        this.resultType = resultType;
+        this.listName = listName;
+        this.elementType = elementType;
+        this.elementAdapter = GSON.getAdapter(elementType);
+        try {
+            this.listField = resultType.getDeclaredField(listName);
+            this.listField.setAccessible(true);
+        } catch (NoSuchFieldException e) {
+            throw new IllegalArgumentException(resultType.getName() + " has no field " + listName, e);
+        }
+    }
+
+    @Override
+    public R handle(ResponseWrapper wrapper, InputStream body) throws IOException {
+        return decode(wrapper, body, null);
+    }
+
+    /**
+     * @param visitor gets the elements, the list field of the result stays null
+     * @return handler which decodes with the visitor
+     */
+    public ResponseBodyHandler<R> visiting(final ElementVisitor<? super E> visitor) {
+        return new ResponseBodyHandler<R>() {
+            @Override
+            public R handle(ResponseWrapper wrapper, InputStream body) throws IOException {
+                return decode(wrapper, body, visitor);
+            }
+        };
+    }
+
+    /**
+     * @param wrapper response code and rate limit of the response
+     * @param body    response body
+     * @param visitor gets the elements if not null, the list field of the result stays null then
+     * @return the result
+     * @throws IOException read exception
+     */
+    public R decode(ResponseWrapper wrapper, InputStream body, ElementVisitor<? super E> visitor)
+            throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(body, IHttpClient.CHARSET));
+        R result;
+        JsonToken token = reader.peek();
+        if (token == JsonToken.BEGIN_ARRAY) {
+            List<E> list = readList(reader, visitor);
+            result = newResult();
+            if (null == visitor) {
+                setList(result, list);
+            }
+        } else if (null == visitor) {
+            result = GSON.getAdapter(resultType).read(reader);
+        } else {
+            // keep the other fields, they are small, and decode them at the end
+            TypeAdapter<JsonElement> jsonAdapter = GSON.getAdapter(JsonElement.class);
+            JsonObject others = new JsonObject();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (listName.equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    readList(reader, visitor);
+                } else {
+                    others.add(name, jsonAdapter.read(reader));
+                }
+            }
+            reader.endObject();
+            result = GSON.fromJson(others, resultType);
+        }
+        result.setResponseWrapper(wrapper);
+        return result;
+    }
+
+    private List<E> readList(JsonReader reader, ElementVisitor<? super E> visitor) throws IOException {
+        List<E> list = null == visitor ? new ArrayList<E>() : null;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            E element = elementAdapter.read(reader);
+            if (null == visitor) {
+                list.add(element);
+            } else {
+                visitor.visit(element);
+            }
+        }
+        reader.endArray();
+        return list;
+    }
+
+    private R newResult() {
+        try {
+            return resultType.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Can not create " + resultType.getName(), e);
+        }
+    }
+
+    private void setList(R result, List<E> list) {
+        Object value = list;
+        if (listField.getType().isArray()) {
+            value = list.toArray((Object[]) Array.newInstance(elementType, list.size()));
+        }
+        try {
+            listField.set(result, value);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException("Can not set " + listName + " of " + resultType.getName(), e);
+        }
+    }
+
+}
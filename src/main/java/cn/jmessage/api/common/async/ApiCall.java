@@ -0,0 +1,15 @@
+package cn.jmessage.api.common.async;
+
+import cn.jiguang.common.resp.APIConnectionException;
+import cn.jiguang.common.resp.APIRequestException;
+
+/**
+ * One blocking API call, run later by an {@link AsyncDispatcher}.
+ *
+ * @param <T> result type of the call
+ */
+public interface ApiCall<T> {
+
+    T call() throws APIConnectionException, APIRequestException;
+
+}
@@ -0,0 +1,18 @@
+package cn.jmessage.api.common.async;
+
+/**
+ * Callback of an {@link ApiFuture}, invoked on the thread which completed the call.
+ *
+ * @param <T> result type of the call
+ */
+public interface ApiCallback<T> {
+
+    void onSuccess(T result);
+
+    /**
+     * @param e {@link cn.jiguang.common.resp.APIConnectionException}, {@link cn.jiguang.common.resp.APIRequestException},
+     *          {@link java.util.concurrent.CancellationException} or an unchecked exception thrown by the call.
+     */
+    void onFailure(Throwable e);
+
+}
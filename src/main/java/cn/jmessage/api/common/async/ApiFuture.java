@@ -0,0 +1,138 @@
+package cn.jmessage.api.common.async;
+
+import cn.jiguang.common.resp.APIConnectionException;
+import cn.jiguang.common.resp.APIRequestException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pending result of an {@link ApiCall}. Besides the blocking {@link #get()}, callbacks can be added which
+ * run once the call completes, and {@link #getResult()} gives back the original API exceptions.
+ *
+ * @param <T> result type of the call
+ */
+public class ApiFuture<T> extends FutureTask<T> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ApiFuture.class);
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private List<ApiCallback<? super T>> callbacks = new ArrayList<ApiCallback<? super T>>(2);
+
+    public ApiFuture(final ApiCall<T> call) {
+        super(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                return call.call();
+            }
+        });
+    }
+
+    /**
+     * Add a callback, it runs at once on the caller thread if the call is already completed.
+     *
+     * @param callback callback of the result
+     * @return this future
+     */
+    public ApiFuture<T> addCallback(ApiCallback<? super T> callback) {
+        lock.lock();
+        try {
+            if (null != callbacks) {
+                callbacks.add(callback);
+                return this;
+            }
+        } finally {
+            lock.unlock();
+        }
+        notify(callback);
+        return this;
+    }
+
+    /**
+     * Wait for the result like the blocking API does.
+     *
+     * @return result of the call
+     * @throws APIConnectionException connect exception, or interrupted while waiting
+     * @throws APIRequestException    request exception
+     */
+    public T getResult() throws APIConnectionException, APIRequestException {
+        try {
+            return get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new APIConnectionException("Interrupted while waiting for the response", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof APIConnectionException) {
+                throw (APIConnectionException) cause;
+            }
+            if (cause instanceof APIRequestException) {
+                throw (APIRequestException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Complete this future with an exception, used when the call can not be run at all.
+     */
+    protected void fail(Throwable e) {
+        setException(e);
+    }
+
+    @Override
+    protected void done() {
+        List<ApiCallback<? super T>> toNotify;
+        lock.lock();
+        try {
+            toNotify = callbacks;
+            callbacks = null;
+        } finally {
+            lock.unlock();
+        }
+        for (ApiCallback<? super T> callback : toNotify) {
+            notify(callback);
+        }
+    }
+
+    /**
+     * Call the callback with the outcome, a failing callback is logged and does not keep the others from running.
+     */
+    private void notify(ApiCallback<? super T> callback) {
+        try {
+            T result;
+            try {
+                result = get();
+            } catch (InterruptedException e) {
+                // done, get() does not block
+                Thread.currentThread().interrupt();
+                callback.onFailure(e);
+                return;
+            } catch (ExecutionException e) {
+                callback.onFailure(e.getCause());
+                return;
+            } catch (CancellationException e) {
+                callback.onFailure(e);
+                return;
+            }
+            callback.onSuccess(result);
+        } catch (RuntimeException e) {
+            LOG.error("Callback " + callback + " failed", e);
+        }
+    }
+
+}
@@ -0,0 +1,101 @@
+package cn.jmessage.api.common.async;
+
+import cn.jiguang.common.utils.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs {@link ApiCall}s on the given executor with at most {@code maxConcurrentRequests} in flight.
+ * <p>
+ * Calls over the limit wait in a queue without holding any thread, they are handed to the executor as
+ * running calls complete. Submitting never blocks.
+ * </p>
+ */
+public class AsyncDispatcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncDispatcher.class);
+
+    private final Executor executor;
+    private final int maxConcurrentRequests;
+    private final Queue<ApiFuture<?>> pending = new ConcurrentLinkedQueue<ApiFuture<?>>();
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+
+    /**
+     * @param executor              executor which runs the blocking calls.
+     * @param maxConcurrentRequests max calls running at the same time.
+     */
+    public AsyncDispatcher(Executor executor, int maxConcurrentRequests) {
+        Preconditions.checkArgument(null != executor, "executor should not be null");
+        Preconditions.checkArgument(maxConcurrentRequests > 0, "maxConcurrentRequests should more than 0");
+        this.executor = executor;
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    public <T> ApiFuture<T> submit(ApiCall<T> call) {
+        Preconditions.checkArgument(null != call, "call should not be null");
+        ApiFuture<T> future = new ApiFuture<T>(call);
+        queued.incrementAndGet();
+        pending.offer(future);
+        promote();
+        return future;
+    }
+
+    public int getRunningCount() {
+        return running.get();
+    }
+
+    public int getQueuedCount() {
+        return queued.get();
+    }
+
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    private void promote() {
+        while (true) {
+            int current = running.get();
+            if (current >= maxConcurrentRequests || pending.isEmpty()) {
+                return;
+            }
+            if (!running.compareAndSet(current, current + 1)) {
+                continue;
+            }
+            final ApiFuture<?> future = pending.poll();
+            if (null == future) {
+                running.decrementAndGet();
+                continue;
+            }
+            queued.decrementAndGet();
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            future.run();
+                        } finally {
+                            running.decrementAndGet();
+                            promote();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                LOG.warn("Executor rejected the call", e);
+                running.decrementAndGet();
+                future.fail(e);
+            }
+        }
+    }
+
+}
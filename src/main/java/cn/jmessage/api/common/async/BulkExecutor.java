@@ -0,0 +1,233 @@
+package cn.jmessage.api.common.async;
+
+import cn.jiguang.common.resp.APIConnectionException;
+import cn.jiguang.common.resp.APIRequestException;
+import cn.jiguang.common.utils.Preconditions;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs any number of blocking {@link ApiCall}s, such as one sendMessage or getUserInfo per user, with at most
+ * {@code maxConcurrency} of them sending a request at the same time.
+ * <p>
+ * Every call gets its own virtual thread, the ones over the limit wait on a semaphore which parks the
+ * virtual thread without holding a platform thread. On a JDK without virtual threads, or when they are not
+ * wanted, the calls run on {@code maxConcurrency} platform threads instead.
+ * </p>
+ * <p>
+ * {@link #execute(Runnable)} and {@link #awaitIdle()} serve the loops over any number of items, such as the
+ * targets of {@code MessageClient.sendToAll}: the caller waits for a free slot before each task is started,
+ * so no more than {@code maxConcurrency} tasks are ever queued.
+ * </p>
+ * <pre>
+ * BulkExecutor bulk = new BulkExecutor(200);
+ * try {
+ *     List&lt;ApiFuture&lt;UserInfoResult&gt;&gt; futures = new ArrayList&lt;...&gt;();
+ *     for (final String username : usernames) {
+ *         futures.add(bulk.submit(new ApiCall&lt;UserInfoResult&gt;() {
+ *             public UserInfoResult call() throws APIConnectionException, APIRequestException {
+ *                 return client.getUserInfo(username);
+ *             }
+ *         }));
+ *     }
+ *     ...
+ * } finally {
+ *     bulk.close();
+ * }
+ * </pre>
+ */
+public class BulkExecutor implements Closeable {
+
+    private final ExecutorService executor;
+    private final boolean virtual;
+    private final int maxConcurrency;
+    private final Semaphore permits;
+
+    /**
+     * @param maxConcurrency max calls running at the same time.
+     */
+    public BulkExecutor(int maxConcurrency) {
+        this("jmessage-bulk", maxConcurrency, true);
+    }
+
+    /**
+     * @param name           prefix of the thread names
+     * @param maxConcurrency max calls running at the same time.
+     * @param virtual        true to run every call on its own virtual thread if they are supported, as enabled by
+     *                       {@link cn.jmessage.api.common.JMessageConfig#setVirtualThreads(boolean)}
+     */
+    public BulkExecutor(String name, int maxConcurrency, boolean virtual) {
+        Preconditions.checkArgument(maxConcurrency > 0, "maxConcurrency should more than 0");
+        this.maxConcurrency = maxConcurrency;
+        this.permits = new Semaphore(maxConcurrency, true);
+        this.virtual = virtual && VirtualThreads.isSupported();
+        if (this.virtual) {
+            this.executor = VirtualThreads.newVirtualThreadPerTaskExecutor(name);
+        } else {
+            this.executor = Executors.newFixedThreadPool(maxConcurrency, VirtualThreads.newThreadFactory(name, false));
+        }
+    }
+
+    /**
+     * Start a call, submitting never blocks.
+     *
+     * @param call the blocking call
+     * @return future of the result
+     */
+    public <T> ApiFuture<T> submit(final ApiCall<T> call) {
+        Preconditions.checkArgument(null != call, "call should not be null");
+        ApiFuture<T> future = new ApiFuture<T>(new ApiCall<T>() {
+            @Override
+            public T call() throws APIConnectionException, APIRequestException {
+                try {
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new APIConnectionException("Interrupted while waiting to run the call", e);
+                }
+                try {
+                    return call.call();
+                } finally {
+                    permits.release();
+                }
+            }
+        });
+        try {
+            executor.execute(future);
+        } catch (RejectedExecutionException e) {
+            future.fail(e);
+        }
+        return future;
+    }
+
+    /**
+     * Start a task once fewer than {@code maxConcurrency} calls are running, the caller waits until then.
+     *
+     * @param task the blocking task, it handles its own failures
+     * @throws InterruptedException if interrupted while waiting for a free slot
+     */
+    public void execute(final Runnable task) throws InterruptedException {
+        Preconditions.checkArgument(null != task, "task should not be null");
+        permits.acquire();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        task.run();
+                    } finally {
+                        permits.release();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Wait until no call is running, such as the tasks started by {@link #execute(Runnable)}.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void awaitIdle() throws InterruptedException {
+        permits.acquire(maxConcurrency);
+        permits.release(maxConcurrency);
+    }
+
+    /**
+     * Start every call.
+     *
+     * @param calls the blocking calls
+     * @return futures of the results, in the order of the calls
+     */
+    public <T> List<ApiFuture<T>> submitAll(Collection<? extends ApiCall<T>> calls) {
+        Preconditions.checkArgument(null != calls, "calls should not be null");
+        List<ApiFuture<T>> futures = new ArrayList<ApiFuture<T>>(calls.size());
+        for (ApiCall<T> call : calls) {
+            futures.add(submit(call));
+        }
+        return futures;
+    }
+
+    /**
+     * Run every call and wait until all of them complete, a failed call does not stop the others.
+     *
+     * @param calls the blocking calls
+     * @return completed futures of the results, in the order of the calls
+     * @throws APIConnectionException if interrupted while waiting, the calls not completed yet are cancelled
+     */
+    public <T> List<ApiFuture<T>> invokeAll(Collection<? extends ApiCall<T>> calls) throws APIConnectionException {
+        List<ApiFuture<T>> futures = submitAll(calls);
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get();
+            } catch (ExecutionException ignore) {
+                // kept in the future
+            } catch (InterruptedException e) {
+                for (int j = i; j < futures.size(); j++) {
+                    futures.get(j).cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                throw new APIConnectionException("Interrupted while waiting for the calls", e);
+            }
+        }
+        return futures;
+    }
+
+    /**
+     * @return true if every call runs on its own virtual thread
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * @return calls sending a request now
+     */
+    public int getRunningCount() {
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    /**
+     * Stop accepting calls and wait for the submitted ones to complete.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    if (executor.awaitTermination(1, TimeUnit.DAYS)) {
+                        return;
+                    }
+                } catch (InterruptedException e) {
+                    if (!interrupted) {
+                        executor.shutdownNow();
+                        interrupted = true;
+                    }
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+}
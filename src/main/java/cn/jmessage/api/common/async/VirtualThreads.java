@@ -0,0 +1,109 @@
+package cn.jmessage.api.common.async;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Virtual threads of the running JDK, found by reflection as the library is built for Java 7.
+ * <p>
+ * The blocking calls of the SDK do not pin the carrier thread: sockets are only read and written outside
+ * of monitors, every lock on the request path is a {@link java.util.concurrent.locks.ReentrantLock}, and no
+ * state is kept in thread locals. On a JDK without virtual threads, or with them still in preview and not
+ * enabled, platform daemon threads are used instead.
+ * </p>
+ */
+public final class VirtualThreads {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualThreads.class);
+
+    private static final Method OF_VIRTUAL;
+    private static final Method BUILDER_NAME;
+    private static final Method BUILDER_FACTORY;
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+    static {
+        Method ofVirtual = null;
+        Method builderName = null;
+        Method builderFactory = null;
+        Method newThreadPerTaskExecutor = null;
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            builderName = builderClass.getMethod("name", String.class, long.class);
+            builderFactory = builderClass.getMethod("factory");
+            newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            // throws while virtual threads are a preview feature which is not enabled
+            ofVirtual.invoke(null);
+        } catch (Exception e) {
+            ofVirtual = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = builderName;
+        BUILDER_FACTORY = builderFactory;
+        NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+    }
+
+    private VirtualThreads() {
+    }
+
+    public static boolean isSupported() {
+        return null != OF_VIRTUAL;
+    }
+
+    /**
+     * Get a factory of threads named {@code name-1}, {@code name-2}...
+     *
+     * @param name    prefix of the thread names
+     * @param virtual true for virtual threads, platform daemon threads are created if they are not supported
+     * @return ThreadFactory
+     */
+    public static ThreadFactory newThreadFactory(final String name, boolean virtual) {
+        if (virtual) {
+            if (isSupported()) {
+                try {
+                    Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), name + "-", 1L);
+                    return (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+                } catch (ReflectiveOperationException e) {
+                    LOG.warn("Failed to create virtual threads, use platform threads", e);
+                }
+            } else {
+                LOG.info("Virtual threads are not supported by this JDK, use platform threads for " + name);
+            }
+        }
+        return new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
+    /**
+     * Get an executor which starts a new virtual thread for each task.
+     *
+     * @param name prefix of the thread names
+     * @return ExecutorService
+     * @throws UnsupportedOperationException if virtual threads are not supported
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor(String name) {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException("Virtual threads are not supported by this JDK");
+        }
+        try {
+            return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, newThreadFactory(name, true));
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Failed to create virtual threads", e);
+        }
+    }
+
+}
@@ -0,0 +1,4 @@
+/**
+ * Asynchronous execution of the blocking API calls, with a concurrency limit.
+ */
+package cn.jmessage.api.common.async;
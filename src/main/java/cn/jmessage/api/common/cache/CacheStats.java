@@ -0,0 +1,81 @@
+package cn.jmessage.api.common.cache;
+
+/**
+ * Counters of a {@link MetadataCache} since it was created.
+ */
+public class CacheStats {
+
+    private final String name;
+    private final long hitCount;
+    private final long missCount;
+    private final long coalescedCount;
+    private final long loadFailureCount;
+    private final long evictionCount;
+    private final long expirationCount;
+    private final int size;
+
+    CacheStats(String name, long hitCount, long missCount, long coalescedCount, long loadFailureCount,
+               long evictionCount, long expirationCount, int size) {
+        this.name = name;
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.coalescedCount = coalescedCount;
+        this.loadFailureCount = loadFailureCount;
+        this.evictionCount = evictionCount;
+        this.expirationCount = expirationCount;
+        this.size = size;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * Misses, coalesced misses included.
+     */
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Misses which waited for the load of another thread instead of calling the API.
+     */
+    public long getCoalescedCount() {
+        return coalescedCount;
+    }
+
+    public long getLoadFailureCount() {
+        return loadFailureCount;
+    }
+
+    /**
+     * Entries removed because the cache was full.
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public long getExpirationCount() {
+        return expirationCount;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public double getHitRate() {
+        long requests = hitCount + missCount;
+        return requests == 0 ? 0 : (double) hitCount / requests;
+    }
+
+    @Override
+    public String toString() {
+        return name + " hits=" + hitCount + " misses=" + missCount + " coalesced=" + coalescedCount
+                + " loadFailures=" + loadFailureCount + " evictions=" + evictionCount
+                + " expirations=" + expirationCount + " size=" + size;
+    }
+}
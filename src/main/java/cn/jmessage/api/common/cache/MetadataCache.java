@@ -0,0 +1,251 @@
+package cn.jmessage.api.common.cache;
+
+import cn.jiguang.common.resp.APIConnectionException;
+import cn.jiguang.common.resp.APIRequestException;
+import cn.jiguang.common.utils.Preconditions;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Read-through cache of API results. Entries expire after a fixed time to live, when the cache is full the least
+ * recently used entry is evicted. Concurrent misses of one key share a single load, failed loads are not cached.
+ * <p>
+ * A key invalidated while it is loaded is not filled by that load, so a read racing with a write never puts the
+ * old value back.
+ * </p>
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class MetadataCache<K, V> {
+
+    /**
+     * Loads the value of a missing key, usually by calling the API.
+     */
+    public interface Loader<V> {
+
+        V load() throws APIConnectionException, APIRequestException;
+    }
+
+    private final String name;
+    private final long ttlMillis;
+    private final int maxSize;
+
+    private final Lock lock = new ReentrantLock();
+    private final LinkedHashMap<K, CacheEntry<V>> entries;
+    private final ConcurrentMap<K, FutureTask<V>> loading = new ConcurrentHashMap<K, FutureTask<V>>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong loadFailures = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+
+    /**
+     * @param name      name of the cache in the stats
+     * @param ttlMillis time to live of an entry, in milliseconds
+     * @param maxSize   max entries
+     */
+    public MetadataCache(String name, long ttlMillis, final int maxSize) {
+        Preconditions.checkArgument(ttlMillis > 0, "ttl should more than 0");
+        Preconditions.checkArgument(maxSize > 0, "maxSize should more than 0");
+        this.name = name;
+        this.ttlMillis = ttlMillis;
+        this.maxSize = maxSize;
+        // access order, the eldest entry is the least recently used
+        this.entries = new LinkedHashMap<K, CacheEntry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+                if (size() > maxSize) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Get the cached value of the key, or load it. If the key is loaded by another thread already, wait for
+     * that load instead of starting a new one.
+     *
+     * @param key    key
+     * @param loader loads the value if it is not cached
+     * @return the value
+     * @throws APIConnectionException connect exception
+     * @throws APIRequestException    request exception
+     */
+    public V get(K key, final Loader<V> loader) throws APIConnectionException, APIRequestException {
+        V value = getIfPresent(key);
+        if (null != value) {
+            hits.incrementAndGet();
+            return value;
+        }
+        misses.incrementAndGet();
+        FutureTask<V> task = new FutureTask<V>(new Callable<V>() {
+            @Override
+            public V call() throws Exception {
+                return loader.load();
+            }
+        });
+        FutureTask<V> running = loading.putIfAbsent(key, task);
+        if (null != running) {
+            coalesced.incrementAndGet();
+            return await(running);
+        }
+        task.run();
+        try {
+            value = await(task);
+        } catch (APIConnectionException e) {
+            loadFailures.incrementAndGet();
+            loading.remove(key, task);
+            throw e;
+        } catch (APIRequestException e) {
+            loadFailures.incrementAndGet();
+            loading.remove(key, task);
+            throw e;
+        } catch (RuntimeException e) {
+            loadFailures.incrementAndGet();
+            loading.remove(key, task);
+            throw e;
+        }
+        lock.lock();
+        try {
+            // not filled if invalidated during the load
+            if (loading.remove(key, task) && null != value) {
+                long now = System.currentTimeMillis();
+                long expiresAt = expiresAt(value, now);
+                if (expiresAt > now) {
+                    entries.put(key, new CacheEntry<V>(value, expiresAt));
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return value;
+    }
+
+    /**
+     * @return the cached value, null if missing or expired, not counted in the stats
+     */
+    public V getIfPresent(K key) {
+        lock.lock();
+        try {
+            CacheEntry<V> entry = entries.get(key);
+            if (null == entry) {
+                return null;
+            }
+            if (entry.expiresAt <= System.currentTimeMillis()) {
+                entries.remove(key);
+                expirations.incrementAndGet();
+                return null;
+            }
+            return entry.value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Remove the key, a load of the key in progress does not fill the cache.
+     */
+    public void invalidate(K key) {
+        lock.lock();
+        try {
+            entries.remove(key);
+            loading.remove(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            entries.clear();
+            loading.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * When a loaded value expires, the time to live after the load by default. Override it for values which
+     * carry their own expiry, a time not after now leaves the value out of the cache.
+     *
+     * @param value the loaded value
+     * @param now   current time, in milliseconds
+     * @return expiry time, in milliseconds
+     */
+    protected long expiresAt(V value, long now) {
+        return now + ttlMillis;
+    }
+
+    public CacheStats getStats() {
+        return new CacheStats(name, hits.get(), misses.get(), coalesced.get(), loadFailures.get(), evictions.get(),
+                expirations.get(), size());
+    }
+
+    private V await(FutureTask<V> task) throws APIConnectionException, APIRequestException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new APIConnectionException("Interrupted while waiting for " + name, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof APIConnectionException) {
+                throw (APIConnectionException) cause;
+            } else if (cause instanceof APIRequestException) {
+                throw (APIRequestException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private static class CacheEntry<V> {
+        final V value;
+        final long expiresAt;
+
+        CacheEntry(V value, long expiresAt) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+}
@@ -0,0 +1,81 @@
+package cn.jmessage.api.common.cache;
+
+import cn.jmessage.api.common.JMessageConfig;
+import cn.jmessage.api.group.GroupInfoResult;
+import cn.jmessage.api.group.MemberListResult;
+import cn.jmessage.api.user.UserGroupsResult;
+import cn.jmessage.api.user.UserInfoResult;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The caches shared by {@link cn.jmessage.api.user.CachingUserClient} and
+ * {@link cn.jmessage.api.group.CachingGroupClient}, so a write of one client invalidates what the other cached.
+ */
+public class MetadataCaches {
+
+    private final MetadataCache<String, UserInfoResult> users;
+    private final MetadataCache<String, UserGroupsResult> userGroups;
+    private final MetadataCache<Long, GroupInfoResult> groups;
+    private final MetadataCache<Long, MemberListResult> groupMembers;
+
+    /**
+     * Sizes and time to live from the METADATA_CACHE_* keys of the config.
+     */
+    public MetadataCaches(JMessageConfig config) {
+        int maxSize = (Integer) config.get(JMessageConfig.METADATA_CACHE_MAX_SIZE);
+        long userTtl = ((Number) config.get(JMessageConfig.METADATA_CACHE_USER_TTL)).longValue();
+        long groupTtl = ((Number) config.get(JMessageConfig.METADATA_CACHE_GROUP_TTL)).longValue();
+        long memberTtl = ((Number) config.get(JMessageConfig.METADATA_CACHE_MEMBER_TTL)).longValue();
+        this.users = new MetadataCache<String, UserInfoResult>("users", userTtl, maxSize);
+        this.userGroups = new MetadataCache<String, UserGroupsResult>("userGroups", memberTtl, maxSize);
+        this.groups = new MetadataCache<Long, GroupInfoResult>("groups", groupTtl, maxSize);
+        this.groupMembers = new MetadataCache<Long, MemberListResult>("groupMembers", memberTtl, maxSize);
+    }
+
+    /**
+     * Key is the username.
+     */
+    public MetadataCache<String, UserInfoResult> getUsers() {
+        return users;
+    }
+
+    /**
+     * Groups of a user, key is the username.
+     */
+    public MetadataCache<String, UserGroupsResult> getUserGroups() {
+        return userGroups;
+    }
+
+    /**
+     * Key is the group id.
+     */
+    public MetadataCache<Long, GroupInfoResult> getGroups() {
+        return groups;
+    }
+
+    /**
+     * Key is the group id.
+     */
+    public MetadataCache<Long, MemberListResult> getGroupMembers() {
+        return groupMembers;
+    }
+
+    public List<CacheStats> getStats() {
+        List<CacheStats> stats = new ArrayList<CacheStats>(4);
+        stats.add(users.getStats());
+        stats.add(userGroups.getStats());
+        stats.add(groups.getStats());
+        stats.add(groupMembers.getStats());
+        return stats;
+    }
+
+    public void invalidateAll() {
+        users.invalidateAll();
+        userGroups.invalidateAll();
+        groups.invalidateAll();
+        groupMembers.invalidateAll();
+    }
+
+}
@@ -0,0 +1,4 @@
+/**
+ * Read-through caches of user and group metadata.
+ */
+package cn.jmessage.api.common.cache;
@@ -0,0 +1,449 @@
+package cn.jmessage.api.common.connection;
+
+import cn.jiguang.common.ClientConfig;
+import cn.jiguang.common.connection.HttpProxy;
+import cn.jiguang.common.utils.Preconditions;
+import cn.jmessage.api.common.JMessageConfig;
+import cn.jmessage.api.common.trace.CallTrace;
+import cn.jmessage.api.common.trace.Phase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A bounded pool of keep-alive HTTP/1.1 connections, keyed by route (scheme, host, port and proxy).
+ * <p>
+ * At most {@code maxTotal} connections are leased at the same time, and at most {@code maxPerRoute}
+ * for one route. Idle connections are kept for {@code keepAliveMillis} and are evicted lazily when the
+ * route is used again. All TLS connections are created by one {@link SSLContext}, so new connections to
+ * a host already seen resume the cached TLS session instead of doing a full handshake.
+ * </p>
+ * One pool is safe to share between many {@link PooledHttpClient}, the authorization is sent per request.
+ */
+public class ConnectionPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ConnectionPool.class);
+
+    public static final int DEFAULT_MAX_TOTAL = 64;
+    public static final int DEFAULT_MAX_PER_ROUTE = 32;
+    public static final long DEFAULT_KEEP_ALIVE_MILLIS = 60 * 1000;
+
+    private final int maxTotal;
+    private final int maxPerRoute;
+    private final long keepAliveMillis;
+    private final String sslVersion;
+    private volatile SSLSocketFactory sslSocketFactory;
+    private final ReentrantLock sslLock = new ReentrantLock();
+    private final Semaphore totalPermits;
+    private final ConcurrentMap<String, RouteState> routes = new ConcurrentHashMap<String, RouteState>();
+    private final AtomicInteger leased = new AtomicInteger();
+    private volatile boolean closed = false;
+
+    public ConnectionPool() {
+        this(DEFAULT_MAX_TOTAL, DEFAULT_MAX_PER_ROUTE, DEFAULT_KEEP_ALIVE_MILLIS, ClientConfig.DEFAULT_SSL_VERSION);
+    }
+
+    /**
+     * Create a pool from the connection pool settings of the config.
+     *
+     * @param config The client configuration. Can use JMessageConfig.getInstance() as default.
+     */
+    public ConnectionPool(JMessageConfig config) {
+        this(((Number) config.get(JMessageConfig.CONNECTION_POOL_MAX_TOTAL)).intValue(),
+                ((Number) config.get(JMessageConfig.CONNECTION_POOL_MAX_PER_ROUTE)).intValue(),
+                ((Number) config.get(JMessageConfig.CONNECTION_POOL_KEEP_ALIVE)).longValue(),
+                config.getSSLVersion());
+    }
+
+    /**
+     * @param maxTotal        Max connections leased at the same time over all routes.
+     * @param maxPerRoute     Max connections leased at the same time to one route, also the max idle connections
+     *                        kept for one route.
+     * @param keepAliveMillis How long an idle connection is kept before it is evicted.
+     * @param sslVersion      SSLContext protocol, such as "TLS".
+     */
+    public ConnectionPool(int maxTotal, int maxPerRoute, long keepAliveMillis, String sslVersion) {
+        Preconditions.checkArgument(maxTotal > 0, "maxTotal should more than 0");
+        Preconditions.checkArgument(maxPerRoute > 0, "maxPerRoute should more than 0");
+        Preconditions.checkArgument(keepAliveMillis >= 0, "keepAliveMillis should not be negative");
+        this.maxTotal = maxTotal;
+        this.maxPerRoute = maxPerRoute;
+        this.keepAliveMillis = keepAliveMillis;
+        this.totalPermits = new Semaphore(maxTotal, true);
+        this.sslVersion = null == sslVersion ? ClientConfig.DEFAULT_SSL_VERSION : sslVersion;
+    }
+
+    /**
+     * Lease a connection to the host of the url, reuse an idle one if there is any.
+     * Waits at most connectTimeout milliseconds for a free slot when the pool is exhausted.
+     *
+     * @param url            request url, only the scheme, host and port are used.
+     * @param proxy          The proxy, if there is no proxy, should be null.
+     * @param connectTimeout connect timeout in milliseconds, also used for TLS handshake.
+     * @param readTimeout    read timeout in milliseconds.
+     * @return a leased connection, must be given back by {@link #release(HttpConnection, boolean)}
+     * @throws IOException connect failed, or timed out waiting for the pool
+     */
+    public HttpConnection lease(URL url, HttpProxy proxy, int connectTimeout, int readTimeout) throws IOException {
+        return lease(url, proxy, connectTimeout, readTimeout, null);
+    }
+
+    /**
+     * Lease a connection, adding the pool wait and the phases of a new connection to the trace.
+     *
+     * @param trace the call, null if it is not traced
+     * @see #lease(URL, HttpProxy, int, int)
+     */
+    public HttpConnection lease(URL url, HttpProxy proxy, int connectTimeout, int readTimeout, CallTrace trace)
+            throws IOException {
+        if (closed) {
+            throw new IOException("Connection pool is closed");
+        }
+        String route = routeOf(url, proxy);
+        RouteState state = routeState(route);
+        long start = null == trace ? 0 : System.nanoTime();
+        acquirePermits(state, connectTimeout);
+        if (null != trace) {
+            trace.phase(Phase.QUEUE_WAIT, start, System.nanoTime());
+        }
+
+        HttpConnection conn = null;
+        try {
+            conn = pollIdle(state);
+            if (null == conn) {
+                conn = connect(route, url, proxy, connectTimeout, trace);
+                LOG.debug("Opened new connection - " + route);
+            }
+            conn.setReadTimeout(readTimeout);
+            conn.markLeased();
+            leased.incrementAndGet();
+            return conn;
+        } catch (IOException e) {
+            if (null != conn) {
+                conn.close();
+            }
+            releasePermits(state);
+            throw e;
+        } catch (RuntimeException e) {
+            if (null != conn) {
+                conn.close();
+            }
+            releasePermits(state);
+            throw e;
+        }
+    }
+
+    /**
+     * Give back a leased connection.
+     *
+     * @param conn     the connection got from {@link #lease(URL, HttpProxy, int, int)}
+     * @param reusable false if the response was not fully read, or the server asked to close the connection.
+     */
+    public void release(HttpConnection conn, boolean reusable) {
+        RouteState state = routes.get(conn.getRoute());
+        leased.decrementAndGet();
+        boolean kept = false;
+        if (reusable && !closed && conn.isOpen() && keepAliveMillis > 0 && null != state) {
+            conn.markIdle();
+            state.lock.lock();
+            try {
+                if (state.idle.size() < maxPerRoute) {
+                    state.idle.addFirst(conn);
+                    kept = true;
+                }
+            } finally {
+                state.lock.unlock();
+            }
+        }
+        if (!kept) {
+            conn.close();
+        }
+        if (null != state) {
+            releasePermits(state);
+        }
+    }
+
+    /**
+     * Close idle connections which exceeded the keep alive time.
+     */
+    public void evictIdleConnections() {
+        long now = System.currentTimeMillis();
+        for (RouteState state : routes.values()) {
+            state.lock.lock();
+            try {
+                evictExpired(state, now);
+            } finally {
+                state.lock.unlock();
+            }
+        }
+    }
+
+    public int getIdleCount() {
+        int count = 0;
+        for (RouteState state : routes.values()) {
+            state.lock.lock();
+            try {
+                count += state.idle.size();
+            } finally {
+                state.lock.unlock();
+            }
+        }
+        return count;
+    }
+
+    public int getLeasedCount() {
+        return leased.get();
+    }
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    public int getMaxPerRoute() {
+        return maxPerRoute;
+    }
+
+    public long getKeepAliveMillis() {
+        return keepAliveMillis;
+    }
+
+    /**
+     * Close all idle connections, leased connections are closed when they are released.
+     */
+    public void close() {
+        closed = true;
+        for (Map.Entry<String, RouteState> entry : routes.entrySet()) {
+            RouteState state = entry.getValue();
+            state.lock.lock();
+            try {
+                for (HttpConnection conn : state.idle) {
+                    conn.close();
+                }
+                state.idle.clear();
+            } finally {
+                state.lock.unlock();
+            }
+        }
+    }
+
+    static String routeOf(URL url, HttpProxy proxy) {
+        StringBuilder sb = new StringBuilder();
+        sb.append(url.getProtocol()).append("://").append(url.getHost()).append(":").append(portOf(url));
+        if (null != proxy) {
+            sb.append("@").append(proxy.getHost()).append(":").append(proxy.getPort());
+        }
+        return sb.toString();
+    }
+
+    static int portOf(URL url) {
+        int port = url.getPort();
+        return port == -1 ? url.getDefaultPort() : port;
+    }
+
+    private RouteState routeState(String route) {
+        RouteState state = routes.get(route);
+        if (null == state) {
+            RouteState created = new RouteState(maxPerRoute);
+            state = routes.putIfAbsent(route, created);
+            if (null == state) {
+                state = created;
+            }
+        }
+        return state;
+    }
+
+    private void acquirePermits(RouteState state, int timeout) throws IOException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        try {
+            if (!totalPermits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                throw new SocketTimeoutException("connect timed out - waiting for a pooled connection");
+            }
+            long remaining = Math.max(0, deadline - System.nanoTime());
+            if (!state.permits.tryAcquire(remaining, TimeUnit.NANOSECONDS)) {
+                totalPermits.release();
+                throw new SocketTimeoutException("connect timed out - waiting for a pooled connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a pooled connection", e);
+        }
+    }
+
+    private void releasePermits(RouteState state) {
+        state.permits.release();
+        totalPermits.release();
+    }
+
+    private HttpConnection pollIdle(RouteState state) {
+        long now = System.currentTimeMillis();
+        state.lock.lock();
+        try {
+            evictExpired(state, now);
+            HttpConnection conn;
+            while (null != (conn = state.idle.pollFirst())) {
+                if (conn.isOpen()) {
+                    return conn;
+                }
+                conn.close();
+            }
+            return null;
+        } finally {
+            state.lock.unlock();
+        }
+    }
+
+    private void evictExpired(RouteState state, long now) {
+        Iterator<HttpConnection> it = state.idle.iterator();
+        while (it.hasNext()) {
+            HttpConnection conn = it.next();
+            if (conn.isExpired(now, keepAliveMillis)) {
+                it.remove();
+                conn.close();
+            }
+        }
+    }
+
+    private HttpConnection connect(String route, URL url, HttpProxy proxy, int connectTimeout, CallTrace trace)
+            throws IOException {
+        String host = url.getHost();
+        int port = portOf(url);
+        boolean secure = "https".equalsIgnoreCase(url.getProtocol());
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            long start = null == trace ? 0 : System.nanoTime();
+            // the address is resolved when it is created
+            InetSocketAddress address = null != proxy
+                    ? new InetSocketAddress(proxy.getHost(), proxy.getPort())
+                    : new InetSocketAddress(host, port);
+            if (null != trace) {
+                long resolved = System.nanoTime();
+                trace.phase(Phase.DNS, start, resolved);
+                start = resolved;
+            }
+            socket.connect(address, connectTimeout);
+            if (null != proxy && secure) {
+                tunnel(socket, host, port, proxy, connectTimeout);
+            }
+            if (null != trace) {
+                long connected = System.nanoTime();
+                trace.phase(Phase.CONNECT, start, connected);
+                start = connected;
+            }
+            if (secure) {
+                socket = handshake(socket, host, port, connectTimeout);
+                if (null != trace) {
+                    trace.phase(Phase.TLS_HANDSHAKE, start, System.nanoTime());
+                }
+            }
+            return new HttpConnection(route, socket);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private Socket handshake(Socket plain, String host, int port, int connectTimeout) throws IOException {
+        SSLSocket socket = (SSLSocket) sslSocketFactory().createSocket(plain, host, port, true);
+        SSLParameters parameters = socket.getSSLParameters();
+        parameters.setEndpointIdentificationAlgorithm("HTTPS");
+        socket.setSSLParameters(parameters);
+        socket.setSoTimeout(connectTimeout);
+        try {
+            socket.startHandshake();
+        } catch (SocketTimeoutException e) {
+            socket.close();
+            throw new SocketTimeoutException("connect timed out - TLS handshake");
+        }
+        return socket;
+    }
+
+    /**
+     * Open a tunnel through the http proxy by CONNECT, so that TLS goes end to end.
+     */
+    private void tunnel(Socket socket, String host, int port, HttpProxy proxy, int connectTimeout)
+            throws IOException {
+        socket.setSoTimeout(connectTimeout);
+        String authority = host + ":" + port;
+        StringBuilder sb = new StringBuilder();
+        sb.append("CONNECT ").append(authority).append(" HTTP/1.1\r\n");
+        sb.append("Host: ").append(authority).append("\r\n");
+        if (proxy.isAuthenticationNeeded()) {
+            sb.append("Proxy-Authorization: ").append(proxy.getProxyAuthorization()).append("\r\n");
+        }
+        sb.append("\r\n");
+        OutputStream out = socket.getOutputStream();
+        out.write(sb.toString().getBytes("ISO-8859-1"));
+        out.flush();
+
+        InputStream in = socket.getInputStream();
+        String statusLine = HttpCodec.readLine(in);
+        int status = HttpCodec.parseStatusCode(statusLine);
+        String line;
+        while (null != (line = HttpCodec.readLine(in)) && line.length() > 0) {
+            // skip proxy response headers
+        }
+        if (status / 100 != 2) {
+            throw new IOException("Failed to open tunnel through proxy - " + statusLine);
+        }
+    }
+
+    /**
+     * Created on first TLS connection, every TLS connection of this pool shares its session cache.
+     */
+    private SSLSocketFactory sslSocketFactory() {
+        SSLSocketFactory factory = sslSocketFactory;
+        if (null == factory) {
+            sslLock.lock();
+            try {
+                factory = sslSocketFactory;
+                if (null == factory) {
+                    try {
+                        SSLContext context = SSLContext.getInstance(sslVersion);
+                        context.init(null, null, null);
+                        factory = context.getSocketFactory();
+                    } catch (Exception e) {
+                        LOG.error("Init SSL error, use the default SSLSocketFactory", e);
+                        factory = (SSLSocketFactory) SSLSocketFactory.getDefault();
+                    }
+                    sslSocketFactory = factory;
+                }
+            } finally {
+                sslLock.unlock();
+            }
+        }
+        return factory;
+    }
+
+    private static class RouteState {
+        final Semaphore permits;
+        final ArrayDeque<HttpConnection> idle = new ArrayDeque<HttpConnection>();
+        final ReentrantLock lock = new ReentrantLock();
+
+        RouteState(int maxPerRoute) {
+            this.permits = new Semaphore(maxPerRoute, true);
+        }
+    }
+
+}
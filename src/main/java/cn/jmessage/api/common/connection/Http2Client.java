@@ -0,0 +1,464 @@
+package cn.jmessage.api.common.connection;
+
+import cn.jiguang.common.resp.ResponseWrapper;
+import cn.jiguang.common.utils.Preconditions;
+import cn.jmessage.api.common.JMessageConfig;
+import cn.jmessage.api.common.trace.CallTrace;
+import cn.jmessage.api.common.trace.Phase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Client which multiplexes the concurrent requests to a host as streams of one HTTP/2 connection, instead of
+ * one HTTP/1.1 connection per request in flight.
+ * <p>
+ * The transport is the {@code java.net.http.HttpClient} of the running JDK, found by reflection since this
+ * library is built for Java 7: {@link #isSupported()} is false before Java 11, the clients fall back to
+ * {@link PooledHttpClient} then. HTTP/2 is negotiated by ALPN for https urls, a server which does not
+ * support it is spoken to in HTTP/1.1, as are plain http urls. Retries, metrics and tracing are the ones of
+ * {@link PooledHttpClient}; streamed request bodies such as uploads are sent over its HTTP/1.1 pool.
+ * </p>
+ * <p>
+ * At most max concurrent streams requests are in flight, the others wait for one of them to finish up to
+ * the connect timeout. The read timeout bounds the wait for the response headers.
+ * </p>
+ * <p>
+ * A call waiting for its response headers is cancelled by interrupting its thread, {@link #abort(Thread)}
+ * cancels the stream of a call reading its response body.
+ * </p>
+ */
+public class Http2Client extends PooledHttpClient {
+
+    private static final Logger LOG = LoggerFactory.getLogger(Http2Client.class);
+
+    private static final String CONNECT_TIMED_OUT = "connect timed out";
+    private static final Jdk JDK = Jdk.load();
+
+    private final Object _client;
+    private final String _authCode;
+    private final int _connectionTimeout;
+    private final Object _readTimeout;
+    private final Semaphore _streams;
+    private final int _maxConcurrentStreams;
+    private final AtomicLong _http2Responses = new AtomicLong();
+    private final AtomicLong _http1Responses = new AtomicLong();
+    // response body read by the thread of each call
+    private final ConcurrentMap<Thread, InputStream> _bodies = new ConcurrentHashMap<Thread, InputStream>();
+    private volatile boolean _closed;
+
+    /**
+     * @param authCode Basic authorization of the appKey and masterSecret.
+     * @param config   The client configuration. Can use JMessageConfig.getInstance() as default.
+     * @throws IllegalStateException the JDK has no HTTP/2 client, see {@link #isSupported()}
+     */
+    public Http2Client(String authCode, JMessageConfig config) {
+        super(authCode, null, config);
+        if (null == JDK) {
+            throw new IllegalStateException("HTTP/2 needs java.net.http.HttpClient of Java 11 or later");
+        }
+        int maxConcurrentStreams = ((Number) config.get(JMessageConfig.HTTP2_MAX_CONCURRENT_STREAMS)).intValue();
+        Preconditions.checkArgument(maxConcurrentStreams > 0, "maxConcurrentStreams should more than 0");
+        this._authCode = authCode;
+        this._connectionTimeout = config.getConnectionTimeout();
+        this._maxConcurrentStreams = maxConcurrentStreams;
+        this._streams = new Semaphore(maxConcurrentStreams, true);
+        try {
+            this._readTimeout = JDK.durationOfMillis.invoke(null, (long) config.getReadTimeout());
+            this._client = JDK.newClient(JDK.durationOfMillis.invoke(null, (long) _connectionTimeout));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to create the HTTP/2 client", e);
+        }
+        LOG.debug("Created HTTP/2 instance with maxConcurrentStreams " + maxConcurrentStreams);
+    }
+
+    /**
+     * @return true if the running JDK has the HTTP/2 client
+     */
+    public static boolean isSupported() {
+        return null != JDK;
+    }
+
+    public int getMaxConcurrentStreams() {
+        return _maxConcurrentStreams;
+    }
+
+    /**
+     * @return requests in flight
+     */
+    public int getActiveStreamCount() {
+        return _maxConcurrentStreams - _streams.availablePermits();
+    }
+
+    /**
+     * @return responses received over HTTP/2
+     */
+    public long getHttp2ResponseCount() {
+        return _http2Responses.get();
+    }
+
+    /**
+     * @return responses received over HTTP/1.1, from servers which did not negotiate HTTP/2
+     */
+    public long getHttp1ResponseCount() {
+        return _http1Responses.get();
+    }
+
+    /**
+     * Cancel the stream of the call running on the thread, or close its HTTP/1.1 connection for a streamed
+     * request body. The thread must be interrupted first, which cancels a call waiting for its response.
+     *
+     * @param thread thread of the call
+     * @return true if a stream or a connection was closed
+     */
+    @Override
+    public boolean abort(Thread thread) {
+        InputStream in = _bodies.get(thread);
+        if (null == in) {
+            return super.abort(thread);
+        }
+        try {
+            in.close();
+        } catch (IOException e) {
+            LOG.debug("Failed to cancel the HTTP/2 stream", e);
+        }
+        return true;
+    }
+
+    /**
+     * Close the HTTP/1.1 pool, calls made afterwards fail. The JDK client is shut down on Java 21 or later,
+     * before it is released when it is no more referenced.
+     */
+    @Override
+    public void close() {
+        _closed = true;
+        super.close();
+        if (null != JDK.clientShutdownNow) {
+            try {
+                JDK.clientShutdownNow.invoke(_client);
+            } catch (ReflectiveOperationException e) {
+                LOG.warn("Failed to shut down the HTTP/2 client", e);
+            }
+        }
+    }
+
+    @Override
+    <T> T execute(URL url, String method, RequestBody body, ResponseWrapper wrapper,
+                  ResponseBodyHandler<T> handler, Exchange exchange) throws IOException {
+        if (null != body && !(body instanceof JsonBody)) {
+            return super.execute(url, method, body, wrapper, handler, exchange);
+        }
+        if (_closed) {
+            throw new IOException("HTTP/2 client is closed");
+        }
+        CallTrace trace = exchange.trace;
+        exchange.sent = false;
+        exchange.decoding = false;
+        exchange.retryAfter = null;
+        long mark = System.nanoTime();
+        acquireStream();
+        if (null != trace) {
+            mark = phase(trace, Phase.QUEUE_WAIT, mark);
+        }
+        CountingInputStream in = null;
+        Thread thread = Thread.currentThread();
+        try {
+            Object request = newRequest(url, method, (JsonBody) body);
+            exchange.sent = true;
+            Object response = send(request, exchange);
+            if (null != body) {
+                exchange.bytesSent += ((JsonBody) body).length;
+            }
+            if (null != trace) {
+                mark = phase(trace, Phase.TIME_TO_FIRST_BYTE, mark);
+            }
+            int status = (Integer) JDK.responseStatusCode.invoke(response);
+            Object headers = JDK.responseHeaders.invoke(response);
+            in = new CountingInputStream((InputStream) JDK.responseBody.invoke(response));
+            _bodies.put(thread, in);
+            if (JDK.version2 == JDK.responseVersion.invoke(response)) {
+                _http2Responses.incrementAndGet();
+            } else {
+                _http1Responses.incrementAndGet();
+            }
+            wrapper.responseCode = status;
+            wrapper.setRateLimit(header(headers, RATE_LIMIT_QUOTA), header(headers, RATE_LIMIT_Remaining),
+                    header(headers, RATE_LIMIT_Reset));
+            exchange.retryAfter = header(headers, "Retry-After");
+            T result = null;
+            if (null != handler && status >= 200 && status < 300) {
+                exchange.decoding = true;
+                result = handler.handle(wrapper, in);
+                skipFully(in);
+                if (null != trace) {
+                    phase(trace, Phase.DECODE, mark);
+                }
+            } else {
+                wrapper.responseContent = new String(readFully(in), CHARSET);
+                if (null != trace) {
+                    phase(trace, Phase.BODY_READ, mark);
+                }
+            }
+            return result;
+        } catch (ConnectException e) {
+            exchange.sent = false;
+            throw e;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to call the HTTP/2 client", e);
+        } finally {
+            if (null != in) {
+                _bodies.remove(thread, in);
+                exchange.bytesReceived += in.count;
+                in.close();
+            }
+            _streams.release();
+        }
+    }
+
+    private void acquireStream() throws IOException {
+        try {
+            if (!_streams.tryAcquire(_connectionTimeout, TimeUnit.MILLISECONDS)) {
+                throw new SocketTimeoutException(CONNECT_TIMED_OUT + " - waiting for an HTTP/2 stream");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an HTTP/2 stream");
+        }
+    }
+
+    private Object newRequest(URL url, String method, JsonBody body) throws ReflectiveOperationException,
+            IOException {
+        URI uri;
+        try {
+            uri = url.toURI();
+        } catch (URISyntaxException e) {
+            throw new IOException("Invalid url " + url, e);
+        }
+        Object builder = JDK.requestNewBuilder.invoke(null, uri);
+        if (!"https".equalsIgnoreCase(url.getProtocol())) {
+            // HTTP/2 is negotiated over TLS only, the h2c upgrade request is not worth a round trip
+            JDK.requestVersion.invoke(builder, JDK.version1);
+        }
+        JDK.requestTimeout.invoke(builder, _readTimeout);
+        JDK.requestHeader.invoke(builder, "User-Agent", JPUSH_USER_AGENT);
+        JDK.requestHeader.invoke(builder, "Accept-Charset", CHARSET);
+        JDK.requestHeader.invoke(builder, "Charset", CHARSET);
+        JDK.requestHeader.invoke(builder, "Authorization", _authCode);
+        JDK.requestHeader.invoke(builder, "Content-Type", CONTENT_TYPE_JSON);
+        if (null != body) {
+            // the JDK client may still be writing the body after an interrupted or timed out send returned, when
+            // the pooled buffer of the caller is already released and reused
+            byte[] content = Arrays.copyOfRange(body.content, body.offset, body.offset + body.length);
+            JDK.requestMethod.invoke(builder, method,
+                    JDK.publisherOfByteArray.invoke(null, content, 0, content.length));
+        } else if ("GET".equals(method)) {
+            // without a Content-Length header
+            JDK.requestGet.invoke(builder);
+        } else if ("DELETE".equals(method)) {
+            JDK.requestDelete.invoke(builder);
+        } else {
+            JDK.requestMethod.invoke(builder, method, JDK.publisherNoBody.invoke(null));
+        }
+        return JDK.requestBuild.invoke(builder);
+    }
+
+    /**
+     * Send the request, the timeouts of the JDK are thrown as the SocketTimeoutException of
+     * {@link PooledHttpClient} so that they are retried the same way, a connect timeout marks the request not sent.
+     */
+    private Object send(Object request, Exchange exchange) throws IOException, IllegalAccessException {
+        try {
+            return JDK.clientSend.invoke(_client, request, JDK.inputStreamHandler);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (JDK.connectTimeoutException.isInstance(cause)) {
+                exchange.sent = false;
+                throw new SocketTimeoutException(CONNECT_TIMED_OUT + " - " + cause.getMessage());
+            }
+            if (JDK.timeoutException.isInstance(cause)) {
+                throw new SocketTimeoutException("Read timed out - " + cause.getMessage());
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for the response");
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private static String header(Object headers, String name) throws ReflectiveOperationException {
+        return (String) JDK.optionalOrElse.invoke(JDK.headersFirstValue.invoke(headers, name), (Object) null);
+    }
+
+    private static long phase(CallTrace trace, Phase phase, long start) {
+        long end = System.nanoTime();
+        trace.phase(phase, start, end);
+        return end;
+    }
+
+    private static class CountingInputStream extends FilterInputStream {
+
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+
+    /**
+     * Methods of java.net.http used by the client, looked up once.
+     */
+    private static final class Jdk {
+
+        final Method clientNewBuilder;
+        final Method builderVersion;
+        final Method builderConnectTimeout;
+        final Method builderBuild;
+        final Method clientSend;
+        // HttpClient.shutdownNow of Java 21, null before
+        final Method clientShutdownNow;
+        final Object version1;
+        final Object version2;
+        final Method requestNewBuilder;
+        final Method requestVersion;
+        final Method requestTimeout;
+        final Method requestHeader;
+        final Method requestMethod;
+        final Method requestGet;
+        final Method requestDelete;
+        final Method requestBuild;
+        final Method publisherOfByteArray;
+        final Method publisherNoBody;
+        final Object inputStreamHandler;
+        final Method responseStatusCode;
+        final Method responseHeaders;
+        final Method responseBody;
+        final Method responseVersion;
+        final Method headersFirstValue;
+        final Method optionalOrElse;
+        final Method durationOfMillis;
+        final Class<?> timeoutException;
+        final Class<?> connectTimeoutException;
+
+        private Jdk() throws ReflectiveOperationException {
+            Class<?> client = Class.forName("java.net.http.HttpClient");
+            Class<?> clientBuilder = Class.forName("java.net.http.HttpClient$Builder");
+            Class<?> version = Class.forName("java.net.http.HttpClient$Version");
+            Class<?> request = Class.forName("java.net.http.HttpRequest");
+            Class<?> requestBuilder = Class.forName("java.net.http.HttpRequest$Builder");
+            Class<?> publisher = Class.forName("java.net.http.HttpRequest$BodyPublisher");
+            Class<?> publishers = Class.forName("java.net.http.HttpRequest$BodyPublishers");
+            Class<?> response = Class.forName("java.net.http.HttpResponse");
+            Class<?> handler = Class.forName("java.net.http.HttpResponse$BodyHandler");
+            Class<?> handlers = Class.forName("java.net.http.HttpResponse$BodyHandlers");
+            Class<?> headers = Class.forName("java.net.http.HttpHeaders");
+            Class<?> duration = Class.forName("java.time.Duration");
+
+            clientNewBuilder = client.getMethod("newBuilder");
+            builderVersion = clientBuilder.getMethod("version", version);
+            builderConnectTimeout = clientBuilder.getMethod("connectTimeout", duration);
+            builderBuild = clientBuilder.getMethod("build");
+            clientSend = client.getMethod("send", request, handler);
+            clientShutdownNow = optionalMethod(client, "shutdownNow");
+            version1 = version.getField("HTTP_1_1").get(null);
+            version2 = version.getField("HTTP_2").get(null);
+            requestNewBuilder = request.getMethod("newBuilder", URI.class);
+            requestVersion = requestBuilder.getMethod("version", version);
+            requestTimeout = requestBuilder.getMethod("timeout", duration);
+            requestHeader = requestBuilder.getMethod("header", String.class, String.class);
+            requestMethod = requestBuilder.getMethod("method", String.class, publisher);
+            requestGet = requestBuilder.getMethod("GET");
+            requestDelete = requestBuilder.getMethod("DELETE");
+            requestBuild = requestBuilder.getMethod("build");
+            publisherOfByteArray = publishers.getMethod("ofByteArray", byte[].class, int.class, int.class);
+            publisherNoBody = publishers.getMethod("noBody");
+            inputStreamHandler = handlers.getMethod("ofInputStream").invoke(null);
+            responseStatusCode = response.getMethod("statusCode");
+            responseHeaders = response.getMethod("headers");
+            responseBody = response.getMethod("body");
+            responseVersion = response.getMethod("version");
+            headersFirstValue = headers.getMethod("firstValue", String.class);
+            optionalOrElse = Class.forName("java.util.Optional").getMethod("orElse", Object.class);
+            durationOfMillis = duration.getMethod("ofMillis", long.class);
+            timeoutException = Class.forName("java.net.http.HttpTimeoutException");
+            connectTimeoutException = Class.forName("java.net.http.HttpConnectTimeoutException");
+        }
+
+        private static Method optionalMethod(Class<?> type, String name) {
+            try {
+                return type.getMethod(name);
+            } catch (NoSuchMethodException e) {
+                return null;
+            }
+        }
+
+        static Jdk load() {
+            try {
+                return new Jdk();
+            } catch (ReflectiveOperationException e) {
+                return null;
+            } catch (LinkageError e) {
+                return null;
+            }
+        }
+
+        Object newClient(Object connectTimeout) throws ReflectiveOperationException {
+            Object builder = clientNewBuilder.invoke(null);
+            builderVersion.invoke(builder, version2);
+            builderConnectTimeout.invoke(builder, connectTimeout);
+            return builderBuild.invoke(builder);
+        }
+    }
+
+}
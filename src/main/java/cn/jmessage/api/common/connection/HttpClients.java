@@ -0,0 +1,87 @@
+package cn.jmessage.api.common.connection;
+
+import cn.jiguang.common.connection.HttpProxy;
+import cn.jiguang.common.connection.IHttpClient;
+import cn.jiguang.common.resp.APIConnectionException;
+import cn.jiguang.common.resp.APIRequestException;
+import cn.jiguang.common.resp.ResponseWrapper;
+import cn.jmessage.api.common.JMessageConfig;
+import cn.jmessage.api.common.model.JsonBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * Helpers over {@link IHttpClient} implementations.
+ */
+public final class HttpClients {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HttpClients.class);
+
+    private HttpClients() {
+    }
+
+    /**
+     * Create the client of the config: an {@link Http2Client} if HTTP/2 is enabled and supported, a
+     * {@link PooledHttpClient} otherwise.
+     *
+     * @param authCode Basic authorization of the appKey and masterSecret.
+     * @param proxy    The proxy, if there is no proxy, should be null.
+     * @param config   The client configuration. Can use JMessageConfig.getInstance() as default.
+     */
+    public static PooledHttpClient newHttpClient(String authCode, HttpProxy proxy, JMessageConfig config) {
+        if ((Boolean) config.get(JMessageConfig.HTTP2)) {
+            if (null == proxy && Http2Client.isSupported()) {
+                return new Http2Client(authCode, config);
+            }
+            LOG.info("HTTP/2 needs Java 11 or later and no proxy, fall back to HTTP/1.1");
+        }
+        return new PooledHttpClient(authCode, proxy, config);
+    }
+
+    /**
+     * Send a GET request and decode the body with the handler, streamed if the client is a
+     * {@link StreamingHttpClient}, else from the buffered response content.
+     *
+     * @return result of the handler, null if the response is not 2xx
+     */
+    public static <T> T sendGet(IHttpClient client, String url, ResponseBodyHandler<T> handler)
+            throws APIConnectionException, APIRequestException {
+        if (client instanceof StreamingHttpClient) {
+            return ((StreamingHttpClient) client).streamGet(url, handler);
+        }
+        ResponseWrapper wrapper = client.sendGet(url);
+        if (wrapper.responseCode < 200 || wrapper.responseCode >= 300) {
+            return null;
+        }
+        try {
+            byte[] content = null == wrapper.responseContent ? new byte[0]
+                    : wrapper.responseContent.getBytes(IHttpClient.CHARSET);
+            return handler.handle(wrapper, new ByteArrayInputStream(content));
+        } catch (IOException e) {
+            throw new APIConnectionException(IHttpClient.IO_ERROR_MESSAGE, e);
+        }
+    }
+
+    /**
+     * @return true if the client, through all its decorators, can stream a {@link RequestBody}
+     */
+    public static boolean canStreamRequestBody(IHttpClient client) {
+        return client instanceof StreamingHttpClient && ((StreamingHttpClient) client).canStreamRequestBody();
+    }
+
+    /**
+     * Send the buffer content as a POST body, without decoding it to a String if the client is a
+     * {@link StreamingHttpClient}.
+     */
+    public static ResponseWrapper sendPost(IHttpClient client, String url, JsonBuffer content)
+            throws APIConnectionException, APIRequestException {
+        if (client instanceof StreamingHttpClient) {
+            return ((StreamingHttpClient) client).sendPost(url, content.array(), 0, content.size());
+        }
+        return client.sendPost(url, content.toString());
+    }
+
+}
@@ -0,0 +1,371 @@
+package cn.jmessage.api.common.connection;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Minimal HTTP/1.1 message codec used by {@link PooledHttpClient}.
+ */
+final class HttpCodec {
+
+    static final String HEADER_CONTENT_LENGTH = "Content-Length";
+    static final String HEADER_TRANSFER_ENCODING = "Transfer-Encoding";
+    static final String HEADER_CONNECTION = "Connection";
+
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    private HttpCodec() {
+    }
+
+    static void writeRequestHead(OutputStream out, String method, String target, Map<String, String> headers)
+            throws IOException {
+        StringBuilder sb = new StringBuilder(256);
+        sb.append(method).append(' ').append(target).append(" HTTP/1.1\r\n");
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            sb.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        sb.append("\r\n");
+        out.write(sb.toString().getBytes("ISO-8859-1"));
+    }
+
+    /**
+     * Read one line ended by LF or CRLF, the line ending is not included.
+     *
+     * @return the line, or null if the stream ended before any byte was read
+     */
+    static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                break;
+            }
+            if (line.size() >= MAX_LINE_LENGTH) {
+                throw new ProtocolException("HTTP line is too long");
+            }
+            line.write(b);
+        }
+        if (b == -1 && line.size() == 0) {
+            return null;
+        }
+        String result = line.toString("ISO-8859-1");
+        if (result.endsWith("\r")) {
+            result = result.substring(0, result.length() - 1);
+        }
+        return result;
+    }
+
+    static int parseStatusCode(String statusLine) throws IOException {
+        if (null == statusLine) {
+            throw new EOFException("Unexpected end of stream, no status line");
+        }
+        // HTTP/1.1 200 OK
+        if (!statusLine.startsWith("HTTP/1.") || statusLine.length() < 12) {
+            throw new ProtocolException("Unexpected status line: " + statusLine);
+        }
+        try {
+            return Integer.parseInt(statusLine.substring(9, 12));
+        } catch (NumberFormatException e) {
+            throw new ProtocolException("Unexpected status line: " + statusLine);
+        }
+    }
+
+    /**
+     * @return header map with case insensitive keys, repeated headers keep the last value
+     */
+    static Map<String, String> readHeaders(InputStream in) throws IOException {
+        Map<String, String> headers = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+        String line;
+        while (null != (line = readLine(in)) && line.length() > 0) {
+            int index = line.indexOf(':');
+            if (index > 0) {
+                headers.put(line.substring(0, index).trim(), line.substring(index + 1).trim());
+            }
+        }
+        if (null == line) {
+            throw new EOFException("Unexpected end of stream in headers");
+        }
+        return headers;
+    }
+
+    /**
+     * @return true if the connection can be kept alive after this response body is consumed.
+     */
+    static boolean isKeepAlive(String statusLine, Map<String, String> headers) {
+        String connection = headers.get(HEADER_CONNECTION);
+        if (statusLine.startsWith("HTTP/1.0")) {
+            return "keep-alive".equalsIgnoreCase(connection);
+        }
+        return !"close".equalsIgnoreCase(connection);
+    }
+
+    static ResponseBody openBody(InputStream in, String method, int status, Map<String, String> headers)
+            throws IOException {
+        if ("HEAD".equals(method) || status / 100 == 1 || status == 204 || status == 304) {
+            return new FixedLengthBody(in, 0);
+        }
+        String transferEncoding = headers.get(HEADER_TRANSFER_ENCODING);
+        if (null != transferEncoding && "chunked".equalsIgnoreCase(transferEncoding)) {
+            return new ChunkedBody(in);
+        }
+        String contentLength = headers.get(HEADER_CONTENT_LENGTH);
+        if (null != contentLength) {
+            try {
+                return new FixedLengthBody(in, Long.parseLong(contentLength));
+            } catch (NumberFormatException e) {
+                throw new ProtocolException("Invalid Content-Length: " + contentLength);
+            }
+        }
+        return new UntilCloseBody(in);
+    }
+
+    /**
+     * A response body stream, it knows whether the body was read to the end so the connection can be reused.
+     */
+    abstract static class ResponseBody extends InputStream {
+
+        protected final InputStream in;
+
+        ResponseBody(InputStream in) {
+            this.in = in;
+        }
+
+        abstract boolean isComplete();
+
+        /**
+         * Whether the connection is usable for the next request once this body is complete.
+         */
+        boolean isReusable() {
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] one = new byte[1];
+            int n = read(one, 0, 1);
+            return n == -1 ? -1 : one[0] & 0xff;
+        }
+
+        /**
+         * Does not close the underlying connection, the connection goes back to the pool.
+         */
+        @Override
+        public void close() throws IOException {
+        }
+    }
+
+    static class FixedLengthBody extends ResponseBody {
+
+        private long remaining;
+
+        FixedLengthBody(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = in.read(b, off, (int) Math.min(len, remaining));
+            if (n == -1) {
+                throw new EOFException("Unexpected end of stream, " + remaining + " bytes remaining");
+            }
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        @Override
+        boolean isComplete() {
+            return remaining <= 0;
+        }
+    }
+
+    static class ChunkedBody extends ResponseBody {
+
+        private long chunkRemaining = 0;
+        private boolean finished = false;
+
+        ChunkedBody(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (finished) {
+                return -1;
+            }
+            if (chunkRemaining == 0) {
+                nextChunk();
+                if (finished) {
+                    return -1;
+                }
+            }
+            int n = in.read(b, off, (int) Math.min(len, chunkRemaining));
+            if (n == -1) {
+                throw new EOFException("Unexpected end of stream in chunk");
+            }
+            chunkRemaining -= n;
+            if (chunkRemaining == 0) {
+                // CRLF after chunk data
+                readLine(in);
+            }
+            return n;
+        }
+
+        private void nextChunk() throws IOException {
+            String line = readLine(in);
+            if (null == line) {
+                throw new EOFException("Unexpected end of stream, no chunk size");
+            }
+            int ext = line.indexOf(';');
+            String size = (ext >= 0 ? line.substring(0, ext) : line).trim();
+            try {
+                chunkRemaining = Long.parseLong(size, 16);
+            } catch (NumberFormatException e) {
+                throw new ProtocolException("Invalid chunk size: " + line);
+            }
+            if (chunkRemaining == 0) {
+                // trailers
+                readHeaders(in);
+                finished = true;
+            }
+        }
+
+        @Override
+        boolean isComplete() {
+            return finished;
+        }
+    }
+
+    static class UntilCloseBody extends ResponseBody {
+
+        private boolean finished = false;
+
+        UntilCloseBody(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (finished) {
+                return -1;
+            }
+            int n = in.read(b, off, len);
+            if (n == -1) {
+                finished = true;
+            }
+            return n;
+        }
+
+        @Override
+        boolean isComplete() {
+            return finished;
+        }
+
+        @Override
+        boolean isReusable() {
+            return false;
+        }
+    }
+
+    /**
+     * Request body framed by Content-Length, the body must write exactly that many bytes, else the request is
+     * failed before the connection is left with a broken message.
+     */
+    static class FixedLengthOutput extends OutputStream {
+
+        private final OutputStream out;
+        private long remaining;
+
+        FixedLengthOutput(OutputStream out, long length) {
+            this.out = out;
+            this.remaining = length;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            check(1);
+            out.write(b);
+            remaining--;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            check(len);
+            out.write(b, off, len);
+            remaining -= len;
+        }
+
+        void finish() throws IOException {
+            if (remaining != 0) {
+                throw new ProtocolException("Request body is " + remaining + " bytes shorter than its Content-Length");
+            }
+        }
+
+        private void check(int len) throws IOException {
+            if (len > remaining) {
+                throw new ProtocolException("Request body is longer than its Content-Length");
+            }
+        }
+
+        @Override
+        public void close() {
+            // the connection stays open
+        }
+    }
+
+    /**
+     * Request body with Transfer-Encoding chunked, one chunk per write.
+     */
+    static class ChunkedOutput extends OutputStream {
+
+        private static final byte[] CRLF = {'\r', '\n'};
+        private static final byte[] LAST_CHUNK = {'0', '\r', '\n', '\r', '\n'};
+
+        private final OutputStream out;
+
+        ChunkedOutput(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                // an empty chunk would end the body
+                return;
+            }
+            out.write(Integer.toHexString(len).getBytes("ISO-8859-1"));
+            out.write(CRLF);
+            out.write(b, off, len);
+            out.write(CRLF);
+        }
+
+        void finish() throws IOException {
+            out.write(LAST_CHUNK);
+        }
+
+        @Override
+        public void close() {
+            // the connection stays open
+        }
+    }
+
+}
@@ -0,0 +1,149 @@
+package cn.jmessage.api.common.connection;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.SocketException;
+
+/**
+ * One keep-alive HTTP/1.1 connection owned by a {@link ConnectionPool}.
+ * A connection is used by a single request at a time, it is either leased or idle in the pool.
+ */
+public class HttpConnection {
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private final String route;
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+    private final long createdAt;
+
+    private long idleSince;
+    private int useCount;
+    private long bytesRead;
+    private long bytesWritten;
+
+    HttpConnection(String route, Socket socket) throws IOException {
+        this.route = route;
+        this.socket = socket;
+        this.in = new BufferedInputStream(new CountingInputStream(socket.getInputStream()), BUFFER_SIZE);
+        this.out = new BufferedOutputStream(new CountingOutputStream(socket.getOutputStream()), BUFFER_SIZE);
+        this.createdAt = System.currentTimeMillis();
+        this.idleSince = createdAt;
+    }
+
+    public String getRoute() {
+        return route;
+    }
+
+    public InputStream getInputStream() {
+        return in;
+    }
+
+    public OutputStream getOutputStream() {
+        return out;
+    }
+
+    /**
+     * @return bytes read from the socket since the connection was opened
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * @return bytes written to the socket since the connection was opened
+     */
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    /**
+     * @return true if this connection already served at least one request before the current lease.
+     */
+    public boolean isReused() {
+        return useCount > 1;
+    }
+
+    public boolean isOpen() {
+        return !socket.isClosed() && !socket.isInputShutdown() && !socket.isOutputShutdown();
+    }
+
+    public void setReadTimeout(int readTimeout) throws SocketException {
+        socket.setSoTimeout(readTimeout);
+    }
+
+    void markLeased() {
+        useCount++;
+    }
+
+    void markIdle() {
+        idleSince = System.currentTimeMillis();
+    }
+
+    boolean isExpired(long now, long keepAliveMillis) {
+        return now - idleSince > keepAliveMillis;
+    }
+
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException ignore) {
+        }
+    }
+
+    private class CountingInputStream extends FilterInputStream {
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b != -1) {
+                bytesRead++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) {
+                bytesRead += n;
+            }
+            return n;
+        }
+    }
+
+    private class CountingOutputStream extends FilterOutputStream {
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            bytesWritten++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            bytesWritten += len;
+        }
+    }
+
+}
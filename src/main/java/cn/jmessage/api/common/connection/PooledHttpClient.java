@@ -0,0 +1,607 @@
+package cn.jmessage.api.common.connection;
+
+import cn.jiguang.common.connection.HttpProxy;
+import cn.jiguang.common.connection.IHttpClient;
+import cn.jiguang.common.resp.APIConnectionException;
+import cn.jiguang.common.resp.APIRequestException;
+import cn.jiguang.common.resp.ResponseWrapper;
+import cn.jmessage.api.common.JMessageConfig;
+import cn.jmessage.api.common.metrics.Endpoint;
+import cn.jmessage.api.common.metrics.MetricsRegistry;
+import cn.jmessage.api.common.retry.RetryPolicy;
+import cn.jmessage.api.common.trace.CallListener;
+import cn.jmessage.api.common.trace.CallListeners;
+import cn.jmessage.api.common.trace.CallTrace;
+import cn.jmessage.api.common.trace.Phase;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * HTTP/1.1 client which keeps connections alive in a {@link ConnectionPool}.
+ * <p>
+ * Behaves like {@link cn.jiguang.common.connection.NativeHttpClient}: same headers, error responses are thrown
+ * as {@link APIRequestException}. Failed attempts are retried as the {@link RetryPolicy} of the config decides,
+ * by default up to max retry times and only when the request was not sent or the endpoint is idempotent. The
+ * difference is that TCP and TLS connections are reused between requests, and one pool can be shared
+ * by all the clients created by one {@link cn.jmessage.api.JMessageClient}, and a successful response body
+ * can be decoded while it is read, see {@link #streamGet(String, ResponseBodyHandler)}.
+ * </p>
+ */
+public class PooledHttpClient implements StreamingHttpClient {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PooledHttpClient.class);
+
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+
+    private final int _connectionTimeout;
+    private final int _readTimeout;
+    private final int _maxRetryTimes;
+    private final String _authCode;
+    private final HttpProxy _proxy;
+    private final ConnectionPool _pool;
+    private final MetricsRegistry _metrics;
+    private final CallListener _listener;
+    private final RetryPolicy _retryPolicy;
+    // connection each thread is sending a request on, to abort it
+    private final ConcurrentMap<Thread, HttpConnection> _inFlight = new ConcurrentHashMap<Thread, HttpConnection>();
+
+    /**
+     * Create a client with its own connection pool.
+     *
+     * @param authCode Basic authorization of the appKey and masterSecret.
+     * @param proxy    The proxy, if there is no proxy, should be null.
+     * @param config   The client configuration. Can use JMessageConfig.getInstance() as default.
+     */
+    public PooledHttpClient(String authCode, HttpProxy proxy, JMessageConfig config) {
+        this(authCode, proxy, config, new ConnectionPool(config));
+    }
+
+    /**
+     * Create a client on a shared connection pool.
+     *
+     * @param authCode Basic authorization of the appKey and masterSecret.
+     * @param proxy    The proxy, if there is no proxy, should be null.
+     * @param config   The client configuration. Can use JMessageConfig.getInstance() as default.
+     * @param pool     The connection pool, can be shared by many clients.
+     */
+    public PooledHttpClient(String authCode, HttpProxy proxy, JMessageConfig config, ConnectionPool pool) {
+        this._authCode = authCode;
+        this._proxy = proxy;
+        this._pool = pool;
+        this._maxRetryTimes = config.getMaxRetryTimes();
+        this._connectionTimeout = config.getConnectionTimeout();
+        this._readTimeout = config.getReadTimeout();
+        this._metrics = (MetricsRegistry) config.get(JMessageConfig.METRICS_REGISTRY);
+        this._listener = CallListeners.chain(callListeners(config));
+        RetryPolicy retryPolicy = (RetryPolicy) config.get(JMessageConfig.RETRY_POLICY);
+        this._retryPolicy = null != retryPolicy ? retryPolicy
+                : RetryPolicy.newBuilder().setMaxRetries(_maxRetryTimes).build();
+        LOG.debug("Created instance with connectionTimeout " + _connectionTimeout + ", readTimeout " + _readTimeout
+                + ", maxRetryTimes " + _maxRetryTimes + ", maxConnections " + pool.getMaxTotal()
+                + ", maxConnectionsPerRoute " + pool.getMaxPerRoute());
+    }
+
+    public ConnectionPool getConnectionPool() {
+        return _pool;
+    }
+
+    @Override
+    public ResponseWrapper sendGet(String url) throws APIConnectionException, APIRequestException {
+        return sendGet(url, null);
+    }
+
+    @Override
+    public ResponseWrapper sendGet(String url, String content) throws APIConnectionException, APIRequestException {
+        return doRequest(url, content, RequestMethod.GET);
+    }
+
+    @Override
+    public ResponseWrapper sendDelete(String url) throws APIConnectionException, APIRequestException {
+        return sendDelete(url, null);
+    }
+
+    @Override
+    public ResponseWrapper sendDelete(String url, String content) throws APIConnectionException, APIRequestException {
+        return doRequest(url, content, RequestMethod.DELETE);
+    }
+
+    @Override
+    public ResponseWrapper sendPost(String url, String content) throws APIConnectionException, APIRequestException {
+        return doRequest(url, content, RequestMethod.POST);
+    }
+
+    @Override
+    public ResponseWrapper sendPut(String url, String content) throws APIConnectionException, APIRequestException {
+        return doRequest(url, content, RequestMethod.PUT);
+    }
+
+    @Override
+    public boolean canStreamRequestBody() {
+        return true;
+    }
+
+    @Override
+    public <T> T streamGet(String url, ResponseBodyHandler<T> handler)
+            throws APIConnectionException, APIRequestException {
+        return doRequest(url, null, RequestMethod.GET, new ResponseWrapper(), handler);
+    }
+
+    @Override
+    public ResponseWrapper sendPost(String url, byte[] content, int offset, int length)
+            throws APIConnectionException, APIRequestException {
+        ResponseWrapper wrapper = new ResponseWrapper();
+        doRequest(url, new JsonBody(content, offset, length), RequestMethod.POST, wrapper, null);
+        return wrapper;
+    }
+
+    @Override
+    public ResponseWrapper sendPost(String url, RequestBody body) throws APIConnectionException, APIRequestException {
+        ResponseWrapper wrapper = new ResponseWrapper();
+        doRequest(url, body, RequestMethod.POST, wrapper, null);
+        return wrapper;
+    }
+
+    public ResponseWrapper doRequest(String url, String content, RequestMethod method)
+            throws APIConnectionException, APIRequestException {
+        ResponseWrapper wrapper = new ResponseWrapper();
+        JsonBody body = null;
+        if (null != content) {
+            try {
+                byte[] bytes = content.getBytes(CHARSET);
+                body = new JsonBody(bytes, 0, bytes.length);
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        doRequest(url, body, method, wrapper, null);
+        return wrapper;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<CallListener> callListeners(JMessageConfig config) {
+        return (List<CallListener>) config.get(JMessageConfig.CALL_LISTENERS);
+    }
+
+    private <T> T doRequest(String url, RequestBody body, RequestMethod method, ResponseWrapper wrapper,
+                            ResponseBodyHandler<T> handler) throws APIConnectionException, APIRequestException {
+        Exchange exchange = new Exchange();
+        if (null != _listener) {
+            exchange.trace = new CallTrace(method.name(), url, _listener);
+        }
+        long start = null == _metrics ? 0 : System.nanoTime();
+        Exception failure = null;
+        Endpoint endpoint = Endpoint.of(method.name(), url);
+        _retryPolicy.callStarted();
+        long delay = 0;
+        try {
+            while (true) {
+                long retryDelay;
+                try {
+                    return _doRequest(url, body, method, wrapper, handler, exchange);
+                } catch (SocketTimeoutException e) {
+                    // the attempt timed out before its request was written, connecting or waiting for a stream
+                    boolean connect = !exchange.sent;
+                    retryDelay = retryDelay(endpoint, body, wrapper, exchange, 0, delay);
+                    if (retryDelay < 0) {
+                        throw connect
+                                ? new APIConnectionException(CONNECT_TIMED_OUT_MESSAGE, e, exchange.retries)
+                                : new APIConnectionException(READ_TIMED_OUT_MESSAGE, e, true);
+                    }
+                } catch (APIConnectionException e) {
+                    retryDelay = retryDelay(endpoint, body, wrapper, exchange, 0, delay);
+                    if (retryDelay < 0) {
+                        throw e;
+                    }
+                } catch (APIRequestException e) {
+                    retryDelay = retryDelay(endpoint, body, wrapper, exchange, e.getStatus(), delay);
+                    if (retryDelay < 0) {
+                        throw e;
+                    }
+                }
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Retry " + endpoint + " in " + retryDelay + " ms - " + (exchange.retries + 1));
+                }
+                sleep(retryDelay);
+                delay = retryDelay;
+                exchange.retries++;
+                wrapper.responseCode = 0;
+                wrapper.responseContent = null;
+                wrapper.error = null;
+            }
+        } catch (APIConnectionException e) {
+            failure = e;
+            throw e;
+        } catch (APIRequestException e) {
+            failure = e;
+            throw e;
+        } catch (RuntimeException e) {
+            failure = e;
+            throw e;
+        } finally {
+            if (null != _metrics) {
+                record(url, method, wrapper, System.nanoTime() - start, exchange);
+            }
+            if (null != exchange.trace) {
+                exchange.trace.end(wrapper.responseCode, failure);
+            }
+        }
+    }
+
+    /**
+     * Ask the retry policy about the failed attempt.
+     *
+     * @param status status of an error response, 0 if the attempt failed without response
+     * @return milliseconds to wait before the retry, -1 to give up
+     */
+    private long retryDelay(Endpoint endpoint, RequestBody body, ResponseWrapper wrapper, Exchange exchange,
+                            int status, long previousDelay) {
+        // a streamed body may be partly handed to the caller already
+        boolean repeatable = !exchange.decoding && (!exchange.sent || null == body || body.isRepeatable());
+        long serverDelay = -1;
+        if (status == 429 || status == 503) {
+            serverDelay = RetryPolicy.parseRetryAfter(exchange.retryAfter, System.currentTimeMillis());
+            if (serverDelay < 0 && status == 429 && wrapper.rateLimitReset > 0) {
+                serverDelay = wrapper.rateLimitReset * 1000L;
+            }
+        }
+        return _retryPolicy.retryDelay(endpoint, exchange.retries, previousDelay, exchange.sent, repeatable, status,
+                serverDelay);
+    }
+
+    private static void sleep(long millis) throws APIConnectionException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new APIConnectionException("Interrupted while waiting to retry", e);
+        }
+    }
+
+    private void record(String url, RequestMethod method, ResponseWrapper wrapper, long latencyNanos,
+                        Exchange exchange) {
+        try {
+            Endpoint endpoint = Endpoint.of(method.name(), url);
+            int errorCode = null != wrapper.error && null != wrapper.error.error ? wrapper.error.error.code : 0;
+            _metrics.recordCall(endpoint, wrapper.responseCode, errorCode, latencyNanos, exchange.bytesSent,
+                    exchange.bytesReceived, exchange.retries);
+            if (wrapper.rateLimitQuota > 0) {
+                _metrics.recordRateLimit(endpoint.getFamily(), wrapper.rateLimitQuota, wrapper.rateLimitRemaining,
+                        wrapper.rateLimitReset);
+            }
+        } catch (RuntimeException e) {
+            LOG.warn("Failed to record metrics of " + url, e);
+        }
+    }
+
+    /**
+     * Abort the call running on the thread, by closing the connection its request is sent on so that a blocked
+     * read fails at once instead of at the read timeout. The thread must be interrupted first, an interrupted
+     * call is not retried.
+     *
+     * @param thread thread of the call
+     * @return true if a connection was closed
+     */
+    public boolean abort(Thread thread) {
+        HttpConnection conn = _inFlight.get(thread);
+        if (null == conn) {
+            return false;
+        }
+        conn.close();
+        return true;
+    }
+
+    /**
+     * Close the idle connections of the pool.
+     */
+    public void close() {
+        _pool.close();
+    }
+
+    private <T> T _doRequest(String url, RequestBody body, RequestMethod method, ResponseWrapper wrapper,
+                             ResponseBodyHandler<T> handler, Exchange exchange)
+            throws APIConnectionException, APIRequestException, SocketTimeoutException {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Send request - " + method.toString() + " " + url);
+        }
+
+        T result;
+        try {
+            if (body instanceof JsonBody && LOG.isDebugEnabled()) {
+                LOG.debug("Request Content - " + body);
+            } else if (null != body && LOG.isDebugEnabled()) {
+                LOG.debug("Request Content - " + body.getContentType() + ", length " + body.getContentLength());
+            }
+            URL target = new URL(url);
+            result = execute(target, method.name(), body, wrapper, handler, exchange);
+        } catch (SocketTimeoutException e) {
+            if (exchange.sent) {
+                throw new SocketTimeoutException(READ_TIMED_OUT_MESSAGE);
+            }
+            throw e;
+        } catch (IOException e) {
+            LOG.debug(IO_ERROR_MESSAGE, e);
+            throw new APIConnectionException(IO_ERROR_MESSAGE, e);
+        }
+
+        processStatus(wrapper);
+        return result;
+    }
+
+    /**
+     * Send the request on a pooled connection and read the response into the wrapper, a 2xx body goes to
+     * the handler instead if there is one.
+     * A request failed on a reused connection before any response byte is read is sent again once on
+     * a fresh connection if its body is repeatable, the server may have closed the idle connection. Once the
+     * request is written it is sent again only if its endpoint is idempotent, otherwise the failure goes to
+     * the {@link RetryPolicy}: the server may have received it.
+     *
+     * @return result of the handler, null without handler
+     */
+    <T> T execute(URL url, String method, RequestBody body, ResponseWrapper wrapper,
+                  ResponseBodyHandler<T> handler, Exchange exchange) throws IOException {
+        int attempt = 0;
+        while (true) {
+            attempt++;
+            CallTrace trace = exchange.trace;
+            exchange.sent = false;
+            exchange.decoding = false;
+            exchange.retryAfter = null;
+            HttpConnection conn = _pool.lease(url, _proxy, _connectionTimeout, _readTimeout, trace);
+            Thread thread = Thread.currentThread();
+            _inFlight.put(thread, conn);
+            long bytesRead = conn.getBytesRead();
+            long bytesWritten = conn.getBytesWritten();
+            boolean reusable = false;
+            boolean written = false;
+            String statusLine = null;
+            try {
+                long mark = null == trace ? 0 : System.nanoTime();
+                exchange.sent = true;
+                writeRequest(conn, url, method, body);
+                written = true;
+                mark = phase(trace, Phase.REQUEST_WRITE, mark);
+                InputStream in = conn.getInputStream();
+                statusLine = HttpCodec.readLine(in);
+                mark = phase(trace, Phase.TIME_TO_FIRST_BYTE, mark);
+                int status = HttpCodec.parseStatusCode(statusLine);
+                Map<String, String> headers = HttpCodec.readHeaders(in);
+                HttpCodec.ResponseBody responseBody = HttpCodec.openBody(in, method, status, headers);
+                wrapper.responseCode = status;
+                wrapper.setRateLimit(headers.get(RATE_LIMIT_QUOTA), headers.get(RATE_LIMIT_Remaining),
+                        headers.get(RATE_LIMIT_Reset));
+                exchange.retryAfter = headers.get("Retry-After");
+                T result = null;
+                if (null != handler && status >= 200 && status < 300) {
+                    exchange.decoding = true;
+                    result = handler.handle(wrapper, responseBody);
+                    // the rest of the body, so the connection can be reused
+                    skipFully(responseBody);
+                    phase(trace, Phase.DECODE, mark);
+                } else {
+                    wrapper.responseContent = new String(readFully(responseBody), CHARSET);
+                    phase(trace, Phase.BODY_READ, mark);
+                }
+                reusable = responseBody.isComplete() && responseBody.isReusable()
+                        && HttpCodec.isKeepAlive(statusLine, headers);
+                return result;
+            } catch (IOException e) {
+                if (attempt == 1 && conn.isReused() && null == statusLine && !(e instanceof SocketTimeoutException)
+                        && (null == body || body.isRepeatable()) && !thread.isInterrupted()
+                        && (!written || _retryPolicy.isIdempotent(Endpoint.of(method, url.toString())))) {
+                    LOG.debug("Pooled connection was closed by server, send request again - " + conn.getRoute());
+                    exchange.retries++;
+                    continue;
+                }
+                throw e;
+            } finally {
+                exchange.bytesSent += conn.getBytesWritten() - bytesWritten;
+                exchange.bytesReceived += conn.getBytesRead() - bytesRead;
+                _inFlight.remove(thread, conn);
+                _pool.release(conn, reusable);
+            }
+        }
+    }
+
+    /**
+     * Add the phase ended now to the trace, if any.
+     *
+     * @return the end of the phase, start of the next one
+     */
+    private static long phase(CallTrace trace, Phase phase, long start) {
+        if (null == trace) {
+            return 0;
+        }
+        long end = System.nanoTime();
+        trace.phase(phase, start, end);
+        return end;
+    }
+
+    private void writeRequest(HttpConnection conn, URL url, String method, RequestBody body) throws IOException {
+        Map<String, String> headers = new LinkedHashMap<String, String>();
+        int port = ConnectionPool.portOf(url);
+        headers.put("Host", port == url.getDefaultPort() ? url.getHost() : url.getHost() + ":" + port);
+        headers.put("User-Agent", JPUSH_USER_AGENT);
+        headers.put("Connection", "Keep-Alive");
+        headers.put("Accept-Charset", CHARSET);
+        headers.put("Charset", CHARSET);
+        headers.put("Authorization", _authCode);
+        headers.put("Content-Type", null == body ? CONTENT_TYPE_JSON : body.getContentType());
+        if (null != _proxy && _proxy.isAuthenticationNeeded() && "http".equalsIgnoreCase(url.getProtocol())) {
+            headers.put("Proxy-Authorization", _proxy.getProxyAuthorization());
+        }
+        long length = null == body ? 0 : body.getContentLength();
+        if (length >= 0) {
+            if (null != body || "POST".equals(method) || "PUT".equals(method)) {
+                headers.put(HttpCodec.HEADER_CONTENT_LENGTH, String.valueOf(length));
+            }
+        } else {
+            headers.put(HttpCodec.HEADER_TRANSFER_ENCODING, "chunked");
+        }
+
+        OutputStream out = conn.getOutputStream();
+        HttpCodec.writeRequestHead(out, method, requestTarget(url), headers);
+        if (null != body) {
+            if (length >= 0) {
+                HttpCodec.FixedLengthOutput fixed = new HttpCodec.FixedLengthOutput(out, length);
+                body.writeTo(fixed);
+                fixed.finish();
+            } else {
+                HttpCodec.ChunkedOutput chunked = new HttpCodec.ChunkedOutput(out);
+                body.writeTo(chunked);
+                chunked.finish();
+            }
+        }
+        out.flush();
+    }
+
+    private String requestTarget(URL url) {
+        if (null != _proxy && "http".equalsIgnoreCase(url.getProtocol())) {
+            return url.toString();
+        }
+        String file = url.getFile();
+        return file.length() == 0 ? "/" : file;
+    }
+
+    static byte[] readFully(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(READ_BUFFER_SIZE);
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    static void skipFully(InputStream in) throws IOException {
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        while (in.read(buffer) != -1) {
+            // discard
+        }
+    }
+
+    private void processStatus(ResponseWrapper wrapper) throws APIRequestException {
+        int status = wrapper.responseCode;
+        String responseContent = wrapper.responseContent;
+        if (status >= 200 && status < 300) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Succeed to get response OK - responseCode:" + status);
+                LOG.debug("Response Content - " + responseContent);
+            }
+            return;
+        }
+        if (status >= 300 && status < 400) {
+            LOG.warn("Normal response but unexpected - responseCode:" + status + ", responseContent:" + responseContent);
+            return;
+        }
+
+        LOG.warn("Got error response - responseCode:" + status + ", responseContent:" + responseContent);
+        switch (status) {
+            case 400:
+                LOG.error("Your request params is invalid. Please check them according to error message.");
+                wrapper.setErrorObject();
+                break;
+            case 401:
+                LOG.error("Authentication failed! Please check authentication params according to docs.");
+                wrapper.setErrorObject();
+                break;
+            case 403:
+                LOG.error("Request is forbidden! Maybe your appkey is listed in blacklist or your params is invalid.");
+                wrapper.setErrorObject();
+                break;
+            case 404:
+                LOG.error("Request page is not found! Maybe your params is invalid.");
+                wrapper.setErrorObject();
+                break;
+            case 410:
+                LOG.error("Request resource is no longer in service. Please according to notice on official website.");
+                wrapper.setErrorObject();
+                break;
+            case 429:
+                LOG.error("Too many requests! Please review your appkey's request quota.");
+                wrapper.setErrorObject();
+                break;
+            case 500:
+            case 502:
+            case 503:
+            case 504:
+                LOG.error("Seems encountered server error. Maybe JPush is in maintenance? Please retry later.");
+                break;
+            default:
+                LOG.error("Unexpected response.");
+        }
+        throw new APIRequestException(wrapper);
+    }
+
+    /**
+     * What one call took, over its retries.
+     */
+    static class Exchange {
+        int retries;
+        long bytesSent;
+        long bytesReceived;
+        CallTrace trace;
+        // state of the last attempt
+        boolean sent;
+        boolean decoding;
+        String retryAfter;
+    }
+
+    /**
+     * UTF-8 JSON content.
+     */
+    static class JsonBody implements RequestBody {
+
+        final byte[] content;
+        final int offset;
+        final int length;
+
+        JsonBody(byte[] content, int offset, int length) {
+            this.content = content;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public String getContentType() {
+            return CONTENT_TYPE_JSON;
+        }
+
+        @Override
+        public long getContentLength() {
+            return length;
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            out.write(content, offset, length);
+        }
+
+        @Override
+        public String toString() {
+            try {
+                return new String(content, offset, length, CHARSET);
+            } catch (UnsupportedEncodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+}
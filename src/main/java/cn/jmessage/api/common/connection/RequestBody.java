@@ -0,0 +1,27 @@
+package cn.jmessage.api.common.connection;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A request body written straight to the connection, for bodies which are not JSON text, such as a multipart
+ * file upload.
+ */
+public interface RequestBody {
+
+    String getContentType();
+
+    /**
+     * @return length in bytes, sent as Content-Length, or -1 if unknown, the body is then sent chunked
+     */
+    long getContentLength();
+
+    /**
+     * @return true if {@link #writeTo(OutputStream)} can be called again, so a request failed on a stale pooled
+     * connection can be sent again
+     */
+    boolean isRepeatable();
+
+    void writeTo(OutputStream out) throws IOException;
+
+}
@@ -0,0 +1,24 @@
+package cn.jmessage.api.common.connection;
+
+import cn.jiguang.common.resp.ResponseWrapper;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads a successful response body as it arrives, instead of buffering it into
+ * {@link ResponseWrapper#responseContent}.
+ *
+ * @param <T> type of the decoded result
+ */
+public interface ResponseBodyHandler<T> {
+
+    /**
+     * @param wrapper response code and rate limit of the response, without content
+     * @param body    body of the response, the handler does not need to read it to the end or close it
+     * @return the decoded result
+     * @throws IOException read exception
+     */
+    T handle(ResponseWrapper wrapper, InputStream body) throws IOException;
+
+}
@@ -0,0 +1,36 @@
+package cn.jmessage.api.common.connection;
+
+import cn.jiguang.common.connection.IHttpClient;
+import cn.jiguang.common.resp.APIConnectionException;
+import cn.jiguang.common.resp.APIRequestException;
+import cn.jiguang.common.resp.ResponseWrapper;
+
+/**
+ * An {@link IHttpClient} which can hand the response body stream to a {@link ResponseBodyHandler}, and send a
+ * request body already encoded in UTF-8 or streamed by a {@link RequestBody}.
+ * Error responses are still read fully and thrown as {@link APIRequestException}.
+ */
+public interface StreamingHttpClient extends IHttpClient {
+
+    <T> T streamGet(String url, ResponseBodyHandler<T> handler) throws APIConnectionException, APIRequestException;
+
+    /**
+     * POST the UTF-8 bytes from offset to offset + length, the array is not kept after the call returns.
+     */
+    ResponseWrapper sendPost(String url, byte[] content, int offset, int length)
+            throws APIConnectionException, APIRequestException;
+
+    /**
+     * @return false if {@link #sendPost(String, RequestBody)} can not be used, as for a decorator of a client
+     * which is not a StreamingHttpClient, the body has then to be sent another way
+     */
+    boolean canStreamRequestBody();
+
+    /**
+     * POST a body which is written to the connection as it is produced, with its own content type.
+     *
+     * @throws UnsupportedOperationException if {@link #canStreamRequestBody()} is false
+     */
+    ResponseWrapper sendPost(String url, RequestBody body) throws APIConnectionException, APIRequestException;
+
+}
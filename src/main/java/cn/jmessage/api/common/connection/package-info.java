@@ -0,0 +1,4 @@
+/**
+ * HTTP transport with pooled keep-alive connections, shared by the sub clients of one JMessageClient.
+ */
+package cn.jmessage.api.common.connection;
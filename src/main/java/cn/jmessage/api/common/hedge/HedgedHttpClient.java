@@ -0,0 +1,287 @@
+package cn.jmessage.api.common.hedge;
+
+import cn.jiguang.common.connection.IHttpClient;
+import cn.jiguang.common.resp.APIConnectionException;
+import cn.jiguang.common.resp.APIRequestException;
+import cn.jiguang.common.resp.ResponseWrapper;
+import cn.jmessage.api.common.connection.HttpClients;
+import cn.jmessage.api.common.connection.PooledHttpClient;
+import cn.jmessage.api.common.connection.RequestBody;
+import cn.jmessage.api.common.connection.ResponseBodyHandler;
+import cn.jmessage.api.common.connection.StreamingHttpClient;
+import cn.jmessage.api.common.metrics.Endpoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.UnsupportedEncodingException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Wraps an {@link IHttpClient}, a GET call which is not answered within the delay of its {@link HedgingPolicy}
+ * is sent a second time, the first successful response is returned and the other request is cancelled.
+ * <p>
+ * Both requests run on threads of this client while the caller waits. The loser is interrupted, and its
+ * connection is closed if the transport is a {@link PooledHttpClient}, so it neither holds a connection until
+ * its read timeout nor is retried. An error response or a failure of one request waits for the other one, the
+ * call fails only if both do. Streamed GETs, whose handler may already hand elements to the caller, and all
+ * the other methods are sent once, as is.
+ * </p>
+ */
+public class HedgedHttpClient implements StreamingHttpClient {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HedgedHttpClient.class);
+
+    private final IHttpClient _delegate;
+    private final HedgingPolicy _policy;
+    private final PooledHttpClient _transport;
+    private final ExecutorService _executor;
+
+    /**
+     * @param delegate      client which sends the requests.
+     * @param policy        which calls are hedged, and when.
+     * @param transport     client at the end of the delegate chain whose connections are closed to cancel a
+     *                      request, can be null.
+     * @param threadFactory threads which send the requests.
+     */
+    public HedgedHttpClient(IHttpClient delegate, HedgingPolicy policy, PooledHttpClient transport,
+                            ThreadFactory threadFactory) {
+        this._delegate = delegate;
+        this._policy = policy;
+        this._transport = transport;
+        this._executor = Executors.newCachedThreadPool(threadFactory);
+    }
+
+    public IHttpClient getDelegate() {
+        return _delegate;
+    }
+
+    public HedgingPolicy getPolicy() {
+        return _policy;
+    }
+
+    /**
+     * Stop the threads of this client, the delegate is not closed.
+     */
+    public void close() {
+        _executor.shutdown();
+    }
+
+    @Override
+    public ResponseWrapper sendGet(String url) throws APIConnectionException, APIRequestException {
+        Endpoint endpoint = Endpoint.of("GET", url);
+        if (!_policy.isHedged(endpoint)) {
+            return _delegate.sendGet(url);
+        }
+        return hedge(endpoint, url);
+    }
+
+    @Override
+    public ResponseWrapper sendGet(String url, String content) throws APIConnectionException, APIRequestException {
+        if (null == content) {
+            return sendGet(url);
+        }
+        return _delegate.sendGet(url, content);
+    }
+
+    @Override
+    public <T> T streamGet(String url, ResponseBodyHandler<T> handler)
+            throws APIConnectionException, APIRequestException {
+        return HttpClients.sendGet(_delegate, url, handler);
+    }
+
+    @Override
+    public ResponseWrapper sendDelete(String url) throws APIConnectionException, APIRequestException {
+        return _delegate.sendDelete(url);
+    }
+
+    @Override
+    public ResponseWrapper sendDelete(String url, String content) throws APIConnectionException, APIRequestException {
+        return _delegate.sendDelete(url, content);
+    }
+
+    @Override
+    public ResponseWrapper sendPost(String url, String content) throws APIConnectionException, APIRequestException {
+        return _delegate.sendPost(url, content);
+    }
+
+    @Override
+    public ResponseWrapper sendPost(String url, byte[] content, int offset, int length)
+            throws APIConnectionException, APIRequestException {
+        if (_delegate instanceof StreamingHttpClient) {
+            return ((StreamingHttpClient) _delegate).sendPost(url, content, offset, length);
+        }
+        try {
+            return _delegate.sendPost(url, new String(content, offset, length, CHARSET));
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public boolean canStreamRequestBody() {
+        return HttpClients.canStreamRequestBody(_delegate);
+    }
+
+    @Override
+    public ResponseWrapper sendPost(String url, RequestBody body) throws APIConnectionException, APIRequestException {
+        if (!canStreamRequestBody()) {
+            throw new UnsupportedOperationException("Delegate http client can not stream a request body");
+        }
+        return ((StreamingHttpClient) _delegate).sendPost(url, body);
+    }
+
+    @Override
+    public ResponseWrapper sendPut(String url, String content) throws APIConnectionException, APIRequestException {
+        return _delegate.sendPut(url, content);
+    }
+
+    private ResponseWrapper hedge(Endpoint endpoint, String url) throws APIConnectionException, APIRequestException {
+        _policy.callStarted();
+        BlockingQueue<Attempt> completed = new ArrayBlockingQueue<Attempt>(2);
+        Attempt primary = new Attempt(url, completed, false);
+        Attempt hedge = null;
+        int running = 1;
+        Attempt failed = null;
+        try {
+            start(primary);
+            long delay = _policy.hedgeDelay(endpoint);
+            Attempt done = completed.poll(delay, TimeUnit.MILLISECONDS);
+            if (null == done && _policy.tryHedge()) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Hedge " + endpoint + " after " + delay + " ms");
+                }
+                hedge = new Attempt(url, completed, true);
+                start(hedge);
+                running++;
+            }
+            while (running > 0) {
+                if (null == done) {
+                    done = completed.take();
+                }
+                running--;
+                if (null == done.failure) {
+                    _policy.recordSuccess(endpoint, done.endNanos - done.startNanos, done.hedge);
+                    return done.result;
+                }
+                if (null == failed) {
+                    failed = done;
+                }
+                done = null;
+            }
+            throw failed.failure;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new APIConnectionException("Interrupted while waiting for the response", e);
+        } catch (APIConnectionException e) {
+            throw e;
+        } catch (APIRequestException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        } finally {
+            primary.cancel();
+            if (null != hedge) {
+                hedge.cancel();
+            }
+        }
+    }
+
+    private void start(Attempt attempt) {
+        try {
+            _executor.execute(attempt);
+        } catch (RejectedExecutionException e) {
+            attempt.complete(null, new APIConnectionException("Hedged http client is closed", e));
+        }
+    }
+
+    /**
+     * One request of a hedged call.
+     */
+    private class Attempt implements Runnable {
+
+        final String url;
+        final BlockingQueue<Attempt> completed;
+        final boolean hedge;
+        final ReentrantLock lock = new ReentrantLock();
+        Thread runner;
+        boolean cancelled;
+        long startNanos;
+        long endNanos;
+        ResponseWrapper result;
+        Throwable failure;
+
+        Attempt(String url, BlockingQueue<Attempt> completed, boolean hedge) {
+            this.url = url;
+            this.completed = completed;
+            this.hedge = hedge;
+        }
+
+        @Override
+        public void run() {
+            lock.lock();
+            try {
+                if (cancelled) {
+                    return;
+                }
+                runner = Thread.currentThread();
+            } finally {
+                lock.unlock();
+            }
+            startNanos = System.nanoTime();
+            ResponseWrapper wrapper = null;
+            Throwable error = null;
+            try {
+                wrapper = _delegate.sendGet(url);
+            } catch (Throwable e) {
+                error = e;
+            } finally {
+                lock.lock();
+                try {
+                    runner = null;
+                    // clears the interrupt of a cancel, the thread is reused
+                    Thread.interrupted();
+                } finally {
+                    lock.unlock();
+                }
+            }
+            complete(wrapper, error);
+        }
+
+        void complete(ResponseWrapper wrapper, Throwable error) {
+            endNanos = System.nanoTime();
+            result = wrapper;
+            failure = error;
+            completed.offer(this);
+        }
+
+        /**
+         * Interrupt the request if it is still running, the caller does not wait for it anymore.
+         */
+        void cancel() {
+            lock.lock();
+            try {
+                cancelled = true;
+                if (null != runner) {
+                    runner.interrupt();
+                    if (null != _transport) {
+                        _transport.abort(runner);
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,226 @@
+package cn.jmessage.api.common.hedge;
+
+import cn.jiguang.common.utils.Preconditions;
+import cn.jmessage.api.common.metrics.Endpoint;
+import cn.jmessage.api.common.metrics.LatencyHistogram;
+import cn.jmessage.api.common.retry.RetryBudget;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides which GET calls are hedged, and how long a call waits for its response before a second request
+ * is sent on another connection.
+ * <p>
+ * The delay of an endpoint is a percentile of its observed latency, p95 by default, so that only the slowest
+ * calls are hedged; until enough calls are observed a fixed delay is used. Hedges withdraw from a budget,
+ * 5% of the calls by default, so that hedging can not multiply the load on a slow server. Only GET requests
+ * without body are hedged, never a POST such as sendMessage or createGroup.
+ * </p>
+ */
+public class HedgingPolicy {
+
+    private final long delayMillis;
+    private final double delayPercentile;
+    private final long minDelayMillis;
+    private final int minSamples;
+    private final RetryBudget budget;
+    private final Set<Endpoint> excluded;
+    private final ConcurrentMap<Endpoint, LatencyHistogram> latencies =
+            new ConcurrentHashMap<Endpoint, LatencyHistogram>();
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong budgetExhausted = new AtomicLong();
+
+    private HedgingPolicy(Builder builder) {
+        this.delayMillis = builder.delayMillis;
+        this.delayPercentile = builder.delayPercentile;
+        this.minDelayMillis = builder.minDelayMillis;
+        this.minSamples = builder.minSamples;
+        this.budget = new RetryBudget(builder.budgetRatio, builder.budgetMinHedges);
+        this.excluded = new HashSet<Endpoint>(builder.excluded);
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * @return true if the calls of the endpoint may be hedged
+     */
+    public boolean isHedged(Endpoint endpoint) {
+        return "GET".equals(endpoint.getMethod()) && !excluded.contains(endpoint);
+    }
+
+    /**
+     * A hedged call starts, deposits in the budget.
+     */
+    public void callStarted() {
+        calls.incrementAndGet();
+        budget.deposit();
+    }
+
+    /**
+     * @return milliseconds to wait for the response before the call is hedged
+     */
+    public long hedgeDelay(Endpoint endpoint) {
+        if (delayPercentile <= 0) {
+            return delayMillis;
+        }
+        LatencyHistogram histogram = latencies.get(endpoint);
+        if (null == histogram || histogram.getCount() < minSamples) {
+            return delayMillis;
+        }
+        return Math.max(minDelayMillis, TimeUnit.NANOSECONDS.toMillis(histogram.getPercentile(delayPercentile)));
+    }
+
+    /**
+     * Take a hedge from the budget.
+     *
+     * @return false if the budget is exhausted and the call should not be hedged
+     */
+    public boolean tryHedge() {
+        if (!budget.tryWithdraw()) {
+            budgetExhausted.incrementAndGet();
+            return false;
+        }
+        hedges.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * A hedged call succeeded.
+     *
+     * @param latencyNanos time the winning request took
+     * @param hedgeWon     true if the hedge responded first
+     */
+    public void recordSuccess(Endpoint endpoint, long latencyNanos, boolean hedgeWon) {
+        LatencyHistogram histogram = latencies.get(endpoint);
+        if (null == histogram) {
+            histogram = new LatencyHistogram();
+            LatencyHistogram existing = latencies.putIfAbsent(endpoint, histogram);
+            if (null != existing) {
+                histogram = existing;
+            }
+        }
+        histogram.record(latencyNanos);
+        if (hedgeWon) {
+            hedgeWins.incrementAndGet();
+        }
+    }
+
+    public long getDelayMillis() {
+        return delayMillis;
+    }
+
+    public double getDelayPercentile() {
+        return delayPercentile;
+    }
+
+    public RetryBudget getBudget() {
+        return budget;
+    }
+
+    public long getCallCount() {
+        return calls.get();
+    }
+
+    /**
+     * @return second requests sent
+     */
+    public long getHedgeCount() {
+        return hedges.get();
+    }
+
+    /**
+     * @return calls answered by the second request first
+     */
+    public long getHedgeWinCount() {
+        return hedgeWins.get();
+    }
+
+    /**
+     * @return calls not hedged because the budget was exhausted
+     */
+    public long getBudgetExhaustedCount() {
+        return budgetExhausted.get();
+    }
+
+    @Override
+    public String toString() {
+        return "calls: " + calls.get() + ", hedges: " + hedges.get() + ", hedge wins: " + hedgeWins.get()
+                + ", budget exhausted: " + budgetExhausted.get();
+    }
+
+    public static class Builder {
+
+        private long delayMillis = 100;
+        private double delayPercentile = 95;
+        private long minDelayMillis = 10;
+        private int minSamples = 20;
+        private double budgetRatio = 0.05;
+        private int budgetMinHedges = 10;
+        private final Set<Endpoint> excluded = new HashSet<Endpoint>();
+
+        /**
+         * Delay before hedging while fewer than the min samples of an endpoint are observed, or always if the
+         * percentile is 0, default is 100 milliseconds.
+         */
+        public Builder setDelay(long delayMillis) {
+            this.delayMillis = delayMillis;
+            return this;
+        }
+
+        /**
+         * Hedge the calls slower than this percentile of the latency of their endpoint, default is 95, 0 always
+         * waits the fixed delay.
+         *
+         * @param percentile from 0 to 100
+         * @param minDelayMillis the delay is never shorter, default is 10
+         * @param minSamples calls of an endpoint observed before its percentile is used, default is 20
+         */
+        public Builder setDelayPercentile(double percentile, long minDelayMillis, int minSamples) {
+            this.delayPercentile = percentile;
+            this.minDelayMillis = minDelayMillis;
+            this.minSamples = minSamples;
+            return this;
+        }
+
+        /**
+         * Hedges allowed per call and in a burst, default is 0.05 and 10, see {@link RetryBudget}.
+         */
+        public Builder setBudget(double ratio, int minHedges) {
+            this.budgetRatio = ratio;
+            this.budgetMinHedges = minHedges;
+            return this;
+        }
+
+        /**
+         * Never hedge the GET calls of an endpoint.
+         *
+         * @param path path of the endpoint, such as "/v1/users/{username}"
+         */
+        public Builder exclude(String path) {
+            excluded.add(Endpoint.of("GET", path));
+            return this;
+        }
+
+        public HedgingPolicy build() {
+            Preconditions.checkArgument(delayMillis >= 0, "delayMillis should not less than 0");
+            Preconditions.checkArgument(delayPercentile >= 0 && delayPercentile <= 100,
+                    "delayPercentile should between 0 and 100");
+            Preconditions.checkArgument(minDelayMillis >= 0, "minDelayMillis should not less than 0");
+            Preconditions.checkArgument(minSamples >= 1, "minSamples should more than 0");
+            Preconditions.checkArgument(budgetRatio >= 0 && budgetRatio <= 1, "budget ratio should between 0 and 1");
+            Preconditions.checkArgument(budgetMinHedges >= 1, "budget minHedges should more than 0");
+            return new HedgingPolicy(this);
+        }
+    }
+
+}
@@ -0,0 +1,4 @@
+/**
+ * Hedged requests: a slow idempotent GET is sent again and the first response wins.
+ */
+package cn.jmessage.api.common.hedge;
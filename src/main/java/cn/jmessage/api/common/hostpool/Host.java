@@ -0,0 +1,160 @@
+package cn.jmessage.api.common.hostpool;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * One host of a {@link HostPool}, with its calls in flight, moving average of latency and ejection state.
+ */
+public class Host {
+
+    // weight of the latest latency in the moving average
+    private static final double EWMA_ALPHA = 0.3;
+
+    private final String baseUrl;
+    private final AtomicInteger outstanding = new AtomicInteger();
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final ReentrantLock lock = new ReentrantLock();
+    // -1 until the first call completes
+    private double ewmaNanos = -1;
+    private int consecutiveFailures;
+    private int ejections;
+    private long ejectedUntilMillis;
+    private volatile boolean healthy = true;
+
+    Host(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    /**
+     * @return calls sent to this host and not completed yet
+     */
+    public int getOutstanding() {
+        return outstanding.get();
+    }
+
+    /**
+     * @return moving average of the latency in milliseconds, -1 if no call completed yet
+     */
+    public double getEwmaMillis() {
+        lock.lock();
+        try {
+            return ewmaNanos < 0 ? -1 : ewmaNanos / TimeUnit.MILLISECONDS.toNanos(1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return false if the last probe could not connect to the host
+     */
+    public boolean isHealthy() {
+        return healthy;
+    }
+
+    public boolean isEjected() {
+        return isEjected(System.currentTimeMillis());
+    }
+
+    /**
+     * @return times the host was ejected for consecutive failures
+     */
+    public int getEjectionCount() {
+        lock.lock();
+        try {
+            return ejections;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getCallCount() {
+        return calls.get();
+    }
+
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    @Override
+    public String toString() {
+        return baseUrl + " outstanding: " + outstanding.get() + ", ewma: " + getEwmaMillis() + "ms, healthy: "
+                + healthy + ", ejected: " + isEjected();
+    }
+
+    boolean isAvailable(long nowMillis) {
+        return healthy && !isEjected(nowMillis);
+    }
+
+    boolean isEjected(long nowMillis) {
+        lock.lock();
+        try {
+            return nowMillis < ejectedUntilMillis;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return cost of a new call for the selection, lower is better
+     */
+    double cost(HostPoolPolicy.Selection selection) {
+        int inFlight = outstanding.get();
+        if (selection == HostPoolPolicy.Selection.LEAST_OUTSTANDING) {
+            return inFlight;
+        }
+        lock.lock();
+        try {
+            // a host without latency yet is tried first
+            return Math.max(0, ewmaNanos) * (inFlight + 1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void callStarted() {
+        outstanding.incrementAndGet();
+        calls.incrementAndGet();
+    }
+
+    /**
+     * @return failures in a row, 0 after a success
+     */
+    int callEnded(long latencyNanos, boolean failed) {
+        outstanding.decrementAndGet();
+        if (failed) {
+            failures.incrementAndGet();
+        }
+        lock.lock();
+        try {
+            ewmaNanos = ewmaNanos < 0 ? latencyNanos : EWMA_ALPHA * latencyNanos + (1 - EWMA_ALPHA) * ewmaNanos;
+            consecutiveFailures = failed ? consecutiveFailures + 1 : 0;
+            return consecutiveFailures;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void eject(long nowMillis, long baseEjectionMillis) {
+        lock.lock();
+        try {
+            ejections++;
+            ejectedUntilMillis = nowMillis + baseEjectionMillis * Math.min(ejections, 10);
+            consecutiveFailures = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void setHealthy(boolean healthy) {
+        this.healthy = healthy;
+    }
+
+}
@@ -0,0 +1,167 @@
+package cn.jmessage.api.common.hostpool;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The hosts serving one base url, such as the API or the report host of the config.
+ * <p>
+ * A call goes to the available host of lowest cost by the {@link HostPoolPolicy.Selection}; a host is not
+ * available while it is ejected for consecutive failures or its last probe failed. If no host is available the
+ * call goes to the best of all of them, a pool never refuses a call.
+ * </p>
+ */
+public class HostPool {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HostPool.class);
+
+    private final String baseUrl;
+    private final List<Host> hosts;
+    private final HostPoolPolicy policy;
+    private final int maxEjected;
+
+    /**
+     * @param baseUrl  base url the clients build the requests of the pool on
+     * @param hostUrls base urls of the hosts
+     * @param policy   selection, ejection and probes
+     */
+    public HostPool(String baseUrl, List<String> hostUrls, HostPoolPolicy policy) {
+        this.baseUrl = baseUrl;
+        List<Host> list = new ArrayList<Host>(hostUrls.size());
+        for (String hostUrl : hostUrls) {
+            list.add(new Host(hostUrl));
+        }
+        this.hosts = Collections.unmodifiableList(list);
+        this.policy = policy;
+        this.maxEjected = hosts.size() * policy.getMaxEjectionPercent() / 100;
+    }
+
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public List<Host> getHosts() {
+        return hosts;
+    }
+
+    /**
+     * @return true if the url is built on the base url of this pool
+     */
+    public boolean matches(String url) {
+        return url.startsWith(baseUrl) && (url.length() == baseUrl.length() || url.charAt(baseUrl.length()) == '/'
+                || url.charAt(baseUrl.length()) == '?');
+    }
+
+    /**
+     * @return the url with the base url of this pool replaced by the one of the host
+     */
+    public String rewrite(String url, Host host) {
+        return host.getBaseUrl() + url.substring(baseUrl.length());
+    }
+
+    /**
+     * Select the host of a call.
+     *
+     * @param excluded hosts the call already failed on
+     * @return the host, null if every host is excluded
+     */
+    public Host select(Collection<Host> excluded) {
+        long now = System.currentTimeMillis();
+        Host best = select(excluded, now, true);
+        return null != best ? best : select(excluded, now, false);
+    }
+
+    private Host select(Collection<Host> excluded, long now, boolean availableOnly) {
+        Host best = null;
+        double bestCost = Double.MAX_VALUE;
+        // a random start spreads the calls among hosts of equal cost
+        int start = ThreadLocalRandom.current().nextInt(hosts.size());
+        for (int i = 0; i < hosts.size(); i++) {
+            Host host = hosts.get((start + i) % hosts.size());
+            if (excluded.contains(host) || (availableOnly && !host.isAvailable(now))) {
+                continue;
+            }
+            double cost = host.cost(policy.getSelection());
+            if (cost < bestCost) {
+                best = host;
+                bestCost = cost;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * A call to the host completed.
+     *
+     * @param failed true for a connection failure or a 5xx response
+     */
+    public void callEnded(Host host, long latencyNanos, boolean failed) {
+        int consecutiveFailures = host.callEnded(latencyNanos, failed);
+        if (consecutiveFailures < policy.getEjectionConsecutiveFailures()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        int ejected = 0;
+        for (Host h : hosts) {
+            if (h.isEjected(now)) {
+                ejected++;
+            }
+        }
+        if (ejected < maxEjected && !host.isEjected(now)) {
+            host.eject(now, policy.getBaseEjectionMillis());
+            LOG.warn("Eject " + host.getBaseUrl() + " after " + consecutiveFailures + " consecutive failures");
+        }
+    }
+
+    /**
+     * Probe every host by opening a TCP connection.
+     */
+    public void probe() {
+        for (Host host : hosts) {
+            boolean healthy = probe(host);
+            if (healthy != host.isHealthy()) {
+                LOG.info("Probe of " + host.getBaseUrl() + (healthy ? " succeeded" : " failed"));
+            }
+            host.setHealthy(healthy);
+        }
+    }
+
+    private boolean probe(Host host) {
+        Socket socket = new Socket();
+        try {
+            URL url = new URL(host.getBaseUrl());
+            int port = url.getPort() == -1 ? url.getDefaultPort() : url.getPort();
+            socket.connect(new InetSocketAddress(url.getHost(), port), policy.getProbeTimeoutMillis());
+            return true;
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException(e);
+        } catch (IOException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Probe of " + host.getBaseUrl() + " failed - " + e);
+            }
+            return false;
+        } finally {
+            try {
+                socket.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return baseUrl + " " + hosts;
+    }
+
+}
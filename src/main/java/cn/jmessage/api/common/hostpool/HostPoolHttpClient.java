@@ -0,0 +1,284 @@
+package cn.jmessage.api.common.hostpool;
+
+import cn.jiguang.common.connection.IHttpClient;
+import cn.jiguang.common.resp.APIConnectionException;
+import cn.jiguang.common.resp.APIRequestException;
+import cn.jiguang.common.resp.ResponseWrapper;
+import cn.jmessage.api.common.async.VirtualThreads;
+import cn.jmessage.api.common.connection.HttpClients;
+import cn.jmessage.api.common.connection.RequestBody;
+import cn.jmessage.api.common.connection.ResponseBodyHandler;
+import cn.jmessage.api.common.connection.StreamingHttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.UnsupportedEncodingException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Wraps an {@link IHttpClient}, a call built on the API or report base url of the config is sent to a host
+ * selected from the {@link HostPool} of that url, and fails over to another host if it failed before its
+ * request was sent, or if it is idempotent (GET, PUT, DELETE but not a streamed GET) and failed by timeout,
+ * IO error or 5xx.
+ * Other calls are sent as is.
+ * <p>
+ * The probes start with the first call, on a daemon thread stopped by {@link #close()}.
+ * </p>
+ */
+public class HostPoolHttpClient implements StreamingHttpClient {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HostPoolHttpClient.class);
+
+    private final IHttpClient _delegate;
+    private final HostPoolPolicy _policy;
+    private final List<HostPool> _pools;
+    private final AtomicBoolean _probing = new AtomicBoolean();
+    private volatile ScheduledExecutorService _prober;
+    private volatile boolean _closed;
+
+    /**
+     * @param delegate      client which sends the requests.
+     * @param policy        hosts of the pools, selection, ejection and probes.
+     * @param apiBaseUrl    base url the clients build the API requests on.
+     * @param reportBaseUrl base url the clients build the report requests on.
+     */
+    public HostPoolHttpClient(IHttpClient delegate, HostPoolPolicy policy, String apiBaseUrl, String reportBaseUrl) {
+        this._delegate = delegate;
+        this._policy = policy;
+        List<HostPool> pools = new ArrayList<HostPool>(2);
+        if (!policy.getApiHosts().isEmpty()) {
+            pools.add(new HostPool(apiBaseUrl, policy.getApiHosts(), policy));
+        }
+        if (!policy.getReportHosts().isEmpty()) {
+            pools.add(new HostPool(reportBaseUrl, policy.getReportHosts(), policy));
+        }
+        this._pools = Collections.unmodifiableList(pools);
+    }
+
+    public IHttpClient getDelegate() {
+        return _delegate;
+    }
+
+    public List<HostPool> getHostPools() {
+        return _pools;
+    }
+
+    /**
+     * Stop the probes, the delegate is not closed.
+     */
+    public void close() {
+        _closed = true;
+        ScheduledExecutorService prober = _prober;
+        if (null != prober) {
+            prober.shutdownNow();
+        }
+    }
+
+    @Override
+    public ResponseWrapper sendGet(String url) throws APIConnectionException, APIRequestException {
+        return sendGet(url, null);
+    }
+
+    @Override
+    public ResponseWrapper sendGet(String url, final String content)
+            throws APIConnectionException, APIRequestException {
+        return execute(url, "GET", true, new Call<ResponseWrapper>() {
+            @Override
+            public ResponseWrapper execute(String target) throws APIConnectionException, APIRequestException {
+                return null == content ? _delegate.sendGet(target) : _delegate.sendGet(target, content);
+            }
+        });
+    }
+
+    @Override
+    public <T> T streamGet(String url, final ResponseBodyHandler<T> handler)
+            throws APIConnectionException, APIRequestException {
+        return execute(url, "GET", false, new Call<T>() {
+            @Override
+            public T execute(String target) throws APIConnectionException, APIRequestException {
+                return HttpClients.sendGet(_delegate, target, handler);
+            }
+        });
+    }
+
+    @Override
+    public ResponseWrapper sendDelete(String url) throws APIConnectionException, APIRequestException {
+        return sendDelete(url, null);
+    }
+
+    @Override
+    public ResponseWrapper sendDelete(String url, final String content)
+            throws APIConnectionException, APIRequestException {
+        return execute(url, "DELETE", true, new Call<ResponseWrapper>() {
+            @Override
+            public ResponseWrapper execute(String target) throws APIConnectionException, APIRequestException {
+                return null == content ? _delegate.sendDelete(target) : _delegate.sendDelete(target, content);
+            }
+        });
+    }
+
+    @Override
+    public ResponseWrapper sendPost(String url, final String content)
+            throws APIConnectionException, APIRequestException {
+        return execute(url, "POST", false, new Call<ResponseWrapper>() {
+            @Override
+            public ResponseWrapper execute(String target) throws APIConnectionException, APIRequestException {
+                return _delegate.sendPost(target, content);
+            }
+        });
+    }
+
+    @Override
+    public ResponseWrapper sendPost(String url, final byte[] content, final int offset, final int length)
+            throws APIConnectionException, APIRequestException {
+        return execute(url, "POST", false, new Call<ResponseWrapper>() {
+            @Override
+            public ResponseWrapper execute(String target) throws APIConnectionException, APIRequestException {
+                if (_delegate instanceof StreamingHttpClient) {
+                    return ((StreamingHttpClient) _delegate).sendPost(target, content, offset, length);
+                }
+                try {
+                    return _delegate.sendPost(target, new String(content, offset, length, CHARSET));
+                } catch (UnsupportedEncodingException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+    }
+
+    @Override
+    public boolean canStreamRequestBody() {
+        return HttpClients.canStreamRequestBody(_delegate);
+    }
+
+    @Override
+    public ResponseWrapper sendPost(String url, final RequestBody body)
+            throws APIConnectionException, APIRequestException {
+        if (!canStreamRequestBody()) {
+            throw new UnsupportedOperationException("Delegate http client can not stream a request body");
+        }
+        return execute(url, "POST", false, new Call<ResponseWrapper>() {
+            @Override
+            public ResponseWrapper execute(String target) throws APIConnectionException, APIRequestException {
+                return ((StreamingHttpClient) _delegate).sendPost(target, body);
+            }
+        });
+    }
+
+    @Override
+    public ResponseWrapper sendPut(String url, final String content)
+            throws APIConnectionException, APIRequestException {
+        return execute(url, "PUT", true, new Call<ResponseWrapper>() {
+            @Override
+            public ResponseWrapper execute(String target) throws APIConnectionException, APIRequestException {
+                return _delegate.sendPut(target, content);
+            }
+        });
+    }
+
+    /**
+     * @param idempotent false if the call can not be sent to another host once its request is sent, as a POST
+     *                   or a streamed GET whose handler may already hand elements to the caller
+     */
+    private <T> T execute(String url, String method, boolean idempotent, Call<T> call)
+            throws APIConnectionException, APIRequestException {
+        HostPool pool = poolOf(url);
+        if (null == pool) {
+            return call.execute(url);
+        }
+        startProbes();
+        List<Host> tried = new ArrayList<Host>(2);
+        while (true) {
+            Host host = pool.select(tried);
+            tried.add(host);
+            boolean failover = tried.size() <= _policy.getMaxFailovers() && tried.size() < pool.getHosts().size();
+            host.callStarted();
+            long start = System.nanoTime();
+            try {
+                T result = call.execute(pool.rewrite(url, host));
+                pool.callEnded(host, System.nanoTime() - start, false);
+                return result;
+            } catch (APIRequestException e) {
+                boolean failed = e.getStatus() >= 500;
+                pool.callEnded(host, System.nanoTime() - start, failed);
+                if (!failed || !idempotent || !failover) {
+                    throw e;
+                }
+                LOG.info("Fail over " + method + " " + url + " from " + host.getBaseUrl() + " - " + e.getStatus());
+            } catch (APIConnectionException e) {
+                pool.callEnded(host, System.nanoTime() - start, true);
+                if (!(idempotent || isNotSent(e)) || !failover || Thread.currentThread().isInterrupted()) {
+                    throw e;
+                }
+                LOG.info("Fail over " + method + " " + url + " from " + host.getBaseUrl() + " - " + e.getMessage());
+            } catch (RuntimeException e) {
+                pool.callEnded(host, System.nanoTime() - start, false);
+                throw e;
+            }
+        }
+    }
+
+    private HostPool poolOf(String url) {
+        for (HostPool pool : _pools) {
+            if (pool.matches(url)) {
+                return pool;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return true if the request failed before it reached the server
+     */
+    private static boolean isNotSent(APIConnectionException e) {
+        if (CONNECT_TIMED_OUT_MESSAGE.equals(e.getMessage())) {
+            return true;
+        }
+        for (Throwable cause = e.getCause(); null != cause; cause = cause.getCause()) {
+            if (cause instanceof ConnectException || cause instanceof UnknownHostException
+                    || cause instanceof NoRouteToHostException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void startProbes() {
+        if (_policy.getProbeIntervalMillis() <= 0 || _closed || !_probing.compareAndSet(false, true)) {
+            return;
+        }
+        ScheduledExecutorService prober = Executors.newSingleThreadScheduledExecutor(
+                VirtualThreads.newThreadFactory("jmessage-host-probe", false));
+        long interval = _policy.getProbeIntervalMillis();
+        prober.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                for (HostPool pool : _pools) {
+                    try {
+                        pool.probe();
+                    } catch (RuntimeException e) {
+                        LOG.warn("Probe of " + pool.getBaseUrl() + " failed", e);
+                    }
+                }
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+        _prober = prober;
+        if (_closed) {
+            prober.shutdownNow();
+        }
+    }
+
+    private interface Call<T> {
+        T execute(String target) throws APIConnectionException, APIRequestException;
+    }
+
+}
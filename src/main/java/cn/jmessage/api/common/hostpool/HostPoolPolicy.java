@@ -0,0 +1,200 @@
+package cn.jmessage.api.common.hostpool;
+
+import cn.jiguang.common.utils.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Hosts the API and report calls are spread over, and how a host is selected, ejected and probed.
+ * <p>
+ * The base url of the config, {@link cn.jmessage.api.common.JMessageConfig#API_HOST_NAME} or
+ * {@link cn.jmessage.api.common.JMessageConfig#API_REPORT_HOST_NAME}, stays the url the clients build their
+ * requests on; it is replaced by the host selected for each call.
+ * </p>
+ */
+public class HostPoolPolicy {
+
+    /**
+     * How the host of a call is chosen among the available ones.
+     */
+    public enum Selection {
+        /**
+         * The host with the fewest calls in flight.
+         */
+        LEAST_OUTSTANDING,
+        /**
+         * The host with the lowest moving average of latency, weighted by its calls in flight.
+         */
+        EWMA_LATENCY
+    }
+
+    private final List<String> apiHosts;
+    private final List<String> reportHosts;
+    private final Selection selection;
+    private final int ejectionConsecutiveFailures;
+    private final long baseEjectionMillis;
+    private final int maxEjectionPercent;
+    private final long probeIntervalMillis;
+    private final int probeTimeoutMillis;
+    private final int maxFailovers;
+
+    private HostPoolPolicy(Builder builder) {
+        this.apiHosts = Collections.unmodifiableList(new ArrayList<String>(builder.apiHosts));
+        this.reportHosts = Collections.unmodifiableList(new ArrayList<String>(builder.reportHosts));
+        this.selection = builder.selection;
+        this.ejectionConsecutiveFailures = builder.ejectionConsecutiveFailures;
+        this.baseEjectionMillis = builder.baseEjectionMillis;
+        this.maxEjectionPercent = builder.maxEjectionPercent;
+        this.probeIntervalMillis = builder.probeIntervalMillis;
+        this.probeTimeoutMillis = builder.probeTimeoutMillis;
+        this.maxFailovers = builder.maxFailovers;
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * @return base urls of the API hosts, empty if the API calls are not pooled
+     */
+    public List<String> getApiHosts() {
+        return apiHosts;
+    }
+
+    /**
+     * @return base urls of the report hosts, empty if the report calls are not pooled
+     */
+    public List<String> getReportHosts() {
+        return reportHosts;
+    }
+
+    public Selection getSelection() {
+        return selection;
+    }
+
+    public int getEjectionConsecutiveFailures() {
+        return ejectionConsecutiveFailures;
+    }
+
+    public long getBaseEjectionMillis() {
+        return baseEjectionMillis;
+    }
+
+    public int getMaxEjectionPercent() {
+        return maxEjectionPercent;
+    }
+
+    public long getProbeIntervalMillis() {
+        return probeIntervalMillis;
+    }
+
+    public int getProbeTimeoutMillis() {
+        return probeTimeoutMillis;
+    }
+
+    public int getMaxFailovers() {
+        return maxFailovers;
+    }
+
+    public static class Builder {
+
+        private List<String> apiHosts = Collections.emptyList();
+        private List<String> reportHosts = Collections.emptyList();
+        private Selection selection = Selection.EWMA_LATENCY;
+        private int ejectionConsecutiveFailures = 5;
+        private long baseEjectionMillis = 30 * 1000;
+        private int maxEjectionPercent = 50;
+        private long probeIntervalMillis = 10 * 1000;
+        private int probeTimeoutMillis = 1000;
+        private int maxFailovers = 2;
+
+        /**
+         * Base urls of the API gateways, such as "https://im-gw1.example.com".
+         */
+        public Builder setApiHosts(String... baseUrls) {
+            this.apiHosts = Arrays.asList(baseUrls);
+            return this;
+        }
+
+        /**
+         * Base urls of the report gateways.
+         */
+        public Builder setReportHosts(String... baseUrls) {
+            this.reportHosts = Arrays.asList(baseUrls);
+            return this;
+        }
+
+        /**
+         * Default is {@link Selection#EWMA_LATENCY}.
+         */
+        public Builder setSelection(Selection selection) {
+            this.selection = selection;
+            return this;
+        }
+
+        /**
+         * A host failing this many calls in a row, by connection failure or 5xx, is ejected from the pool
+         * for the base time multiplied by the times it was ejected. At most this percent of the hosts are
+         * ejected at the same time. Default is 5, 30 seconds and 50%.
+         */
+        public Builder setEjection(int consecutiveFailures, long baseEjectionMillis, int maxEjectionPercent) {
+            this.ejectionConsecutiveFailures = consecutiveFailures;
+            this.baseEjectionMillis = baseEjectionMillis;
+            this.maxEjectionPercent = maxEjectionPercent;
+            return this;
+        }
+
+        /**
+         * Every interval each host is probed by opening a TCP connection, a host which can not be connected is
+         * not selected until a probe succeeds. Default is 10 seconds and 1 second, an interval of 0 disables
+         * the probes.
+         */
+        public Builder setProbe(long intervalMillis, int timeoutMillis) {
+            this.probeIntervalMillis = intervalMillis;
+            this.probeTimeoutMillis = timeoutMillis;
+            return this;
+        }
+
+        /**
+         * Other hosts a failed call is sent to, default is 2. A call fails over when its request could not
+         * be sent, or when it is idempotent and failed by timeout, IO error or 5xx, once the retries of the
+         * {@link cn.jmessage.api.common.retry.RetryPolicy} on its host are spent.
+         */
+        public Builder setMaxFailovers(int maxFailovers) {
+            this.maxFailovers = maxFailovers;
+            return this;
+        }
+
+        public HostPoolPolicy build() {
+            Preconditions.checkArgument(null != apiHosts && null != reportHosts, "hosts should not be null");
+            Preconditions.checkArgument(!apiHosts.isEmpty() || !reportHosts.isEmpty(),
+                    "apiHosts or reportHosts should not be empty");
+            for (String host : apiHosts) {
+                checkBaseUrl(host);
+            }
+            for (String host : reportHosts) {
+                checkBaseUrl(host);
+            }
+            Preconditions.checkArgument(null != selection, "selection should not be null");
+            Preconditions.checkArgument(ejectionConsecutiveFailures > 0,
+                    "ejection consecutiveFailures should more than 0");
+            Preconditions.checkArgument(baseEjectionMillis >= 0, "baseEjectionMillis should not less than 0");
+            Preconditions.checkArgument(maxEjectionPercent >= 0 && maxEjectionPercent <= 100,
+                    "maxEjectionPercent should between 0 and 100");
+            Preconditions.checkArgument(probeIntervalMillis >= 0, "probe intervalMillis should not less than 0");
+            Preconditions.checkArgument(probeTimeoutMillis > 0, "probe timeoutMillis should more than 0");
+            Preconditions.checkArgument(maxFailovers >= 0, "maxFailovers should not less than 0");
+            return new HostPoolPolicy(this);
+        }
+
+        private static void checkBaseUrl(String baseUrl) {
+            Preconditions.checkArgument(null != baseUrl
+                    && (baseUrl.startsWith("http://") || baseUrl.startsWith("https://"))
+                    && !baseUrl.endsWith("/"), "host should be an http(s) url without trailing slash: " + baseUrl);
+        }
+    }
+
+}
@@ -0,0 +1,4 @@
+/**
+ * Pools of API and report hosts: selection by latency or outstanding requests, outlier ejection and probes.
+ */
+package cn.jmessage.api.common.hostpool;
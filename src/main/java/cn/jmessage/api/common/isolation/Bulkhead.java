@@ -0,0 +1,83 @@
+package cn.jmessage.api.common.isolation;
+
+import cn.jiguang.common.utils.Preconditions;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the concurrent calls of one family, so that slow calls of the family can not hold every thread and
+ * connection of the client.
+ */
+public class Bulkhead {
+
+    private final CallFamily family;
+    private final int maxConcurrentCalls;
+    private final long maxWaitMillis;
+    private final Semaphore permits;
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param family             the family
+     * @param maxConcurrentCalls calls of the family in flight at the same time
+     * @param maxWaitMillis      how long a call waits for a free slot before it is rejected, 0 to reject at once
+     */
+    public Bulkhead(CallFamily family, int maxConcurrentCalls, long maxWaitMillis) {
+        Preconditions.checkArgument(maxConcurrentCalls > 0, "maxConcurrentCalls should more than 0");
+        Preconditions.checkArgument(maxWaitMillis >= 0, "maxWaitMillis should not less than 0");
+        this.family = family;
+        this.maxConcurrentCalls = maxConcurrentCalls;
+        this.maxWaitMillis = maxWaitMillis;
+        this.permits = new Semaphore(maxConcurrentCalls);
+    }
+
+    /**
+     * Take a slot, give it back by {@link #release()} when the call is done.
+     *
+     * @throws CallRejectedException no slot was free in time
+     */
+    public void acquire() throws CallRejectedException {
+        boolean acquired;
+        try {
+            acquired = maxWaitMillis == 0 ? permits.tryAcquire()
+                    : permits.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            rejected.incrementAndGet();
+            throw new CallRejectedException(family, CallRejectedException.Reason.BULKHEAD_FULL, 0);
+        }
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public CallFamily getFamily() {
+        return family;
+    }
+
+    public int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    /**
+     * @return calls in flight
+     */
+    public int getActiveCount() {
+        return maxConcurrentCalls - permits.availablePermits();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    @Override
+    public String toString() {
+        return family + " active: " + getActiveCount() + "/" + maxConcurrentCalls + ", rejected: " + rejected.get();
+    }
+
+}
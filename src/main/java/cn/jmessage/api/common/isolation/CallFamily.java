@@ -0,0 +1,53 @@
+package cn.jmessage.api.common.isolation;
+
+import cn.jmessage.api.common.ratelimit.ApiFamily;
+
+/**
+ * Group of APIs isolated from the others by their own bulkhead and circuit breaker.
+ */
+public enum CallFamily {
+
+    /** /v1/users, /v1/admins, /v1/cross/users */
+    USER,
+    /** /v1/groups, /v1/cross/groups */
+    GROUP,
+    /** /v1/messages */
+    MESSAGE,
+    /** /v1/chatroom */
+    CHATROOM,
+    /** /v1/resource, uploads and downloads */
+    RESOURCE,
+    /** every /v2 API on the report host */
+    REPORT,
+    /** sensitive word and other APIs */
+    OTHER;
+
+    /**
+     * The {@link ApiFamily} of the url, with the chat room and resource APIs split out of {@link ApiFamily#OTHER}.
+     *
+     * @param url request url, with or without scheme and host
+     * @return the family of the API
+     */
+    public static CallFamily of(String url) {
+        switch (ApiFamily.of(url)) {
+            case USER:
+                return USER;
+            case GROUP:
+                return GROUP;
+            case MESSAGE:
+                return MESSAGE;
+            case REPORT:
+                return REPORT;
+            default:
+                String path = ApiFamily.pathOf(url);
+                if (path.startsWith("/v1/chatroom")) {
+                    return CHATROOM;
+                }
+                if (path.startsWith("/v1/resource")) {
+                    return RESOURCE;
+                }
+                return OTHER;
+        }
+    }
+
+}
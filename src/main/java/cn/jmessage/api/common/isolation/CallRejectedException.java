@@ -0,0 +1,48 @@
+package cn.jmessage.api.common.isolation;
+
+import cn.jiguang.common.resp.APIConnectionException;
+
+/**
+ * The call was not sent, its family is isolated: the circuit breaker is open or the bulkhead is full.
+ * Thrown at once, without waiting for a timeout of the server.
+ */
+public class CallRejectedException extends APIConnectionException {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Reason {
+        /** the circuit breaker of the family is open */
+        CIRCUIT_OPEN,
+        /** the max concurrent calls of the family are in flight */
+        BULKHEAD_FULL
+    }
+
+    private final CallFamily family;
+    private final Reason reason;
+    private final long retryAfterMillis;
+
+    public CallRejectedException(CallFamily family, Reason reason, long retryAfterMillis) {
+        super(reason == Reason.CIRCUIT_OPEN
+                ? "Circuit breaker of " + family + " calls is open, retry after " + retryAfterMillis + " ms"
+                : "Too many concurrent " + family + " calls", null);
+        this.family = family;
+        this.reason = reason;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    public CallFamily getFamily() {
+        return family;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+
+    /**
+     * @return milliseconds until the open circuit lets probe calls through, 0 if unknown
+     */
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+}
@@ -0,0 +1,256 @@
+package cn.jmessage.api.common.isolation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Circuit breaker of one family. Closed, it records the outcome of the last calls and opens when the rate
+ * of failed or slow calls reaches its threshold. Open, it rejects every call for the open duration, then
+ * turns half open and lets a few probe calls through: it closes if they all succeed, and opens again
+ * otherwise.
+ */
+public class CircuitBreaker {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CircuitBreaker.class);
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private static final byte FAILED = 1;
+    private static final byte SLOW = 2;
+
+    private final CallFamily family;
+    private final int failureRateThreshold;
+    private final long slowCallNanos;
+    private final int slowCallRateThreshold;
+    private final int minimumCalls;
+    private final long openDurationMillis;
+    private final int halfOpenProbes;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    // outcomes of the last calls, FAILED and SLOW bits
+    private final byte[] window;
+    private int next;
+    private int calls;
+    private int failures;
+    private int slowCalls;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int probesInFlight;
+    private int probeSuccesses;
+
+    private final AtomicLong notPermitted = new AtomicLong();
+    private final AtomicLong opened = new AtomicLong();
+
+    public CircuitBreaker(CallFamily family, IsolationPolicy policy) {
+        this.family = family;
+        this.failureRateThreshold = policy.getFailureRateThreshold();
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(policy.getSlowCallDurationMillis());
+        this.slowCallRateThreshold = policy.getSlowCallRateThreshold();
+        this.minimumCalls = policy.getMinimumCalls();
+        this.openDurationMillis = policy.getOpenDurationMillis();
+        this.halfOpenProbes = policy.getHalfOpenProbes();
+        this.window = new byte[policy.getWindowSize()];
+    }
+
+    /**
+     * Let a call through, report its outcome by {@link #onSuccess(long)} or {@link #onFailure(long)}, or by
+     * {@link #releasePermission()} if it was not sent after all.
+     *
+     * @throws CallRejectedException the breaker is open, or half open with all its probes in flight
+     */
+    public void acquirePermission() throws CallRejectedException {
+        long retryAfter;
+        lock.lock();
+        try {
+            if (state == State.OPEN) {
+                long elapsed = System.currentTimeMillis() - openedAt;
+                if (elapsed >= openDurationMillis) {
+                    transition(State.HALF_OPEN);
+                    probesInFlight = 0;
+                    probeSuccesses = 0;
+                }
+            }
+            if (state == State.CLOSED) {
+                return;
+            }
+            if (state == State.HALF_OPEN && probesInFlight + probeSuccesses < halfOpenProbes) {
+                probesInFlight++;
+                return;
+            }
+            retryAfter = Math.max(0, openedAt + openDurationMillis - System.currentTimeMillis());
+        } finally {
+            lock.unlock();
+        }
+        notPermitted.incrementAndGet();
+        throw new CallRejectedException(family, CallRejectedException.Reason.CIRCUIT_OPEN, retryAfter);
+    }
+
+    /**
+     * The call permitted was not sent, or failed by an error of the caller rather than of the server.
+     */
+    public void releasePermission() {
+        lock.lock();
+        try {
+            if (state == State.HALF_OPEN && probesInFlight > 0) {
+                probesInFlight--;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * The call got a response which is not a server failure.
+     */
+    public void onSuccess(long durationNanos) {
+        record(false, durationNanos);
+    }
+
+    /**
+     * The call failed by connection, timeout or server error.
+     */
+    public void onFailure(long durationNanos) {
+        record(true, durationNanos);
+    }
+
+    private void record(boolean failed, long durationNanos) {
+        boolean slow = durationNanos > slowCallNanos;
+        lock.lock();
+        try {
+            switch (state) {
+                case CLOSED:
+                    add((byte) ((failed ? FAILED : 0) | (slow ? SLOW : 0)));
+                    if (calls >= minimumCalls && (failures * 100 >= failureRateThreshold * calls
+                            || slowCalls * 100 >= slowCallRateThreshold * calls)) {
+                        open();
+                    }
+                    break;
+                case HALF_OPEN:
+                    if (probesInFlight > 0) {
+                        probesInFlight--;
+                    }
+                    if (failed || slow) {
+                        open();
+                    } else if (++probeSuccesses >= halfOpenProbes) {
+                        transition(State.CLOSED);
+                        clearWindow();
+                    }
+                    break;
+                default:
+                    // a call let through before the breaker opened
+                    break;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void add(byte outcome) {
+        if (calls == window.length) {
+            byte evicted = window[next];
+            if ((evicted & FAILED) != 0) {
+                failures--;
+            }
+            if ((evicted & SLOW) != 0) {
+                slowCalls--;
+            }
+        } else {
+            calls++;
+        }
+        window[next] = outcome;
+        next = (next + 1) % window.length;
+        if ((outcome & FAILED) != 0) {
+            failures++;
+        }
+        if ((outcome & SLOW) != 0) {
+            slowCalls++;
+        }
+    }
+
+    private void clearWindow() {
+        next = 0;
+        calls = 0;
+        failures = 0;
+        slowCalls = 0;
+    }
+
+    private void open() {
+        transition(State.OPEN);
+        openedAt = System.currentTimeMillis();
+        opened.incrementAndGet();
+        clearWindow();
+    }
+
+    private void transition(State to) {
+        if (state != to) {
+            LOG.info("Circuit breaker of " + family + " calls " + state + " -> " + to);
+            state = to;
+        }
+    }
+
+    public CallFamily getFamily() {
+        return family;
+    }
+
+    public State getState() {
+        lock.lock();
+        try {
+            return state;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return percentage of failed calls in the window, -1 if fewer than the minimum calls were recorded
+     */
+    public float getFailureRate() {
+        lock.lock();
+        try {
+            return calls < minimumCalls ? -1 : failures * 100f / calls;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return percentage of slow calls in the window, -1 if fewer than the minimum calls were recorded
+     */
+    public float getSlowCallRate() {
+        lock.lock();
+        try {
+            return calls < minimumCalls ? -1 : slowCalls * 100f / calls;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return calls rejected while the breaker was open
+     */
+    public long getNotPermittedCount() {
+        return notPermitted.get();
+    }
+
+    /**
+     * @return times the breaker opened
+     */
+    public long getOpenedCount() {
+        return opened.get();
+    }
+
+    @Override
+    public String toString() {
+        return family + " " + getState() + ", failure rate: " + getFailureRate() + "%, slow call rate: "
+                + getSlowCallRate() + "%, not permitted: " + notPermitted.get();
+    }
+
+}
@@ -0,0 +1,195 @@
+package cn.jmessage.api.common.isolation;
+
+import cn.jiguang.common.connection.IHttpClient;
+import cn.jiguang.common.resp.APIConnectionException;
+import cn.jiguang.common.resp.APIRequestException;
+import cn.jiguang.common.resp.ResponseWrapper;
+import cn.jmessage.api.common.connection.HttpClients;
+import cn.jmessage.api.common.connection.RequestBody;
+import cn.jmessage.api.common.connection.ResponseBodyHandler;
+import cn.jmessage.api.common.connection.StreamingHttpClient;
+
+import java.io.UnsupportedEncodingException;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Wraps an {@link IHttpClient}, every call goes through the circuit breaker and the bulkhead of its
+ * {@link CallFamily}, so that a failing or slow family is rejected at once with a {@link CallRejectedException}
+ * instead of holding the threads and connections the other families need.
+ * <p>
+ * Connection failures, timeouts and 5xx responses count as failures of the breaker, other error responses
+ * such as 403 or 429 mean the server is healthy.
+ * </p>
+ */
+public class IsolatedHttpClient implements StreamingHttpClient {
+
+    private final IHttpClient _delegate;
+    private final Map<CallFamily, Bulkhead> _bulkheads = new EnumMap<CallFamily, Bulkhead>(CallFamily.class);
+    private final Map<CallFamily, CircuitBreaker> _breakers =
+            new EnumMap<CallFamily, CircuitBreaker>(CallFamily.class);
+
+    public IsolatedHttpClient(IHttpClient delegate, IsolationPolicy policy) {
+        this._delegate = delegate;
+        for (CallFamily family : CallFamily.values()) {
+            _bulkheads.put(family, policy.newBulkhead(family));
+            _breakers.put(family, policy.newCircuitBreaker(family));
+        }
+    }
+
+    public IHttpClient getDelegate() {
+        return _delegate;
+    }
+
+    public Bulkhead getBulkhead(CallFamily family) {
+        return _bulkheads.get(family);
+    }
+
+    public CircuitBreaker getCircuitBreaker(CallFamily family) {
+        return _breakers.get(family);
+    }
+
+    @Override
+    public ResponseWrapper sendGet(String url) throws APIConnectionException, APIRequestException {
+        return sendGet(url, null);
+    }
+
+    @Override
+    public ResponseWrapper sendGet(final String url, final String content)
+            throws APIConnectionException, APIRequestException {
+        return execute(url, new Call<ResponseWrapper>() {
+            @Override
+            public ResponseWrapper execute() throws APIConnectionException, APIRequestException {
+                return null == content ? _delegate.sendGet(url) : _delegate.sendGet(url, content);
+            }
+        });
+    }
+
+    @Override
+    public <T> T streamGet(final String url, final ResponseBodyHandler<T> handler)
+            throws APIConnectionException, APIRequestException {
+        return execute(url, new Call<T>() {
+            @Override
+            public T execute() throws APIConnectionException, APIRequestException {
+                return HttpClients.sendGet(_delegate, url, handler);
+            }
+        });
+    }
+
+    @Override
+    public ResponseWrapper sendDelete(String url) throws APIConnectionException, APIRequestException {
+        return sendDelete(url, null);
+    }
+
+    @Override
+    public ResponseWrapper sendDelete(final String url, final String content)
+            throws APIConnectionException, APIRequestException {
+        return execute(url, new Call<ResponseWrapper>() {
+            @Override
+            public ResponseWrapper execute() throws APIConnectionException, APIRequestException {
+                return null == content ? _delegate.sendDelete(url) : _delegate.sendDelete(url, content);
+            }
+        });
+    }
+
+    @Override
+    public ResponseWrapper sendPost(final String url, final String content)
+            throws APIConnectionException, APIRequestException {
+        return execute(url, new Call<ResponseWrapper>() {
+            @Override
+            public ResponseWrapper execute() throws APIConnectionException, APIRequestException {
+                return _delegate.sendPost(url, content);
+            }
+        });
+    }
+
+    @Override
+    public ResponseWrapper sendPost(final String url, final byte[] content, final int offset, final int length)
+            throws APIConnectionException, APIRequestException {
+        return execute(url, new Call<ResponseWrapper>() {
+            @Override
+            public ResponseWrapper execute() throws APIConnectionException, APIRequestException {
+                if (_delegate instanceof StreamingHttpClient) {
+                    return ((StreamingHttpClient) _delegate).sendPost(url, content, offset, length);
+                }
+                try {
+                    return _delegate.sendPost(url, new String(content, offset, length, CHARSET));
+                } catch (UnsupportedEncodingException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+    }
+
+    @Override
+    public boolean canStreamRequestBody() {
+        return HttpClients.canStreamRequestBody(_delegate);
+    }
+
+    @Override
+    public ResponseWrapper sendPost(final String url, final RequestBody body)
+            throws APIConnectionException, APIRequestException {
+        if (!canStreamRequestBody()) {
+            throw new UnsupportedOperationException("Delegate http client can not stream a request body");
+        }
+        return execute(url, new Call<ResponseWrapper>() {
+            @Override
+            public ResponseWrapper execute() throws APIConnectionException, APIRequestException {
+                return ((StreamingHttpClient) _delegate).sendPost(url, body);
+            }
+        });
+    }
+
+    @Override
+    public ResponseWrapper sendPut(final String url, final String content)
+            throws APIConnectionException, APIRequestException {
+        return execute(url, new Call<ResponseWrapper>() {
+            @Override
+            public ResponseWrapper execute() throws APIConnectionException, APIRequestException {
+                return _delegate.sendPut(url, content);
+            }
+        });
+    }
+
+    private <T> T execute(String url, Call<T> call) throws APIConnectionException, APIRequestException {
+        CallFamily family = CallFamily.of(url);
+        CircuitBreaker breaker = _breakers.get(family);
+        Bulkhead bulkhead = _bulkheads.get(family);
+        breaker.acquirePermission();
+        try {
+            bulkhead.acquire();
+        } catch (CallRejectedException e) {
+            breaker.releasePermission();
+            throw e;
+        }
+        long start = System.nanoTime();
+        // stays null if the call threw something else, such as an exception of the response handler of the
+        // caller, which says nothing about the server
+        Boolean failed = null;
+        try {
+            T result = call.execute();
+            failed = false;
+            return result;
+        } catch (APIConnectionException e) {
+            failed = true;
+            throw e;
+        } catch (APIRequestException e) {
+            failed = e.getStatus() >= 500;
+            throw e;
+        } finally {
+            bulkhead.release();
+            if (null == failed) {
+                breaker.releasePermission();
+            } else if (failed) {
+                breaker.onFailure(System.nanoTime() - start);
+            } else {
+                breaker.onSuccess(System.nanoTime() - start);
+            }
+        }
+    }
+
+    private interface Call<T> {
+        T execute() throws APIConnectionException, APIRequestException;
+    }
+
+}
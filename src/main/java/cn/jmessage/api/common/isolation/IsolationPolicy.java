@@ -0,0 +1,182 @@
+package cn.jmessage.api.common.isolation;
+
+import cn.jiguang.common.utils.Preconditions;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Settings of the bulkheads and circuit breakers of the API families, set it by
+ * {@link cn.jmessage.api.common.JMessageConfig#setIsolationPolicy(IsolationPolicy)}. Each client creates its own
+ * bulkheads and breakers from it.
+ */
+public class IsolationPolicy {
+
+    /**
+     * Default max concurrent calls of one family, half the connections the pool keeps to one host.
+     */
+    public static final int DEFAULT_MAX_CONCURRENT_CALLS = 16;
+
+    private final Map<CallFamily, Integer> maxConcurrentCalls;
+    private final long maxWaitMillis;
+    private final int failureRateThreshold;
+    private final long slowCallDurationMillis;
+    private final int slowCallRateThreshold;
+    private final int windowSize;
+    private final int minimumCalls;
+    private final long openDurationMillis;
+    private final int halfOpenProbes;
+
+    private IsolationPolicy(Builder builder) {
+        this.maxConcurrentCalls = new EnumMap<CallFamily, Integer>(builder.maxConcurrentCalls);
+        this.maxWaitMillis = builder.maxWaitMillis;
+        this.failureRateThreshold = builder.failureRateThreshold;
+        this.slowCallDurationMillis = builder.slowCallDurationMillis;
+        this.slowCallRateThreshold = builder.slowCallRateThreshold;
+        this.windowSize = builder.windowSize;
+        this.minimumCalls = builder.minimumCalls;
+        this.openDurationMillis = builder.openDurationMillis;
+        this.halfOpenProbes = builder.halfOpenProbes;
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    public Bulkhead newBulkhead(CallFamily family) {
+        return new Bulkhead(family, getMaxConcurrentCalls(family), maxWaitMillis);
+    }
+
+    public CircuitBreaker newCircuitBreaker(CallFamily family) {
+        return new CircuitBreaker(family, this);
+    }
+
+    public int getMaxConcurrentCalls(CallFamily family) {
+        Integer max = maxConcurrentCalls.get(family);
+        return null == max ? DEFAULT_MAX_CONCURRENT_CALLS : max;
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitMillis;
+    }
+
+    public int getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    public long getSlowCallDurationMillis() {
+        return slowCallDurationMillis;
+    }
+
+    public int getSlowCallRateThreshold() {
+        return slowCallRateThreshold;
+    }
+
+    public int getWindowSize() {
+        return windowSize;
+    }
+
+    public int getMinimumCalls() {
+        return minimumCalls;
+    }
+
+    public long getOpenDurationMillis() {
+        return openDurationMillis;
+    }
+
+    public int getHalfOpenProbes() {
+        return halfOpenProbes;
+    }
+
+    public static class Builder {
+
+        private final Map<CallFamily, Integer> maxConcurrentCalls = new EnumMap<CallFamily, Integer>(CallFamily.class);
+        private long maxWaitMillis = 0;
+        private int failureRateThreshold = 50;
+        private long slowCallDurationMillis = 5000;
+        private int slowCallRateThreshold = 80;
+        private int windowSize = 50;
+        private int minimumCalls = 20;
+        private long openDurationMillis = 30 * 1000;
+        private int halfOpenProbes = 3;
+
+        /**
+         * Max concurrent calls of the family, default is {@link #DEFAULT_MAX_CONCURRENT_CALLS}.
+         */
+        public Builder setMaxConcurrentCalls(CallFamily family, int max) {
+            maxConcurrentCalls.put(family, max);
+            return this;
+        }
+
+        /**
+         * How long a call waits for a free slot of its bulkhead, in milliseconds, default is 0: rejected at once.
+         */
+        public Builder setMaxWaitMillis(long maxWaitMillis) {
+            this.maxWaitMillis = maxWaitMillis;
+            return this;
+        }
+
+        /**
+         * Percentage of failed calls in the window which opens the breaker, default is 50.
+         */
+        public Builder setFailureRateThreshold(int percent) {
+            this.failureRateThreshold = percent;
+            return this;
+        }
+
+        /**
+         * Calls longer than the duration are slow, the breaker opens when their percentage in the window
+         * reaches the threshold, default is 5000 ms and 80.
+         */
+        public Builder setSlowCallThreshold(long durationMillis, int percent) {
+            this.slowCallDurationMillis = durationMillis;
+            this.slowCallRateThreshold = percent;
+            return this;
+        }
+
+        /**
+         * Rates are computed over the last windowSize calls, once at least minimumCalls are in the window,
+         * default is 50 and 20.
+         */
+        public Builder setWindow(int windowSize, int minimumCalls) {
+            this.windowSize = windowSize;
+            this.minimumCalls = minimumCalls;
+            return this;
+        }
+
+        /**
+         * How long an open breaker rejects calls before it lets probe calls through, default is 30 seconds.
+         */
+        public Builder setOpenDurationMillis(long openDurationMillis) {
+            this.openDurationMillis = openDurationMillis;
+            return this;
+        }
+
+        /**
+         * Probe calls let through by a half open breaker, it closes when they all succeed, default is 3.
+         */
+        public Builder setHalfOpenProbes(int halfOpenProbes) {
+            this.halfOpenProbes = halfOpenProbes;
+            return this;
+        }
+
+        public IsolationPolicy build() {
+            for (Integer max : maxConcurrentCalls.values()) {
+                Preconditions.checkArgument(max > 0, "maxConcurrentCalls should more than 0");
+            }
+            Preconditions.checkArgument(maxWaitMillis >= 0, "maxWaitMillis should not less than 0");
+            Preconditions.checkArgument(failureRateThreshold > 0 && failureRateThreshold <= 100,
+                    "failureRateThreshold should between 1 and 100");
+            Preconditions.checkArgument(slowCallDurationMillis > 0, "slowCallDurationMillis should more than 0");
+            Preconditions.checkArgument(slowCallRateThreshold > 0 && slowCallRateThreshold <= 100,
+                    "slowCallRateThreshold should between 1 and 100");
+            Preconditions.checkArgument(windowSize > 0, "windowSize should more than 0");
+            Preconditions.checkArgument(minimumCalls > 0 && minimumCalls <= windowSize,
+                    "minimumCalls should between 1 and windowSize");
+            Preconditions.checkArgument(openDurationMillis > 0, "openDurationMillis should more than 0");
+            Preconditions.checkArgument(halfOpenProbes > 0, "halfOpenProbes should more than 0");
+            return new IsolationPolicy(this);
+        }
+    }
+
+}
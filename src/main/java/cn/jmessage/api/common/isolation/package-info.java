@@ -0,0 +1,4 @@
+/**
+ * Isolation of the API families from each other: bulkheads and circuit breakers.
+ */
+package cn.jmessage.api.common.isolation;
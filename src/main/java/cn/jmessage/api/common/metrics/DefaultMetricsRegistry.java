@@ -0,0 +1,121 @@
+package cn.jmessage.api.common.metrics;
+
+import cn.jmessage.api.common.ratelimit.ApiFamily;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * {@link MetricsRegistry} which keeps the metrics in memory: {@link EndpointMetrics} of each endpoint and the
+ * last rate limit headers of each API family. Recording is lock free and allocates nothing once an endpoint
+ * was seen.
+ */
+public class DefaultMetricsRegistry implements MetricsRegistry {
+
+    private static final int QUOTA = 0;
+    private static final int REMAINING = 1;
+    private static final int RESET = 2;
+
+    private final ConcurrentMap<Endpoint, EndpointMetrics> endpoints = new ConcurrentHashMap<Endpoint, EndpointMetrics>();
+    // quota, remaining and reset of each family, -1 until a response carried them
+    private final AtomicIntegerArray rateLimits = new AtomicIntegerArray(ApiFamily.values().length * 3);
+
+    public DefaultMetricsRegistry() {
+        for (int i = 0; i < rateLimits.length(); i++) {
+            rateLimits.set(i, -1);
+        }
+    }
+
+    @Override
+    public void recordCall(Endpoint endpoint, int status, int errorCode, long latencyNanos, long bytesSent,
+                           long bytesReceived, int retries) {
+        EndpointMetrics metrics = endpoints.get(endpoint);
+        if (null == metrics) {
+            EndpointMetrics created = new EndpointMetrics(endpoint);
+            metrics = endpoints.putIfAbsent(endpoint, created);
+            if (null == metrics) {
+                metrics = created;
+            }
+        }
+        metrics.record(status, errorCode, latencyNanos, bytesSent, bytesReceived, retries);
+    }
+
+    @Override
+    public void recordRateLimit(ApiFamily family, int quota, int remaining, int resetSeconds) {
+        int base = family.ordinal() * 3;
+        rateLimits.set(base + QUOTA, quota);
+        rateLimits.set(base + REMAINING, remaining);
+        rateLimits.set(base + RESET, resetSeconds);
+    }
+
+    /**
+     * @return the metrics of the endpoint, null if it was not called
+     */
+    public EndpointMetrics getEndpointMetrics(Endpoint endpoint) {
+        return endpoints.get(endpoint);
+    }
+
+    /**
+     * @return the metrics of every endpoint called, by name
+     */
+    public List<EndpointMetrics> getEndpointMetrics() {
+        List<EndpointMetrics> list = new ArrayList<EndpointMetrics>(endpoints.values());
+        Collections.sort(list, new Comparator<EndpointMetrics>() {
+            @Override
+            public int compare(EndpointMetrics o1, EndpointMetrics o2) {
+                return o1.getEndpoint().getName().compareTo(o2.getEndpoint().getName());
+            }
+        });
+        return list;
+    }
+
+    /**
+     * @return quota of the last response of the family, -1 if none carried it
+     */
+    public int getRateLimitQuota(ApiFamily family) {
+        return rateLimits.get(family.ordinal() * 3 + QUOTA);
+    }
+
+    /**
+     * @return remaining calls of the last response of the family, -1 if none carried it
+     */
+    public int getRateLimitRemaining(ApiFamily family) {
+        return rateLimits.get(family.ordinal() * 3 + REMAINING);
+    }
+
+    /**
+     * @return seconds to the reset of the window as of the last response of the family, -1 if none carried it
+     */
+    public int getRateLimitReset(ApiFamily family) {
+        return rateLimits.get(family.ordinal() * 3 + RESET);
+    }
+
+    /**
+     * Forget every endpoint, the rate limit gauges are kept.
+     */
+    public void clear() {
+        endpoints.clear();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (EndpointMetrics metrics : getEndpointMetrics()) {
+            sb.append(metrics).append('\n');
+        }
+        for (ApiFamily family : ApiFamily.values()) {
+            if (getRateLimitQuota(family) >= 0) {
+                sb.append(family).append(" rate limit ").append(getRateLimitRemaining(family)).append('/')
+                        .append(getRateLimitQuota(family)).append(", reset in ").append(getRateLimitReset(family))
+                        .append("s\n");
+            }
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,189 @@
+package cn.jmessage.api.common.metrics;
+
+import cn.jmessage.api.common.ratelimit.ApiFamily;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * An API by request method and path template, such as {@code GET /v1/users/{}}: the segments of the path which
+ * are names or ids are replaced by {}, the query is left out.
+ * <p>
+ * Endpoints are interned, {@link #of(String, String)} returns the same instance for every url of one template
+ * and allocates nothing once the template was seen, so endpoints can be compared by identity.
+ * </p>
+ */
+public final class Endpoint {
+
+    // path segments of the JMessage APIs, any other segment is a variable
+    private static final String[] LITERALS = {
+            "v1", "v2", "admins", "batch", "blacklist", "chatroom", "chatrooms", "cross", "forbidden", "friends",
+            "groups", "groupsShield", "members", "messages", "nodisturb", "owner", "password", "resource",
+            "retract", "sensitiveword", "silence", "statistic", "status", "users", "userstat"
+    };
+
+    private static final int TABLE_SIZE = 1024;
+    private static final AtomicReferenceArray<Endpoint> TABLE = new AtomicReferenceArray<Endpoint>(TABLE_SIZE);
+
+    /**
+     * Shared by the templates seen after the table is full.
+     */
+    public static final Endpoint OTHER = new Endpoint("*", "/*", 0, ApiFamily.OTHER);
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final String method;
+    private final String template;
+    private final String name;
+    private final long hash;
+    private final ApiFamily family;
+
+    private Endpoint(String method, String template, long hash, ApiFamily family) {
+        this.method = method;
+        this.template = template;
+        this.name = method + " " + template;
+        this.hash = hash;
+        this.family = family;
+    }
+
+    /**
+     * @param method request method, such as GET
+     * @param url    request url, with or without scheme and host
+     * @return the endpoint of the url
+     */
+    public static Endpoint of(String method, String url) {
+        int start = pathStart(url);
+        int end = pathEnd(url, start);
+        long hash = hash(method, url, start, end);
+        int mask = TABLE_SIZE - 1;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        for (int probe = 0; probe < TABLE_SIZE; probe++) {
+            Endpoint endpoint = TABLE.get(slot);
+            if (null == endpoint) {
+                endpoint = new Endpoint(method, template(url, start, end), hash, ApiFamily.of(url));
+                if (TABLE.compareAndSet(slot, null, endpoint)) {
+                    return endpoint;
+                }
+                endpoint = TABLE.get(slot);
+            }
+            if (endpoint.hash == hash && endpoint.method.equals(method)) {
+                return endpoint;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return OTHER;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    /**
+     * @return path with the variable segments replaced by {}
+     */
+    public String getTemplate() {
+        return template;
+    }
+
+    /**
+     * @return method and template, such as {@code GET /v1/users/{}}
+     */
+    public String getName() {
+        return name;
+    }
+
+    public ApiFamily getFamily() {
+        return family;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    private static long hash(String method, String url, int start, int end) {
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < method.length(); i++) {
+            hash = (hash ^ method.charAt(i)) * FNV_PRIME;
+        }
+        int segment = start;
+        while (segment < end) {
+            // skip the slash
+            segment++;
+            int segmentEnd = segmentEnd(url, segment, end);
+            hash = (hash ^ '/') * FNV_PRIME;
+            if (isLiteral(url, segment, segmentEnd)) {
+                for (int i = segment; i < segmentEnd; i++) {
+                    hash = (hash ^ url.charAt(i)) * FNV_PRIME;
+                }
+            } else {
+                hash = (hash ^ '{') * FNV_PRIME;
+                hash = (hash ^ '}') * FNV_PRIME;
+            }
+            segment = segmentEnd;
+        }
+        return hash;
+    }
+
+    private static String template(String url, int start, int end) {
+        if (start >= end) {
+            return "/";
+        }
+        StringBuilder template = new StringBuilder(end - start);
+        int segment = start;
+        while (segment < end) {
+            segment++;
+            int segmentEnd = segmentEnd(url, segment, end);
+            template.append('/');
+            if (isLiteral(url, segment, segmentEnd)) {
+                template.append(url, segment, segmentEnd);
+            } else {
+                template.append("{}");
+            }
+            segment = segmentEnd;
+        }
+        return template.toString();
+    }
+
+    private static boolean isLiteral(String url, int start, int end) {
+        int length = end - start;
+        if (length == 0) {
+            return true;
+        }
+        for (String literal : LITERALS) {
+            if (literal.length() == length && url.regionMatches(start, literal, 0, length)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int pathStart(String url) {
+        int scheme = url.indexOf("://");
+        if (scheme < 0) {
+            return 0;
+        }
+        int slash = url.indexOf('/', scheme + 3);
+        return slash < 0 ? url.length() : slash;
+    }
+
+    private static int pathEnd(String url, int start) {
+        for (int i = start; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c == '?' || c == '#') {
+                return i;
+            }
+        }
+        return url.length();
+    }
+
+    private static int segmentEnd(String url, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (url.charAt(i) == '/') {
+                return i;
+            }
+        }
+        return end;
+    }
+
+}
@@ -0,0 +1,127 @@
+package cn.jmessage.api.common.metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters and latencies of the calls to one {@link Endpoint}, kept by {@link DefaultMetricsRegistry}.
+ * Recording is lock free and allocates nothing.
+ */
+public class EndpointMetrics {
+
+    // distinct error codes counted one by one, the others are counted together
+    private static final int ERROR_CODE_SLOTS = 32;
+
+    private final Endpoint endpoint;
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    // index 0 counts calls without response, 1 to 5 the status classes
+    private final AtomicLongArray statusClasses = new AtomicLongArray(6);
+    private final AtomicIntegerArray errorCodes = new AtomicIntegerArray(ERROR_CODE_SLOTS);
+    private final AtomicLongArray errorCodeCounts = new AtomicLongArray(ERROR_CODE_SLOTS);
+    private final AtomicLong otherErrorCodeCount = new AtomicLong();
+    private final LatencyHistogram latencies = new LatencyHistogram();
+
+    EndpointMetrics(Endpoint endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    void record(int status, int errorCode, long latencyNanos, long sent, long received, int retried) {
+        calls.incrementAndGet();
+        latencies.record(latencyNanos);
+        bytesSent.addAndGet(sent);
+        bytesReceived.addAndGet(received);
+        if (retried > 0) {
+            retries.addAndGet(retried);
+        }
+        int statusClass = status / 100;
+        statusClasses.incrementAndGet(statusClass >= 1 && statusClass <= 5 ? statusClass : 0);
+        if (errorCode != 0) {
+            countErrorCode(errorCode);
+        }
+    }
+
+    private void countErrorCode(int errorCode) {
+        int slot = (errorCode & 0x7fffffff) % ERROR_CODE_SLOTS;
+        for (int probe = 0; probe < ERROR_CODE_SLOTS; probe++) {
+            int code = errorCodes.get(slot);
+            if (code == errorCode || (code == 0 && (errorCodes.compareAndSet(slot, 0, errorCode)
+                    || errorCodes.get(slot) == errorCode))) {
+                errorCodeCounts.incrementAndGet(slot);
+                return;
+            }
+            slot = (slot + 1) % ERROR_CODE_SLOTS;
+        }
+        otherErrorCodeCount.incrementAndGet();
+    }
+
+    public Endpoint getEndpoint() {
+        return endpoint;
+    }
+
+    public long getCallCount() {
+        return calls.get();
+    }
+
+    /**
+     * @return calls which got no response or an error response
+     */
+    public long getErrorCount() {
+        return statusClasses.get(0) + statusClasses.get(4) + statusClasses.get(5);
+    }
+
+    /**
+     * @param statusClass 1 to 5 for the 1xx to 5xx responses, 0 for the calls which got no response
+     * @return calls of the status class
+     */
+    public long getStatusClassCount(int statusClass) {
+        return statusClasses.get(statusClass);
+    }
+
+    /**
+     * @return count of each JMessage error code, the codes beyond the first 32 distinct codes are counted
+     * under -1
+     */
+    public Map<Integer, Long> getErrorCodeCounts() {
+        Map<Integer, Long> counts = new TreeMap<Integer, Long>();
+        for (int i = 0; i < ERROR_CODE_SLOTS; i++) {
+            int code = errorCodes.get(i);
+            if (code != 0) {
+                counts.put(code, errorCodeCounts.get(i));
+            }
+        }
+        long other = otherErrorCodeCount.get();
+        if (other > 0) {
+            counts.put(-1, other);
+        }
+        return counts;
+    }
+
+    public long getBytesSent() {
+        return bytesSent.get();
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    public long getRetryCount() {
+        return retries.get();
+    }
+
+    public LatencyHistogram getLatencies() {
+        return latencies;
+    }
+
+    @Override
+    public String toString() {
+        return endpoint + " calls=" + calls.get() + " errors=" + getErrorCount() + " retries=" + retries.get()
+                + " sent=" + bytesSent.get() + "B received=" + bytesReceived.get() + "B latency " + latencies;
+    }
+
+}
@@ -0,0 +1,41 @@
+package cn.jmessage.api.common.metrics;
+
+import cn.jmessage.api.common.ratelimit.ApiFamily;
+
+/**
+ * Receives the measurements of every API call, set it with
+ * {@link cn.jmessage.api.common.JMessageConfig#setMetricsRegistry(MetricsRegistry)}.
+ * <p>
+ * {@link DefaultMetricsRegistry} keeps them in memory without any dependency. To publish them to Micrometer,
+ * Dropwizard or another metrics library, implement this interface and forward each call to the meters of the
+ * library, keyed by {@link Endpoint#getName()}. Both methods are called on the thread of the request once it is
+ * done, they must not block.
+ * </p>
+ */
+public interface MetricsRegistry {
+
+    /**
+     * One API call, retries included.
+     *
+     * @param endpoint      the API called
+     * @param status        HTTP status of the response, 0 if no response was received
+     * @param errorCode     JMessage error code of an error response, 0 if none
+     * @param latencyNanos  time from the request to the end of the response, in nanoseconds
+     * @param bytesSent     bytes written to the connection, headers included
+     * @param bytesReceived bytes read from the connection, headers included
+     * @param retries       times the request was sent again after a connect timeout or a stale connection
+     */
+    void recordCall(Endpoint endpoint, int status, int errorCode, long latencyNanos, long bytesSent,
+                    long bytesReceived, int retries);
+
+    /**
+     * The X-Rate-Limit headers of a response.
+     *
+     * @param family       the API family sharing the budget
+     * @param quota        calls allowed per window
+     * @param remaining    calls left in the current window
+     * @param resetSeconds seconds until the window resets
+     */
+    void recordRateLimit(ApiFamily family, int quota, int remaining, int resetSeconds);
+
+}
@@ -0,0 +1,4 @@
+/**
+ * Latency and request metrics of the client.
+ */
+package cn.jmessage.api.common.metrics;
@@ -0,0 +1,335 @@
+package cn.jmessage.api.common.model;
+
+import cn.jiguang.common.connection.IHttpClient;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Growable byte buffer a {@link JsonWritable} model writes its UTF-8 JSON into, without building a
+ * {@link com.google.gson.JsonElement} tree first.
+ * <p>
+ * The output is the same as {@code new Gson().toJson(model.toJSON())}: no whitespace, HTML characters escaped
+ * as Gson does by default, null members left out. Buffers are reused through {@link #acquire()} and
+ * {@link #release()}, so a warmed up send path allocates nothing for the request body.
+ * </p>
+ */
+public final class JsonBuffer {
+
+    private static final int INITIAL_CAPACITY = 1024;
+    // a buffer grown larger than this by one huge payload is left to the GC instead of being pooled
+    private static final int MAX_POOLED_CAPACITY = 64 * 1024;
+    private static final int MAX_DEPTH = 64;
+
+    private static final AtomicReferenceArray<JsonBuffer> POOL = new AtomicReferenceArray<JsonBuffer>(
+            Math.min(32, Runtime.getRuntime().availableProcessors() * 2));
+
+    private static final byte[] HEX = {'0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e', 'f'};
+    private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+    private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+    private static final byte[] LONG_MIN_VALUE = ascii(String.valueOf(Long.MIN_VALUE));
+
+    private byte[] buf;
+    private int count;
+    private int depth;
+    // bit n set when the object at depth n already has a member
+    private long hasMember;
+
+    public JsonBuffer() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public JsonBuffer(int capacity) {
+        this.buf = new byte[capacity];
+    }
+
+    /**
+     * Take a cleared buffer from the pool, or a new one if the pool is empty.
+     * Give it back with {@link #release()} once its content is sent.
+     */
+    public static JsonBuffer acquire() {
+        for (int i = 0; i < POOL.length(); i++) {
+            JsonBuffer buffer = POOL.getAndSet(i, null);
+            if (null != buffer) {
+                return buffer;
+            }
+        }
+        return new JsonBuffer();
+    }
+
+    /**
+     * Return the buffer to the pool, it must not be used by the caller anymore.
+     */
+    public void release() {
+        if (buf.length > MAX_POOLED_CAPACITY) {
+            return;
+        }
+        reset();
+        for (int i = 0; i < POOL.length(); i++) {
+            if (POOL.compareAndSet(i, null, this)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Encode a member name with its quotes and colon, for the constant names of a model.
+     */
+    public static byte[] encodeName(String name) {
+        JsonBuffer buffer = new JsonBuffer(name.length() + 8);
+        buffer.writeString(name);
+        buffer.write((byte) ':');
+        return buffer.toByteArray();
+    }
+
+    public JsonBuffer beginObject() {
+        if (depth + 1 >= MAX_DEPTH) {
+            throw new IllegalStateException("JSON nesting deeper than " + MAX_DEPTH);
+        }
+        write((byte) '{');
+        depth++;
+        hasMember &= ~(1L << depth);
+        return this;
+    }
+
+    public JsonBuffer endObject() {
+        if (depth == 0) {
+            throw new IllegalStateException("No object to end");
+        }
+        write((byte) '}');
+        depth--;
+        return this;
+    }
+
+    /**
+     * Write a member name encoded by {@link #encodeName(String)}, the value must follow.
+     */
+    public JsonBuffer name(byte[] encodedName) {
+        separate();
+        write(encodedName, 0, encodedName.length);
+        return this;
+    }
+
+    /**
+     * Write a member name, the value must follow.
+     */
+    public JsonBuffer name(String name) {
+        separate();
+        writeString(name);
+        write((byte) ':');
+        return this;
+    }
+
+    /**
+     * Write bytes which are already UTF-8 JSON, such as a fragment serialized once and reused.
+     */
+    public JsonBuffer raw(byte[] json, int offset, int length) {
+        write(json, offset, length);
+        return this;
+    }
+
+    public JsonBuffer value(String value) {
+        writeString(value);
+        return this;
+    }
+
+    public JsonBuffer value(long value) {
+        if (value == Long.MIN_VALUE) {
+            write(LONG_MIN_VALUE, 0, LONG_MIN_VALUE.length);
+            return this;
+        }
+        if (value < 0) {
+            write((byte) '-');
+            value = -value;
+        }
+        long divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        ensureCapacity(count + 19);
+        while (divisor > 0) {
+            buf[count++] = (byte) ('0' + (value / divisor) % 10);
+            divisor /= 10;
+        }
+        return this;
+    }
+
+    public JsonBuffer value(boolean value) {
+        byte[] literal = value ? TRUE : FALSE;
+        write(literal, 0, literal.length);
+        return this;
+    }
+
+    /**
+     * Integral numbers are written without allocation, others with their toString as Gson does.
+     */
+    public JsonBuffer value(Number value) {
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            return value(value.longValue());
+        }
+        String string = value.toString();
+        if (string.equals("-Infinity") || string.equals("Infinity") || string.equals("NaN")) {
+            throw new IllegalArgumentException("Numeric values must be finite, but was " + value);
+        }
+        for (int i = 0; i < string.length(); i++) {
+            write((byte) string.charAt(i));
+        }
+        return this;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * The backing array, valid from 0 to {@link #size()}.
+     */
+    public byte[] array() {
+        return buf;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buf, count);
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buf, 0, count);
+    }
+
+    public void reset() {
+        count = 0;
+        depth = 0;
+        hasMember = 0;
+    }
+
+    @Override
+    public String toString() {
+        try {
+            return new String(buf, 0, count, IHttpClient.CHARSET);
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void separate() {
+        long bit = 1L << depth;
+        if ((hasMember & bit) != 0) {
+            write((byte) ',');
+        } else {
+            hasMember |= bit;
+        }
+    }
+
+    private void writeString(String value) {
+        // worst case is 6 bytes per char, for a unicode escape
+        ensureCapacity(count + value.length() * 6 + 2);
+        byte[] b = buf;
+        int n = count;
+        b[n++] = '"';
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                switch (c) {
+                    case '"':
+                    case '\\':
+                        b[n++] = '\\';
+                        b[n++] = (byte) c;
+                        break;
+                    case '\t':
+                        b[n++] = '\\';
+                        b[n++] = 't';
+                        break;
+                    case '\b':
+                        b[n++] = '\\';
+                        b[n++] = 'b';
+                        break;
+                    case '\n':
+                        b[n++] = '\\';
+                        b[n++] = 'n';
+                        break;
+                    case '\r':
+                        b[n++] = '\\';
+                        b[n++] = 'r';
+                        break;
+                    case '\f':
+                        b[n++] = '\\';
+                        b[n++] = 'f';
+                        break;
+                    case '<':
+                    case '>':
+                    case '&':
+                    case '=':
+                    case '\'':
+                        n = writeUnicodeEscape(b, n, c);
+                        break;
+                    default:
+                        if (c < 0x20) {
+                            n = writeUnicodeEscape(b, n, c);
+                        } else {
+                            b[n++] = (byte) c;
+                        }
+                }
+            } else if (c < 0x800) {
+                b[n++] = (byte) (0xc0 | (c >> 6));
+                b[n++] = (byte) (0x80 | (c & 0x3f));
+            } else if (c == (char) 0x2028 || c == (char) 0x2029) {
+                n = writeUnicodeEscape(b, n, c);
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                b[n++] = (byte) (0xf0 | (codePoint >> 18));
+                b[n++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                b[n++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                b[n++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                // unpaired surrogate, replaced as String.getBytes does
+                b[n++] = '?';
+            } else {
+                b[n++] = (byte) (0xe0 | (c >> 12));
+                b[n++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                b[n++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        b[n++] = '"';
+        count = n;
+    }
+
+    private static int writeUnicodeEscape(byte[] b, int n, char c) {
+        b[n++] = '\\';
+        b[n++] = 'u';
+        b[n++] = HEX[(c >> 12) & 0xf];
+        b[n++] = HEX[(c >> 8) & 0xf];
+        b[n++] = HEX[(c >> 4) & 0xf];
+        b[n++] = HEX[c & 0xf];
+        return n;
+    }
+
+    private void write(byte b) {
+        ensureCapacity(count + 1);
+        buf[count++] = b;
+    }
+
+    private void write(byte[] bytes, int offset, int length) {
+        ensureCapacity(count + length);
+        System.arraycopy(bytes, offset, buf, count, length);
+        count += length;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, capacity));
+        }
+    }
+
+    private static byte[] ascii(String value) {
+        byte[] bytes = new byte[value.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) value.charAt(i);
+        }
+        return bytes;
+    }
+
+}
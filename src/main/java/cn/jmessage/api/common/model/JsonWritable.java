@@ -0,0 +1,11 @@
+package cn.jmessage.api.common.model;
+
+/**
+ * A model which can write its JSON straight into a {@link JsonBuffer}, the same JSON as its
+ * {@link IModel#toJSON()} serialized by Gson.
+ */
+public interface JsonWritable {
+
+    void writeJSON(JsonBuffer out);
+
+}
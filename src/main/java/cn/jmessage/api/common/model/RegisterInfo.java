@@ -69,6 +69,10 @@ public class RegisterInfo implements IModel {
         return new Builder();
     }
 
+    public String getUsername() {
+        return username;
+    }
+
     @Override
     public JsonElement toJSON() {
 
@@ -4,6 +4,8 @@ import java.util.HashMap;
 import java.util.Map;
 
 import cn.jmessage.api.common.model.IModel;
+import cn.jmessage.api.common.model.JsonBuffer;
+import cn.jmessage.api.common.model.JsonWritable;
 import com.google.gson.*;
 
 import cn.jiguang.common.utils.Preconditions;
@@ -11,7 +13,7 @@ import cn.jiguang.common.utils.Preconditions;
 /**
  * MessageBodyResult
  */
-public class MessageBody implements IModel {
+public class MessageBody implements IModel, JsonWritable {
 
     private static final String MSG_BODY_TEXT = "text";
     private static final String MSG_BODY_EXTRAS = "extras";
@@ -24,6 +26,17 @@ public class MessageBody implements IModel {
     private static final String DURATION = "duration";
     private static final String HASH = "hash";
 
+    private static final byte[] MSG_BODY_TEXT_NAME = JsonBuffer.encodeName(MSG_BODY_TEXT);
+    private static final byte[] MSG_BODY_EXTRAS_NAME = JsonBuffer.encodeName(MSG_BODY_EXTRAS);
+    private static final byte[] MEDIA_ID_NAME = JsonBuffer.encodeName(MEDIA_ID);
+    private static final byte[] MEDIA_CRC32_NAME = JsonBuffer.encodeName(MEDIA_CRC32);
+    private static final byte[] WIDTH_NAME = JsonBuffer.encodeName(WIDTH);
+    private static final byte[] HEIGHT_NAME = JsonBuffer.encodeName(HEIGHT);
+    private static final byte[] FORMAT_NAME = JsonBuffer.encodeName(FORMAT);
+    private static final byte[] FSIZE_NAME = JsonBuffer.encodeName(FSIZE);
+    private static final byte[] DURATION_NAME = JsonBuffer.encodeName(DURATION);
+    private static final byte[] HASH_NAME = JsonBuffer.encodeName(HASH);
+
     private static Gson gson = new Gson();
 
     private Map<String, String> extras;
@@ -160,6 +173,83 @@ public class MessageBody implements IModel {
         return json;
     }
 
+    /**
+     * Same members as {@link #toJSON()}. An extra key put in more than one of the typed extras keeps the
+     * position of its first put and the value of the last one, as in the JsonObject.
+     */
+    @Override
+    public void writeJSON(JsonBuffer out) {
+        out.beginObject();
+        if (null != text) {
+            out.name(MSG_BODY_TEXT_NAME).value(text);
+        }
+        if (null != extras || null != numberExtras || null != booleanExtras) {
+            out.name(MSG_BODY_EXTRAS_NAME).beginObject();
+            if (null != extras) {
+                for (Map.Entry<String, String> entry : extras.entrySet()) {
+                    String key = entry.getKey();
+                    if (null != booleanExtras && booleanExtras.containsKey(key)) {
+                        out.name(key).value(booleanExtras.get(key).booleanValue());
+                    } else if (null != numberExtras && numberExtras.containsKey(key)) {
+                        out.name(key).value(numberExtras.get(key));
+                    } else if (null != entry.getValue()) {
+                        // a null value is left out by Gson
+                        out.name(key).value(entry.getValue());
+                    }
+                }
+            }
+            if (null != numberExtras) {
+                for (Map.Entry<String, Number> entry : numberExtras.entrySet()) {
+                    String key = entry.getKey();
+                    if (null != extras && extras.containsKey(key)) {
+                        continue;
+                    }
+                    if (null != booleanExtras && booleanExtras.containsKey(key)) {
+                        out.name(key).value(booleanExtras.get(key).booleanValue());
+                    } else {
+                        out.name(key).value(entry.getValue());
+                    }
+                }
+            }
+            if (null != booleanExtras) {
+                for (Map.Entry<String, Boolean> entry : booleanExtras.entrySet()) {
+                    String key = entry.getKey();
+                    if ((null != extras && extras.containsKey(key))
+                            || (null != numberExtras && numberExtras.containsKey(key))) {
+                        continue;
+                    }
+                    out.name(key).value(entry.getValue().booleanValue());
+                }
+            }
+            out.endObject();
+        }
+        if (null != media_id) {
+            out.name(MEDIA_ID_NAME).value(media_id);
+        }
+        if (null != media_crc32) {
+            out.name(MEDIA_CRC32_NAME).value(media_crc32.longValue());
+        }
+        if (null != width) {
+            out.name(WIDTH_NAME).value(width.longValue());
+        }
+        if (null != height) {
+            out.name(HEIGHT_NAME).value(height.longValue());
+        }
+        if (null != format) {
+            out.name(FORMAT_NAME).value(format);
+        }
+        if (null != fsize) {
+            out.name(FSIZE_NAME).value(fsize.longValue());
+        }
+        if (-1 != duration) {
+            out.name(DURATION_NAME).value(duration.longValue());
+        }
+        if (null != hash) {
+            out.name(HASH_NAME).value(hash);
+        }
+        out.endObject();
+    }
+
     @Override
     public String toString() {
         return gson.toJson(toJSON());
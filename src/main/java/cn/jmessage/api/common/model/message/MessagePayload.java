@@ -1,6 +1,8 @@
 package cn.jmessage.api.common.model.message;
 
 import cn.jmessage.api.common.model.IModel;
+import cn.jmessage.api.common.model.JsonBuffer;
+import cn.jmessage.api.common.model.JsonWritable;
 import cn.jmessage.api.message.MessageType;
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
@@ -12,7 +14,7 @@ import cn.jmessage.api.utils.StringUtils;
 /**
  * MessagePayload https://docs.jiguang.cn/jmessage/server/rest_api_im/#_17
  */
-public class MessagePayload implements IModel {
+public class MessagePayload implements IModel, JsonWritable {
 
     private static final String VERSION = "version";
     private static final String TARGET_TYPE = "target_type";
@@ -28,6 +30,19 @@ public class MessagePayload implements IModel {
     private static final String NO_NOTIFICATION = "no_notification";
     private static final String NOTIFICATION = "notification";
 
+    private static final byte[] VERSION_NAME = JsonBuffer.encodeName(VERSION);
+    private static final byte[] TARGET_TYPE_NAME = JsonBuffer.encodeName(TARGET_TYPE);
+    private static final byte[] FROM_TYPE_NAME = JsonBuffer.encodeName(FROM_TYPE);
+    private static final byte[] MSG_TYPE_NAME = JsonBuffer.encodeName(MSG_TYPE);
+    private static final byte[] TARGET_ID_NAME = JsonBuffer.encodeName(TARGET_ID);
+    private static final byte[] FROM_ID_NAME = JsonBuffer.encodeName(FROM_ID);
+    private static final byte[] TARGET_APP_KEY_NAME = JsonBuffer.encodeName(TARGET_APP_KEY);
+    private static final byte[] FROM_NAME_NAME = JsonBuffer.encodeName(FROM_NAME);
+    private static final byte[] TARGET_NAME_NAME = JsonBuffer.encodeName(TARGET_NAME);
+    private static final byte[] MSG_BODY_NAME = JsonBuffer.encodeName(MSG_BODY);
+    private static final byte[] NO_OFFLINE_NAME = JsonBuffer.encodeName(NO_OFFLINE);
+    private static final byte[] NO_NOTIFICATION_NAME = JsonBuffer.encodeName(NO_NOTIFICATION);
+    private static final byte[] NOTIFICATION_NAME = JsonBuffer.encodeName(NOTIFICATION);
 
     private static Gson gson = new Gson();
 
@@ -117,11 +132,70 @@ public class MessagePayload implements IModel {
         return json;
     }
 
+    /**
+     * Write the same JSON as {@link #toString()} without the JsonObject tree, used by
+     * {@link cn.jmessage.api.message.MessageClient#sendMessage(MessagePayload)}.
+     */
+    @Override
+    public void writeJSON(JsonBuffer out) {
+        out.beginObject();
+        if (null != mVersion) {
+            out.name(VERSION_NAME).value(mVersion.longValue());
+        }
+        if (null != mTargetType) {
+            out.name(TARGET_TYPE_NAME).value(mTargetType);
+        }
+        if (null != mTargetId) {
+            out.name(TARGET_ID_NAME).value(mTargetId);
+        }
+        if (null != mFromType) {
+            out.name(FROM_TYPE_NAME).value(mFromType);
+        }
+        if (null != mFromId) {
+            out.name(FROM_ID_NAME).value(mFromId);
+        }
+        if (null != mTargetAppKey) {
+            out.name(TARGET_APP_KEY_NAME).value(mTargetAppKey);
+        }
+        if (null != mFromName) {
+            out.name(FROM_NAME_NAME).value(mFromName);
+        }
+        if (null != mTargetName) {
+            out.name(TARGET_NAME_NAME).value(mTargetName);
+        }
+        if (mNoOffline) {
+            out.name(NO_OFFLINE_NAME).value(true);
+        }
+        if (mNoNotification) {
+            out.name(NO_NOTIFICATION_NAME).value(true);
+        }
+        if (null != mMsgType) {
+            out.name(MSG_TYPE_NAME).value(mMsgType.getValue());
+        }
+        if (null != mMsgBody) {
+            out.name(MSG_BODY_NAME);
+            mMsgBody.writeJSON(out);
+        }
+        if (null != mNotification) {
+            out.name(NOTIFICATION_NAME);
+            mNotification.writeJSON(out);
+        }
+        out.endObject();
+    }
+
     @Override
     public String toString() {
         return gson.toJson(toJSON());
     }
 
+    public String getTargetType() {
+        return mTargetType;
+    }
+
+    public String getTargetId() {
+        return mTargetId;
+    }
+
     public static class Builder {
         private Integer mVersion;
         private String mTargetType;
@@ -204,6 +278,23 @@ public class MessagePayload implements IModel {
             return this;
         }
 
+        /**
+         * Build a template of everything but the target, which is serialized once and sent to many targets
+         * with {@link MessageTemplate#render(String, String)}. The target type and id of this builder are not used.
+         *
+         * @return the template
+         */
+        public MessageTemplate buildTemplate() {
+            Preconditions.checkArgument(null != mVersion, "The version must not be empty!");
+            Preconditions.checkArgument(StringUtils.isNotEmpty(mFromType), "The from type must not be empty!");
+            StringUtils.checkUsername(mFromId);
+            Preconditions.checkArgument(mMsgType != null, "The message type must not be empty!");
+            Preconditions.checkArgument(null != mMsgBody, "The message body must not be empty!");
+
+            return new MessageTemplate(new MessagePayload(mVersion, "", "", mFromType, mFromId, mTargetAppKey,
+                    mFromName, mTargetName, mNoOffline, mNoNotification, mMsgType, mMsgBody, mNotification));
+        }
+
         public MessagePayload build() {
             Preconditions.checkArgument(null != mVersion, "The version must not be empty!");
             Preconditions.checkArgument(StringUtils.isNotEmpty(mTargetType), "The target type must not be empty!");
@@ -0,0 +1,115 @@
+package cn.jmessage.api.common.model.message;
+
+import cn.jmessage.api.common.model.JsonBuffer;
+import cn.jmessage.api.common.model.JsonWritable;
+import cn.jmessage.api.utils.StringUtils;
+import cn.jiguang.common.utils.Preconditions;
+
+import java.util.Arrays;
+
+/**
+ * A message sent to many targets, built by {@link MessagePayload.Builder#buildTemplate()}.
+ * <p>
+ * The members which are the same for every target, body and notification included, are serialized once. Rendering
+ * for one target only validates and escapes the target, and copies the bytes around it. Templates are immutable and
+ * can be shared by threads.
+ * </p>
+ */
+public class MessageTemplate {
+
+    // in MessagePayload.writeJSON target_type and target_id follow version, which is a number
+    private static final byte[] EMPTY_TARGET = ascii(",\"target_type\":\"\",\"target_id\":\"\"");
+    private static final byte[] TARGET_TYPE_NAME = ascii(",\"target_type\":");
+    private static final byte[] TARGET_ID_NAME = ascii(",\"target_id\":");
+
+    private final byte[] head;
+    private final byte[] tail;
+
+    /**
+     * @param payload the payload with empty target type and id
+     */
+    MessageTemplate(MessagePayload payload) {
+        JsonBuffer buffer = new JsonBuffer();
+        payload.writeJSON(buffer);
+        byte[] json = buffer.toByteArray();
+        int at = indexOf(json, EMPTY_TARGET);
+        if (at < 0) {
+            throw new IllegalStateException("Unexpected layout of message payload " + buffer);
+        }
+        this.head = Arrays.copyOf(json, at + TARGET_TYPE_NAME.length);
+        this.tail = Arrays.copyOfRange(json, at + EMPTY_TARGET.length, json.length);
+    }
+
+    /**
+     * The message for one target, validated as {@link MessagePayload.Builder#build()} does.
+     *
+     * @param targetId   the username, or the gid for a group message
+     * @param targetType single, group or chatroom
+     * @return the message, its toString is the request body
+     */
+    public JsonWritable render(String targetId, String targetType) {
+        Preconditions.checkArgument(null != targetId, "username must not be empty");
+        Preconditions.checkArgument(null != targetType, "The target type must not be empty!");
+        targetId = targetId.trim();
+        targetType = targetType.trim();
+        Preconditions.checkArgument(StringUtils.isNotEmpty(targetType), "The target type must not be empty!");
+        StringUtils.checkUsername(targetId);
+        return new Rendered(targetId, targetType);
+    }
+
+    /**
+     * Write the message for one target, the target is not validated.
+     */
+    public void writeJSON(JsonBuffer out, String targetId, String targetType) {
+        out.raw(head, 0, head.length)
+                .value(targetType)
+                .raw(TARGET_ID_NAME, 0, TARGET_ID_NAME.length)
+                .value(targetId)
+                .raw(tail, 0, tail.length);
+    }
+
+    private static int indexOf(byte[] bytes, byte[] target) {
+        outer:
+        for (int i = 0; i + target.length <= bytes.length; i++) {
+            for (int j = 0; j < target.length; j++) {
+                if (bytes[i + j] != target[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static byte[] ascii(String value) {
+        byte[] bytes = new byte[value.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) value.charAt(i);
+        }
+        return bytes;
+    }
+
+    private class Rendered implements JsonWritable {
+
+        private final String targetId;
+        private final String targetType;
+
+        Rendered(String targetId, String targetType) {
+            this.targetId = targetId;
+            this.targetType = targetType;
+        }
+
+        @Override
+        public void writeJSON(JsonBuffer out) {
+            MessageTemplate.this.writeJSON(out, targetId, targetType);
+        }
+
+        @Override
+        public String toString() {
+            JsonBuffer buffer = new JsonBuffer();
+            writeJSON(buffer);
+            return buffer.toString();
+        }
+    }
+
+}
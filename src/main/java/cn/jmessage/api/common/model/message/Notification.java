@@ -1,15 +1,20 @@
 package cn.jmessage.api.common.model.message;
 
 import cn.jmessage.api.common.model.IModel;
+import cn.jmessage.api.common.model.JsonBuffer;
+import cn.jmessage.api.common.model.JsonWritable;
 import com.google.gson.Gson;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
-public class Notification implements IModel {
+public class Notification implements IModel, JsonWritable {
 
     private static final String TITLE = "title";
     private static final String ALTRT = "alert";
 
+    private static final byte[] TITLE_NAME = JsonBuffer.encodeName(TITLE);
+    private static final byte[] ALERT_NAME = JsonBuffer.encodeName(ALTRT);
+
     private static Gson gson = new Gson();
 
     private String title;
@@ -38,6 +43,18 @@ public class Notification implements IModel {
         return jsonObject;
     }
 
+    @Override
+    public void writeJSON(JsonBuffer out) {
+        out.beginObject();
+        if (title != null) {
+            out.name(TITLE_NAME).value(title);
+        }
+        if (alert != null) {
+            out.name(ALERT_NAME).value(alert);
+        }
+        out.endObject();
+    }
+
     @Override
     public String toString() {
         return gson.toJson(toJSON());
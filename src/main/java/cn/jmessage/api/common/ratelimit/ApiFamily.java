@@ -0,0 +1,53 @@
+package cn.jmessage.api.common.ratelimit;
+
+/**
+ * Group of APIs which share one rate limit budget.
+ */
+public enum ApiFamily {
+
+    /** /v1/users, /v1/admins, /v1/cross/users */
+    USER,
+    /** /v1/groups, /v1/cross/groups */
+    GROUP,
+    /** /v1/messages */
+    MESSAGE,
+    /** every /v2 API on the report host */
+    REPORT,
+    /** chat room, resource and sensitive word APIs */
+    OTHER;
+
+    /**
+     * @param url request url, with or without scheme and host
+     * @return the family of the API
+     */
+    public static ApiFamily of(String url) {
+        String path = pathOf(url);
+        if (path.startsWith("/v2/")) {
+            return REPORT;
+        }
+        if (path.startsWith("/v1/users") || path.startsWith("/v1/admins") || path.startsWith("/v1/cross/users")) {
+            return USER;
+        }
+        if (path.startsWith("/v1/groups") || path.startsWith("/v1/cross/groups")) {
+            return GROUP;
+        }
+        if (path.startsWith("/v1/messages")) {
+            return MESSAGE;
+        }
+        return OTHER;
+    }
+
+    /**
+     * @param url request url, with or without scheme and host
+     * @return path of the url, with the query
+     */
+    public static String pathOf(String url) {
+        int start = url.indexOf("://");
+        if (start < 0) {
+            return url;
+        }
+        int slash = url.indexOf('/', start + 3);
+        return slash < 0 ? "/" : url.substring(slash);
+    }
+
+}
@@ -0,0 +1,121 @@
+package cn.jmessage.api.common.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Token bucket of one API family, calibrated by the X-Rate-Limit headers of the responses.
+ * <p>
+ * The remaining budget is spread evenly over the time left until the quota resets, with at most one
+ * second worth of permits stored for bursts. Once the reset time passes the full quota is spread over the
+ * quota window. Until the first response with rate limit headers nothing is throttled.
+ * </p>
+ * All times are {@link System#nanoTime()} values.
+ */
+final class RateLimitBucket {
+
+    private static final long ONE_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private int quota = -1;
+    private int remaining;
+    private long resetAtNanos;
+    // longest reset seen, close to the length of the quota window
+    private long windowNanos;
+    private double intervalNanos;
+    private double maxPermits;
+    private double storedPermits;
+    private long nextFreeNanos;
+
+    /**
+     * Reserve one permit.
+     *
+     * @return nanos to wait before the permit can be used, or -1 if that is longer than maxWaitNanos, in
+     * which case nothing is reserved
+     */
+    long reserve(long now, long maxWaitNanos) {
+        lock.lock();
+        try {
+            if (quota <= 0) {
+                return 0;
+            }
+            resync(now);
+            long wait = Math.max(0, nextFreeNanos - now);
+            if (wait > maxWaitNanos) {
+                return -1;
+            }
+            double take = Math.min(1, storedPermits);
+            storedPermits -= take;
+            nextFreeNanos = Math.max(nextFreeNanos, now) + (long) ((1 - take) * intervalNanos);
+            remaining = Math.max(0, remaining - 1);
+            return wait;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void update(int quota, int remaining, int resetSeconds, long now) {
+        lock.lock();
+        try {
+            if (quota <= 0) {
+                return;
+            }
+            long resetNanos = Math.max(ONE_SECOND, TimeUnit.SECONDS.toNanos(resetSeconds));
+            if (this.quota > 0) {
+                resync(now);
+            } else {
+                nextFreeNanos = now;
+            }
+            this.quota = quota;
+            this.remaining = Math.max(0, remaining);
+            this.windowNanos = Math.max(windowNanos, resetNanos);
+            this.resetAtNanos = now + resetNanos;
+            if (remaining <= 0) {
+                // nothing left until the quota resets
+                intervalNanos = (double) windowNanos / quota;
+                storedPermits = 0;
+                nextFreeNanos = Math.max(nextFreeNanos, resetAtNanos);
+            } else {
+                intervalNanos = (double) resetNanos / remaining;
+                if (nextFreeNanos > resetAtNanos) {
+                    nextFreeNanos = now;
+                }
+            }
+            maxPermits = Math.max(1, ONE_SECOND / intervalNanos);
+            storedPermits = Math.min(storedPermits, maxPermits);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    RateLimitBudget snapshot(ApiFamily family, long now) {
+        lock.lock();
+        try {
+            if (quota <= 0) {
+                return new RateLimitBudget(family, -1, -1, -1, 0);
+            }
+            resync(now);
+            long resetMillis = TimeUnit.NANOSECONDS.toMillis(Math.max(0, resetAtNanos - now));
+            return new RateLimitBudget(family, quota, remaining, resetMillis, ONE_SECOND / intervalNanos);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void resync(long now) {
+        if (now >= resetAtNanos) {
+            // a new quota window started
+            long windows = (now - resetAtNanos) / windowNanos + 1;
+            resetAtNanos += windows * windowNanos;
+            remaining = quota;
+            intervalNanos = (double) windowNanos / quota;
+            maxPermits = Math.max(1, ONE_SECOND / intervalNanos);
+        }
+        if (now > nextFreeNanos) {
+            storedPermits = Math.min(maxPermits, storedPermits + (now - nextFreeNanos) / intervalNanos);
+            nextFreeNanos = now;
+        }
+    }
+
+}
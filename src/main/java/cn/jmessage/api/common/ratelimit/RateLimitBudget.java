@@ -0,0 +1,68 @@
+package cn.jmessage.api.common.ratelimit;
+
+/**
+ * Snapshot of the rate limit budget of one API family, as learned from the last response and the calls
+ * sent since then.
+ */
+public class RateLimitBudget {
+
+    private final ApiFamily family;
+    private final int quota;
+    private final int remaining;
+    private final long resetMillis;
+    private final double permitsPerSecond;
+
+    RateLimitBudget(ApiFamily family, int quota, int remaining, long resetMillis, double permitsPerSecond) {
+        this.family = family;
+        this.quota = quota;
+        this.remaining = remaining;
+        this.resetMillis = resetMillis;
+        this.permitsPerSecond = permitsPerSecond;
+    }
+
+    public ApiFamily getFamily() {
+        return family;
+    }
+
+    /**
+     * @return false if no response with rate limit headers was seen yet, calls are not throttled then.
+     */
+    public boolean isKnown() {
+        return quota > 0;
+    }
+
+    /**
+     * @return X-Rate-Limit-Limit of the last response, -1 if unknown
+     */
+    public int getQuota() {
+        return quota;
+    }
+
+    /**
+     * @return X-Rate-Limit-Remaining of the last response minus the calls sent since then, -1 if unknown
+     */
+    public int getRemaining() {
+        return remaining;
+    }
+
+    /**
+     * @return milliseconds until the quota resets, -1 if unknown
+     */
+    public long getResetMillis() {
+        return resetMillis;
+    }
+
+    /**
+     * @return the pace calls are sent at now, 0 if not throttled
+     */
+    public double getPermitsPerSecond() {
+        return permitsPerSecond;
+    }
+
+    @Override
+    public String toString() {
+        return family + " quota: " + quota + ", remaining: " + remaining + ", reset in " + resetMillis
+                + " ms, " + String.format("%.2f", permitsPerSecond) + " calls/s";
+    }
+
+}
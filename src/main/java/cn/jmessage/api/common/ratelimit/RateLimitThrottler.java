@@ -0,0 +1,89 @@
+package cn.jmessage.api.common.ratelimit;
+
+import cn.jiguang.common.resp.APIConnectionException;
+import cn.jmessage.api.common.JMessageConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Paces the calls of one appKey to stay under the quota the server reports in the X-Rate-Limit headers.
+ * There is one token bucket per {@link ApiFamily}, shared by all the sub clients of one
+ * {@link cn.jmessage.api.JMessageClient}.
+ */
+public class RateLimitThrottler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RateLimitThrottler.class);
+
+    public static final long DEFAULT_MAX_WAIT_MILLIS = 60 * 1000;
+
+    private final Map<ApiFamily, RateLimitBucket> buckets = new EnumMap<ApiFamily, RateLimitBucket>(ApiFamily.class);
+    private final long maxWaitNanos;
+
+    public RateLimitThrottler() {
+        this(DEFAULT_MAX_WAIT_MILLIS);
+    }
+
+    public RateLimitThrottler(JMessageConfig config) {
+        this(((Number) config.get(JMessageConfig.RATE_LIMIT_MAX_WAIT)).longValue());
+    }
+
+    /**
+     * @param maxWaitMillis longest time one call waits for a permit, calls which would wait longer fail
+     */
+    public RateLimitThrottler(long maxWaitMillis) {
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, maxWaitMillis));
+        // all families are put here, the map is only read afterwards
+        for (ApiFamily family : ApiFamily.values()) {
+            buckets.put(family, new RateLimitBucket());
+        }
+    }
+
+    /**
+     * Wait until the call is within the budget of its family.
+     *
+     * @param family API family of the call
+     * @throws APIConnectionException the budget is exhausted for longer than the max wait, or interrupted
+     */
+    public void acquire(ApiFamily family) throws APIConnectionException {
+        long wait = buckets.get(family).reserve(System.nanoTime(), maxWaitNanos);
+        if (wait < 0) {
+            throw new APIConnectionException("Rate limit of " + family + " APIs exhausted, "
+                    + getBudget(family), null);
+        }
+        if (wait == 0) {
+            return;
+        }
+        LOG.debug("Throttle " + family + " call for " + TimeUnit.NANOSECONDS.toMillis(wait) + " ms");
+        try {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new APIConnectionException("Interrupted while waiting for rate limit", e);
+        }
+    }
+
+    /**
+     * Calibrate the budget with the headers of a response.
+     *
+     * @param family       API family of the call
+     * @param quota        X-Rate-Limit-Limit, ignored if not more than 0
+     * @param remaining    X-Rate-Limit-Remaining
+     * @param resetSeconds X-Rate-Limit-Reset
+     */
+    public void update(ApiFamily family, int quota, int remaining, int resetSeconds) {
+        buckets.get(family).update(quota, remaining, resetSeconds, System.nanoTime());
+    }
+
+    public RateLimitBudget getBudget(ApiFamily family) {
+        return buckets.get(family).snapshot(family, System.nanoTime());
+    }
+
+    public long getMaxWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos);
+    }
+
+}
@@ -0,0 +1,169 @@
+package cn.jmessage.api.common.ratelimit;
+
+import cn.jiguang.common.connection.IHttpClient;
+import cn.jiguang.common.resp.APIConnectionException;
+import cn.jiguang.common.resp.APIRequestException;
+import cn.jiguang.common.resp.ResponseWrapper;
+import cn.jmessage.api.common.connection.HttpClients;
+import cn.jmessage.api.common.connection.RequestBody;
+import cn.jmessage.api.common.connection.ResponseBodyHandler;
+import cn.jmessage.api.common.connection.StreamingHttpClient;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Wraps an {@link IHttpClient}, every call waits for its {@link RateLimitThrottler} budget before it is sent,
+ * and the X-Rate-Limit headers of the response, error responses included, calibrate the budget.
+ */
+public class ThrottledHttpClient implements StreamingHttpClient {
+
+    private final IHttpClient _delegate;
+    private final RateLimitThrottler _throttler;
+
+    public ThrottledHttpClient(IHttpClient delegate, RateLimitThrottler throttler) {
+        this._delegate = delegate;
+        this._throttler = throttler;
+    }
+
+    public IHttpClient getDelegate() {
+        return _delegate;
+    }
+
+    public RateLimitThrottler getThrottler() {
+        return _throttler;
+    }
+
+    @Override
+    public ResponseWrapper sendGet(String url) throws APIConnectionException, APIRequestException {
+        return sendGet(url, null);
+    }
+
+    @Override
+    public ResponseWrapper sendGet(String url, String content) throws APIConnectionException, APIRequestException {
+        return doRequest(url, content, RequestMethod.GET);
+    }
+
+    @Override
+    public <T> T streamGet(String url, final ResponseBodyHandler<T> handler)
+            throws APIConnectionException, APIRequestException {
+        ApiFamily family = ApiFamily.of(url);
+        _throttler.acquire(family);
+        final ResponseWrapper[] response = new ResponseWrapper[1];
+        T result;
+        try {
+            result = HttpClients.sendGet(_delegate, url, new ResponseBodyHandler<T>() {
+                @Override
+                public T handle(ResponseWrapper wrapper, InputStream body) throws IOException {
+                    response[0] = wrapper;
+                    return handler.handle(wrapper, body);
+                }
+            });
+        } catch (APIRequestException e) {
+            _throttler.update(family, e.getRateLimitQuota(), e.getRateLimitRemaining(), e.getRateLimitReset());
+            throw e;
+        }
+        if (null != response[0]) {
+            _throttler.update(family, response[0].rateLimitQuota, response[0].rateLimitRemaining,
+                    response[0].rateLimitReset);
+        }
+        return result;
+    }
+
+    @Override
+    public ResponseWrapper sendDelete(String url) throws APIConnectionException, APIRequestException {
+        return sendDelete(url, null);
+    }
+
+    @Override
+    public ResponseWrapper sendDelete(String url, String content) throws APIConnectionException, APIRequestException {
+        return doRequest(url, content, RequestMethod.DELETE);
+    }
+
+    @Override
+    public ResponseWrapper sendPost(String url, String content) throws APIConnectionException, APIRequestException {
+        return doRequest(url, content, RequestMethod.POST);
+    }
+
+    @Override
+    public ResponseWrapper sendPost(String url, byte[] content, int offset, int length)
+            throws APIConnectionException, APIRequestException {
+        ApiFamily family = ApiFamily.of(url);
+        _throttler.acquire(family);
+        ResponseWrapper wrapper;
+        try {
+            if (_delegate instanceof StreamingHttpClient) {
+                wrapper = ((StreamingHttpClient) _delegate).sendPost(url, content, offset, length);
+            } else {
+                wrapper = _delegate.sendPost(url, new String(content, offset, length, CHARSET));
+            }
+        } catch (APIRequestException e) {
+            _throttler.update(family, e.getRateLimitQuota(), e.getRateLimitRemaining(), e.getRateLimitReset());
+            throw e;
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+        _throttler.update(family, wrapper.rateLimitQuota, wrapper.rateLimitRemaining, wrapper.rateLimitReset);
+        return wrapper;
+    }
+
+    @Override
+    public boolean canStreamRequestBody() {
+        return HttpClients.canStreamRequestBody(_delegate);
+    }
+
+    @Override
+    public ResponseWrapper sendPost(String url, RequestBody body) throws APIConnectionException, APIRequestException {
+        if (!canStreamRequestBody()) {
+            throw new UnsupportedOperationException("Delegate http client can not stream a request body");
+        }
+        ApiFamily family = ApiFamily.of(url);
+        _throttler.acquire(family);
+        ResponseWrapper wrapper;
+        try {
+            wrapper = ((StreamingHttpClient) _delegate).sendPost(url, body);
+        } catch (APIRequestException e) {
+            _throttler.update(family, e.getRateLimitQuota(), e.getRateLimitRemaining(), e.getRateLimitReset());
+            throw e;
+        }
+        _throttler.update(family, wrapper.rateLimitQuota, wrapper.rateLimitRemaining, wrapper.rateLimitReset);
+        return wrapper;
+    }
+
+    @Override
+    public ResponseWrapper sendPut(String url, String content) throws APIConnectionException, APIRequestException {
+        return doRequest(url, content, RequestMethod.PUT);
+    }
+
+    private ResponseWrapper doRequest(String url, String content, RequestMethod method)
+            throws APIConnectionException, APIRequestException {
+        ApiFamily family = ApiFamily.of(url);
+        _throttler.acquire(family);
+        ResponseWrapper wrapper;
+        try {
+            switch (method) {
+                case GET:
+                    wrapper = null == content ? _delegate.sendGet(url) : _delegate.sendGet(url, content);
+                    break;
+                case DELETE:
+                    wrapper = null == content ? _delegate.sendDelete(url) : _delegate.sendDelete(url, content);
+                    break;
+                case POST:
+                    wrapper = _delegate.sendPost(url, content);
+                    break;
+                case PUT:
+                    wrapper = _delegate.sendPut(url, content);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unsupported request method " + method);
+            }
+        } catch (APIRequestException e) {
+            _throttler.update(family, e.getRateLimitQuota(), e.getRateLimitRemaining(), e.getRateLimitReset());
+            throw e;
+        }
+        _throttler.update(family, wrapper.rateLimitQuota, wrapper.rateLimitRemaining, wrapper.rateLimitReset);
+        return wrapper;
+    }
+
+}
@@ -0,0 +1,4 @@
+/**
+ * Client side throttling driven by the X-Rate-Limit response headers.
+ */
+package cn.jmessage.api.common.ratelimit;
@@ -0,0 +1,71 @@
+package cn.jmessage.api.common.retry;
+
+import cn.jiguang.common.utils.Preconditions;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounds retries to a ratio of the calls, so that retries can not multiply the load on a failing server.
+ * Every call deposits the ratio in the budget and every retry withdraws one, the budget holds at most
+ * minRetries, which is also the burst of retries allowed before any call succeeded to deposit.
+ */
+public class RetryBudget {
+
+    // balance in thousandths of a retry
+    private static final long SCALE = 1000;
+
+    private final long deposit;
+    private final long capacity;
+    private final AtomicLong balance;
+
+    /**
+     * @param ratio      retries allowed per call, such as 0.1 for 10%
+     * @param minRetries retries allowed in a burst, and when there were too few calls to deposit them
+     */
+    public RetryBudget(double ratio, int minRetries) {
+        Preconditions.checkArgument(ratio >= 0 && ratio <= 1, "ratio should between 0 and 1");
+        Preconditions.checkArgument(minRetries >= 1, "minRetries should more than 0");
+        this.deposit = Math.round(ratio * SCALE);
+        this.capacity = minRetries * SCALE;
+        this.balance = new AtomicLong(capacity);
+    }
+
+    /**
+     * Deposit the ratio of one call.
+     */
+    public void deposit() {
+        if (deposit == 0) {
+            return;
+        }
+        while (true) {
+            long current = balance.get();
+            long next = Math.min(capacity, current + deposit);
+            if (next == current || balance.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return true if a retry was withdrawn, false if the budget is exhausted
+     */
+    public boolean tryWithdraw() {
+        while (true) {
+            long current = balance.get();
+            if (current < SCALE) {
+                return false;
+            }
+            if (balance.compareAndSet(current, current - SCALE)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return retries left in the budget, fractional
+     */
+    public double getBalance() {
+        return balance.get() / (double) SCALE;
+    }
+
+}
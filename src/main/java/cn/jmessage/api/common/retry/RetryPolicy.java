@@ -0,0 +1,284 @@
+package cn.jmessage.api.common.retry;
+
+import cn.jiguang.common.utils.Preconditions;
+import cn.jmessage.api.common.metrics.Endpoint;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Decides whether a failed attempt of an API call is sent again, and after how long.
+ * <p>
+ * An attempt which failed before the request was sent, or was answered 429 Too Many Requests, is retried
+ * whatever the method. An attempt which failed after the request was sent, by a timeout, an IO error or
+ * a retryable status such as 503, is only retried if the endpoint is idempotent: GET, PUT and DELETE are,
+ * POST is not unless configured otherwise, so that a message is never sent twice.
+ * </p>
+ * <p>
+ * Retries wait with exponential backoff and decorrelated jitter, at least the Retry-After or rate limit reset
+ * of the response; a call is given up if the server asks to wait longer than the max delay. Retries also
+ * withdraw from a {@link RetryBudget} shared by all the calls of the client.
+ * </p>
+ */
+public class RetryPolicy {
+
+    /**
+     * Status codes retried by default for idempotent endpoints.
+     */
+    public static final Set<Integer> DEFAULT_RETRY_STATUSES = Collections.unmodifiableSet(
+            new HashSet<Integer>(Arrays.asList(500, 502, 503, 504)));
+
+    private static final int TOO_MANY_REQUESTS = 429;
+
+    private final int maxRetries;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+    private final RetryBudget budget;
+    private final Set<Integer> retryStatuses;
+    private final Map<Endpoint, Boolean> idempotency;
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong retries = new AtomicLong();
+    private final AtomicLong budgetExhausted = new AtomicLong();
+
+    private RetryPolicy(Builder builder) {
+        this.maxRetries = builder.maxRetries;
+        this.baseDelayMillis = builder.baseDelayMillis;
+        this.maxDelayMillis = builder.maxDelayMillis;
+        this.budget = builder.budgetRatio < 0 ? null : new RetryBudget(builder.budgetRatio, builder.budgetMinRetries);
+        this.retryStatuses = Collections.unmodifiableSet(new HashSet<Integer>(builder.retryStatuses));
+        this.idempotency = new HashMap<Endpoint, Boolean>(builder.idempotency);
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * A call starts, deposits in the retry budget.
+     */
+    public void callStarted() {
+        calls.incrementAndGet();
+        if (null != budget) {
+            budget.deposit();
+        }
+    }
+
+    /**
+     * @return true if sending a request to the endpoint twice has the same effect as sending it once
+     */
+    public boolean isIdempotent(Endpoint endpoint) {
+        Boolean configured = idempotency.get(endpoint);
+        if (null != configured) {
+            return configured;
+        }
+        String method = endpoint.getMethod();
+        return "GET".equals(method) || "PUT".equals(method) || "DELETE".equals(method);
+    }
+
+    /**
+     * Decide the retry of a failed attempt, a retry is counted and withdrawn from the budget when the delay
+     * returned is not negative.
+     *
+     * @param endpoint         the endpoint called
+     * @param retries          retries already done by the call
+     * @param previousDelay    delay before the previous retry in milliseconds, 0 for the first retry
+     * @param sent             false if the attempt failed before the request was sent
+     * @param repeatable       false if the request body can not be sent again
+     * @param status           HTTP status of the response, 0 if none was received
+     * @param serverDelay      milliseconds the server asked to wait by Retry-After or rate limit reset, -1 if none
+     * @return milliseconds to wait before the retry, -1 to give up
+     */
+    public long retryDelay(Endpoint endpoint, int retries, long previousDelay, boolean sent, boolean repeatable,
+                           int status, long serverDelay) {
+        if (retries >= maxRetries || !repeatable) {
+            return -1;
+        }
+        boolean retryable;
+        if (!sent || status == TOO_MANY_REQUESTS) {
+            retryable = true;
+        } else if (status == 0 || retryStatuses.contains(status)) {
+            retryable = isIdempotent(endpoint);
+        } else {
+            retryable = false;
+        }
+        if (!retryable || serverDelay > maxDelayMillis) {
+            return -1;
+        }
+        if (null != budget && !budget.tryWithdraw()) {
+            budgetExhausted.incrementAndGet();
+            return -1;
+        }
+        this.retries.incrementAndGet();
+        return Math.max(backoff(previousDelay), serverDelay);
+    }
+
+    /**
+     * Decorrelated jitter: random between the base delay and three times the previous delay, capped.
+     */
+    long backoff(long previousDelay) {
+        long upper = Math.min(maxDelayMillis, Math.max(baseDelayMillis, previousDelay * 3));
+        if (upper <= baseDelayMillis) {
+            return upper;
+        }
+        return baseDelayMillis + ThreadLocalRandom.current().nextLong(upper - baseDelayMillis + 1);
+    }
+
+    /**
+     * @param retryAfter value of a Retry-After header, in seconds or an HTTP date
+     * @param nowMillis  current time
+     * @return milliseconds to wait, -1 if the header is null or invalid
+     */
+    public static long parseRetryAfter(String retryAfter, long nowMillis) {
+        if (null == retryAfter || retryAfter.isEmpty()) {
+            return -1;
+        }
+        try {
+            return Math.max(0, Long.parseLong(retryAfter.trim()) * 1000);
+        } catch (NumberFormatException e) {
+            // not seconds, an HTTP date
+        }
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            return Math.max(0, format.parse(retryAfter.trim()).getTime() - nowMillis);
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public long getBaseDelayMillis() {
+        return baseDelayMillis;
+    }
+
+    public long getMaxDelayMillis() {
+        return maxDelayMillis;
+    }
+
+    /**
+     * @return the retry budget, null if retries are not budgeted
+     */
+    public RetryBudget getBudget() {
+        return budget;
+    }
+
+    public Set<Integer> getRetryStatuses() {
+        return retryStatuses;
+    }
+
+    public long getCallCount() {
+        return calls.get();
+    }
+
+    public long getRetryCount() {
+        return retries.get();
+    }
+
+    /**
+     * @return retries given up because the budget was exhausted
+     */
+    public long getBudgetExhaustedCount() {
+        return budgetExhausted.get();
+    }
+
+    @Override
+    public String toString() {
+        return "calls: " + calls.get() + ", retries: " + retries.get() + ", budget exhausted: "
+                + budgetExhausted.get();
+    }
+
+    public static class Builder {
+
+        private int maxRetries = 3;
+        private long baseDelayMillis = 100;
+        private long maxDelayMillis = 5000;
+        private double budgetRatio = 0.1;
+        private int budgetMinRetries = 10;
+        private Set<Integer> retryStatuses = DEFAULT_RETRY_STATUSES;
+        private final Map<Endpoint, Boolean> idempotency = new HashMap<Endpoint, Boolean>();
+
+        /**
+         * Max retries of one call, default is 3.
+         */
+        public Builder setMaxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        /**
+         * Delays of the retries are between base and max, in milliseconds, default is 100 and 5000. A call is
+         * not retried when the server asks to wait longer than the max.
+         */
+        public Builder setDelays(long baseDelayMillis, long maxDelayMillis) {
+            this.baseDelayMillis = baseDelayMillis;
+            this.maxDelayMillis = maxDelayMillis;
+            return this;
+        }
+
+        /**
+         * Retries allowed per call and in a burst, default is 0.1 and 10, see {@link RetryBudget}.
+         */
+        public Builder setBudget(double ratio, int minRetries) {
+            this.budgetRatio = ratio;
+            this.budgetMinRetries = minRetries;
+            return this;
+        }
+
+        /**
+         * Retries are not budgeted.
+         */
+        public Builder disableBudget() {
+            this.budgetRatio = -1;
+            return this;
+        }
+
+        /**
+         * Status codes retried for idempotent endpoints, default is {@link #DEFAULT_RETRY_STATUSES}.
+         * 429 is always retried.
+         */
+        public Builder setRetryStatuses(Set<Integer> retryStatuses) {
+            this.retryStatuses = retryStatuses;
+            return this;
+        }
+
+        /**
+         * Override the idempotency given by the method of an endpoint.
+         *
+         * @param method     request method, such as "POST"
+         * @param path       path of the endpoint, such as "/v1/groups/{gid}/members"
+         * @param idempotent true if sending the request twice has the same effect as sending it once
+         */
+        public Builder setIdempotent(String method, String path, boolean idempotent) {
+            idempotency.put(Endpoint.of(method, path), idempotent);
+            return this;
+        }
+
+        public RetryPolicy build() {
+            Preconditions.checkArgument(maxRetries >= 0, "maxRetries should not less than 0");
+            Preconditions.checkArgument(baseDelayMillis >= 0, "baseDelayMillis should not less than 0");
+            Preconditions.checkArgument(maxDelayMillis >= baseDelayMillis,
+                    "maxDelayMillis should not less than baseDelayMillis");
+            Preconditions.checkArgument(null != retryStatuses, "retryStatuses should not be null");
+            if (budgetRatio >= 0) {
+                Preconditions.checkArgument(budgetRatio <= 1, "budget ratio should between 0 and 1");
+                Preconditions.checkArgument(budgetMinRetries >= 1, "budget minRetries should more than 0");
+            }
+            return new RetryPolicy(this);
+        }
+    }
+
+}
@@ -0,0 +1,4 @@
+/**
+ * Retry policy of API calls: idempotency of the endpoints, backoff with jitter and the retry budget.
+ */
+package cn.jmessage.api.common.retry;
@@ -0,0 +1,37 @@
+package cn.jmessage.api.common.trace;
+
+/**
+ * Receives the events of every API call, add it with
+ * {@link cn.jmessage.api.common.JMessageConfig#addCallListener(CallListener)}. Override the events of interest,
+ * the others do nothing.
+ * <p>
+ * Events are delivered on the thread of the call, while the call is in progress, they must not block. An exception
+ * thrown by a listener is logged and does not fail the call.
+ * </p>
+ */
+public abstract class CallListener {
+
+    /**
+     * The call is about to be sent.
+     */
+    public void callStart(CallTrace trace) {
+    }
+
+    /**
+     * A phase of the call ended, a phase can happen more than once when the request is retried.
+     *
+     * @param trace      the call
+     * @param phase      the phase
+     * @param startNanos start of the phase, by {@link System#nanoTime()}
+     * @param endNanos   end of the phase, by {@link System#nanoTime()}
+     */
+    public void phaseEnd(CallTrace trace, Phase phase, long startNanos, long endNanos) {
+    }
+
+    /**
+     * The call is done, successful or not, the trace holds the time of each phase.
+     */
+    public void callEnd(CallTrace trace) {
+    }
+
+}
@@ -0,0 +1,71 @@
+package cn.jmessage.api.common.trace;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * Chains the listeners of a client into one.
+ */
+public final class CallListeners {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CallListeners.class);
+
+    private CallListeners() {
+    }
+
+    /**
+     * @param listeners listeners called in order
+     * @return one listener calling all of them and logging their exceptions, null if the list is null or empty
+     */
+    public static CallListener chain(List<CallListener> listeners) {
+        if (null == listeners || listeners.isEmpty()) {
+            return null;
+        }
+        return new Chain(listeners.toArray(new CallListener[listeners.size()]));
+    }
+
+    private static class Chain extends CallListener {
+
+        private final CallListener[] listeners;
+
+        Chain(CallListener[] listeners) {
+            this.listeners = listeners;
+        }
+
+        @Override
+        public void callStart(CallTrace trace) {
+            for (CallListener listener : listeners) {
+                try {
+                    listener.callStart(trace);
+                } catch (RuntimeException e) {
+                    LOG.warn("Call listener failed on start of " + trace.getEndpoint(), e);
+                }
+            }
+        }
+
+        @Override
+        public void phaseEnd(CallTrace trace, Phase phase, long startNanos, long endNanos) {
+            for (CallListener listener : listeners) {
+                try {
+                    listener.phaseEnd(trace, phase, startNanos, endNanos);
+                } catch (RuntimeException e) {
+                    LOG.warn("Call listener failed on " + phase + " of " + trace.getEndpoint(), e);
+                }
+            }
+        }
+
+        @Override
+        public void callEnd(CallTrace trace) {
+            for (CallListener listener : listeners) {
+                try {
+                    listener.callEnd(trace);
+                } catch (RuntimeException e) {
+                    LOG.warn("Call listener failed on end of " + trace.getEndpoint(), e);
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,154 @@
+package cn.jmessage.api.common.trace;
+
+import cn.jmessage.api.common.metrics.Endpoint;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timing of one API call, built by the http client while the call runs and passed to the {@link CallListener}.
+ * Times are by {@link System#nanoTime()}, {@link #getStartEpochMillis()} maps them to the wall clock.
+ */
+public final class CallTrace {
+
+    private static final Phase[] PHASES = Phase.values();
+
+    private final Endpoint endpoint;
+    private final String url;
+    private final CallListener listener;
+    private final long startEpochMillis;
+    private final long startNanos;
+    private final long[] phaseStartNanos = new long[PHASES.length];
+    private final long[] phaseNanos = new long[PHASES.length];
+    private long endNanos;
+    private int status;
+    private Exception failure;
+
+    /**
+     * Start a call and send its start event.
+     *
+     * @param method   request method
+     * @param url      request url
+     * @param listener receives the events
+     */
+    public CallTrace(String method, String url, CallListener listener) {
+        this.endpoint = Endpoint.of(method, url);
+        this.url = url;
+        this.listener = listener;
+        this.startEpochMillis = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
+        listener.callStart(this);
+    }
+
+    /**
+     * Add a phase to the call and send its event, called by the http client.
+     */
+    public void phase(Phase phase, long startNanos, long endNanos) {
+        int i = phase.ordinal();
+        if (phaseStartNanos[i] == 0) {
+            phaseStartNanos[i] = startNanos;
+        }
+        phaseNanos[i] += endNanos - startNanos;
+        listener.phaseEnd(this, phase, startNanos, endNanos);
+    }
+
+    /**
+     * End the call and send its end event, called by the http client.
+     *
+     * @param status  HTTP status of the response, 0 if none was received
+     * @param failure exception of a failed call, null if a response was received
+     */
+    public void end(int status, Exception failure) {
+        this.endNanos = System.nanoTime();
+        this.status = status;
+        this.failure = failure;
+        listener.callEnd(this);
+    }
+
+    /**
+     * @return the API, with a path template such as /v1/users/{}/blacklist instead of the url
+     */
+    public Endpoint getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * @return the url as requested, it can hold user names and ids
+     */
+    public String getUrl() {
+        return url;
+    }
+
+    public long getStartEpochMillis() {
+        return startEpochMillis;
+    }
+
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    /**
+     * @return end of the call, 0 while it is running
+     */
+    public long getEndNanos() {
+        return endNanos;
+    }
+
+    /**
+     * @return duration of the call, 0 while it is running
+     */
+    public long getDurationNanos() {
+        return endNanos == 0 ? 0 : endNanos - startNanos;
+    }
+
+    /**
+     * @return time spent in the phase, over all the attempts of the call, 0 if it did not happen
+     */
+    public long getPhaseNanos(Phase phase) {
+        return phaseNanos[phase.ordinal()];
+    }
+
+    /**
+     * @return first start of the phase, 0 if it did not happen
+     */
+    public long getPhaseStartNanos(Phase phase) {
+        return phaseStartNanos[phase.ordinal()];
+    }
+
+    /**
+     * @return HTTP status, 0 if no response was received
+     */
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return exception of a failed call, an error response included, null otherwise
+     */
+    public Exception getFailure() {
+        return failure;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(endpoint).append(' ').append(status).append(" in ").append(toMillis(getDurationNanos())).append("ms");
+        String separator = ": ";
+        for (Phase phase : PHASES) {
+            long nanos = phaseNanos[phase.ordinal()];
+            if (nanos > 0 || phaseStartNanos[phase.ordinal()] != 0) {
+                sb.append(separator).append(phase.name().toLowerCase()).append(' ').append(toMillis(nanos))
+                        .append("ms");
+                separator = ", ";
+            }
+        }
+        if (null != failure) {
+            sb.append(", failed: ").append(failure.getMessage());
+        }
+        return sb.toString();
+    }
+
+    private static String toMillis(long nanos) {
+        return String.valueOf(nanos / (double) TimeUnit.MILLISECONDS.toNanos(1));
+    }
+
+}
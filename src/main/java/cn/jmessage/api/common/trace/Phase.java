@@ -0,0 +1,25 @@
+package cn.jmessage.api.common.trace;
+
+/**
+ * Phases of an API call, in the order they happen. The connection phases only happen when no idle pooled
+ * connection could be reused.
+ */
+public enum Phase {
+
+    /** waiting for a free slot of the connection pool */
+    QUEUE_WAIT,
+    /** resolving the host name of a new connection */
+    DNS,
+    /** TCP connect of a new connection, the CONNECT tunnel of a proxy included */
+    CONNECT,
+    /** TLS handshake of a new connection */
+    TLS_HANDSHAKE,
+    /** writing the request head and body */
+    REQUEST_WRITE,
+    /** from the end of the request to the status line of the response, mostly server time */
+    TIME_TO_FIRST_BYTE,
+    /** reading the headers and the body of the response into a String */
+    BODY_READ,
+    /** reading the headers and the body of a response decoded while it is streamed, instead of BODY_READ */
+    DECODE
+}
@@ -0,0 +1,33 @@
+package cn.jmessage.api.common.trace;
+
+import cn.jiguang.common.utils.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logs the calls slower than a threshold with the time of each phase, at WARN level.
+ */
+public class SlowCallLogger extends CallListener {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SlowCallLogger.class);
+
+    private final long thresholdNanos;
+
+    /**
+     * @param thresholdMillis calls taking longer are logged, in milliseconds
+     */
+    public SlowCallLogger(long thresholdMillis) {
+        Preconditions.checkArgument(thresholdMillis >= 0, "threshold should not less than 0");
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+    }
+
+    @Override
+    public void callEnd(CallTrace trace) {
+        if (trace.getDurationNanos() > thresholdNanos) {
+            LOG.warn("Slow call " + trace);
+        }
+    }
+
+}
@@ -0,0 +1,4 @@
+/**
+ * Tracing of API calls: phase timings of each call delivered to listeners.
+ */
+package cn.jmessage.api.common.trace;
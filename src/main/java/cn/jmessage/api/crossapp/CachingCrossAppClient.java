@@ -0,0 +1,91 @@
+package cn.jmessage.api.crossapp;
+
+import cn.jiguang.common.connection.HttpProxy;
+import cn.jiguang.common.connection.IHttpClient;
+import cn.jiguang.common.resp.APIConnectionException;
+import cn.jiguang.common.resp.APIRequestException;
+import cn.jiguang.common.resp.ResponseWrapper;
+import cn.jmessage.api.common.HttpClientChain;
+import cn.jmessage.api.common.JMessageConfig;
+import cn.jmessage.api.common.cache.MetadataCaches;
+import cn.jmessage.api.common.model.cross.CrossGroup;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * {@link CrossAppClient} which keeps the {@link MetadataCaches} of the
+ * {@link cn.jmessage.api.group.CachingGroupClient} up to date: changing the members of a group across apps
+ * invalidates the cached group, its members and the groups of the users added or removed, even if the request
+ * failed.
+ */
+public class CachingCrossAppClient extends CrossAppClient {
+
+    private final MetadataCaches caches;
+
+    /**
+     * @param appKey       The key of one application on JPush.
+     * @param masterSecret API access secret of the appKey.
+     * @param proxy        The proxy, if there is no proxy, should be null.
+     * @param config       The client configuration. Can use JMessageConfig.getInstance() as default.
+     * @param caches       The caches, share them with the {@link cn.jmessage.api.group.CachingGroupClient}.
+     */
+    public CachingCrossAppClient(String appKey, String masterSecret, HttpProxy proxy, JMessageConfig config,
+                                 MetadataCaches caches) {
+        this(appKey, masterSecret, config, newHttpClientChain(appKey, masterSecret, proxy, config), caches);
+    }
+
+    private CachingCrossAppClient(String appKey, String masterSecret, JMessageConfig config,
+                                  HttpClientChain httpClients, MetadataCaches caches) {
+        this(appKey, masterSecret, config, httpClients.getHttpClient(), caches);
+        _httpClientChain = httpClients;
+    }
+
+    /**
+     * @param httpClient The client sending the calls, shared with other clients.
+     */
+    public CachingCrossAppClient(String appKey, String masterSecret, JMessageConfig config, IHttpClient httpClient,
+                                 MetadataCaches caches) {
+        super(appKey, masterSecret, config, httpClient);
+        this.caches = caches;
+    }
+
+    public MetadataCaches getCaches() {
+        return caches;
+    }
+
+    @Override
+    public ResponseWrapper addOrRemoveCrossGroupMembers(long gid, CrossGroup[] groups)
+            throws APIConnectionException, APIRequestException {
+        try {
+            return super.addOrRemoveCrossGroupMembers(gid, groups);
+        } finally {
+            caches.getGroups().invalidate(gid);
+            caches.getGroupMembers().invalidate(gid);
+            if (null != groups) {
+                for (CrossGroup group : groups) {
+                    invalidateUserGroups(group);
+                }
+            }
+        }
+    }
+
+    /**
+     * The users of another app may have the username of a user of this app, their cached groups are dropped too.
+     */
+    private void invalidateUserGroups(CrossGroup group) {
+        if (null == group) {
+            return;
+        }
+        JsonObject json = group.toJSON().getAsJsonObject();
+        for (String key : new String[]{"add", "remove"}) {
+            JsonElement usernames = json.get(key);
+            if (null == usernames || !usernames.isJsonArray()) {
+                continue;
+            }
+            for (JsonElement username : usernames.getAsJsonArray()) {
+                caches.getUserGroups().invalidate(username.getAsString());
+            }
+        }
+    }
+
+}
@@ -6,6 +6,7 @@ import cn.jiguang.common.resp.APIConnectionException;
 import cn.jiguang.common.resp.APIRequestException;
 import cn.jiguang.common.resp.ResponseWrapper;
 import cn.jmessage.api.common.BaseClient;
+import cn.jmessage.api.common.HttpClientChain;
 import cn.jmessage.api.common.JMessageConfig;
 import cn.jmessage.api.common.model.cross.*;
 import cn.jmessage.api.group.MemberListResult;
@@ -35,7 +36,24 @@ public class CrossAppClient extends BaseClient {
      * @param config       The client configuration. Can use JMessageConfig.getInstance() as default.
      */
     public CrossAppClient(String appKey, String masterSecret, HttpProxy proxy, JMessageConfig config) {
-        super(appKey, masterSecret, proxy, config);
+        this(appKey, masterSecret, config, newHttpClientChain(appKey, masterSecret, proxy, config));
+    }
+
+    private CrossAppClient(String appKey, String masterSecret, JMessageConfig config, HttpClientChain httpClients) {
+        this(appKey, masterSecret, config, httpClients.getHttpClient());
+        _httpClientChain = httpClients;
+    }
+
+    /**
+     * Create a client sending its calls with a client shared with other clients.
+     *
+     * @param appKey The KEY of one application on JPush.
+     * @param masterSecret API access secret of the appKey.
+     * @param config The client configuration. Can use JMessageConfig.getInstance() as default.
+     * @param httpClient The client sending the calls, shared with other clients.
+     */
+    public CrossAppClient(String appKey, String masterSecret, JMessageConfig config, IHttpClient httpClient) {
+        super(appKey, masterSecret, config, httpClient);
         this.crossUserPath = (String) config.get(JMessageConfig.CROSS_USER_PATH);
         this.crossGroupPath = (String) config.get(JMessageConfig.CROSS_GROUP_PATH);
     }
@@ -68,7 +86,11 @@ public class CrossAppClient extends BaseClient {
     public MemberListResult getCrossGroupMembers(long gid)
             throws APIConnectionException, APIRequestException {
         Preconditions.checkArgument(0 != gid, "gid must not be empty");
-        ResponseWrapper response = _httpClient.sendGet(_baseUrl + crossGroupPath + "/" + gid + "/members/");
+        String url = _baseUrl + crossGroupPath + "/" + gid + "/members/";
+        if (_streamingDecode) {
+            return streamGet(url, MemberListResult.DECODER);
+        }
+        ResponseWrapper response = _httpClient.sendGet(url);
         return MemberListResult.fromResponse(response);
     }
 
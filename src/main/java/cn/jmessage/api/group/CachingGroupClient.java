@@ -0,0 +1,171 @@
+package cn.jmessage.api.group;
+
+import cn.jiguang.common.connection.HttpProxy;
+import cn.jiguang.common.connection.IHttpClient;
+import cn.jiguang.common.resp.APIConnectionException;
+import cn.jiguang.common.resp.APIRequestException;
+import cn.jiguang.common.resp.ResponseWrapper;
+import cn.jiguang.common.utils.Preconditions;
+import cn.jmessage.api.common.HttpClientChain;
+import cn.jmessage.api.common.JMessageConfig;
+import cn.jmessage.api.common.cache.MetadataCache;
+import cn.jmessage.api.common.cache.MetadataCaches;
+import cn.jmessage.api.common.model.Members;
+import cn.jmessage.api.common.model.group.GroupPayload;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+
+/**
+ * {@link GroupClient} which reads group info and group members through {@link MetadataCaches}.
+ * <p>
+ * Writes invalidate the cached entries of the group, even if the request failed, and the cached groups of the
+ * users concerned. When the members of the group are not cached, updating or deleting the group drops the
+ * groups of all users.
+ * </p>
+ */
+public class CachingGroupClient extends GroupClient {
+
+    private final MetadataCaches caches;
+
+    /**
+     * @param appkey       The key of one application on JPush.
+     * @param masterSecret API access secret of the appKey.
+     * @param proxy        The proxy, if there is no proxy, should be null.
+     * @param config       The client configuration. Can use JMessageConfig.getInstance() as default.
+     * @param caches       The caches, share them with the {@link cn.jmessage.api.user.CachingUserClient}.
+     */
+    public CachingGroupClient(String appkey, String masterSecret, HttpProxy proxy, JMessageConfig config,
+                              MetadataCaches caches) {
+        this(appkey, masterSecret, config, newHttpClientChain(appkey, masterSecret, proxy, config), caches);
+    }
+
+    private CachingGroupClient(String appkey, String masterSecret, JMessageConfig config,
+                               HttpClientChain httpClients, MetadataCaches caches) {
+        this(appkey, masterSecret, config, httpClients.getHttpClient(), caches);
+        _httpClientChain = httpClients;
+    }
+
+    /**
+     * @param httpClient The client sending the calls, shared with other clients.
+     */
+    public CachingGroupClient(String appkey, String masterSecret, JMessageConfig config, IHttpClient httpClient,
+                              MetadataCaches caches) {
+        super(appkey, masterSecret, config, httpClient);
+        this.caches = caches;
+    }
+
+    public MetadataCaches getCaches() {
+        return caches;
+    }
+
+    @Override
+    public GroupInfoResult getGroupInfo(final long gid) throws APIConnectionException, APIRequestException {
+        Preconditions.checkArgument(gid > 0, "gid should more than 0.");
+        return caches.getGroups().get(gid, new MetadataCache.Loader<GroupInfoResult>() {
+            @Override
+            public GroupInfoResult load() throws APIConnectionException, APIRequestException {
+                return CachingGroupClient.super.getGroupInfo(gid);
+            }
+        });
+    }
+
+    @Override
+    public MemberListResult getGroupMembers(final long gid) throws APIConnectionException, APIRequestException {
+        Preconditions.checkArgument(gid > 0, "gid should more than 0.");
+        return caches.getGroupMembers().get(gid, new MetadataCache.Loader<MemberListResult>() {
+            @Override
+            public MemberListResult load() throws APIConnectionException, APIRequestException {
+                return CachingGroupClient.super.getGroupMembers(gid);
+            }
+        });
+    }
+
+    @Override
+    public CreateGroupResult createGroup(GroupPayload payload) throws APIConnectionException, APIRequestException {
+        try {
+            return super.createGroup(payload);
+        } finally {
+            if (null != payload) {
+                JsonObject json = payload.toJSON().getAsJsonObject();
+                if (json.has(GroupPayload.OWNER)) {
+                    caches.getUserGroups().invalidate(json.get(GroupPayload.OWNER).getAsString());
+                }
+                if (json.has(GroupPayload.MEMBERS)) {
+                    invalidateUserGroups(json.get(GroupPayload.MEMBERS));
+                }
+            }
+        }
+    }
+
+    @Override
+    public ResponseWrapper addOrRemoveMembers(long gid, Members add, Members remove)
+            throws APIConnectionException, APIRequestException {
+        try {
+            return super.addOrRemoveMembers(gid, add, remove);
+        } finally {
+            caches.getGroups().invalidate(gid);
+            caches.getGroupMembers().invalidate(gid);
+            if (null != add) {
+                invalidateUserGroups(add.toJSON());
+            }
+            if (null != remove) {
+                invalidateUserGroups(remove.toJSON());
+            }
+        }
+    }
+
+    @Override
+    public ResponseWrapper deleteGroup(long gid) throws APIConnectionException, APIRequestException {
+        try {
+            return super.deleteGroup(gid);
+        } finally {
+            invalidateMemberGroups(gid);
+            caches.getGroups().invalidate(gid);
+            caches.getGroupMembers().invalidate(gid);
+        }
+    }
+
+    @Override
+    public ResponseWrapper updateGroupInfo(long gid, String groupName, String groupDesc, String avatar)
+            throws APIConnectionException, APIRequestException {
+        try {
+            return super.updateGroupInfo(gid, groupName, groupDesc, avatar);
+        } finally {
+            // the groups of a user carry the group info too
+            invalidateMemberGroups(gid);
+            caches.getGroups().invalidate(gid);
+        }
+    }
+
+    @Override
+    public ResponseWrapper changeGroupAdmin(long gid, String appKey, String username)
+            throws APIConnectionException, APIRequestException {
+        try {
+            return super.changeGroupAdmin(gid, appKey, username);
+        } finally {
+            caches.getGroups().invalidate(gid);
+            caches.getGroupMembers().invalidate(gid);
+        }
+    }
+
+    private void invalidateMemberGroups(long gid) {
+        MemberListResult members = caches.getGroupMembers().getIfPresent(gid);
+        if (null == members || null == members.getMembers()) {
+            caches.getUserGroups().invalidateAll();
+            return;
+        }
+        for (MemberResult member : members.getMembers()) {
+            caches.getUserGroups().invalidate(member.getUsername());
+        }
+    }
+
+    private void invalidateUserGroups(JsonElement usernames) {
+        if (null == usernames || !usernames.isJsonArray()) {
+            return;
+        }
+        for (JsonElement username : usernames.getAsJsonArray()) {
+            caches.getUserGroups().invalidate(username.getAsString());
+        }
+    }
+
+}
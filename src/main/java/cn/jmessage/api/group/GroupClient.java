@@ -1,11 +1,14 @@
 package cn.jmessage.api.group;
 
 import cn.jiguang.common.connection.HttpProxy;
+import cn.jiguang.common.connection.IHttpClient;
 import cn.jiguang.common.resp.APIConnectionException;
 import cn.jiguang.common.resp.APIRequestException;
 import cn.jiguang.common.resp.ResponseWrapper;
 import cn.jiguang.common.utils.Preconditions;
 import cn.jmessage.api.common.BaseClient;
+import cn.jmessage.api.common.ElementVisitor;
+import cn.jmessage.api.common.HttpClientChain;
 import cn.jmessage.api.common.JMessageConfig;
 import cn.jmessage.api.common.model.Members;
 import cn.jmessage.api.common.model.group.GroupPayload;
@@ -53,7 +56,24 @@ public class GroupClient extends BaseClient {
      * @param config       The client configuration. Can use JMessageConfig.getInstance() as default.
      */
     public GroupClient(String appkey, String masterSecret, HttpProxy proxy, JMessageConfig config) {
-        super(appkey, masterSecret, proxy, config);
+        this(appkey, masterSecret, config, newHttpClientChain(appkey, masterSecret, proxy, config));
+    }
+
+    private GroupClient(String appkey, String masterSecret, JMessageConfig config, HttpClientChain httpClients) {
+        this(appkey, masterSecret, config, httpClients.getHttpClient());
+        _httpClientChain = httpClients;
+    }
+
+    /**
+     * Create a client sending its calls with a client shared with other clients.
+     *
+     * @param appkey The KEY of one application on JPush.
+     * @param masterSecret API access secret of the appKey.
+     * @param config The client configuration. Can use JMessageConfig.getInstance() as default.
+     * @param httpClient The client sending the calls, shared with other clients.
+     */
+    public GroupClient(String appkey, String masterSecret, JMessageConfig config, IHttpClient httpClient) {
+        super(appkey, masterSecret, config, httpClient);
         this.groupPath = (String) config.get(JMessageConfig.GROUP_PATH);
     }
 
@@ -70,20 +90,64 @@ public class GroupClient extends BaseClient {
             throws APIConnectionException, APIRequestException {
         Preconditions.checkArgument(gid > 0, "gid should more than 0.");
 
-        ResponseWrapper response = _httpClient.sendGet(_baseUrl + groupPath + "/" + gid + "/members");
+        String url = _baseUrl + groupPath + "/" + gid + "/members";
+        if (_streamingDecode) {
+            return streamGet(url, MemberListResult.DECODER);
+        }
+        ResponseWrapper response = _httpClient.sendGet(url);
 
         return MemberListResult.fromResponse(response);
     }
 
+    /**
+     * Get group members, the members are handed to the visitor while the response is read
+     * and are not kept in the result.
+     * @param gid The group id
+     * @param visitor Gets the members one by one
+     * @return Member list result without members
+     * @throws APIConnectionException connect exception
+     * @throws APIRequestException request exception
+     */
+    public MemberListResult getGroupMembers(long gid, ElementVisitor<? super MemberResult> visitor)
+            throws APIConnectionException, APIRequestException {
+        Preconditions.checkArgument(gid > 0, "gid should more than 0.");
+        Preconditions.checkArgument(null != visitor, "visitor should not be null");
+        return streamGet(_baseUrl + groupPath + "/" + gid + "/members", MemberListResult.DECODER.visiting(visitor));
+    }
+
     public GroupListResult getGroupListByAppkey(int start, int count)
             throws APIConnectionException, APIRequestException {
         if (start < 0 || count <= 0 || count > 500) {
             throw new IllegalArgumentException("negative index or count must more than 0 and less than 501");
         }
-        ResponseWrapper response = _httpClient.sendGet(_baseUrl + groupPath + "?start=" + start + "&count=" + count);
+        String url = _baseUrl + groupPath + "?start=" + start + "&count=" + count;
+        if (_streamingDecode) {
+            return streamGet(url, GroupListResult.DECODER);
+        }
+        ResponseWrapper response = _httpClient.sendGet(url);
         return GroupListResult.fromResponse(response, GroupListResult.class);
     }
 
+    /**
+     * Get groups of the appkey, the groups are handed to the visitor while the response is read
+     * and are not kept in the result.
+     * @param start The start index of the list
+     * @param count The number that how many you want to get from list
+     * @param visitor Gets the groups one by one
+     * @return Group list result without groups
+     * @throws APIConnectionException connect exception
+     * @throws APIRequestException request exception
+     */
+    public GroupListResult getGroupListByAppkey(int start, int count, ElementVisitor<? super GroupInfoResult> visitor)
+            throws APIConnectionException, APIRequestException {
+        if (start < 0 || count <= 0 || count > 500) {
+            throw new IllegalArgumentException("negative index or count must more than 0 and less than 501");
+        }
+        Preconditions.checkArgument(null != visitor, "visitor should not be null");
+        return streamGet(_baseUrl + groupPath + "?start=" + start + "&count=" + count,
+                GroupListResult.DECODER.visiting(visitor));
+    }
+
     public CreateGroupResult createGroup(GroupPayload payload)
             throws APIConnectionException, APIRequestException {
         Preconditions.checkArgument(!(null == payload), "group payload should not be null");
@@ -5,9 +5,17 @@ import java.util.List;
 import com.google.gson.annotations.Expose;
 
 import cn.jiguang.common.resp.BaseResult;
+import cn.jmessage.api.common.ListResultDecoder;
 
 public class GroupListResult extends BaseResult {
 
+    /**
+     * Decodes the result straight from the response stream, see {@link ListResultDecoder}.
+     */
+    public static final ListResultDecoder<GroupListResult, GroupInfoResult> DECODER =
+            new ListResultDecoder<GroupListResult, GroupInfoResult>(GroupListResult.class,
+                    "groups", GroupInfoResult.class);
+
     @Expose Integer total;
     @Expose Integer start;
     @Expose Integer count;
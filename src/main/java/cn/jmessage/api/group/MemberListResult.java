@@ -2,9 +2,17 @@ package cn.jmessage.api.group;
 
 import cn.jiguang.common.resp.BaseResult;
 import cn.jiguang.common.resp.ResponseWrapper;
+import cn.jmessage.api.common.ListResultDecoder;
 
 public class MemberListResult extends BaseResult {
 
+    /**
+     * Decodes the result straight from the response stream, see {@link ListResultDecoder}.
+     */
+    public static final ListResultDecoder<MemberListResult, MemberResult> DECODER =
+            new ListResultDecoder<MemberListResult, MemberResult>(MemberListResult.class,
+                    "members", MemberResult.class);
+
     private MemberResult[] members;
 
     public static MemberListResult fromResponse(ResponseWrapper responseWrapper) {
@@ -1,26 +1,37 @@
 package cn.jmessage.api.message;
 
 import cn.jiguang.common.connection.HttpProxy;
+import cn.jiguang.common.connection.IHttpClient;
 import cn.jiguang.common.resp.APIConnectionException;
 import cn.jiguang.common.resp.APIRequestException;
 import cn.jiguang.common.resp.ResponseWrapper;
 import cn.jiguang.common.utils.Preconditions;
 import cn.jmessage.api.chatroom.ChatRoomHistoryResult;
 import cn.jmessage.api.common.BaseClient;
+import cn.jmessage.api.common.async.BulkExecutor;
+import cn.jmessage.api.common.ElementVisitor;
+import cn.jmessage.api.common.HttpClientChain;
 import cn.jmessage.api.common.JMessageConfig;
+import cn.jmessage.api.common.model.JsonWritable;
+import cn.jmessage.api.common.model.message.MessageBody;
 import cn.jmessage.api.common.model.message.MessagePayload;
+import cn.jmessage.api.common.model.message.MessageTemplate;
 import cn.jmessage.api.utils.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.net.URLEncoder;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.Collection;
 import java.util.Date;
+import java.util.LinkedHashSet;
 
 
 public class MessageClient extends BaseClient {
 
-    //private static final Logger LOG = LoggerFactory.getLogger(MessageClient.class);
+    private static final Logger LOG = LoggerFactory.getLogger(MessageClient.class);
 
     private String messagePath;
     private String v2_messagePath;
@@ -34,9 +45,26 @@ public class MessageClient extends BaseClient {
     }
 
     public MessageClient(String appKey, String masterSecret, HttpProxy proxy, JMessageConfig config) {
-        super(appKey, masterSecret, proxy, config);
+        this(appKey, masterSecret, config, newHttpClientChain(appKey, masterSecret, proxy, config));
+    }
+
+    private MessageClient(String appKey, String masterSecret, JMessageConfig config, HttpClientChain httpClients) {
+        this(appKey, masterSecret, config, httpClients.getHttpClient());
+        _httpClientChain = httpClients;
+    }
+
+    /**
+     * Create a client sending its calls with a client shared with other clients.
+     *
+     * @param appKey The KEY of one application on JPush.
+     * @param masterSecret API access secret of the appKey.
+     * @param config The client configuration. Can use JMessageConfig.getInstance() as default.
+     * @param httpClient The client sending the calls, shared with other clients.
+     */
+    public MessageClient(String appKey, String masterSecret, JMessageConfig config, IHttpClient httpClient) {
+        super(appKey, masterSecret, config, httpClient);
         this.messagePath = (String) config.get(JMessageConfig.MESSAGE_PATH);
-        this.reportBaseUrl = (String) config.get(JMessageConfig.API_REPORT_HOST_NAME);
+        this.reportBaseUrl = config.getReportHostName();
         this.v2_userPath = (String) config.get(JMessageConfig.V2_USER_PATH);
         this.v2_messagePath = (String) config.get(JMessageConfig.V2_MESSAGE_PATH);
         this.v2_chatroomPath = (String) config.get(JMessageConfig.V2_CHATROOM_PATH);
@@ -46,10 +74,108 @@ public class MessageClient extends BaseClient {
             throws APIConnectionException, APIRequestException {
         Preconditions.checkArgument(!(null == payload), "Message payload should not be null");
 
-        ResponseWrapper response = _httpClient.sendPost(_baseUrl + messagePath, payload.toString());
+        ResponseWrapper response = sendPost(_baseUrl + messagePath, payload);
+        return SendMessageResult.fromResponse(response, SendMessageResult.class);
+    }
+
+    /**
+     * Send the message of a template to one target, only the target is validated and serialized for each call.
+     *
+     * @param template   Message built by {@link MessagePayload.Builder#buildTemplate()}
+     * @param targetId   The username, or the gid for a group message
+     * @param targetType single, group or chatroom
+     * @return SendMessageResult
+     * @throws APIConnectionException connect exception
+     * @throws APIRequestException request exception
+     */
+    public SendMessageResult sendMessage(MessageTemplate template, String targetId, String targetType)
+            throws APIConnectionException, APIRequestException {
+        Preconditions.checkArgument(null != template, "Message template should not be null");
+
+        ResponseWrapper response = sendPost(_baseUrl + messagePath, template.render(targetId, targetType));
         return SendMessageResult.fromResponse(response, SendMessageResult.class);
     }
 
+    /**
+     * Send one message to every target, at most {@link SendToAllOptions#getMaxInFlight()} requests at the same
+     * time. The message is serialized once, see {@link MessagePayload.Builder#buildTemplate()}, and duplicate
+     * targets are sent once. Blocks until every target has an outcome.
+     *
+     * @param body    The message body
+     * @param targets Usernames, or gids if the target type of the options is group
+     * @param options Sender, message type and concurrency
+     * @return msg_id of every target sent to, failures by error code, and latencies
+     * @throws APIConnectionException if interrupted, failures of the requests are in the result
+     */
+    public SendToAllResult sendToAll(MessageBody body, Collection<String> targets, SendToAllOptions options)
+            throws APIConnectionException {
+        Preconditions.checkArgument(null != body, "Message body should not be null");
+        Preconditions.checkArgument(null != targets, "targets should not be null");
+        Preconditions.checkArgument(null != options, "options should not be null");
+        MessageTemplate template = MessagePayload.newBuilder()
+                .setVersion(options.getVersion())
+                .setFromType(options.getFromType())
+                .setFromId(options.getFromId())
+                .setMessageType(options.getMessageType())
+                .setMessageBody(body)
+                .setNotification(options.getNotification())
+                .setNoOffline(options.isNoOffline())
+                .setNoNotification(options.isNoNotification())
+                .buildTemplate();
+
+        final SendToAllResult result = new SendToAllResult();
+        BulkExecutor bulk = new BulkExecutor("jmessage-send-to-all", options.getMaxInFlight(), _virtualThreads);
+        long start = System.currentTimeMillis();
+        try {
+            for (final String target : new LinkedHashSet<String>(targets)) {
+                final JsonWritable message;
+                try {
+                    message = template.render(target, options.getTargetType());
+                } catch (IllegalArgumentException e) {
+                    result.failed(target, SendToAllResult.ERROR_CODE_INVALID_TARGET, e.getMessage());
+                    continue;
+                }
+                bulk.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        sendTo(target, message, result);
+                    }
+                });
+            }
+            // wait for the requests in flight
+            bulk.awaitIdle();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new APIConnectionException("Interrupted while sending messages", e);
+        } finally {
+            bulk.close();
+        }
+        result.setElapsedMillis(System.currentTimeMillis() - start);
+        LOG.info("Sent message to all targets, " + result);
+        return result;
+    }
+
+    private void sendTo(String target, JsonWritable message, SendToAllResult result) {
+        long begin = System.nanoTime();
+        try {
+            ResponseWrapper response = sendPost(_baseUrl + messagePath, message);
+            result.latencies().record(System.nanoTime() - begin);
+            result.succeeded(target, SendMessageResult.fromResponse(response, SendMessageResult.class).getMsg_id());
+        } catch (APIConnectionException e) {
+            result.latencies().record(System.nanoTime() - begin);
+            LOG.debug("Send message to " + target + " failed: " + e.getMessage());
+            result.failed(target, SendToAllResult.ERROR_CODE_NO_RESPONSE, e.getMessage());
+        } catch (APIRequestException e) {
+            result.latencies().record(System.nanoTime() - begin);
+            LOG.debug("Send message to " + target + " failed, status " + e.getStatus() + ", error code "
+                    + e.getErrorCode());
+            result.failed(target, e.getErrorCode(), e.getErrorMessage());
+        } catch (RuntimeException e) {
+            LOG.warn("Send message to " + target + " failed", e);
+            result.failed(target, SendToAllResult.ERROR_CODE_NO_RESPONSE, e.getMessage());
+        }
+    }
+
     /**
      * Please use {@link cn.jmessage.api.reportv2.ReportClient#v2GetMessageList(int, String, String)}
      * Get message list from history, messages will store 60 days.
@@ -96,6 +222,9 @@ public class MessageClient extends BaseClient {
             throw new IllegalArgumentException("begin time or end time is null or empty");
         }
 
+        if (_streamingDecode) {
+            return streamGet(requestUrl, MessageListResult.DECODER);
+        }
         ResponseWrapper response = _httpClient.sendGet(requestUrl);
         return MessageListResult.fromResponse(response, MessageListResult.class);
     }
@@ -114,6 +243,9 @@ public class MessageClient extends BaseClient {
             throws APIConnectionException, APIRequestException {
         if (null != cursor) {
             String requestUrl = reportBaseUrl + v2_messagePath + "?cursor=" + cursor;
+            if (_streamingDecode) {
+                return streamGet(requestUrl, MessageListResult.DECODER);
+            }
             ResponseWrapper response = _httpClient.sendGet(requestUrl);
             return MessageListResult.fromResponse(response, MessageListResult.class);
         } else {
@@ -170,6 +302,9 @@ public class MessageClient extends BaseClient {
             throw new IllegalArgumentException("begin time or end time is null or empty");
         }
 
+        if (_streamingDecode) {
+            return streamGet(requestUrl, MessageListResult.DECODER);
+        }
         ResponseWrapper response = _httpClient.sendGet(requestUrl);
         return MessageListResult.fromResponse(response, MessageListResult.class);
     }
@@ -190,6 +325,9 @@ public class MessageClient extends BaseClient {
         StringUtils.checkUsername(username);
         if (null != cursor) {
             String requestUrl = reportBaseUrl + v2_userPath + "/" + username + "/messages?cursor=" + cursor;
+            if (_streamingDecode) {
+                return streamGet(requestUrl, MessageListResult.DECODER);
+            }
             ResponseWrapper response = _httpClient.sendGet(requestUrl);
             return MessageListResult.fromResponse(response, MessageListResult.class);
         } else {
@@ -253,6 +391,9 @@ public class MessageClient extends BaseClient {
             throw new IllegalArgumentException("begin time or end time is null or empty");
         }
         String requestUrl = reportBaseUrl + v2_chatroomPath + "/" + chatroomid + "/" + "messages" + "?count=" + count + "&begin_time=" + beginEncoded + "&end_time=" + endEncoded;
+        if (_streamingDecode) {
+            return streamGet(requestUrl, ChatRoomHistoryResult.DECODER);
+        }
         ResponseWrapper response = _httpClient.sendGet(requestUrl);
         return ChatRoomHistoryResult.fromResponse(response, ChatRoomHistoryResult.class);
     }
@@ -267,8 +408,28 @@ public class MessageClient extends BaseClient {
         throws APIConnectionException, APIRequestException {
         Preconditions.checkArgument(cursor != null && cursor.length() > 0, "count is invalid");
         String requestUrl = reportBaseUrl + v2_chatroomPath + "/" + chatroomid + "/" + "messages" + "?cursor=" + cursor;
+        if (_streamingDecode) {
+            return streamGet(requestUrl, ChatRoomHistoryResult.DECODER);
+        }
         ResponseWrapper response = _httpClient.sendGet(requestUrl);
         return ChatRoomHistoryResult.fromResponse(response, ChatRoomHistoryResult.class);
     }
 
+    /**
+     * get chatroom history message, the messages are handed to the visitor while the response is read
+     * and are not kept in the result
+     * @param chatroomid
+     * @param cursor returned by the previous request
+     * @param visitor gets the messages one by one
+     * @return history result without messages
+     */
+    public ChatRoomHistoryResult getChatRoomHistory(Long chatroomid, String cursor,
+                                                    ElementVisitor<? super ChatRoomHistoryResult.ChatRoomBaseMessageResult> visitor)
+        throws APIConnectionException, APIRequestException {
+        Preconditions.checkArgument(cursor != null && cursor.length() > 0, "count is invalid");
+        Preconditions.checkArgument(null != visitor, "visitor should not be null");
+        String requestUrl = reportBaseUrl + v2_chatroomPath + "/" + chatroomid + "/" + "messages" + "?cursor=" + cursor;
+        return streamGet(requestUrl, ChatRoomHistoryResult.DECODER.visiting(visitor));
+    }
+
 }
@@ -2,12 +2,20 @@ package cn.jmessage.api.message;
 
 import cn.jiguang.common.resp.BaseResult;
 import cn.jiguang.common.resp.ResponseWrapper;
+import cn.jmessage.api.common.ListResultDecoder;
 import com.google.gson.annotations.Expose;
 
 import java.util.List;
 
 public class MessageListResult extends BaseResult {
 
+    /**
+     * Decodes the result straight from the response stream, see {@link ListResultDecoder}.
+     */
+    public static final ListResultDecoder<MessageListResult, MessageResult> DECODER =
+            new ListResultDecoder<MessageListResult, MessageResult>(MessageListResult.class,
+                    "messages", MessageResult.class);
+
     @Expose Integer total;
     @Expose String cursor;
     @Expose Integer count;
@@ -0,0 +1,396 @@
+package cn.jmessage.api.message;
+
+import cn.jiguang.common.resp.APIConnectionException;
+import cn.jiguang.common.resp.APIRequestException;
+import cn.jiguang.common.utils.Preconditions;
+import cn.jmessage.api.common.async.ApiCall;
+import cn.jmessage.api.common.async.ApiCallback;
+import cn.jmessage.api.common.async.ApiFuture;
+import cn.jmessage.api.common.model.message.MessagePayload;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Send pipeline in front of {@link MessageClient#sendMessage(MessagePayload)}.
+ * <p>
+ * Payloads are put into a bounded queue and sent by a pool of worker threads, at most {@code maxInFlight}
+ * requests are on the wire at the same time. Messages to the same target are sent one after another in
+ * submit order, messages to different targets go out in parallel. Every submit returns an {@link ApiFuture}
+ * with the {@link SendMessageResult} or the failure.
+ * </p>
+ * <p>
+ * When the queue is full the {@link OverflowPolicy} decides: block the caller, reject the new message, or
+ * drop the oldest queued message. Rejected and dropped messages fail with {@link RejectedExecutionException}.
+ * </p>
+ */
+public class MessageSender {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MessageSender.class);
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    public static final int DEFAULT_WORKER_COUNT = 8;
+
+    public enum OverflowPolicy {
+        /** Wait until there is room in the queue. */
+        BLOCK,
+        /** Fail the new message at once. */
+        REJECT,
+        /** Fail the oldest queued message to make room for the new one. */
+        DROP_OLDEST
+    }
+
+    private static final Entry SHUTDOWN = new Entry(-1, null);
+
+    private final MessageClient messageClient;
+    private final int queueCapacity;
+    private final int maxInFlight;
+    private final OverflowPolicy overflowPolicy;
+
+    private final Semaphore capacity;
+    private final Semaphore inFlight;
+    private final LinkedBlockingDeque<Entry>[] lanes;
+    private final Thread[] workers;
+    private final ReentrantLock submitLock = new ReentrantLock();
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicInteger dropped = new AtomicInteger();
+    private volatile boolean shutdown = false;
+
+    @SuppressWarnings("unchecked")
+    private MessageSender(MessageClient messageClient, int queueCapacity, int workerCount, int maxInFlight,
+                          OverflowPolicy overflowPolicy, ThreadFactory threadFactory) {
+        this.messageClient = messageClient;
+        this.queueCapacity = queueCapacity;
+        this.maxInFlight = maxInFlight;
+        this.overflowPolicy = overflowPolicy;
+        this.capacity = new Semaphore(queueCapacity, true);
+        this.inFlight = new Semaphore(maxInFlight);
+        this.lanes = new LinkedBlockingDeque[workerCount];
+        this.workers = new Thread[workerCount];
+        for (int i = 0; i < workerCount; i++) {
+            lanes[i] = new LinkedBlockingDeque<Entry>();
+            workers[i] = threadFactory.newThread(new Worker(lanes[i]));
+            workers[i].start();
+        }
+    }
+
+    public static Builder newBuilder(MessageClient messageClient) {
+        return new Builder(messageClient);
+    }
+
+    /**
+     * Queue a message, blocks only with {@link OverflowPolicy#BLOCK} and a full queue.
+     *
+     * @param payload message payload
+     * @return future of the send result
+     */
+    public ApiFuture<SendMessageResult> submit(MessagePayload payload) {
+        Preconditions.checkArgument(null != payload, "Message payload should not be null");
+        SendFuture future = new SendFuture(messageClient, payload);
+        if (shutdown) {
+            future.reject(new RejectedExecutionException("MessageSender is shut down"));
+            return future;
+        }
+        boolean acquired;
+        try {
+            acquired = reserve();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.reject(new RejectedExecutionException("Interrupted while waiting for queue capacity", e));
+            return future;
+        }
+        if (!acquired) {
+            future.reject(new RejectedExecutionException("Message queue is full, capacity " + queueCapacity));
+            return future;
+        }
+        submitLock.lock();
+        try {
+            if (shutdown) {
+                capacity.release();
+                future.reject(new RejectedExecutionException("MessageSender is shut down"));
+                return future;
+            }
+            lanes[laneOf(payload)].offerLast(new Entry(sequence.getAndIncrement(), future));
+        } finally {
+            submitLock.unlock();
+        }
+        return future;
+    }
+
+    /**
+     * Queue a message and get the result in the callback.
+     *
+     * @param payload  message payload
+     * @param callback runs on the worker thread once the message is sent or failed
+     * @return future of the send result
+     */
+    public ApiFuture<SendMessageResult> submit(MessagePayload payload, ApiCallback<? super SendMessageResult> callback) {
+        return submit(payload).addCallback(callback);
+    }
+
+    /**
+     * Stop accepting messages, the queued messages are still sent.
+     */
+    public void shutdown() {
+        submitLock.lock();
+        try {
+            if (shutdown) {
+                return;
+            }
+            shutdown = true;
+            for (LinkedBlockingDeque<Entry> lane : lanes) {
+                lane.offerLast(SHUTDOWN);
+            }
+        } finally {
+            submitLock.unlock();
+        }
+    }
+
+    /**
+     * Stop accepting messages and fail the queued ones, the requests already on the wire are not aborted.
+     *
+     * @return count of the queued messages which were failed
+     */
+    public int shutdownNow() {
+        shutdown();
+        int count = 0;
+        for (LinkedBlockingDeque<Entry> lane : lanes) {
+            Entry entry;
+            while (null != (entry = lane.pollFirst())) {
+                if (entry == SHUTDOWN) {
+                    continue;
+                }
+                capacity.release();
+                entry.future.reject(new RejectedExecutionException("MessageSender is shut down"));
+                count++;
+            }
+            lane.offerLast(SHUTDOWN);
+        }
+        return count;
+    }
+
+    /**
+     * Wait for the workers to finish after {@link #shutdown()}.
+     *
+     * @return true if all workers finished in time
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Thread worker : workers) {
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                return !isAlive();
+            }
+            worker.join(remaining);
+        }
+        return !isAlive();
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    public int getQueuedCount() {
+        return queueCapacity - capacity.availablePermits();
+    }
+
+    public int getInFlightCount() {
+        return maxInFlight - inFlight.availablePermits();
+    }
+
+    public int getDroppedCount() {
+        return dropped.get();
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    private boolean isAlive() {
+        for (Thread worker : workers) {
+            if (worker.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean reserve() throws InterruptedException {
+        switch (overflowPolicy) {
+            case BLOCK:
+                capacity.acquire();
+                return true;
+            case REJECT:
+                return capacity.tryAcquire();
+            case DROP_OLDEST:
+                while (!capacity.tryAcquire()) {
+                    if (dropOldest()) {
+                        // the slot of the dropped message is taken over
+                        return true;
+                    }
+                    Thread.yield();
+                }
+                return true;
+            default:
+                throw new IllegalStateException("Unknown overflow policy " + overflowPolicy);
+        }
+    }
+
+    private boolean dropOldest() {
+        submitLock.lock();
+        try {
+            Entry oldest = null;
+            LinkedBlockingDeque<Entry> oldestLane = null;
+            for (LinkedBlockingDeque<Entry> lane : lanes) {
+                Entry head = lane.peekFirst();
+                if (null != head && head != SHUTDOWN && (null == oldest || head.seq < oldest.seq)) {
+                    oldest = head;
+                    oldestLane = lane;
+                }
+            }
+            // the worker may have taken it in the meantime
+            if (null == oldest || !oldestLane.remove(oldest)) {
+                return false;
+            }
+            dropped.incrementAndGet();
+            oldest.future.reject(new RejectedExecutionException("Message dropped, queue is full, capacity "
+                    + queueCapacity));
+            return true;
+        } finally {
+            submitLock.unlock();
+        }
+    }
+
+    private int laneOf(MessagePayload payload) {
+        String key = payload.getTargetType() + ":" + payload.getTargetId();
+        return (key.hashCode() & Integer.MAX_VALUE) % lanes.length;
+    }
+
+    private class Worker implements Runnable {
+
+        private final LinkedBlockingDeque<Entry> lane;
+
+        Worker(LinkedBlockingDeque<Entry> lane) {
+            this.lane = lane;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Entry entry;
+                try {
+                    entry = lane.takeFirst();
+                } catch (InterruptedException e) {
+                    LOG.warn("Message sender worker interrupted, " + lane.size() + " messages left in its lane");
+                    return;
+                }
+                if (entry == SHUTDOWN) {
+                    return;
+                }
+                capacity.release();
+                inFlight.acquireUninterruptibly();
+                try {
+                    entry.future.run();
+                } catch (Throwable e) {
+                    // a failing callback must not stop the lane, the later messages would never be sent
+                    LOG.error("Message sender callback failed", e);
+                } finally {
+                    inFlight.release();
+                }
+            }
+        }
+    }
+
+    private static class Entry {
+        final long seq;
+        final SendFuture future;
+
+        Entry(long seq, SendFuture future) {
+            this.seq = seq;
+            this.future = future;
+        }
+    }
+
+    private static class SendFuture extends ApiFuture<SendMessageResult> {
+
+        SendFuture(final MessageClient messageClient, final MessagePayload payload) {
+            super(new ApiCall<SendMessageResult>() {
+                @Override
+                public SendMessageResult call() throws APIConnectionException, APIRequestException {
+                    return messageClient.sendMessage(payload);
+                }
+            });
+        }
+
+        void reject(Throwable e) {
+            fail(e);
+        }
+    }
+
+    public static class Builder {
+        private final MessageClient messageClient;
+        private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+        private int workerCount = DEFAULT_WORKER_COUNT;
+        private int maxInFlight = -1;
+        private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+        private ThreadFactory threadFactory;
+
+        private Builder(MessageClient messageClient) {
+            this.messageClient = messageClient;
+        }
+
+        public Builder setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+            return this;
+        }
+
+        /**
+         * Each worker owns the messages of a part of the targets, one target is always sent by the same worker.
+         */
+        public Builder setWorkerCount(int workerCount) {
+            this.workerCount = workerCount;
+            return this;
+        }
+
+        /**
+         * Max requests on the wire at the same time, default is the worker count. Each worker sends one request at a
+         * time, so it can not be more than the worker count.
+         */
+        public Builder setMaxInFlight(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        public Builder setOverflowPolicy(OverflowPolicy overflowPolicy) {
+            this.overflowPolicy = overflowPolicy;
+            return this;
+        }
+
+        public Builder setThreadFactory(ThreadFactory threadFactory) {
+            this.threadFactory = threadFactory;
+            return this;
+        }
+
+        public MessageSender build() {
+            Preconditions.checkArgument(null != messageClient, "messageClient should not be null");
+            Preconditions.checkArgument(queueCapacity > 0, "queueCapacity should more than 0");
+            Preconditions.checkArgument(workerCount > 0, "workerCount should more than 0");
+            Preconditions.checkArgument(null != overflowPolicy, "overflowPolicy should not be null");
+            Preconditions.checkArgument(maxInFlight <= workerCount,
+                    "maxInFlight should not be more than workerCount");
+            int inFlight = maxInFlight > 0 ? maxInFlight : workerCount;
+            ThreadFactory factory = null != threadFactory ? threadFactory
+                    : messageClient.newThreadFactory("jmessage-sender");
+            return new MessageSender(messageClient, queueCapacity, workerCount, inFlight, overflowPolicy, factory);
+        }
+    }
+
+}
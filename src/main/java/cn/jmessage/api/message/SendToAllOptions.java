@@ -0,0 +1,152 @@
+package cn.jmessage.api.message;
+
+import cn.jiguang.common.utils.Preconditions;
+import cn.jmessage.api.common.model.message.Notification;
+import cn.jmessage.api.utils.StringUtils;
+
+/**
+ * Sender and message options of {@link MessageClient#sendToAll}, the same for every target.
+ */
+public class SendToAllOptions {
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = 16;
+
+    private final Integer version;
+    private final String fromType;
+    private final String fromId;
+    private final String targetType;
+    private final MessageType messageType;
+    private final Notification notification;
+    private final boolean noOffline;
+    private final boolean noNotification;
+    private final int maxInFlight;
+
+    private SendToAllOptions(Builder builder) {
+        this.version = builder.version;
+        this.fromType = builder.fromType;
+        this.fromId = builder.fromId;
+        this.targetType = builder.targetType;
+        this.messageType = builder.messageType;
+        this.notification = builder.notification;
+        this.noOffline = builder.noOffline;
+        this.noNotification = builder.noNotification;
+        this.maxInFlight = builder.maxInFlight;
+    }
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    public Integer getVersion() {
+        return version;
+    }
+
+    public String getFromType() {
+        return fromType;
+    }
+
+    public String getFromId() {
+        return fromId;
+    }
+
+    public String getTargetType() {
+        return targetType;
+    }
+
+    public MessageType getMessageType() {
+        return messageType;
+    }
+
+    public Notification getNotification() {
+        return notification;
+    }
+
+    public boolean isNoOffline() {
+        return noOffline;
+    }
+
+    public boolean isNoNotification() {
+        return noNotification;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public static class Builder {
+        private Integer version = 1;
+        private String fromType = "admin";
+        private String fromId;
+        private String targetType = "single";
+        private MessageType messageType = MessageType.TEXT;
+        private Notification notification;
+        private boolean noOffline = false;
+        private boolean noNotification = false;
+        private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+
+        public Builder setVersion(Integer version) {
+            this.version = version;
+            return this;
+        }
+
+        /**
+         * Default is admin.
+         */
+        public Builder setFromType(String fromType) {
+            this.fromType = fromType;
+            return this;
+        }
+
+        public Builder setFromId(String fromId) {
+            this.fromId = fromId;
+            return this;
+        }
+
+        /**
+         * Type of every target, default is single.
+         */
+        public Builder setTargetType(String targetType) {
+            this.targetType = targetType;
+            return this;
+        }
+
+        /**
+         * Default is text.
+         */
+        public Builder setMessageType(MessageType messageType) {
+            this.messageType = messageType;
+            return this;
+        }
+
+        public Builder setNotification(Notification notification) {
+            this.notification = notification;
+            return this;
+        }
+
+        public Builder setNoOffline(boolean noOffline) {
+            this.noOffline = noOffline;
+            return this;
+        }
+
+        public Builder setNoNotification(boolean noNotification) {
+            this.noNotification = noNotification;
+            return this;
+        }
+
+        /**
+         * Max send requests on the wire at the same time.
+         */
+        public Builder setMaxInFlight(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        public SendToAllOptions build() {
+            Preconditions.checkArgument(StringUtils.isNotEmpty(fromId), "fromId should not be empty");
+            Preconditions.checkArgument(StringUtils.isNotEmpty(targetType), "targetType should not be empty");
+            Preconditions.checkArgument(maxInFlight > 0, "maxInFlight should more than 0");
+            return new SendToAllOptions(this);
+        }
+    }
+
+}
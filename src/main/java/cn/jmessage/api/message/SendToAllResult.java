@@ -0,0 +1,131 @@
+package cn.jmessage.api.message;
+
+import cn.jmessage.api.common.metrics.LatencyHistogram;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Outcome of {@link MessageClient#sendToAll}: the msg_id of every target the message was sent to, the failed
+ * targets grouped by error code, and the latency of the send requests.
+ */
+public class SendToAllResult {
+
+    /** Error code of a target whose request got no response. */
+    public static final int ERROR_CODE_NO_RESPONSE = -1;
+    /** Error code of a target which is not a valid username, it is not sent. */
+    public static final int ERROR_CODE_INVALID_TARGET = -2;
+
+    private final Map<String, Long> messageIds = new ConcurrentHashMap<String, Long>();
+    private final Map<Integer, List<Failure>> failures = new TreeMap<Integer, List<Failure>>();
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private int failureCount;
+    private long elapsedMillis;
+
+    void succeeded(String target, Long msgId) {
+        // msg_id is null if the response had no body
+        messageIds.put(target, null == msgId ? Long.valueOf(0) : msgId);
+    }
+
+    synchronized void failed(String target, int errorCode, String errorMessage) {
+        List<Failure> list = failures.get(errorCode);
+        if (null == list) {
+            list = new ArrayList<Failure>();
+            failures.put(errorCode, list);
+        }
+        list.add(new Failure(target, errorCode, errorMessage));
+        failureCount++;
+    }
+
+    void setElapsedMillis(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    LatencyHistogram latencies() {
+        return latencies;
+    }
+
+    /**
+     * msg_id by target of the messages sent.
+     */
+    public Map<String, Long> getMessageIds() {
+        return Collections.unmodifiableMap(messageIds);
+    }
+
+    public int getSuccessCount() {
+        return messageIds.size();
+    }
+
+    public synchronized int getFailureCount() {
+        return failureCount;
+    }
+
+    /**
+     * Failed targets by error code, in error code order.
+     */
+    public synchronized Map<Integer, List<Failure>> getFailuresByErrorCode() {
+        Map<Integer, List<Failure>> copy = new TreeMap<Integer, List<Failure>>();
+        for (Map.Entry<Integer, List<Failure>> entry : failures.entrySet()) {
+            copy.put(entry.getKey(), Collections.unmodifiableList(new ArrayList<Failure>(entry.getValue())));
+        }
+        return copy;
+    }
+
+    /**
+     * Latency of every send request, failed ones included, in nanoseconds.
+     */
+    public LatencyHistogram getLatencyHistogram() {
+        return latencies;
+    }
+
+    /**
+     * Wall time of the whole fan-out.
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "sent " + getSuccessCount() + ", failed " + getFailureCount() + " in " + elapsedMillis
+                + "ms, latency " + latencies;
+    }
+
+    /**
+     * A target the message is not sent to.
+     */
+    public static class Failure {
+
+        private final String target;
+        private final int errorCode;
+        private final String errorMessage;
+
+        Failure(String target, int errorCode, String errorMessage) {
+            this.target = target;
+            this.errorCode = errorCode;
+            this.errorMessage = errorMessage;
+        }
+
+        public String getTarget() {
+            return target;
+        }
+
+        public int getErrorCode() {
+            return errorCode;
+        }
+
+        public String getErrorMessage() {
+            return errorMessage;
+        }
+
+        @Override
+        public String toString() {
+            return target + ": " + errorCode + " " + errorMessage;
+        }
+    }
+
+}
@@ -0,0 +1,36 @@
+package cn.jmessage.api.reportv2;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Skips the messages returned twice when a history query restarts from the create time of the last message.
+ * Queries take times in seconds, so only the ids of the latest create second have to be kept.
+ */
+final class MessageDeduplicator {
+
+    private long boundarySecond = Long.MIN_VALUE;
+    private final Set<Long> boundaryIds = new HashSet<Long>();
+
+    boolean isDuplicate(Long msgId, Long createTime) {
+        if (null == msgId || null == createTime) {
+            return false;
+        }
+        return createTime / 1000 <= boundarySecond && boundaryIds.contains(msgId);
+    }
+
+    void remember(Long msgId, Long createTime) {
+        if (null == msgId || null == createTime) {
+            return;
+        }
+        long second = createTime / 1000;
+        if (second > boundarySecond) {
+            boundarySecond = second;
+            boundaryIds.clear();
+        }
+        if (second == boundarySecond) {
+            boundaryIds.add(msgId);
+        }
+    }
+
+}
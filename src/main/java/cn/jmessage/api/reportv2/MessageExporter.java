@@ -0,0 +1,568 @@
+package cn.jmessage.api.reportv2;
+
+import cn.jiguang.common.resp.APIConnectionException;
+import cn.jiguang.common.resp.APIRequestException;
+import cn.jiguang.common.resp.ResponseWrapper;
+import cn.jiguang.common.utils.Preconditions;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Exports the message history of a large time range to newline delimited JSON files, one message per line.
+ * <p>
+ * The range is cut into slices which are fetched in parallel, each slice goes to its own file named by its
+ * time range, optionally gzipped. Messages are copied token by token from the response into the file, pages
+ * are never decoded into objects. A slice file is complete once it has its final name, completed slices are
+ * recorded in a checkpoint file, so an export which failed half way skips them when it is run again with
+ * the same range and slice size.
+ * </p>
+ */
+public class MessageExporter {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MessageExporter.class);
+
+    public static final int DEFAULT_PARALLELISM = 4;
+    public static final long DEFAULT_SLICE_MILLIS = 24 * 60 * 60 * 1000L;
+    public static final int DEFAULT_PAGE_SIZE = 1000;
+    public static final String DEFAULT_CHECKPOINT_FILE = "export.checkpoint";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ReportClient reportClient;
+    private final int parallelism;
+    private final long sliceMillis;
+    private final int pageSize;
+    private final boolean gzip;
+    private final String checkpointFile;
+
+    private MessageExporter(Builder builder) {
+        this.reportClient = builder.reportClient;
+        this.parallelism = builder.parallelism;
+        this.sliceMillis = builder.sliceMillis;
+        this.pageSize = builder.pageSize;
+        this.gzip = builder.gzip;
+        this.checkpointFile = builder.checkpointFile;
+    }
+
+    public static Builder newBuilder(ReportClient reportClient) {
+        return new Builder(reportClient);
+    }
+
+    /**
+     * Export the messages of [begin_time, end_time] into the directory, slices recorded in the checkpoint
+     * file of the directory are skipped. All slices are tried even if some fail, the first failure is thrown
+     * at the end, run the export again to resume.
+     *
+     * @param begin_time Necessary parameter. The format must follow by 'yyyy-MM-dd HH:mm:ss'
+     * @param end_time   Necessary parameter. The format must follow by 'yyyy-MM-dd HH:mm:ss'
+     * @param directory  Output directory, created if missing.
+     * @return ExportResult
+     * @throws IOException            file exception
+     * @throws APIConnectionException connect exception
+     * @throws APIRequestException    request exception
+     */
+    public ExportResult export(String begin_time, String end_time, Path directory)
+            throws IOException, APIConnectionException, APIRequestException {
+        long begin = MessageIterator.parse(begin_time);
+        long end = MessageIterator.parse(end_time);
+        if (end < begin) {
+            throw new IllegalArgumentException("end time must lager than begin time");
+        }
+        Files.createDirectories(directory);
+        final Checkpoint checkpoint = new Checkpoint(directory.resolve(checkpointFile));
+
+        List<Slice> slices = new ArrayList<Slice>();
+        int skipped = 0;
+        for (long sliceBegin = begin; sliceBegin <= end; sliceBegin += sliceMillis) {
+            // slices do not overlap, query times are in seconds and both ends are included
+            Slice slice = new Slice(sliceBegin, Math.min(end, sliceBegin + sliceMillis - 1000), gzip);
+            if (checkpoint.isDone(slice.fileName)) {
+                skipped++;
+            } else {
+                slices.add(slice);
+            }
+        }
+        LOG.info("Export " + slices.size() + " slices of messages to " + directory + ", " + skipped
+                + " slices already done");
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism,
+                reportClient.newThreadFactory("jmessage-export"));
+        List<Future<Long>> futures = new ArrayList<Future<Long>>(slices.size());
+        try {
+            for (final Slice slice : slices) {
+                final Path dir = directory;
+                futures.add(executor.submit(new Callable<Long>() {
+                    @Override
+                    public Long call() throws Exception {
+                        long count = exportSlice(slice, dir);
+                        checkpoint.markDone(slice.fileName);
+                        return count;
+                    }
+                }));
+            }
+
+            long messages = 0;
+            List<Path> files = new ArrayList<Path>();
+            Throwable failure = null;
+            int failed = 0;
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    messages += futures.get(i).get();
+                    files.add(directory.resolve(slices.get(i).fileName));
+                } catch (ExecutionException e) {
+                    failed++;
+                    LOG.warn("Failed to export slice " + slices.get(i).fileName, e.getCause());
+                    if (null == failure) {
+                        failure = e.getCause();
+                    }
+                }
+            }
+            if (null != failure) {
+                LOG.error(failed + " of " + slices.size() + " slices failed, run the export again to resume");
+                rethrow(failure);
+            }
+            return new ExportResult(slices.size() + skipped, skipped, messages, files);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new APIConnectionException("Interrupted while exporting messages", e);
+        } finally {
+            executor.shutdownNow();
+            checkpoint.close();
+        }
+    }
+
+    private long exportSlice(Slice slice, Path directory)
+            throws IOException, APIConnectionException, APIRequestException {
+        Path part = directory.resolve(slice.fileName + ".part");
+        FileChannel channel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        long count = 0;
+        try {
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_SIZE);
+            if (gzip) {
+                out = new GZIPOutputStream(out, BUFFER_SIZE);
+            }
+            Writer writer = new OutputStreamWriter(out, UTF_8);
+            MessageDeduplicator deduplicator = new MessageDeduplicator();
+            String endTime = MessageIterator.format(slice.end);
+
+            ResponseWrapper response = reportClient.sendMessageList(pageSize, MessageIterator.format(slice.begin),
+                    endTime);
+            long receivedAt = System.currentTimeMillis();
+            while (true) {
+                PageInfo page = writePage(response.responseContent, deduplicator, writer);
+                count += page.written;
+                if (null == page.cursor || page.cursor.length() == 0 || page.messages == 0) {
+                    break;
+                }
+                response = null;
+                if (System.currentTimeMillis() - receivedAt < MessageIterator.CURSOR_TTL_MILLIS) {
+                    try {
+                        response = reportClient.sendMessageListByCursor(page.cursor);
+                    } catch (APIRequestException e) {
+                        if (!MessageIterator.isCursorRejected(e)) {
+                            throw e;
+                        }
+                    }
+                }
+                if (null == response) {
+                    long restartFrom = null == page.lastCreateTime ? slice.begin : page.lastCreateTime;
+                    LOG.debug("Cursor expired, restart slice " + slice.fileName + " from "
+                            + MessageIterator.format(restartFrom));
+                    response = reportClient.sendMessageList(pageSize, MessageIterator.format(restartFrom), endTime);
+                }
+                receivedAt = System.currentTimeMillis();
+            }
+            writer.flush();
+            if (out instanceof GZIPOutputStream) {
+                ((GZIPOutputStream) out).finish();
+            }
+            out.flush();
+            channel.force(false);
+        } finally {
+            channel.close();
+        }
+        Files.move(part, directory.resolve(slice.fileName), StandardCopyOption.REPLACE_EXISTING);
+        LOG.debug("Exported " + count + " messages to " + slice.fileName);
+        return count;
+    }
+
+    /**
+     * Copy the messages of one page into the writer, one line for each.
+     */
+    static PageInfo writePage(String content, MessageDeduplicator deduplicator, Writer writer) throws IOException {
+        PageInfo page = new PageInfo();
+        StringWriter message = new StringWriter(1024);
+        JsonReader reader = new JsonReader(new StringReader(content));
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("cursor".equals(name) && reader.peek() == JsonToken.STRING) {
+                page.cursor = reader.nextString();
+            } else if ("messages".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    message.getBuffer().setLength(0);
+                    JsonWriter json = new JsonWriter(message);
+                    Long[] ids = copyMessage(reader, json);
+                    json.flush();
+                    page.messages++;
+                    if (null != ids[1]) {
+                        page.lastCreateTime = ids[1];
+                    }
+                    if (deduplicator.isDuplicate(ids[0], ids[1])) {
+                        continue;
+                    }
+                    deduplicator.remember(ids[0], ids[1]);
+                    writer.write(message.getBuffer().toString());
+                    writer.write('\n');
+                    page.written++;
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return page;
+    }
+
+    /**
+     * @return msgid and create_time of the message
+     */
+    private static Long[] copyMessage(JsonReader in, JsonWriter out) throws IOException {
+        Long[] ids = new Long[2];
+        if (in.peek() != JsonToken.BEGIN_OBJECT) {
+            copy(in, out);
+            return ids;
+        }
+        in.beginObject();
+        out.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            out.name(name);
+            if (in.peek() == JsonToken.NUMBER && ("msgid".equals(name) || "create_time".equals(name))) {
+                String number = in.nextString();
+                out.value(new RawNumber(number));
+                try {
+                    ids["msgid".equals(name) ? 0 : 1] = Long.parseLong(number);
+                } catch (NumberFormatException e) {
+                    // not an id, keep the value as it is
+                }
+            } else {
+                copy(in, out);
+            }
+        }
+        in.endObject();
+        out.endObject();
+        return ids;
+    }
+
+    private static void copy(JsonReader in, JsonWriter out) throws IOException {
+        switch (in.peek()) {
+            case BEGIN_ARRAY:
+                in.beginArray();
+                out.beginArray();
+                while (in.hasNext()) {
+                    copy(in, out);
+                }
+                in.endArray();
+                out.endArray();
+                break;
+            case BEGIN_OBJECT:
+                in.beginObject();
+                out.beginObject();
+                while (in.hasNext()) {
+                    out.name(in.nextName());
+                    copy(in, out);
+                }
+                in.endObject();
+                out.endObject();
+                break;
+            case STRING:
+                out.value(in.nextString());
+                break;
+            case NUMBER:
+                out.value(new RawNumber(in.nextString()));
+                break;
+            case BOOLEAN:
+                out.value(in.nextBoolean());
+                break;
+            case NULL:
+                in.nextNull();
+                out.nullValue();
+                break;
+            default:
+                throw new IOException("Unexpected JSON token " + in.peek());
+        }
+    }
+
+    private static void rethrow(Throwable e) throws IOException, APIConnectionException, APIRequestException {
+        if (e instanceof IOException) {
+            throw (IOException) e;
+        }
+        if (e instanceof APIConnectionException) {
+            throw (APIConnectionException) e;
+        }
+        if (e instanceof APIRequestException) {
+            throw (APIRequestException) e;
+        }
+        if (e instanceof RuntimeException) {
+            throw (RuntimeException) e;
+        }
+        if (e instanceof Error) {
+            throw (Error) e;
+        }
+        throw new IllegalStateException(e);
+    }
+
+    static class PageInfo {
+        String cursor;
+        int messages;
+        int written;
+        Long lastCreateTime;
+    }
+
+    /**
+     * A number written as the original literal, so ids and times keep their exact text.
+     */
+    private static class RawNumber extends Number {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String value;
+
+        RawNumber(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public int intValue() {
+            return (int) doubleValue();
+        }
+
+        @Override
+        public long longValue() {
+            return (long) doubleValue();
+        }
+
+        @Override
+        public float floatValue() {
+            return (float) doubleValue();
+        }
+
+        @Override
+        public double doubleValue() {
+            return Double.parseDouble(value);
+        }
+
+        @Override
+        public String toString() {
+            return value;
+        }
+    }
+
+    private static class Slice {
+        final long begin;
+        final long end;
+        final String fileName;
+
+        Slice(long begin, long end, boolean gzip) {
+            this.begin = begin;
+            this.end = end;
+            DateFormat format = new SimpleDateFormat("yyyyMMddHHmmss");
+            format.setTimeZone(MessageIterator.TIME_ZONE);
+            this.fileName = "messages-" + format.format(begin) + "-" + format.format(end)
+                    + (gzip ? ".ndjson.gz" : ".ndjson");
+        }
+    }
+
+    /**
+     * File names of the completed slices, one for each line.
+     */
+    private static class Checkpoint {
+
+        private final Set<String> done = new HashSet<String>();
+        private final FileChannel channel;
+        private final ReentrantLock lock = new ReentrantLock();
+
+        Checkpoint(Path file) throws IOException {
+            if (Files.exists(file)) {
+                for (String line : Files.readAllLines(file, UTF_8)) {
+                    if (line.trim().length() > 0) {
+                        done.add(line.trim());
+                    }
+                }
+            }
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+        }
+
+        boolean isDone(String slice) {
+            lock.lock();
+            try {
+                return done.contains(slice);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void markDone(String slice) throws IOException {
+            ByteBuffer line = ByteBuffer.wrap((slice + "\n").getBytes(UTF_8));
+            lock.lock();
+            try {
+                while (line.hasRemaining()) {
+                    channel.write(line);
+                }
+                channel.force(false);
+                done.add(slice);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOG.warn("Failed to close checkpoint file", e);
+            }
+        }
+    }
+
+    public static class ExportResult {
+        private final int sliceCount;
+        private final int skippedSliceCount;
+        private final long messageCount;
+        private final List<Path> files;
+
+        ExportResult(int sliceCount, int skippedSliceCount, long messageCount, List<Path> files) {
+            this.sliceCount = sliceCount;
+            this.skippedSliceCount = skippedSliceCount;
+            this.messageCount = messageCount;
+            this.files = Collections.unmodifiableList(files);
+        }
+
+        public int getSliceCount() {
+            return sliceCount;
+        }
+
+        /**
+         * @return slices skipped because the checkpoint has them
+         */
+        public int getSkippedSliceCount() {
+            return skippedSliceCount;
+        }
+
+        /**
+         * @return messages written by this run
+         */
+        public long getMessageCount() {
+            return messageCount;
+        }
+
+        /**
+         * @return files written by this run
+         */
+        public List<Path> getFiles() {
+            return files;
+        }
+    }
+
+    public static class Builder {
+        private final ReportClient reportClient;
+        private int parallelism = DEFAULT_PARALLELISM;
+        private long sliceMillis = DEFAULT_SLICE_MILLIS;
+        private int pageSize = DEFAULT_PAGE_SIZE;
+        private boolean gzip = false;
+        private String checkpointFile = DEFAULT_CHECKPOINT_FILE;
+
+        private Builder(ReportClient reportClient) {
+            this.reportClient = reportClient;
+        }
+
+        /**
+         * Max slices fetched at the same time.
+         */
+        public Builder setParallelism(int parallelism) {
+            this.parallelism = parallelism;
+            return this;
+        }
+
+        /**
+         * Length of one slice, at least one second and at most the 7 days one query allows.
+         */
+        public Builder setSlice(long duration, TimeUnit unit) {
+            this.sliceMillis = unit.toMillis(duration);
+            return this;
+        }
+
+        /**
+         * Count of messages of one page, from 1 to 1000.
+         */
+        public Builder setPageSize(int pageSize) {
+            this.pageSize = pageSize;
+            return this;
+        }
+
+        public Builder setGzip(boolean gzip) {
+            this.gzip = gzip;
+            return this;
+        }
+
+        /**
+         * Name of the checkpoint file in the output directory.
+         */
+        public Builder setCheckpointFile(String checkpointFile) {
+            this.checkpointFile = checkpointFile;
+            return this;
+        }
+
+        public MessageExporter build() {
+            Preconditions.checkArgument(null != reportClient, "reportClient should not be null");
+            Preconditions.checkArgument(parallelism > 0, "parallelism should more than 0");
+            Preconditions.checkArgument(sliceMillis >= 1000 && sliceMillis <= MessageIterator.WINDOW_MILLIS,
+                    "slice should be from 1 second to 7 days");
+            Preconditions.checkArgument(pageSize > 0 && pageSize <= 1000, "pageSize must more than 0 and less than 1001");
+            Preconditions.checkArgument(null != checkpointFile && checkpointFile.length() > 0,
+                    "checkpointFile should not be empty");
+            return new MessageExporter(this);
+        }
+    }
+
+}
@@ -0,0 +1,16 @@
+package cn.jmessage.api.reportv2;
+
+/**
+ * Thrown by {@link MessageIterator} when a page of message history can not be fetched, the cause is the
+ * {@link cn.jiguang.common.resp.APIConnectionException} or {@link cn.jiguang.common.resp.APIRequestException}
+ * of the request.
+ */
+public class MessageHistoryException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public MessageHistoryException(String message, Throwable cause) {
+        super(message, cause);
+    }
+
+}
@@ -0,0 +1,290 @@
+package cn.jmessage.api.reportv2;
+
+import cn.jiguang.common.resp.APIConnectionException;
+import cn.jiguang.common.resp.APIRequestException;
+import cn.jmessage.api.message.MessageListResult;
+import cn.jmessage.api.message.MessageResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.TimeZone;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Iterates the message history of any time range, page by page, without holding more than two pages.
+ * <p>
+ * The range is split into the 7 days windows the API allows. While one page is consumed the next page is
+ * fetched in the background. A cursor is only valid for 120 seconds, when it is too old or rejected the
+ * query restarts from the create time of the last message, messages returned twice are skipped.
+ * </p>
+ * Fetch failures are thrown from {@link #hasNext()} as {@link MessageHistoryException}. Call {@link #close()}
+ * if the iteration is stopped before the end.
+ */
+public class MessageIterator implements Iterator<MessageResult>, Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(MessageIterator.class);
+
+    public static final String TIME_FORMAT = "yyyy-MM-dd HH:mm:ss";
+    // the API takes times of the server time zone
+    public static final TimeZone TIME_ZONE = TimeZone.getTimeZone("Asia/Shanghai");
+
+    static final long WINDOW_MILLIS = 7 * 24 * 60 * 60 * 1000L;
+    // cursor is valid for 120 seconds, keep a margin for the request itself
+    static final long CURSOR_TTL_MILLIS = 110 * 1000L;
+
+    /**
+     * One kind of message history, like all messages or the messages of one user.
+     */
+    interface PageSource {
+
+        MessageListResult query(int count, String beginTime, String endTime)
+                throws APIConnectionException, APIRequestException;
+
+        MessageListResult next(String cursor) throws APIConnectionException, APIRequestException;
+    }
+
+    private final PageSource source;
+    private final int count;
+    private final List<long[]> windows = new ArrayList<long[]>();
+    private final Executor executor;
+    private final ExecutorService ownExecutor;
+
+    private FutureTask<Page> pending;
+    private MessageResult[] current;
+    private int position;
+    private boolean closed = false;
+
+    private final MessageDeduplicator deduplicator = new MessageDeduplicator();
+
+    /**
+     * @param executor runs the background fetches, if null the iterator uses its own thread
+     */
+    MessageIterator(PageSource source, int count, String beginTime, String endTime, Executor executor) {
+        if (count <= 0 || count > 1000) {
+            throw new IllegalArgumentException("count must more than 0 and less than 1001");
+        }
+        long begin = parse(beginTime);
+        long end = parse(endTime);
+        if (end < begin) {
+            throw new IllegalArgumentException("end time must lager than begin time");
+        }
+        this.source = source;
+        this.count = count;
+        for (long windowBegin = begin; ; windowBegin += WINDOW_MILLIS) {
+            long windowEnd = Math.min(end, windowBegin + WINDOW_MILLIS);
+            windows.add(new long[]{windowBegin, windowEnd});
+            if (windowEnd >= end) {
+                break;
+            }
+        }
+        if (null == executor) {
+            this.ownExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "jmessage-history-prefetch");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            this.executor = ownExecutor;
+        } else {
+            this.ownExecutor = null;
+            this.executor = executor;
+        }
+        fetch(new QueryTask(0, windows.get(0)[0]));
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (true) {
+            if (null != current) {
+                while (position < current.length
+                        && deduplicator.isDuplicate(current[position].getMsgId(), current[position].getCreateTime())) {
+                    position++;
+                }
+                if (position < current.length) {
+                    return true;
+                }
+                current = null;
+            }
+            if (null == pending) {
+                close();
+                return false;
+            }
+            install(await(pending));
+        }
+    }
+
+    @Override
+    public MessageResult next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        MessageResult message = current[position++];
+        deduplicator.remember(message.getMsgId(), message.getCreateTime());
+        return message;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("remove");
+    }
+
+    /**
+     * Stop the background fetch, the iterator has no more elements after this.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (null != pending) {
+            pending.cancel(true);
+            pending = null;
+        }
+        current = null;
+        if (null != ownExecutor) {
+            ownExecutor.shutdownNow();
+        }
+    }
+
+    private void install(Page page) {
+        MessageResult[] messages = page.result.getMessages();
+        current = null == messages ? new MessageResult[0] : messages;
+        position = 0;
+        pending = null;
+
+        String cursor = page.result.getCursor();
+        if (null != cursor && cursor.length() > 0 && current.length > 0) {
+            Long last = current[current.length - 1].getCreateTime();
+            long restartFrom = null == last ? windows.get(page.window)[0] : last;
+            fetch(new CursorTask(page.window, cursor, page.receivedAt, restartFrom));
+        } else if (page.window + 1 < windows.size()) {
+            fetch(new QueryTask(page.window + 1, windows.get(page.window + 1)[0]));
+        }
+    }
+
+    private void fetch(Callable<Page> task) {
+        FutureTask<Page> future = new FutureTask<Page>(task);
+        pending = future;
+        executor.execute(future);
+    }
+
+    private Page await(FutureTask<Page> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new MessageHistoryException("Interrupted while waiting for message history", e);
+        } catch (ExecutionException e) {
+            close();
+            throw new MessageHistoryException("Failed to fetch message history", e.getCause());
+        }
+    }
+
+    static long parse(String time) {
+        if (null == time || time.length() == 0) {
+            throw new IllegalArgumentException("begin time or end time is null or empty");
+        }
+        try {
+            return newFormat().parse(time).getTime();
+        } catch (ParseException e) {
+            throw new IllegalArgumentException("time must follow by '" + TIME_FORMAT + "': " + time);
+        }
+    }
+
+    static String format(long millis) {
+        return newFormat().format(millis);
+    }
+
+    static boolean isCursorRejected(APIRequestException e) {
+        int status = e.getStatus();
+        return status == 400 || status == 404 || status == 410;
+    }
+
+    private static DateFormat newFormat() {
+        DateFormat format = new SimpleDateFormat(TIME_FORMAT);
+        format.setTimeZone(TIME_ZONE);
+        return format;
+    }
+
+    private static class Page {
+        final int window;
+        final MessageListResult result;
+        final long receivedAt;
+
+        Page(int window, MessageListResult result) {
+            this.window = window;
+            this.result = result;
+            this.receivedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * First page of a window, or of the rest of a window after the cursor expired.
+     */
+    private class QueryTask implements Callable<Page> {
+
+        private final int window;
+        private final long begin;
+
+        QueryTask(int window, long begin) {
+            this.window = window;
+            this.begin = begin;
+        }
+
+        @Override
+        public Page call() throws Exception {
+            long end = windows.get(window)[1];
+            return new Page(window, source.query(count, format(begin), format(Math.max(begin, end))));
+        }
+    }
+
+    private class CursorTask implements Callable<Page> {
+
+        private final int window;
+        private final String cursor;
+        private final long issuedAt;
+        private final long restartFrom;
+
+        CursorTask(int window, String cursor, long issuedAt, long restartFrom) {
+            this.window = window;
+            this.cursor = cursor;
+            this.issuedAt = issuedAt;
+            this.restartFrom = restartFrom;
+        }
+
+        @Override
+        public Page call() throws Exception {
+            if (System.currentTimeMillis() - issuedAt < CURSOR_TTL_MILLIS) {
+                try {
+                    return new Page(window, source.next(cursor));
+                } catch (APIRequestException e) {
+                    if (!isCursorRejected(e)) {
+                        throw e;
+                    }
+                    LOG.debug("Cursor rejected, status " + e.getStatus() + ", error code " + e.getErrorCode());
+                }
+            }
+            LOG.debug("Cursor expired, restart message history from " + format(restartFrom));
+            return new QueryTask(window, restartFrom).call();
+        }
+    }
+
+}
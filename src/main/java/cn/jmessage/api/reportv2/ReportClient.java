@@ -2,14 +2,18 @@ package cn.jmessage.api.reportv2;
 
 import cn.jiguang.common.ServiceHelper;
 import cn.jiguang.common.connection.HttpProxy;
+import cn.jiguang.common.connection.IHttpClient;
 import cn.jiguang.common.resp.APIConnectionException;
 import cn.jiguang.common.resp.APIRequestException;
 import cn.jiguang.common.resp.ResponseWrapper;
 import cn.jiguang.common.utils.Preconditions;
 import cn.jiguang.common.utils.TimeUtils;
 import cn.jmessage.api.common.BaseClient;
+import cn.jmessage.api.common.ElementVisitor;
+import cn.jmessage.api.common.HttpClientChain;
 import cn.jmessage.api.common.JMessageConfig;
 import cn.jmessage.api.message.MessageListResult;
+import cn.jmessage.api.message.MessageResult;
 import cn.jmessage.api.user.UserStateListResult;
 import cn.jmessage.api.utils.StringUtils;
 
@@ -18,6 +22,7 @@ import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.concurrent.Executor;
 
 /**
  * Rest Report V2 相关接口, 文档链接： https://docs.jiguang.cn/jmessage/server/rest_api_im_report_v2/
@@ -48,8 +53,25 @@ public class ReportClient extends BaseClient {
      * @param config       The client configuration. Can use JMessageConfig.getInstance() as default.
      */
     public ReportClient(String appKey, String masterSecret, HttpProxy proxy, JMessageConfig config) {
-        super(appKey, masterSecret, proxy, config);
-        mBaseReportPath = (String) config.get(JMessageConfig.API_REPORT_HOST_NAME);
+        this(appKey, masterSecret, config, newHttpClientChain(appKey, masterSecret, proxy, config));
+    }
+
+    private ReportClient(String appKey, String masterSecret, JMessageConfig config, HttpClientChain httpClients) {
+        this(appKey, masterSecret, config, httpClients.getHttpClient());
+        _httpClientChain = httpClients;
+    }
+
+    /**
+     * Create a client sending its calls with a client shared with other clients.
+     *
+     * @param appKey The KEY of one application on JPush.
+     * @param masterSecret API access secret of the appKey.
+     * @param config The client configuration. Can use JMessageConfig.getInstance() as default.
+     * @param httpClient The client sending the calls, shared with other clients.
+     */
+    public ReportClient(String appKey, String masterSecret, JMessageConfig config, IHttpClient httpClient) {
+        super(appKey, masterSecret, config, httpClient);
+        mBaseReportPath = config.getReportHostName();
         mV2MessagePath = (String) config.get(JMessageConfig.V2_MESSAGE_PATH);
         mV2UserPath = (String) config.get(JMessageConfig.V2_USER_PATH);
         mV2GroupPath = (String) config.get(JMessageConfig.V2_GROUP_PATH);
@@ -67,6 +89,37 @@ public class ReportClient extends BaseClient {
      */
     public MessageListResult v2GetMessageList(int count, String begin_time, String end_time)
             throws APIConnectionException, APIRequestException {
+        if (_streamingDecode) {
+            return streamGet(messageListUrl(count, begin_time, end_time), MessageListResult.DECODER);
+        }
+        ResponseWrapper response = sendMessageList(count, begin_time, end_time);
+        return MessageListResult.fromResponse(response, MessageListResult.class);
+    }
+
+    /**
+     * Get message list from history, the messages are handed to the visitor while the response is read
+     * and are not kept in the result.
+     * @param count Necessary parameter. The count of the message list.
+     * @param begin_time Necessary parameter. The format must follow by 'yyyy-MM-dd HH:mm:ss'
+     * @param end_time Necessary parameter. The format must follow by 'yyyy-MM-dd HH:mm:ss'
+     * @param visitor Gets the messages one by one
+     * @return MessageListResult without messages
+     * @throws APIConnectionException connect exception
+     * @throws APIRequestException request exception
+     */
+    public MessageListResult v2GetMessageList(int count, String begin_time, String end_time,
+                                              ElementVisitor<? super MessageResult> visitor)
+            throws APIConnectionException, APIRequestException {
+        Preconditions.checkArgument(null != visitor, "visitor should not be null");
+        return streamGet(messageListUrl(count, begin_time, end_time), MessageListResult.DECODER.visiting(visitor));
+    }
+
+    ResponseWrapper sendMessageList(int count, String begin_time, String end_time)
+            throws APIConnectionException, APIRequestException {
+        return _httpClient.sendGet(messageListUrl(count, begin_time, end_time));
+    }
+
+    private String messageListUrl(int count, String begin_time, String end_time) {
         if(count <= 0 || count > 1000) {
             throw new IllegalArgumentException("count must more than 0 and less than 1001");
         }
@@ -100,8 +153,7 @@ public class ReportClient extends BaseClient {
             throw new IllegalArgumentException("begin time or end time is null or empty");
         }
 
-        ResponseWrapper response = _httpClient.sendGet(requestUrl);
-        return MessageListResult.fromResponse(response, MessageListResult.class);
+        return requestUrl;
     }
 
     /**
@@ -114,15 +166,65 @@ public class ReportClient extends BaseClient {
      */
     public MessageListResult v2GetMessageListByCursor(String cursor)
             throws APIConnectionException, APIRequestException {
+        if (_streamingDecode) {
+            return streamGet(messageListUrl(cursor), MessageListResult.DECODER);
+        }
+        ResponseWrapper response = sendMessageListByCursor(cursor);
+        return MessageListResult.fromResponse(response, MessageListResult.class);
+    }
+
+    /**
+     * Get message list with cursor, the messages are handed to the visitor while the response is read
+     * and are not kept in the result.
+     * @param cursor First request will return cursor
+     * @param visitor Gets the messages one by one
+     * @return MessageListResult without messages
+     * @throws APIConnectionException connect exception
+     * @throws APIRequestException request exception
+     */
+    public MessageListResult v2GetMessageListByCursor(String cursor, ElementVisitor<? super MessageResult> visitor)
+            throws APIConnectionException, APIRequestException {
+        Preconditions.checkArgument(null != visitor, "visitor should not be null");
+        return streamGet(messageListUrl(cursor), MessageListResult.DECODER.visiting(visitor));
+    }
+
+    ResponseWrapper sendMessageListByCursor(String cursor)
+            throws APIConnectionException, APIRequestException {
+        return _httpClient.sendGet(messageListUrl(cursor));
+    }
+
+    private String messageListUrl(String cursor) {
         if (null != cursor) {
-            String requestUrl = mBaseReportPath + mV2MessagePath + "?cursor=" + cursor;
-            ResponseWrapper response = _httpClient.sendGet(requestUrl);
-            return MessageListResult.fromResponse(response, MessageListResult.class);
+            return mBaseReportPath + mV2MessagePath + "?cursor=" + cursor;
         } else {
             throw new IllegalArgumentException("the cursor parameter should not be null");
         }
     }
 
+    /**
+     * Iterate messages of any time range, the range is split into 7 days queries and the pages are
+     * prefetched in the background.
+     * @param count Necessary parameter. The count of messages of one page.
+     * @param begin_time Necessary parameter. The format must follow by 'yyyy-MM-dd HH:mm:ss'
+     * @param end_time Necessary parameter. The format must follow by 'yyyy-MM-dd HH:mm:ss'
+     * @param executor Runs the prefetch, if null the iterator uses its own thread.
+     * @return MessageIterator
+     */
+    public MessageIterator iterateMessages(int count, String begin_time, String end_time, Executor executor) {
+        return new MessageIterator(new MessageIterator.PageSource() {
+            @Override
+            public MessageListResult query(int count, String beginTime, String endTime)
+                    throws APIConnectionException, APIRequestException {
+                return v2GetMessageList(count, beginTime, endTime);
+            }
+
+            @Override
+            public MessageListResult next(String cursor) throws APIConnectionException, APIRequestException {
+                return v2GetMessageListByCursor(cursor);
+            }
+        }, count, begin_time, end_time, executor);
+    }
+
     /**
      * Get message list from user's record, messages will store 60 days.
      * @param username Necessary parameter.
@@ -170,6 +272,9 @@ public class ReportClient extends BaseClient {
             throw new IllegalArgumentException("begin time or end time is null or empty");
         }
 
+        if (_streamingDecode) {
+            return streamGet(requestUrl, MessageListResult.DECODER);
+        }
         ResponseWrapper response = _httpClient.sendGet(requestUrl);
         return MessageListResult.fromResponse(response, MessageListResult.class);
     }
@@ -188,6 +293,9 @@ public class ReportClient extends BaseClient {
         StringUtils.checkUsername(username);
         if (null != cursor) {
             String requestUrl = mBaseReportPath + mV2UserPath + "/" + username + "/messages?cursor=" + cursor;
+            if (_streamingDecode) {
+                return streamGet(requestUrl, MessageListResult.DECODER);
+            }
             ResponseWrapper response = _httpClient.sendGet(requestUrl);
             return MessageListResult.fromResponse(response, MessageListResult.class);
         } else {
@@ -195,6 +303,33 @@ public class ReportClient extends BaseClient {
         }
     }
 
+    /**
+     * Iterate messages of one user of any time range, the range is split into 7 days queries and the pages
+     * are prefetched in the background.
+     * @param username Necessary parameter.
+     * @param count Necessary parameter. The count of messages of one page.
+     * @param begin_time Necessary parameter. The format must follow by 'yyyy-MM-dd HH:mm:ss'
+     * @param end_time Necessary parameter. The format must follow by 'yyyy-MM-dd HH:mm:ss'
+     * @param executor Runs the prefetch, if null the iterator uses its own thread.
+     * @return MessageIterator
+     */
+    public MessageIterator iterateUserMessages(final String username, int count, String begin_time, String end_time,
+                                               Executor executor) {
+        StringUtils.checkUsername(username);
+        return new MessageIterator(new MessageIterator.PageSource() {
+            @Override
+            public MessageListResult query(int count, String beginTime, String endTime)
+                    throws APIConnectionException, APIRequestException {
+                return v2GetUserMessages(username, count, beginTime, endTime);
+            }
+
+            @Override
+            public MessageListResult next(String cursor) throws APIConnectionException, APIRequestException {
+                return v2GetUserMessagesByCursor(username, cursor);
+            }
+        }, count, begin_time, end_time, executor);
+    }
+
     /**
      * Get group message list
      * @param groupId group id
@@ -239,6 +374,9 @@ public class ReportClient extends BaseClient {
             throw new IllegalArgumentException("begin time or end time is null or empty");
         }
 
+        if (_streamingDecode) {
+            return streamGet(requestUrl, MessageListResult.DECODER);
+        }
         ResponseWrapper response = _httpClient.sendGet(requestUrl);
         return MessageListResult.fromResponse(response, MessageListResult.class);
     }
@@ -0,0 +1,145 @@
+package cn.jmessage.api.resource;
+
+import cn.jiguang.common.connection.HttpProxy;
+import cn.jiguang.common.connection.IHttpClient;
+import cn.jiguang.common.resp.APIConnectionException;
+import cn.jiguang.common.resp.APIRequestException;
+import cn.jmessage.api.common.HttpClientChain;
+import cn.jmessage.api.common.JMessageConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * {@link ResourceClient} which does not upload a content again when its SHA-256 hash is in the
+ * {@link UploadCache}. The content is hashed while it is read, then read again to be uploaded on a miss. A stream
+ * can only be read once, so uploads from an InputStream skip the cache.
+ */
+public class CachingResourceClient extends ResourceClient {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CachingResourceClient.class);
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final String appkey;
+    private final UploadCache cache;
+
+    /**
+     * @param appkey       The key of one application on JPush.
+     * @param masterSecret API access secret of the appKey.
+     * @param proxy        The proxy, if there is no proxy, should be null.
+     * @param config       The client configuration. Can use JMessageConfig.getInstance() as default.
+     * @param cache        The cache, media ids are kept by app key so one cache can be shared by several apps.
+     */
+    public CachingResourceClient(String appkey, String masterSecret, HttpProxy proxy, JMessageConfig config,
+                                 UploadCache cache) {
+        this(appkey, masterSecret, config, newHttpClientChain(appkey, masterSecret, proxy, config), cache);
+    }
+
+    private CachingResourceClient(String appkey, String masterSecret, JMessageConfig config,
+                                  HttpClientChain httpClients, UploadCache cache) {
+        this(appkey, masterSecret, config, httpClients.getHttpClient(), cache);
+        _httpClientChain = httpClients;
+    }
+
+    /**
+     * @param httpClient The client sending the calls, shared with other clients.
+     */
+    public CachingResourceClient(String appkey, String masterSecret, JMessageConfig config, IHttpClient httpClient,
+                                 UploadCache cache) {
+        super(appkey, masterSecret, config, httpClient);
+        this.appkey = appkey;
+        this.cache = cache;
+    }
+
+    public UploadCache getCache() {
+        return cache;
+    }
+
+    @Override
+    public UploadResult upload(UploadSource source, String fileType)
+            throws APIConnectionException, APIRequestException {
+        if (null == source || !source.isRepeatable()) {
+            return super.upload(source, fileType);
+        }
+        String key = appkey + "/" + fileType + "/" + hash(source);
+        UploadCache.Entry entry = cache.get(key);
+        if (null != entry && isValid(entry)) {
+            LOG.debug("Upload of " + source.getFilename() + " skipped, uploaded before as " + entry.mediaId);
+            return entry.toResult();
+        }
+        UploadResult result = super.upload(source, fileType);
+        if (result.isResultOK() && null != result.getMediaId()) {
+            cache.put(key, result);
+        }
+        return result;
+    }
+
+    /**
+     * Check the media id with the download API when the last check is too old, never with a cached download
+     * url. An error response drops the entry and its download url, a connection error is thrown as the upload
+     * would fail too.
+     */
+    private boolean isValid(UploadCache.Entry entry) throws APIConnectionException {
+        if (!cache.needsVerification(entry)) {
+            return true;
+        }
+        try {
+            DownloadResult download = requestDownload(entry.mediaId);
+            boolean valid = null != download.getUrl();
+            cache.verified(entry, valid);
+            if (!valid) {
+                invalidateDownload(entry.mediaId);
+            }
+            return valid;
+        } catch (APIRequestException e) {
+            LOG.debug("Media " + entry.mediaId + " not found anymore, upload again: " + e.getErrorMessage());
+            cache.verified(entry, false);
+            invalidateDownload(entry.mediaId);
+            return false;
+        }
+    }
+
+    private void invalidateDownload(String mediaId) {
+        if (null != getDownloadCache()) {
+            getDownloadCache().invalidate(mediaId);
+        }
+    }
+
+    private static String hash(UploadSource source) throws APIConnectionException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try {
+            source.writeTo(new OutputStream() {
+                @Override
+                public void write(int b) {
+                    digest.update((byte) b);
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) {
+                    digest.update(b, off, len);
+                }
+            }, new byte[BUFFER_SIZE]);
+        } catch (IOException e) {
+            throw new APIConnectionException("Failed to read " + source.getFilename(), e);
+        }
+        byte[] bytes = digest.digest();
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+}
@@ -0,0 +1,83 @@
+package cn.jmessage.api.resource;
+
+import cn.jiguang.common.utils.Preconditions;
+import cn.jmessage.api.common.JMessageConfig;
+import cn.jmessage.api.common.cache.MetadataCache;
+
+/**
+ * Download urls by media id. A signed url expires at the deadline of its e or Expires query parameter, in epoch
+ * seconds, it is dropped from the cache a margin before that deadline, so a url handed out stays valid for at
+ * least the margin. Urls without a deadline expire after the time to live.
+ */
+public class DownloadUrlCache extends MetadataCache<String, DownloadResult> {
+
+    private final long expiryMarginMillis;
+
+    /**
+     * Cache configured by the im.download.cache keys of the config.
+     */
+    public DownloadUrlCache(JMessageConfig config) {
+        this(((Number) config.get(JMessageConfig.DOWNLOAD_CACHE_TTL)).longValue(),
+                (Integer) config.get(JMessageConfig.DOWNLOAD_CACHE_MAX_SIZE),
+                ((Number) config.get(JMessageConfig.DOWNLOAD_CACHE_EXPIRY_MARGIN)).longValue());
+    }
+
+    /**
+     * @param ttlMillis          time to live of a url, in milliseconds
+     * @param maxSize            max entries
+     * @param expiryMarginMillis time before the deadline of a signed url at which it is dropped, in milliseconds
+     */
+    public DownloadUrlCache(long ttlMillis, int maxSize, long expiryMarginMillis) {
+        super("downloadUrls", ttlMillis, maxSize);
+        Preconditions.checkArgument(expiryMarginMillis >= 0, "expiry margin should not less than 0");
+        this.expiryMarginMillis = expiryMarginMillis;
+    }
+
+    public long getExpiryMarginMillis() {
+        return expiryMarginMillis;
+    }
+
+    @Override
+    protected long expiresAt(DownloadResult value, long now) {
+        long expiresAt = super.expiresAt(value, now);
+        if (null == value.getUrl()) {
+            return now;
+        }
+        long deadline = deadlineOf(value.getUrl());
+        if (deadline > 0) {
+            expiresAt = Math.min(expiresAt, deadline - expiryMarginMillis);
+        }
+        return expiresAt;
+    }
+
+    /**
+     * @return the deadline of a signed url in milliseconds, 0 if the url has none
+     */
+    static long deadlineOf(String url) {
+        int query = url.indexOf('?');
+        if (query < 0) {
+            return 0;
+        }
+        int start = query + 1;
+        while (start < url.length()) {
+            int end = url.indexOf('&', start);
+            if (end < 0) {
+                end = url.length();
+            }
+            int equals = url.indexOf('=', start);
+            if (equals > start && equals < end) {
+                String name = url.substring(start, equals);
+                if (name.equals("e") || name.equalsIgnoreCase("Expires")) {
+                    try {
+                        return Long.parseLong(url.substring(equals + 1, end)) * 1000;
+                    } catch (NumberFormatException e) {
+                        return 0;
+                    }
+                }
+            }
+            start = end + 1;
+        }
+        return 0;
+    }
+
+}
@@ -0,0 +1,123 @@
+package cn.jmessage.api.resource;
+
+/**
+ * CRC32, size and, for images, format and dimensions of an uploaded file, computed by the client while the file is
+ * sent. They are what {@link cn.jmessage.api.common.model.message.MessageBody.Builder#setMediaCrc32(Long)} and the
+ * other media fields of a message body need.
+ */
+public class MediaInfo {
+
+    private final long crc32;
+    private final long length;
+    private final String format;
+    private final int width;
+    private final int height;
+
+    MediaInfo(long crc32, long length, String format, int width, int height) {
+        this.crc32 = crc32;
+        this.length = length;
+        this.format = format;
+        this.width = width;
+        this.height = height;
+    }
+
+    public long getCrc32() {
+        return crc32;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return png, gif, bmp or jpg, null if not an image of these formats
+     */
+    public String getFormat() {
+        return format;
+    }
+
+    /**
+     * @return width in pixels, 0 if unknown
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return height in pixels, 0 if unknown
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    static MediaInfo read(byte[] b, int length, long crc32, long fileLength) {
+        if (length >= 24 && u8(b, 0) == 0x89 && b[1] == 'P' && b[2] == 'N' && b[3] == 'G') {
+            return new MediaInfo(crc32, fileLength, "png", u32(b, 16), u32(b, 20));
+        }
+        if (length >= 10 && b[0] == 'G' && b[1] == 'I' && b[2] == 'F') {
+            return new MediaInfo(crc32, fileLength, "gif", u16le(b, 6), u16le(b, 8));
+        }
+        if (length >= 26 && b[0] == 'B' && b[1] == 'M') {
+            // height is negative for a top-down bitmap
+            return new MediaInfo(crc32, fileLength, "bmp", Math.abs(s32le(b, 18)), Math.abs(s32le(b, 22)));
+        }
+        if (length >= 4 && u8(b, 0) == 0xff && u8(b, 1) == 0xd8) {
+            int[] size = jpegSize(b, length);
+            if (null != size) {
+                return new MediaInfo(crc32, fileLength, "jpg", size[0], size[1]);
+            }
+            return new MediaInfo(crc32, fileLength, "jpg", 0, 0);
+        }
+        return new MediaInfo(crc32, fileLength, null, 0, 0);
+    }
+
+    /**
+     * Walk the segments up to the start of frame marker.
+     */
+    private static int[] jpegSize(byte[] b, int length) {
+        int i = 2;
+        while (i + 9 < length) {
+            if (u8(b, i) != 0xff) {
+                return null;
+            }
+            int marker = u8(b, i + 1);
+            if (marker == 0xff) {
+                // fill byte
+                i++;
+                continue;
+            }
+            // SOF0 to SOF15 but DHT, JPG and DAC
+            if (marker >= 0xc0 && marker <= 0xcf && marker != 0xc4 && marker != 0xc8 && marker != 0xcc) {
+                return new int[]{u16(b, i + 7), u16(b, i + 5)};
+            }
+            i += 2 + u16(b, i + 2);
+        }
+        return null;
+    }
+
+    private static int u8(byte[] b, int i) {
+        return b[i] & 0xff;
+    }
+
+    private static int u16(byte[] b, int i) {
+        return (u8(b, i) << 8) | u8(b, i + 1);
+    }
+
+    private static int u32(byte[] b, int i) {
+        return (u8(b, i) << 24) | (u8(b, i + 1) << 16) | (u8(b, i + 2) << 8) | u8(b, i + 3);
+    }
+
+    private static int u16le(byte[] b, int i) {
+        return u8(b, i) | (u8(b, i + 1) << 8);
+    }
+
+    private static int s32le(byte[] b, int i) {
+        return u8(b, i) | (u8(b, i + 1) << 8) | (u8(b, i + 2) << 16) | (u8(b, i + 3) << 24);
+    }
+
+    @Override
+    public String toString() {
+        return "crc32 " + crc32 + ", length " + length + ", format " + format + ", " + width + "x" + height;
+    }
+
+}
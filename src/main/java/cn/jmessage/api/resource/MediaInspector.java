@@ -0,0 +1,67 @@
+package cn.jmessage.api.resource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * Sees the bytes of an upload as they are written: computes the CRC32 and keeps the head of the file to read the
+ * dimensions of PNG, GIF, BMP and JPEG images, so the file is read only once.
+ */
+class MediaInspector extends OutputStream {
+
+    // JPEG dimensions follow the EXIF data, which is usually well below this
+    private static final int MAX_HEAD_LENGTH = 64 * 1024;
+
+    private final OutputStream out;
+    private final CRC32 crc32 = new CRC32();
+    private byte[] head = new byte[1024];
+    private int headLength;
+    private long length;
+
+    MediaInspector(OutputStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        crc32.update(b, off, len);
+        length += len;
+        if (headLength < MAX_HEAD_LENGTH) {
+            int n = Math.min(len, MAX_HEAD_LENGTH - headLength);
+            if (headLength + n > head.length) {
+                head = Arrays.copyOf(head, Math.min(MAX_HEAD_LENGTH, Math.max(head.length * 2, headLength + n)));
+            }
+            System.arraycopy(b, off, head, headLength, n);
+            headLength += n;
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    long getCrc32() {
+        return crc32.getValue();
+    }
+
+    long getLength() {
+        return length;
+    }
+
+    /**
+     * @return format and dimensions of the image, null if the content is not an image this can read
+     */
+    MediaInfo getMediaInfo() {
+        return MediaInfo.read(head, headLength, getCrc32(), length);
+    }
+
+}
@@ -0,0 +1,97 @@
+package cn.jmessage.api.resource;
+
+import cn.jmessage.api.common.connection.RequestBody;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.SecureRandom;
+import java.util.Random;
+
+/**
+ * The multipart/form-data body of an upload: one part holding the file, written from its {@link UploadSource}
+ * through a {@link MediaInspector}.
+ */
+class MultipartBody implements RequestBody {
+
+    private static final String NEW_LINE = "\r\n";
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final Random RANDOM = new SecureRandom();
+
+    private final UploadSource source;
+    private final String boundary;
+    private final byte[] head;
+    private final byte[] tail;
+    private volatile MediaInspector inspector;
+
+    MultipartBody(UploadSource source, String fileType) {
+        this.source = source;
+        this.boundary = "jmessage" + Long.toHexString(RANDOM.nextLong()) + Long.toHexString(RANDOM.nextLong());
+        this.head = utf8("--" + boundary + NEW_LINE
+                + "Content-Disposition: form-data; name=\"" + fileType + "\"; filename=\""
+                + escape(source.getFilename()) + "\"" + NEW_LINE
+                + "Content-Type: application/octet-stream" + NEW_LINE
+                + NEW_LINE);
+        this.tail = utf8(NEW_LINE + "--" + boundary + "--" + NEW_LINE);
+    }
+
+    @Override
+    public String getContentType() {
+        return "multipart/form-data; boundary=" + boundary;
+    }
+
+    @Override
+    public long getContentLength() {
+        long length;
+        try {
+            length = source.getLength();
+        } catch (IOException e) {
+            return -1;
+        }
+        return length < 0 ? -1 : head.length + length + tail.length;
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return source.isRepeatable();
+    }
+
+    @Override
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(head);
+        // a new inspector for each write, the body is written again when a stale connection is retried
+        MediaInspector inspector = new MediaInspector(out);
+        source.writeTo(inspector, new byte[BUFFER_SIZE]);
+        this.inspector = inspector;
+        out.write(tail);
+    }
+
+    /**
+     * @return what was seen of the file by the last write, null before the body is written
+     */
+    MediaInfo getMediaInfo() {
+        MediaInspector inspector = this.inspector;
+        return null == inspector ? null : inspector.getMediaInfo();
+    }
+
+    @Override
+    public String toString() {
+        return "multipart file " + source.getFilename() + ", " + getContentLength() + " bytes";
+    }
+
+    /**
+     * Quotes and line breaks would end the header value early.
+     */
+    private static String escape(String filename) {
+        return filename.replace("\\", "\\\\").replace("\"", "\\\"").replace("\r", "").replace("\n", "");
+    }
+
+    private static byte[] utf8(String value) {
+        try {
+            return value.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+}
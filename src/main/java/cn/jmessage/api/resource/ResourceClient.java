@@ -3,24 +3,48 @@ package cn.jmessage.api.resource;
 import cn.jiguang.common.ServiceHelper;
 import cn.jiguang.common.utils.Preconditions;
 import cn.jiguang.common.connection.HttpProxy;
+import cn.jiguang.common.connection.IHttpClient;
 import cn.jiguang.common.resp.APIConnectionException;
 import cn.jiguang.common.resp.APIRequestException;
 import cn.jiguang.common.resp.ResponseWrapper;
 import cn.jmessage.api.common.BaseClient;
+import cn.jmessage.api.common.async.BulkExecutor;
+import cn.jmessage.api.common.HttpClientChain;
 import cn.jmessage.api.common.JMessageConfig;
+import cn.jmessage.api.common.cache.MetadataCache;
+import cn.jmessage.api.common.connection.HttpClients;
+import cn.jmessage.api.common.connection.StreamingHttpClient;
+import cn.jmessage.api.message.MessageListResult;
+import cn.jmessage.api.message.MessageResult;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ResourceClient extends BaseClient {
 
     private static Logger LOG = LoggerFactory.getLogger(ResourceClient.class);
 
+    private static final long MAX_FILE_SIZE = 8 * 1024 * 1024;
+
     private String resourcePath;
     private String authCode;
+    private final DownloadUrlCache downloadCache;
 
 
     public ResourceClient(String appkey, String masterSecret) {
@@ -40,22 +64,137 @@ public class ResourceClient extends BaseClient {
      * @param config       The client configuration. Can use JMessageConfig.getInstance() as default.
      */
     public ResourceClient(String appkey, String masterSecret, HttpProxy proxy, JMessageConfig config) {
-        super(appkey, masterSecret, proxy, config);
+        this(appkey, masterSecret, config, newHttpClientChain(appkey, masterSecret, proxy, config));
+    }
+
+    private ResourceClient(String appkey, String masterSecret, JMessageConfig config, HttpClientChain httpClients) {
+        this(appkey, masterSecret, config, httpClients.getHttpClient());
+        _httpClientChain = httpClients;
+    }
+
+    /**
+     * Create a client sending its calls with a client shared with other clients.
+     *
+     * @param appkey The KEY of one application on JPush.
+     * @param masterSecret API access secret of the appKey.
+     * @param config The client configuration. Can use JMessageConfig.getInstance() as default.
+     * @param httpClient The client sending the calls, shared with other clients.
+     */
+    public ResourceClient(String appkey, String masterSecret, JMessageConfig config, IHttpClient httpClient) {
+        super(appkey, masterSecret, config, httpClient);
         this.resourcePath = (String) config.get(JMessageConfig.RESOURCE_PATH);
         this.authCode = ServiceHelper.getBasicAuthorization(appkey, masterSecret);
+        this.downloadCache = (Boolean) config.get(JMessageConfig.DOWNLOAD_CACHE) ? new DownloadUrlCache(config) : null;
     }
 
     /**
      * Download file with mediaId, will return DownloadResult which include url.
+     * The url is cached when enabled by {@link JMessageConfig#setDownloadCache(boolean)}.
      * @param mediaId Necessary
      * @return DownloadResult
      * @throws APIConnectionException connect exception
      * @throws APIRequestException request exception
      */
-    public DownloadResult downloadFile(String mediaId)
+    public DownloadResult downloadFile(final String mediaId)
             throws APIConnectionException, APIRequestException {
         Preconditions.checkArgument(null != mediaId, "mediaId is necessary");
+        if (null == downloadCache) {
+            return requestDownload(mediaId);
+        }
+        return downloadCache.get(mediaId, new MetadataCache.Loader<DownloadResult>() {
+            @Override
+            public DownloadResult load() throws APIConnectionException, APIRequestException {
+                return requestDownload(mediaId);
+            }
+        });
+    }
+
+    /**
+     * Resolve the download urls of the media in a page of messages in parallel, so they are cached when the
+     * page is shown. See {@link #prefetchDownloads(Collection, int)}.
+     * @param page Necessary, messages from the history API
+     * @param concurrency max number of requests in flight
+     * @return the download results by media id
+     * @throws APIConnectionException if interrupted while waiting for the requests
+     */
+    public Map<String, DownloadResult> prefetchDownloads(MessageListResult page, int concurrency)
+            throws APIConnectionException {
+        Preconditions.checkArgument(null != page, "page should not be null");
+        List<String> mediaIds = new ArrayList<String>();
+        if (null != page.getMessages()) {
+            for (MessageResult message : page.getMessages()) {
+                if (null != message && null != message.getMsgBody() && null != message.getMsgBody().getMediaId()) {
+                    mediaIds.add(message.getMsgBody().getMediaId());
+                }
+            }
+        }
+        return prefetchDownloads(mediaIds, concurrency);
+    }
+
+    /**
+     * Resolve the download urls of several media in parallel, through the download url cache when it is enabled
+     * by {@link JMessageConfig#setDownloadCache(boolean)}.
+     * @param mediaIds Necessary, duplicates are resolved once
+     * @param concurrency max number of requests in flight
+     * @return the download results by media id, in the order of the ids, a media id which failed is left out
+     * @throws APIConnectionException if interrupted while waiting for the requests
+     */
+    public Map<String, DownloadResult> prefetchDownloads(Collection<String> mediaIds, int concurrency)
+            throws APIConnectionException {
+        Preconditions.checkArgument(null != mediaIds, "mediaIds should not be null");
+        Preconditions.checkArgument(concurrency > 0, "concurrency should more than 0");
+        Set<String> ids = new LinkedHashSet<String>(mediaIds);
+        ids.remove(null);
+        final Map<String, DownloadResult> results = new ConcurrentHashMap<String, DownloadResult>();
+        if (ids.isEmpty()) {
+            return new LinkedHashMap<String, DownloadResult>();
+        }
+        BulkExecutor bulk = new BulkExecutor("jmessage-download-prefetch", Math.min(concurrency, ids.size()),
+                _virtualThreads);
+        try {
+            for (final String mediaId : ids) {
+                bulk.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            results.put(mediaId, downloadFile(mediaId));
+                        } catch (APIConnectionException e) {
+                            LOG.debug("Prefetch of " + mediaId + " failed: " + e.getMessage());
+                        } catch (APIRequestException e) {
+                            LOG.debug("Prefetch of " + mediaId + " failed: " + e.getErrorMessage());
+                        }
+                    }
+                });
+            }
+            // wait for the requests in flight
+            bulk.awaitIdle();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new APIConnectionException("Interrupted while prefetching downloads", e);
+        } finally {
+            bulk.close();
+        }
+        Map<String, DownloadResult> ordered = new LinkedHashMap<String, DownloadResult>();
+        for (String mediaId : ids) {
+            DownloadResult result = results.get(mediaId);
+            if (null != result) {
+                ordered.put(mediaId, result);
+            }
+        }
+        return ordered;
+    }
 
+    /**
+     * @return the download url cache, null unless enabled by {@link JMessageConfig#setDownloadCache(boolean)}
+     */
+    public DownloadUrlCache getDownloadCache() {
+        return downloadCache;
+    }
+
+    /**
+     * Ask the server for the download url, bypassing the download url cache.
+     */
+    DownloadResult requestDownload(String mediaId) throws APIConnectionException, APIRequestException {
         ResponseWrapper response = _httpClient.sendGet(_baseUrl + resourcePath + "?mediaId=" + mediaId);
         return DownloadResult.fromResponse(response, DownloadResult.class);
     }
@@ -72,102 +211,174 @@ public class ResourceClient extends BaseClient {
     public UploadResult uploadFile(String path, String fileType)
             throws APIConnectionException, APIRequestException {
         Preconditions.checkArgument(null != path, "filename is necessary");
-        Preconditions.checkArgument(fileType.equals("image") || fileType.equals("file") || fileType.equals("voice"), "Illegal file type!");
-        File file = new File(path);
-        if (file.exists() && file.isFile()) {
-            long fileSize = file.length();
-            if (fileSize > 8 * 1024 * 1024) {
-                throw new IllegalArgumentException("File size should not larger than 8M");
+        return upload(UploadSource.of(Paths.get(path)), fileType);
+    }
+
+    /**
+     * Upload a file, a stream or a buffer. The content is streamed to the connection with its length when it is
+     * known, chunked otherwise, and its CRC32 and image dimensions are computed while it is sent, see
+     * {@link UploadResult#getMediaInfo()}.
+     * @param source Necessary, the content to upload
+     * @param fileType should be "image" or "file" or "voice"
+     * @return UploadResult
+     * @throws APIConnectionException connect exception
+     * @throws APIRequestException request exception
+     */
+    public UploadResult upload(UploadSource source, String fileType)
+            throws APIConnectionException, APIRequestException {
+        Preconditions.checkArgument(null != source, "source is necessary");
+        Preconditions.checkArgument("image".equals(fileType) || "file".equals(fileType) || "voice".equals(fileType),
+                "Illegal file type!");
+        long length;
+        try {
+            length = source.getLength();
+        } catch (IOException e) {
+            throw new APIConnectionException("Failed to read " + source.getFilename(), e);
+        }
+        if (length > MAX_FILE_SIZE) {
+            throw new IllegalArgumentException("File size should not larger than 8M");
+        }
+
+        String url = _baseUrl + resourcePath + "?type=" + fileType;
+        MultipartBody body = new MultipartBody(source, fileType);
+        ResponseWrapper wrapper;
+        if (HttpClients.canStreamRequestBody(_httpClient)) {
+            wrapper = ((StreamingHttpClient) _httpClient).sendPost(url, body);
+        } else {
+            wrapper = sendWithUrlConnection(url, body);
+        }
+        UploadResult result = UploadResult.fromResponse(wrapper, UploadResult.class);
+        MediaInfo info = body.getMediaInfo();
+        if (null != info && null != result.getMediaCrc32() && result.getMediaCrc32() != info.getCrc32()) {
+            LOG.warn("CRC32 of uploaded " + source.getFilename() + " is " + result.getMediaCrc32()
+                    + ", but " + info.getCrc32() + " was sent");
+        }
+        result.setMediaInfo(info);
+        return result;
+    }
+
+    /**
+     * Upload several files in parallel, each one in its own request.
+     * @param sources Necessary, the contents to upload
+     * @param fileType should be "image" or "file" or "voice"
+     * @param concurrency max number of uploads in flight
+     * @return the result of each upload, a failed upload does not stop the others
+     * @throws APIConnectionException if interrupted while waiting for the uploads
+     */
+    public UploadAllResult uploadAll(final List<UploadSource> sources, final String fileType, int concurrency)
+            throws APIConnectionException {
+        Preconditions.checkArgument(null != sources, "sources should not be null");
+        Preconditions.checkArgument(concurrency > 0, "concurrency should more than 0");
+        final UploadAllResult result = new UploadAllResult(sources.size());
+        BulkExecutor bulk = new BulkExecutor("jmessage-upload", Math.max(1, Math.min(concurrency, sources.size())),
+                _virtualThreads);
+        long start = System.currentTimeMillis();
+        try {
+            for (int i = 0; i < sources.size(); i++) {
+                final int index = i;
+                bulk.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            result.succeeded(index, upload(sources.get(index), fileType));
+                        } catch (APIConnectionException e) {
+                            result.failed(index, e);
+                        } catch (APIRequestException e) {
+                            result.failed(index, e);
+                        } catch (IllegalArgumentException e) {
+                            result.failed(index, e);
+                        }
+                    }
+                });
+            }
+            // wait for the uploads in flight
+            bulk.awaitIdle();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new APIConnectionException("Interrupted while uploading files", e);
+        } finally {
+            bulk.close();
+        }
+        result.setElapsedMillis(System.currentTimeMillis() - start);
+        LOG.info("Uploaded files, " + result);
+        return result;
+    }
+
+    /**
+     * For an http client set by {@link #setHttpClient} which can not send a streamed body.
+     */
+    private ResponseWrapper sendWithUrlConnection(String requestUrl, MultipartBody body)
+            throws APIConnectionException, APIRequestException {
+        HttpURLConnection conn = null;
+        try {
+            URL url = new URL(requestUrl);
+            conn = (HttpURLConnection) url.openConnection();
+            conn.setRequestMethod("POST");
+            conn.setDoOutput(true);
+            conn.setDoInput(true);
+            conn.setUseCaches(false);
+            conn.setRequestProperty("Connection", "Keep-Alive");
+            conn.setRequestProperty("Charset", "UTF-8");
+            conn.setRequestProperty("Authorization", this.authCode);
+            conn.setRequestProperty("Content-Type", body.getContentType());
+            long length = body.getContentLength();
+            if (length >= 0) {
+                conn.setFixedLengthStreamingMode(length);
+            } else {
+                conn.setChunkedStreamingMode(0);
             }
+            OutputStream out = conn.getOutputStream();
             try {
-                // 换行符
-                final String newLine = "\r\n";
-                final String boundaryPrefix = "--";
-                // 定义数据分隔线
-                String BOUNDARY = "========7d4a6d158c9";
-                URL url = new URL(_baseUrl + resourcePath + "?type=" + fileType);
-                HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-                conn.setRequestMethod("POST");
-                conn.setDoOutput(true);
-                conn.setDoInput(true);
-                conn.setUseCaches(false);
-                conn.setRequestProperty("connection", "Keep-Alive");
-                conn.setRequestProperty("Charset", "UTF-8");
-                conn.setRequestProperty("Authorization", this.authCode);
-                conn.setRequestProperty("Content-Type", "multipart/form-data; boundary=" + BOUNDARY);
-                OutputStream out = new DataOutputStream(conn.getOutputStream());
-                StringBuilder sb = new StringBuilder();
-                sb.append(boundaryPrefix);
-                sb.append(BOUNDARY);
-                sb.append(newLine);
-                sb.append("Content-Disposition: form-data;name=\"" + fileType + "\";filename=\"" + path + "\"" + newLine);
-                sb.append("Content-Type:application/octet-stream");
-                // 参数头设置完以后需要两个换行，然后才是参数内容
-                sb.append(newLine);
-                sb.append(newLine);
-                out.write(sb.toString().getBytes());
-                DataInputStream dataInputStream = new DataInputStream(new FileInputStream(file));
-                byte[] bufferOut = new byte[1024];
-                int bytes = 0;
-                while ((bytes = dataInputStream.read(bufferOut)) != -1) {
-                    out.write(bufferOut, 0, bytes);
-                }
-                out.write(newLine.getBytes());
-                dataInputStream.close();
-                // 定义最后数据分隔线，即--加上BOUNDARY再加上--。
-                byte[] end_data = (newLine + boundaryPrefix + BOUNDARY + boundaryPrefix + newLine)
-                        .getBytes();
-                // 写上结尾标识
-                out.write(end_data);
-                out.flush();
+                body.writeTo(out);
+            } finally {
                 out.close();
-                LOG.debug("Send request - POST"  + " " + url);
-
-                int status1 = conn.getResponseCode();
-                StringBuffer stringBuffer = new StringBuffer();
-                InputStream in = null;
-                if(status1 / 100 == 2) {
-                    in = conn.getInputStream();
-                } else {
-                    in = conn.getErrorStream();
-                }
-                if(null != in) {
-                    InputStreamReader responseContent = new InputStreamReader(in, "UTF-8");
-                    char[] quota = new char[1024];
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Send request - POST " + url);
+            }
 
-                    int remaining;
-                    while((remaining = responseContent.read(quota)) > 0) {
-                        stringBuffer.append(quota, 0, remaining);
+            int status = conn.getResponseCode();
+            StringBuilder sb = new StringBuilder();
+            InputStream in = status / 100 == 2 ? conn.getInputStream() : conn.getErrorStream();
+            if (null != in) {
+                Reader reader = new InputStreamReader(in, "UTF-8");
+                try {
+                    char[] buffer = new char[1024];
+                    int n;
+                    while ((n = reader.read(buffer)) > 0) {
+                        sb.append(buffer, 0, n);
                     }
+                } finally {
+                    reader.close();
                 }
-                ResponseWrapper wrapper = new ResponseWrapper();
-                String responseContent1 = stringBuffer.toString();
-                wrapper.responseCode = status1;
-                wrapper.responseContent = responseContent1;
-                String quota1 = conn.getHeaderField("X-Rate-Limit-Limit");
-                String remaining1 = conn.getHeaderField("X-Rate-Limit-Remaining");
-                String reset = conn.getHeaderField("X-Rate-Limit-Reset");
-                wrapper.setRateLimit(quota1, remaining1, reset);
-                if(status1 >= 200 && status1 < 300) {
-                    LOG.debug("Succeed to get response OK - responseCode:" + status1);
-                    LOG.debug("Response Content - " + responseContent1);
-                } else {
-                    if(status1 < 300 || status1 >= 400) {
-                        LOG.warn("Got error response - responseCode:" + status1 + ", responseContent:" + responseContent1);
-                        wrapper.setErrorObject();
-                        throw new APIRequestException(wrapper);
-                    }
-
-                    LOG.warn("Normal response but unexpected - responseCode:" + status1 + ", responseContent:" + responseContent1);
+            }
+            ResponseWrapper wrapper = new ResponseWrapper();
+            String responseContent = sb.toString();
+            wrapper.responseCode = status;
+            wrapper.responseContent = responseContent;
+            wrapper.setRateLimit(conn.getHeaderField(IHttpClient.RATE_LIMIT_QUOTA),
+                    conn.getHeaderField(IHttpClient.RATE_LIMIT_Remaining),
+                    conn.getHeaderField(IHttpClient.RATE_LIMIT_Reset));
+            if (status >= 200 && status < 300) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Succeed to get response OK - responseCode:" + status);
+                    LOG.debug("Response Content - " + responseContent);
                 }
-                return UploadResult.fromResponse(wrapper, UploadResult.class);
-            } catch (Exception e) {
-                e.printStackTrace();
+            } else if (status < 300 || status >= 400) {
+                LOG.warn("Got error response - responseCode:" + status + ", responseContent:" + responseContent);
+                wrapper.setErrorObject();
+                throw new APIRequestException(wrapper);
+            } else {
+                LOG.warn("Normal response but unexpected - responseCode:" + status + ", responseContent:" + responseContent);
+            }
+            return wrapper;
+        } catch (IOException e) {
+            throw new APIConnectionException(IHttpClient.IO_ERROR_MESSAGE, e);
+        } finally {
+            if (null != conn) {
+                conn.disconnect();
             }
-        } else {
-            throw new IllegalArgumentException("File name is invalid, please check again");
         }
-        return null;
     }
 
 }
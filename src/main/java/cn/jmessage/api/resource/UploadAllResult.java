@@ -0,0 +1,80 @@
+package cn.jmessage.api.resource;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Outcome of {@link ResourceClient#uploadAll(List, String, int)}, by index of the source in the uploaded list.
+ */
+public class UploadAllResult {
+
+    private final List<UploadResult> results;
+    private final Map<Integer, Exception> failures = new TreeMap<Integer, Exception>();
+    private long elapsedMillis;
+
+    UploadAllResult(int size) {
+        this.results = new ArrayList<UploadResult>(Collections.<UploadResult>nCopies(size, null));
+    }
+
+    /**
+     * @return the result of each upload, in the order of the sources, null where the upload failed
+     */
+    public List<UploadResult> getResults() {
+        synchronized (results) {
+            return new ArrayList<UploadResult>(results);
+        }
+    }
+
+    /**
+     * @return the exception of each failed upload by index of its source: an APIConnectionException, an
+     * APIRequestException or an IllegalArgumentException for a source which could not be sent
+     */
+    public Map<Integer, Exception> getFailures() {
+        synchronized (failures) {
+            return new TreeMap<Integer, Exception>(failures);
+        }
+    }
+
+    public int getSuccessCount() {
+        return results.size() - getFailureCount();
+    }
+
+    public int getFailureCount() {
+        synchronized (failures) {
+            return failures.size();
+        }
+    }
+
+    public boolean isAllSucceeded() {
+        return getFailureCount() == 0;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    void succeeded(int index, UploadResult result) {
+        synchronized (results) {
+            results.set(index, result);
+        }
+    }
+
+    void failed(int index, Exception e) {
+        synchronized (failures) {
+            failures.put(index, e);
+        }
+    }
+
+    void setElapsedMillis(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return getSuccessCount() + " uploaded, " + getFailureCount() + " failed in " + elapsedMillis + " ms";
+    }
+
+}
@@ -0,0 +1,446 @@
+package cn.jmessage.api.resource;
+
+import cn.jiguang.common.resp.ResponseWrapper;
+import cn.jiguang.common.utils.Preconditions;
+import cn.jmessage.api.common.JMessageConfig;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Media ids of uploaded files by hash of their content, so a file uploaded before is not sent again.
+ * Entries expire after a fixed time to live, when the cache is full the least recently used entry is evicted.
+ * <p>
+ * With an index file the entries outlive the process: each change is appended to the file as one JSON line, and
+ * the file is rewritten with the live entries only when it is opened and when the dead lines outnumber them.
+ * An index which can not be read or written is logged and the cache goes on in memory.
+ * </p>
+ */
+public class UploadCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UploadCache.class);
+
+    private static final Gson GSON = new Gson();
+
+    private final File indexFile;
+    private final long ttlMillis;
+    private final int maxSize;
+    private final long verifyIntervalMillis;
+
+    private final Lock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Entry> entries;
+    private Writer journal;
+    private int journalLines;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong expirations = new AtomicLong();
+    private final AtomicLong verifications = new AtomicLong();
+    private final AtomicLong verificationFailures = new AtomicLong();
+
+    /**
+     * Cache configured by the im.upload.cache keys of the config.
+     */
+    public UploadCache(JMessageConfig config) {
+        this(null == config.get(JMessageConfig.UPLOAD_CACHE_FILE)
+                        ? null : new File((String) config.get(JMessageConfig.UPLOAD_CACHE_FILE)),
+                ((Number) config.get(JMessageConfig.UPLOAD_CACHE_TTL)).longValue(),
+                (Integer) config.get(JMessageConfig.UPLOAD_CACHE_MAX_SIZE),
+                ((Number) config.get(JMessageConfig.UPLOAD_CACHE_VERIFY_INTERVAL)).longValue());
+    }
+
+    /**
+     * @param indexFile            file keeping the entries between runs, null to keep them in memory only
+     * @param ttlMillis            time to live of an entry, in milliseconds
+     * @param maxSize              max entries
+     * @param verifyIntervalMillis a hit whose media id was not checked for this long is checked again with
+     *                             {@link ResourceClient#downloadFile(String)} before it is used, 0 checks every
+     *                             hit, a negative value never checks
+     */
+    public UploadCache(File indexFile, long ttlMillis, final int maxSize, long verifyIntervalMillis) {
+        Preconditions.checkArgument(ttlMillis > 0, "ttl should more than 0");
+        Preconditions.checkArgument(maxSize > 0, "maxSize should more than 0");
+        this.indexFile = indexFile;
+        this.ttlMillis = ttlMillis;
+        this.maxSize = maxSize;
+        this.verifyIntervalMillis = verifyIntervalMillis;
+        // access order, the eldest entry is the least recently used
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, UploadCache.Entry> eldest) {
+                if (size() > maxSize) {
+                    evictions.incrementAndGet();
+                    appendRemoval(eldest.getKey());
+                    return true;
+                }
+                return false;
+            }
+        };
+        if (null != indexFile) {
+            load();
+        }
+    }
+
+    /**
+     * @return the entry of the content hash, null if missing or expired
+     */
+    Entry get(String key) {
+        lock.lock();
+        try {
+            Entry entry = entries.get(key);
+            if (null == entry) {
+                misses.incrementAndGet();
+                return null;
+            }
+            if (entry.createdAt + ttlMillis <= System.currentTimeMillis()) {
+                entries.remove(key);
+                appendRemoval(key);
+                expirations.incrementAndGet();
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            return entry;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return true if the media id of the entry should be checked before it is used
+     */
+    boolean needsVerification(Entry entry) {
+        return verifyIntervalMillis >= 0 && entry.verifiedAt + verifyIntervalMillis <= System.currentTimeMillis();
+    }
+
+    void verified(Entry entry, boolean valid) {
+        verifications.incrementAndGet();
+        if (!valid) {
+            verificationFailures.incrementAndGet();
+            invalidate(entry.key);
+            return;
+        }
+        lock.lock();
+        try {
+            entry.verifiedAt = System.currentTimeMillis();
+            if (entries.get(entry.key) == entry) {
+                append(entry);
+                compactIfNeeded();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void put(String key, UploadResult result) {
+        long now = System.currentTimeMillis();
+        Entry entry = new Entry(key, result, now);
+        lock.lock();
+        try {
+            entries.put(key, entry);
+            append(entry);
+            compactIfNeeded();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidate(String key) {
+        lock.lock();
+        try {
+            if (null != entries.remove(key)) {
+                appendRemoval(key);
+                compactIfNeeded();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            entries.clear();
+            compact();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public File getIndexFile() {
+        return indexFile;
+    }
+
+    public long getTtlMillis() {
+        return ttlMillis;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getVerifyIntervalMillis() {
+        return verifyIntervalMillis;
+    }
+
+    /**
+     * Uploads skipped because the content was uploaded before.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
+    public long getExpirationCount() {
+        return expirations.get();
+    }
+
+    public long getVerificationCount() {
+        return verifications.get();
+    }
+
+    /**
+     * Entries dropped because their media id was not found anymore, the content was uploaded again.
+     */
+    public long getVerificationFailureCount() {
+        return verificationFailures.get();
+    }
+
+    /**
+     * Close the index file, the cache goes on in memory.
+     */
+    public void close() {
+        lock.lock();
+        try {
+            closeJournal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "upload cache hits=" + hits.get() + " misses=" + misses.get() + " evictions=" + evictions.get()
+                + " expirations=" + expirations.get() + " verifications=" + verifications.get()
+                + " verificationFailures=" + verificationFailures.get() + " size=" + size();
+    }
+
+    private void load() {
+        lock.lock();
+        try {
+            if (indexFile.isFile()) {
+                long now = System.currentTimeMillis();
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(new FileInputStream(indexFile), "UTF-8"));
+                try {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        Entry entry = parse(line);
+                        if (null == entry) {
+                            continue;
+                        }
+                        if (null == entry.mediaId) {
+                            entries.remove(entry.key);
+                        } else if (entry.createdAt + ttlMillis > now) {
+                            entries.put(entry.key, entry);
+                        }
+                    }
+                } finally {
+                    reader.close();
+                }
+                LOG.debug("Loaded " + entries.size() + " uploads from " + indexFile);
+            }
+            // evictions while loading are not evictions of this run
+            evictions.set(0);
+            compact();
+        } catch (IOException e) {
+            LOG.warn("Failed to read upload cache index " + indexFile + ", continue in memory", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static Entry parse(String line) {
+        if (line.isEmpty()) {
+            return null;
+        }
+        try {
+            Entry entry = GSON.fromJson(line, Entry.class);
+            return null == entry || null == entry.key ? null : entry;
+        } catch (JsonParseException e) {
+            // a line cut by a crash while it was appended
+            LOG.debug("Skip invalid upload cache line: " + line);
+            return null;
+        }
+    }
+
+    /**
+     * Rewrite the index with the live entries, the least recently used first so the order survives a reload.
+     */
+    private void compact() {
+        if (null == indexFile) {
+            return;
+        }
+        closeJournal();
+        try {
+            File parent = indexFile.getAbsoluteFile().getParentFile();
+            if (null != parent) {
+                parent.mkdirs();
+            }
+            File temp = new File(indexFile.getPath() + ".tmp");
+            List<Entry> live = new ArrayList<Entry>(entries.values());
+            Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), "UTF-8"));
+            try {
+                for (Entry entry : live) {
+                    writer.write(GSON.toJson(entry));
+                    writer.write('\n');
+                }
+            } finally {
+                writer.close();
+            }
+            Files.move(temp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            journal = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(indexFile, true), "UTF-8"));
+            journalLines = live.size();
+        } catch (IOException e) {
+            LOG.warn("Failed to write upload cache index " + indexFile + ", continue in memory", e);
+        }
+    }
+
+    private void append(Entry entry) {
+        appendLine(GSON.toJson(entry));
+    }
+
+    private void appendRemoval(String key) {
+        Entry removal = new Entry();
+        removal.key = key;
+        appendLine(GSON.toJson(removal));
+    }
+
+    private void appendLine(String line) {
+        if (null == journal) {
+            return;
+        }
+        try {
+            journal.write(line);
+            journal.write('\n');
+            journal.flush();
+            journalLines++;
+        } catch (IOException e) {
+            LOG.warn("Failed to write upload cache index " + indexFile + ", continue in memory", e);
+            closeJournal();
+        }
+    }
+
+    private void compactIfNeeded() {
+        if (null != journal && journalLines > 2 * entries.size() + 64) {
+            compact();
+        }
+    }
+
+    private void closeJournal() {
+        if (null == journal) {
+            return;
+        }
+        try {
+            journal.close();
+        } catch (IOException e) {
+            LOG.debug("Failed to close upload cache index " + indexFile, e);
+        }
+        journal = null;
+    }
+
+    /**
+     * One upload, also the line format of the index file. A line with a key only removes the key.
+     */
+    static class Entry {
+
+        String key;
+        String mediaId;
+        Long crc32;
+        Integer width;
+        Integer height;
+        String format;
+        Integer fsize;
+        String hash;
+        String fname;
+        long createdAt;
+        long verifiedAt;
+
+        Entry() {
+        }
+
+        Entry(String key, UploadResult result, long now) {
+            this.key = key;
+            this.mediaId = result.getMediaId();
+            this.crc32 = result.getMediaCrc32();
+            this.width = result.getWidth();
+            this.height = result.getHeight();
+            this.format = result.getFormat();
+            this.fsize = result.getFileSize();
+            this.hash = result.getHash();
+            this.fname = result.getFileName();
+            this.createdAt = now;
+            this.verifiedAt = now;
+        }
+
+        /**
+         * The result the upload returned, rebuilt for a hit.
+         */
+        UploadResult toResult() {
+            JsonObject json = new JsonObject();
+            json.addProperty("media_id", mediaId);
+            json.addProperty("media_crc32", crc32);
+            json.addProperty("width", width);
+            json.addProperty("height", height);
+            json.addProperty("format", format);
+            json.addProperty("fsize", fsize);
+            json.addProperty("hash", hash);
+            json.addProperty("fname", fname);
+            ResponseWrapper wrapper = new ResponseWrapper();
+            wrapper.responseCode = 200;
+            wrapper.responseContent = json.toString();
+            UploadResult result = UploadResult.fromResponse(wrapper, UploadResult.class);
+            result.fromCache = true;
+            return result;
+        }
+    }
+
+}
@@ -13,6 +13,9 @@ public class UploadResult extends BaseResult {
     @Expose Integer fsize;
     @Expose String hash;
     @Expose String fname;
+    // what the client computed while sending the file
+    transient MediaInfo mediaInfo;
+    transient boolean fromCache;
 
     public String getMediaId() {
         return media_id;
@@ -45,4 +48,45 @@ public class UploadResult extends BaseResult {
     public String getFileName() {
         return fname;
     }
+
+    /**
+     * @return CRC32, size and image dimensions computed while the file was sent, null for a result not returned
+     * by an upload of this client
+     */
+    public MediaInfo getMediaInfo() {
+        return mediaInfo;
+    }
+
+    /**
+     * @return true if the content was uploaded before and this result was taken from the {@link UploadCache}
+     * instead of uploading it again
+     */
+    public boolean isFromCache() {
+        return fromCache;
+    }
+
+    /**
+     * Keep the local inspection and use it for the fields the server did not return.
+     */
+    void setMediaInfo(MediaInfo info) {
+        this.mediaInfo = info;
+        if (null == info) {
+            return;
+        }
+        if (null == media_crc32) {
+            media_crc32 = info.getCrc32();
+        }
+        if (null == format && null != info.getFormat()) {
+            format = info.getFormat();
+        }
+        if (null == width && info.getWidth() > 0) {
+            width = info.getWidth();
+        }
+        if (null == height && info.getHeight() > 0) {
+            height = info.getHeight();
+        }
+        if (null == fsize && info.getLength() <= Integer.MAX_VALUE) {
+            fsize = (int) info.getLength();
+        }
+    }
 }
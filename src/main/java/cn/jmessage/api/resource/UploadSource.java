@@ -0,0 +1,189 @@
+package cn.jmessage.api.resource;
+
+import cn.jiguang.common.utils.Preconditions;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Content of a file to upload with {@link ResourceClient#upload(UploadSource, String)}: a file, a stream or a
+ * buffer. The content is streamed to the connection, it is never loaded whole into memory by the client.
+ */
+public abstract class UploadSource {
+
+    private final String filename;
+
+    UploadSource(String filename) {
+        this.filename = filename;
+    }
+
+    /**
+     * A file, its name is the file name of the upload.
+     */
+    public static UploadSource of(Path path) {
+        Preconditions.checkArgument(null != path, "path should not be null");
+        Preconditions.checkArgument(Files.isRegularFile(path), "File name is invalid, please check again");
+        return new PathSource(path);
+    }
+
+    /**
+     * A stream, read once and not closed.
+     *
+     * @param in       the content
+     * @param length   bytes the stream holds, or -1 if unknown, the upload is then sent chunked
+     * @param filename name of the upload
+     */
+    public static UploadSource of(InputStream in, long length, String filename) {
+        Preconditions.checkArgument(null != in, "input stream should not be null");
+        Preconditions.checkArgument(length >= -1, "length should not less than -1");
+        Preconditions.checkArgument(null != filename, "filename should not be null");
+        return new StreamSource(in, length, filename);
+    }
+
+    /**
+     * The remaining bytes of a buffer, the position of the buffer is not changed.
+     */
+    public static UploadSource of(ByteBuffer buffer, String filename) {
+        Preconditions.checkArgument(null != buffer, "buffer should not be null");
+        Preconditions.checkArgument(null != filename, "filename should not be null");
+        return new BufferSource(buffer.duplicate(), filename);
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    /**
+     * @return length in bytes, -1 if unknown
+     */
+    public abstract long getLength() throws IOException;
+
+    /**
+     * @return true if the content can be written more than once
+     */
+    public abstract boolean isRepeatable();
+
+    /**
+     * Write the whole content.
+     *
+     * @param buffer buffer to copy through, the content can be written from elsewhere
+     */
+    abstract void writeTo(OutputStream out, byte[] buffer) throws IOException;
+
+    private static class PathSource extends UploadSource {
+
+        private final Path path;
+
+        PathSource(Path path) {
+            super(path.getFileName().toString());
+            this.path = path;
+        }
+
+        @Override
+        public long getLength() throws IOException {
+            return Files.size(path);
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        void writeTo(OutputStream out, byte[] buffer) throws IOException {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+            try {
+                ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+                while (channel.read(wrapped) != -1) {
+                    out.write(buffer, 0, wrapped.position());
+                    wrapped.clear();
+                }
+            } finally {
+                channel.close();
+            }
+        }
+    }
+
+    private static class StreamSource extends UploadSource {
+
+        private final InputStream in;
+        private final long length;
+        private final ReentrantLock lock = new ReentrantLock();
+        private boolean consumed;
+
+        StreamSource(InputStream in, long length, String filename) {
+            super(filename);
+            this.in = in;
+            this.length = length;
+        }
+
+        @Override
+        public long getLength() {
+            return length;
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return false;
+        }
+
+        @Override
+        void writeTo(OutputStream out, byte[] buffer) throws IOException {
+            lock.lock();
+            try {
+                if (consumed) {
+                    throw new IOException("Input stream of " + getFilename() + " is already read");
+                }
+                consumed = true;
+                int n;
+                while ((n = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, n);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static class BufferSource extends UploadSource {
+
+        private final ByteBuffer buffer;
+
+        BufferSource(ByteBuffer buffer, String filename) {
+            super(filename);
+            this.buffer = buffer;
+        }
+
+        @Override
+        public long getLength() {
+            return buffer.remaining();
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        void writeTo(OutputStream out, byte[] copy) throws IOException {
+            ByteBuffer content = buffer.duplicate();
+            if (content.hasArray()) {
+                out.write(content.array(), content.arrayOffset() + content.position(), content.remaining());
+                return;
+            }
+            while (content.hasRemaining()) {
+                int n = Math.min(copy.length, content.remaining());
+                content.get(copy, 0, n);
+                out.write(copy, 0, n);
+            }
+        }
+    }
+
+}
@@ -1,11 +1,13 @@
 package cn.jmessage.api.sensitiveword;
 
 import cn.jiguang.common.connection.HttpProxy;
+import cn.jiguang.common.connection.IHttpClient;
 import cn.jiguang.common.resp.APIConnectionException;
 import cn.jiguang.common.resp.APIRequestException;
 import cn.jiguang.common.resp.ResponseWrapper;
 import cn.jiguang.common.utils.Preconditions;
 import cn.jmessage.api.common.BaseClient;
+import cn.jmessage.api.common.HttpClientChain;
 import cn.jmessage.api.common.JMessageConfig;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
@@ -30,7 +32,25 @@ public class SensitiveWordClient extends BaseClient {
      * @param config       The client configuration. Can use JMessageConfig.getInstance() as default.
      */
     public SensitiveWordClient(String appkey, String masterSecret, HttpProxy proxy, JMessageConfig config) {
-        super(appkey, masterSecret, proxy, config);
+        this(appkey, masterSecret, config, newHttpClientChain(appkey, masterSecret, proxy, config));
+    }
+
+    private SensitiveWordClient(String appkey, String masterSecret, JMessageConfig config,
+                                HttpClientChain httpClients) {
+        this(appkey, masterSecret, config, httpClients.getHttpClient());
+        _httpClientChain = httpClients;
+    }
+
+    /**
+     * Create a client sending its calls with a client shared with other clients.
+     *
+     * @param appkey The KEY of one application on JPush.
+     * @param masterSecret API access secret of the appKey.
+     * @param config The client configuration. Can use JMessageConfig.getInstance() as default.
+     * @param httpClient The client sending the calls, shared with other clients.
+     */
+    public SensitiveWordClient(String appkey, String masterSecret, JMessageConfig config, IHttpClient httpClient) {
+        super(appkey, masterSecret, config, httpClient);
         this.sensitiveWordPath = (String) config.get(JMessageConfig.SENSITIVE_WORD_PATH);
     }
 
@@ -0,0 +1,114 @@
+package cn.jmessage.api.user;
+
+import cn.jiguang.common.connection.HttpProxy;
+import cn.jiguang.common.connection.IHttpClient;
+import cn.jiguang.common.resp.APIConnectionException;
+import cn.jiguang.common.resp.APIRequestException;
+import cn.jiguang.common.resp.ResponseWrapper;
+import cn.jmessage.api.common.HttpClientChain;
+import cn.jmessage.api.common.JMessageConfig;
+import cn.jmessage.api.common.cache.MetadataCache;
+import cn.jmessage.api.common.cache.MetadataCaches;
+import cn.jmessage.api.common.model.UserPayload;
+import cn.jmessage.api.group.GroupInfoResult;
+import cn.jmessage.api.utils.StringUtils;
+
+/**
+ * {@link UserClient} which reads user info and the groups of a user through {@link MetadataCaches}.
+ * Updating or deleting a user invalidates the cached entries of the user, even if the request failed, and the
+ * cached members of the groups of the user, which carry its profile. When the groups of the user are not cached,
+ * the members of all groups are dropped.
+ */
+public class CachingUserClient extends UserClient {
+
+    private final MetadataCaches caches;
+
+    /**
+     * @param appkey       The key of one application on JPush.
+     * @param masterSecret API access secret of the appKey.
+     * @param proxy        The proxy, if there is no proxy, should be null.
+     * @param config       The client configuration. Can use JMessageConfig.getInstance() as default.
+     * @param caches       The caches, share them with the {@link cn.jmessage.api.group.CachingGroupClient}.
+     */
+    public CachingUserClient(String appkey, String masterSecret, HttpProxy proxy, JMessageConfig config,
+                             MetadataCaches caches) {
+        this(appkey, masterSecret, config, newHttpClientChain(appkey, masterSecret, proxy, config), caches);
+    }
+
+    private CachingUserClient(String appkey, String masterSecret, JMessageConfig config,
+                              HttpClientChain httpClients, MetadataCaches caches) {
+        this(appkey, masterSecret, config, httpClients.getHttpClient(), caches);
+        _httpClientChain = httpClients;
+    }
+
+    /**
+     * @param httpClient The client sending the calls, shared with other clients.
+     */
+    public CachingUserClient(String appkey, String masterSecret, JMessageConfig config, IHttpClient httpClient,
+                             MetadataCaches caches) {
+        super(appkey, masterSecret, config, httpClient);
+        this.caches = caches;
+    }
+
+    public MetadataCaches getCaches() {
+        return caches;
+    }
+
+    @Override
+    public UserInfoResult getUserInfo(final String username) throws APIConnectionException, APIRequestException {
+        StringUtils.checkUsername(username);
+        return caches.getUsers().get(username, new MetadataCache.Loader<UserInfoResult>() {
+            @Override
+            public UserInfoResult load() throws APIConnectionException, APIRequestException {
+                return CachingUserClient.super.getUserInfo(username);
+            }
+        });
+    }
+
+    @Override
+    public UserGroupsResult getGroupList(final String username) throws APIConnectionException, APIRequestException {
+        StringUtils.checkUsername(username);
+        return caches.getUserGroups().get(username, new MetadataCache.Loader<UserGroupsResult>() {
+            @Override
+            public UserGroupsResult load() throws APIConnectionException, APIRequestException {
+                return CachingUserClient.super.getGroupList(username);
+            }
+        });
+    }
+
+    @Override
+    public ResponseWrapper updateUserInfo(String username, UserPayload payload)
+            throws APIConnectionException, APIRequestException {
+        try {
+            return super.updateUserInfo(username, payload);
+        } finally {
+            invalidateGroupMembers(username);
+            caches.getUsers().invalidate(username);
+        }
+    }
+
+    @Override
+    public ResponseWrapper deleteUser(String username) throws APIConnectionException, APIRequestException {
+        try {
+            return super.deleteUser(username);
+        } finally {
+            invalidateGroupMembers(username);
+            caches.getUsers().invalidate(username);
+            caches.getUserGroups().invalidate(username);
+        }
+    }
+
+    private void invalidateGroupMembers(String username) {
+        UserGroupsResult groups = caches.getUserGroups().getIfPresent(username);
+        if (null == groups || null == groups.getGroups()) {
+            caches.getGroupMembers().invalidateAll();
+            return;
+        }
+        for (GroupInfoResult group : groups.getGroups()) {
+            if (null != group.getGid()) {
+                caches.getGroupMembers().invalidate(group.getGid());
+            }
+        }
+    }
+
+}
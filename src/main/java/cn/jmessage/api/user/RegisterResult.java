@@ -4,14 +4,16 @@ import java.util.List;
 
 import com.google.gson.JsonObject;
 import com.google.gson.annotations.Expose;
+import com.google.gson.reflect.TypeToken;
 
 import cn.jiguang.common.resp.BaseResult;
+import cn.jiguang.common.resp.ResponseWrapper;
 
 public class RegisterResult extends BaseResult {
 
     @Expose List<RegisterEntity> array;
 
-    class RegisterEntity {
+    public static class RegisterEntity {
         @Expose String username;
         @Expose JsonObject error;
 
@@ -43,6 +45,19 @@ public class RegisterResult extends BaseResult {
 
     }
 
+    /**
+     * The register API responds with an array, one entity for every user of the request.
+     */
+    public static RegisterResult fromResponse(ResponseWrapper responseWrapper) {
+        RegisterResult result = new RegisterResult();
+        if (responseWrapper.isServerResponse()) {
+            result.array = _gson.fromJson(responseWrapper.responseContent,
+                    new TypeToken<List<RegisterEntity>>() {}.getType());
+        }
+        result.setResponseWrapper(responseWrapper);
+        return result;
+    }
+
     public List<RegisterEntity> getArray() {
         return array;
     }
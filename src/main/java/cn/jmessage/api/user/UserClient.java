@@ -2,6 +2,7 @@ package cn.jmessage.api.user;
 
 
 import cn.jiguang.common.connection.*;
+import cn.jmessage.api.common.HttpClientChain;
 import cn.jmessage.api.common.model.*;
 import cn.jmessage.api.common.model.friend.FriendNote;
 import cn.jmessage.api.common.model.friend.FriendNotePayload;
@@ -18,6 +19,7 @@ import cn.jiguang.common.resp.APIConnectionException;
 import cn.jiguang.common.resp.APIRequestException;
 import cn.jiguang.common.resp.ResponseWrapper;
 import cn.jmessage.api.common.BaseClient;
+import cn.jmessage.api.common.ElementVisitor;
 import cn.jmessage.api.common.JMessageConfig;
 import cn.jmessage.api.utils.StringUtils;
 
@@ -59,7 +61,24 @@ public class UserClient extends BaseClient {
      * @param config       The client configuration. Can use JMessageConfig.getInstance() as default.
      */
     public UserClient(String appkey, String masterSecret, HttpProxy proxy, JMessageConfig config) {
-        super(appkey, masterSecret, proxy, config);
+        this(appkey, masterSecret, config, newHttpClientChain(appkey, masterSecret, proxy, config));
+    }
+
+    private UserClient(String appkey, String masterSecret, JMessageConfig config, HttpClientChain httpClients) {
+        this(appkey, masterSecret, config, httpClients.getHttpClient());
+        _httpClientChain = httpClients;
+    }
+
+    /**
+     * Create a client sending its calls with a client shared with other clients.
+     *
+     * @param appkey The KEY of one application on JPush.
+     * @param masterSecret API access secret of the appKey.
+     * @param config The client configuration. Can use JMessageConfig.getInstance() as default.
+     * @param httpClient The client sending the calls, shared with other clients.
+     */
+    public UserClient(String appkey, String masterSecret, JMessageConfig config, IHttpClient httpClient) {
+        super(appkey, masterSecret, config, httpClient);
         userPath = (String) config.get(JMessageConfig.USER_PATH);
         adminPath = (String) config.get(JMessageConfig.ADMIN_PATH);
     }
@@ -213,11 +232,35 @@ public class UserClient extends BaseClient {
         if (start < 0 || count <= 0 || count > 500) {
             throw new IllegalArgumentException("negative index or count must more than 0 and less than 501");
         }
-        ResponseWrapper response = _httpClient.sendGet(_baseUrl + userPath + "?start=" + start + "&count=" + count);
+        String url = _baseUrl + userPath + "?start=" + start + "&count=" + count;
+        if (_streamingDecode) {
+            return streamGet(url, UserListResult.DECODER);
+        }
+        ResponseWrapper response = _httpClient.sendGet(url);
         return UserListResult.fromResponse(response, UserListResult.class);
 
     }
 
+    /**
+     * Get user list, the users are handed to the visitor while the response is read
+     *
+     * @param start The start index of the list
+     * @param count The number that how many you want to get from list
+     * @param visitor Gets the users one by one, they are not kept in the result
+     * @return User list result without users
+     * @throws APIConnectionException connect exception
+     * @throws APIRequestException    request exception
+     */
+    public UserListResult getUserList(int start, int count, ElementVisitor<? super UserInfoResult> visitor)
+            throws APIConnectionException, APIRequestException {
+        if (start < 0 || count <= 0 || count > 500) {
+            throw new IllegalArgumentException("negative index or count must more than 0 and less than 501");
+        }
+        Preconditions.checkArgument(null != visitor, "visitor should not be null");
+        return streamGet(_baseUrl + userPath + "?start=" + start + "&count=" + count,
+                UserListResult.DECODER.visiting(visitor));
+    }
+
     /**
      * Get admins by appkey
      *
@@ -232,7 +275,11 @@ public class UserClient extends BaseClient {
         if (start < 0 || count <= 0 || count > 500) {
             throw new IllegalArgumentException("negative index or count must more than 0 and less than 501");
         }
-        ResponseWrapper response = _httpClient.sendGet(_baseUrl + adminPath + "?start=" + start + "&count=" + count);
+        String url = _baseUrl + adminPath + "?start=" + start + "&count=" + count;
+        if (_streamingDecode) {
+            return streamGet(url, UserListResult.DECODER);
+        }
+        ResponseWrapper response = _httpClient.sendGet(url);
         return UserListResult.fromResponse(response, UserListResult.class);
 
     }
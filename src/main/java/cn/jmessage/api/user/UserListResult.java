@@ -4,9 +4,17 @@ import cn.jiguang.common.resp.ResponseWrapper;
 import com.google.gson.annotations.Expose;
 
 import cn.jiguang.common.resp.BaseResult;
+import cn.jmessage.api.common.ListResultDecoder;
 
 public class UserListResult extends BaseResult {
 
+    /**
+     * Decodes the result straight from the response stream, see {@link ListResultDecoder}.
+     */
+    public static final ListResultDecoder<UserListResult, UserInfoResult> DECODER =
+            new ListResultDecoder<UserListResult, UserInfoResult>(UserListResult.class,
+                    "users", UserInfoResult.class);
+
     @Expose Integer total;
     @Expose Integer start;
     @Expose Integer count;
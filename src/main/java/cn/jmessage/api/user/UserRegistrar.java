@@ -0,0 +1,307 @@
+package cn.jmessage.api.user;
+
+import cn.jiguang.common.resp.APIConnectionException;
+import cn.jiguang.common.resp.APIRequestException;
+import cn.jiguang.common.resp.ResponseWrapper;
+import cn.jiguang.common.utils.Preconditions;
+import cn.jmessage.api.common.async.BulkExecutor;
+import cn.jmessage.api.common.model.RegisterInfo;
+import cn.jmessage.api.common.model.RegisterPayload;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Registers any number of users. The users are read one chunk at a time, a chunk holds at most the
+ * {@link #MAX_CHUNK_SIZE} users one request accepts, and several chunks are sent in parallel. Only the chunks in
+ * flight are held in memory.
+ * <p>
+ * The outcome of every user is collected into a {@link RegistrationResult}: created, already registered, or
+ * failed with an error code. Users which failed for a transient reason, a connect exception, a 429 or 5xx
+ * response or a server error of the user itself, are sent again after all chunks are done, other users are
+ * never sent twice.
+ * </p>
+ */
+public class UserRegistrar {
+
+    private static final Logger LOG = LoggerFactory.getLogger(UserRegistrar.class);
+
+    // users one register request accepts
+    public static final int MAX_CHUNK_SIZE = 500;
+    public static final int DEFAULT_CONCURRENCY = 4;
+    public static final int DEFAULT_MAX_RETRIES = 2;
+    public static final long DEFAULT_RETRY_INTERVAL_MILLIS = 1000;
+
+    public static final int ERROR_CODE_USER_EXIST = 899001;
+    public static final int ERROR_CODE_SERVER_ERROR = 899000;
+
+    private final UserClient userClient;
+    private final int chunkSize;
+    private final int concurrency;
+    private final int maxRetries;
+    private final long retryIntervalMillis;
+
+    private UserRegistrar(Builder builder) {
+        this.userClient = builder.userClient;
+        this.chunkSize = builder.chunkSize;
+        this.concurrency = builder.concurrency;
+        this.maxRetries = builder.maxRetries;
+        this.retryIntervalMillis = builder.retryIntervalMillis;
+    }
+
+    public static Builder newBuilder(UserClient userClient) {
+        return new Builder(userClient);
+    }
+
+    /**
+     * Register the users, blocks until every user has an outcome.
+     *
+     * @param users Users to register, iterated only once
+     * @return RegistrationResult
+     * @throws APIConnectionException if interrupted, failures of the requests are in the result
+     */
+    public RegistrationResult register(Iterable<RegisterInfo> users) throws APIConnectionException {
+        Preconditions.checkArgument(null != users, "users should not be null");
+        RegistrationResult result = new RegistrationResult();
+        BulkExecutor bulk = new BulkExecutor("jmessage-register", concurrency, userClient.isVirtualThreads());
+        try {
+            List<RegisterInfo> retry = dispatch(users.iterator(), result, bulk, 0 == maxRetries);
+            for (int attempt = 1; attempt <= maxRetries && !retry.isEmpty(); attempt++) {
+                LOG.info("Register " + retry.size() + " users again, attempt " + attempt);
+                Thread.sleep(retryIntervalMillis * attempt);
+                result.retried.addAndGet(retry.size());
+                retry = dispatch(retry.iterator(), result, bulk, attempt == maxRetries);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new APIConnectionException("Interrupted while registering users", e);
+        } finally {
+            bulk.close();
+        }
+        LOG.info("Registered users, " + result.getCreatedCount() + " created, " + result.getExistingUsers().size()
+                + " existing, " + result.getFailures().size() + " failed");
+        return result;
+    }
+
+    /**
+     * @return users to send again
+     */
+    private List<RegisterInfo> dispatch(Iterator<RegisterInfo> users, final RegistrationResult result,
+                                        BulkExecutor bulk, final boolean lastAttempt)
+            throws InterruptedException {
+        final List<RegisterInfo> retry = Collections.synchronizedList(new ArrayList<RegisterInfo>());
+        while (users.hasNext()) {
+            final List<RegisterInfo> chunk = new ArrayList<RegisterInfo>(chunkSize);
+            while (chunk.size() < chunkSize && users.hasNext()) {
+                RegisterInfo user = users.next();
+                if (null != user) {
+                    chunk.add(user);
+                }
+            }
+            if (chunk.isEmpty()) {
+                continue;
+            }
+            bulk.execute(new Runnable() {
+                @Override
+                public void run() {
+                    sendChunk(chunk, result, lastAttempt ? null : retry);
+                }
+            });
+        }
+        // wait for the chunks in flight
+        bulk.awaitIdle();
+        return new ArrayList<RegisterInfo>(retry);
+    }
+
+    /**
+     * @param retry gets the users failed for a transient reason, if null they are failures
+     */
+    private void sendChunk(List<RegisterInfo> chunk, RegistrationResult result, List<RegisterInfo> retry) {
+        result.requests.incrementAndGet();
+        RegisterResult response;
+        try {
+            RegisterPayload payload = RegisterPayload.newBuilder()
+                    .addUsers(chunk.toArray(new RegisterInfo[chunk.size()]))
+                    .build();
+            ResponseWrapper wrapper = userClient.registerUsers(payload);
+            response = RegisterResult.fromResponse(wrapper);
+        } catch (APIConnectionException e) {
+            LOG.debug("Register request failed: " + e.getMessage());
+            failAll(chunk, -1, e.getMessage(), result, retry);
+            return;
+        } catch (APIRequestException e) {
+            LOG.debug("Register request failed, status " + e.getStatus() + ", error code " + e.getErrorCode());
+            boolean retryable = e.getStatus() == 429 || e.getStatus() >= 500;
+            failAll(chunk, e.getErrorCode(), e.getErrorMessage(), result, retryable ? retry : null);
+            return;
+        } catch (RuntimeException e) {
+            LOG.warn("Register request failed", e);
+            failAll(chunk, -1, e.getMessage(), result, null);
+            return;
+        }
+
+        Map<String, RegisterResult.RegisterEntity> entities = new HashMap<String, RegisterResult.RegisterEntity>();
+        if (null != response.getArray()) {
+            for (RegisterResult.RegisterEntity entity : response.getArray()) {
+                entities.put(entity.getUsername(), entity);
+            }
+        }
+        for (RegisterInfo user : chunk) {
+            RegisterResult.RegisterEntity entity = entities.get(user.getUsername());
+            if (null == entity || !entity.hasError()) {
+                result.created.incrementAndGet();
+            } else if (entity.getErrorCode() == ERROR_CODE_USER_EXIST) {
+                result.existing.add(user.getUsername());
+            } else if (entity.getErrorCode() == ERROR_CODE_SERVER_ERROR && null != retry) {
+                retry.add(user);
+            } else {
+                result.failures.add(new Failure(user.getUsername(), entity.getErrorCode(),
+                        entity.getErrorMessage()));
+            }
+        }
+    }
+
+    private void failAll(List<RegisterInfo> chunk, int errorCode, String errorMessage, RegistrationResult result,
+                         List<RegisterInfo> retry) {
+        if (null != retry) {
+            retry.addAll(chunk);
+            return;
+        }
+        for (RegisterInfo user : chunk) {
+            result.failures.add(new Failure(user.getUsername(), errorCode, errorMessage));
+        }
+    }
+
+    /**
+     * Outcome of a bulk registration. Created users are only counted, the others are listed by username.
+     */
+    public static class RegistrationResult {
+
+        private final AtomicInteger created = new AtomicInteger();
+        private final List<String> existing = Collections.synchronizedList(new ArrayList<String>());
+        private final List<Failure> failures = Collections.synchronizedList(new ArrayList<Failure>());
+        private final AtomicInteger requests = new AtomicInteger();
+        private final AtomicInteger retried = new AtomicInteger();
+
+        public int getCreatedCount() {
+            return created.get();
+        }
+
+        /**
+         * Users registered before, error code {@link #ERROR_CODE_USER_EXIST}.
+         */
+        public List<String> getExistingUsers() {
+            return existing;
+        }
+
+        public List<Failure> getFailures() {
+            return failures;
+        }
+
+        public int getRequestCount() {
+            return requests.get();
+        }
+
+        /**
+         * Users sent again, a user sent in two retries counts twice.
+         */
+        public int getRetriedCount() {
+            return retried.get();
+        }
+    }
+
+    /**
+     * A user which is not registered. The error code is -1 if the request got no response.
+     */
+    public static class Failure {
+
+        private final String username;
+        private final int errorCode;
+        private final String errorMessage;
+
+        Failure(String username, int errorCode, String errorMessage) {
+            this.username = username;
+            this.errorCode = errorCode;
+            this.errorMessage = errorMessage;
+        }
+
+        public String getUsername() {
+            return username;
+        }
+
+        public int getErrorCode() {
+            return errorCode;
+        }
+
+        public String getErrorMessage() {
+            return errorMessage;
+        }
+
+        @Override
+        public String toString() {
+            return username + ": " + errorCode + " " + errorMessage;
+        }
+    }
+
+    public static class Builder {
+        private final UserClient userClient;
+        private int chunkSize = MAX_CHUNK_SIZE;
+        private int concurrency = DEFAULT_CONCURRENCY;
+        private int maxRetries = DEFAULT_MAX_RETRIES;
+        private long retryIntervalMillis = DEFAULT_RETRY_INTERVAL_MILLIS;
+
+        private Builder(UserClient userClient) {
+            this.userClient = userClient;
+        }
+
+        /**
+         * Users of one request, at most {@link #MAX_CHUNK_SIZE}.
+         */
+        public Builder setChunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        /**
+         * Max requests in flight at the same time.
+         */
+        public Builder setConcurrency(int concurrency) {
+            this.concurrency = concurrency;
+            return this;
+        }
+
+        /**
+         * Times the users failed for a transient reason are sent again, 0 disables retry.
+         */
+        public Builder setMaxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        /**
+         * Wait before the first retry, the n-th retry waits n times as long.
+         */
+        public Builder setRetryInterval(long retryIntervalMillis) {
+            this.retryIntervalMillis = retryIntervalMillis;
+            return this;
+        }
+
+        public UserRegistrar build() {
+            Preconditions.checkArgument(null != userClient, "userClient should not be null");
+            Preconditions.checkArgument(chunkSize > 0 && chunkSize <= MAX_CHUNK_SIZE,
+                    "chunkSize should more than 0 and not more than " + MAX_CHUNK_SIZE);
+            Preconditions.checkArgument(concurrency > 0, "concurrency should more than 0");
+            Preconditions.checkArgument(maxRetries >= 0, "maxRetries should not less than 0");
+            Preconditions.checkArgument(retryIntervalMillis >= 0, "retryInterval should not less than 0");
+            return new UserRegistrar(this);
+        }
+    }
+
+}
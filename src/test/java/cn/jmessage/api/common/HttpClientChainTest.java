@@ -0,0 +1,95 @@
+package cn.jmessage.api.common;
+
+import cn.jiguang.common.resp.APIConnectionException;
+import cn.jmessage.api.BaseTest;
+import cn.jmessage.api.FastTests;
+import cn.jmessage.api.JMessageClient;
+import cn.jmessage.api.common.connection.HttpClients;
+import cn.jmessage.api.common.hedge.HedgedHttpClient;
+import cn.jmessage.api.common.hedge.HedgingPolicy;
+import cn.jmessage.api.common.isolation.IsolationPolicy;
+import cn.jmessage.api.user.UserClient;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@Category(FastTests.class)
+public class HttpClientChainTest extends BaseTest {
+
+    @Test
+    public void testChainOfConfig() {
+        HttpClientChain chain = new HttpClientChain("Basic junit", null, JMessageConfig.newBuilder()
+                .setIsolationPolicy(IsolationPolicy.newBuilder().build())
+                .setHedgingPolicy(HedgingPolicy.newBuilder().build())
+                .build());
+        try {
+            assertTrue(chain.getHttpClient() instanceof HedgedHttpClient);
+            assertSame(chain.getIsolatedHttpClient(), chain.getHedgedHttpClient().getDelegate());
+            assertNull(chain.getHostPoolHttpClient());
+            assertNotNull(chain.getTransport());
+            assertTrue(HttpClients.canStreamRequestBody(chain.getHttpClient()));
+        } finally {
+            chain.close();
+        }
+    }
+
+    @Test
+    public void testCallsFailAfterClose() throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.play();
+        String hostName = server.getUrl("/").toString();
+        JMessageConfig config = JMessageConfig.newBuilder()
+                .setApiHostName(hostName.substring(0, hostName.length() - 1))
+                .build();
+        JMessageClient client = new JMessageClient(APP_KEY, MASTER_SECRET, null, config);
+        try {
+            server.enqueue(new MockResponse().setBody("{\"username\":\"junit_user\"}"));
+            assertEquals("junit_user", client.getUserInfo("junit_user").getUsername());
+            client.close();
+            try {
+                client.getGroupInfo(1);
+                fail("Should throw APIConnectionException");
+            } catch (APIConnectionException e) {
+                assertEquals(1, server.getRequestCount());
+            }
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    public void testStandaloneClientClosesItsChain() throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.play();
+        String hostName = server.getUrl("/").toString();
+        JMessageConfig config = JMessageConfig.newBuilder()
+                .setApiHostName(hostName.substring(0, hostName.length() - 1))
+                .build();
+        UserClient client = new UserClient(APP_KEY, MASTER_SECRET, null, config);
+        try {
+            assertNotNull(client._httpClientChain);
+            server.enqueue(new MockResponse().setBody("{\"username\":\"junit_user\"}"));
+            assertEquals("junit_user", client.getUserInfo("junit_user").getUsername());
+            client.close();
+            try {
+                client.getUserInfo("junit_user");
+                fail("Should throw APIConnectionException");
+            } catch (APIConnectionException e) {
+                assertEquals(1, server.getRequestCount());
+            }
+            // the clients of a JMessageClient share its chain
+            assertNull(new UserClient(APP_KEY, MASTER_SECRET, config, client.getHttpClient())._httpClientChain);
+        } finally {
+            server.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,73 @@
+package cn.jmessage.api.common;
+
+import cn.jmessage.api.BaseTest;
+import cn.jmessage.api.FastTests;
+import cn.jmessage.api.JMessageClient;
+import cn.jmessage.api.user.UserInfoResult;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@Category(FastTests.class)
+public class JMessageConfigTest extends BaseTest {
+
+    @Test
+    public void testSnapshot() {
+        JMessageConfig shared = JMessageConfig.getInstance();
+        int readTimeout = shared.getReadTimeout();
+        try {
+            shared.setReadTimeout(readTimeout + 1000);
+            JMessageConfig defaults = JMessageConfig.newBuilder().build();
+            assertTrue(defaults.isSnapshot());
+            assertFalse(shared.isSnapshot());
+            assertEquals("https://api.im.jpush.cn", defaults.getApiHostName());
+            assertEquals(3, defaults.getMaxRetryTimes());
+            assertTrue(readTimeout + 1000 != defaults.getReadTimeout());
+
+            JMessageConfig copy = shared.toBuilder().setMaxRetryTimes(1).build();
+            assertEquals(readTimeout + 1000, copy.getReadTimeout());
+            assertEquals(1, copy.getMaxRetryTimes());
+            assertEquals(1, ((Number) copy.get(JMessageConfig.MAX_RETRY_TIMES)).intValue());
+
+            // a snapshot is changed by copy only
+            JMessageConfig tenant = copy.toBuilder().setApiHostName("https://im.tenant.test").build();
+            assertEquals("https://im.tenant.test", tenant.getApiHostName());
+            assertEquals(shared.getApiHostName(), copy.getApiHostName());
+            try {
+                tenant.setReadTimeout(1);
+                fail("Should throw UnsupportedOperationException");
+            } catch (UnsupportedOperationException e) {
+                assertEquals(readTimeout + 1000, tenant.getReadTimeout());
+            }
+        } finally {
+            shared.setReadTimeout(readTimeout);
+        }
+    }
+
+    @Test
+    public void testClientOfHostName() throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.play();
+        String hostName = server.getUrl("/").toString();
+        hostName = hostName.substring(0, hostName.length() - 1);
+        String sharedHostName = JMessageConfig.getInstance().getApiHostName();
+        JMessageClient client = new JMessageClient(APP_KEY, MASTER_SECRET, hostName);
+        try {
+            assertEquals(sharedHostName, JMessageConfig.getInstance().getApiHostName());
+            server.enqueue(new MockResponse().setBody("{\"username\":\"junit_user\"}"));
+            UserInfoResult result = client.getUserInfo("junit_user");
+            assertEquals("junit_user", result.getUsername());
+            assertEquals("/v1/users/junit_user", server.takeRequest().getPath());
+        } finally {
+            client.close();
+            server.shutdown();
+        }
+    }
+
+}
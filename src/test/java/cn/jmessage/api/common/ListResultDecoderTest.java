@@ -0,0 +1,128 @@
+package cn.jmessage.api.common;
+
+import cn.jiguang.common.ServiceHelper;
+import cn.jiguang.common.resp.APIRequestException;
+import cn.jmessage.api.BaseTest;
+import cn.jmessage.api.FastTests;
+import cn.jmessage.api.common.connection.ConnectionPool;
+import cn.jmessage.api.common.connection.PooledHttpClient;
+import cn.jmessage.api.group.MemberListResult;
+import cn.jmessage.api.group.MemberResult;
+import cn.jmessage.api.message.MessageListResult;
+import cn.jmessage.api.message.MessageResult;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+@Category(FastTests.class)
+public class ListResultDecoderTest extends BaseTest {
+
+    private static final String MESSAGES = "{\"total\":2,\"cursor\":\"abc\",\"count\":2,\"messages\":["
+            + "{\"msgid\":1,\"from_id\":\"junit\",\"msg_type\":\"text\",\"msg_body\":{\"text\":\"a\"}},"
+            + "{\"msgid\":2,\"from_id\":\"junit1\",\"msg_type\":\"text\",\"msg_body\":{\"text\":\"b\"}}]}";
+
+    private MockWebServer server;
+    private ConnectionPool pool;
+    private PooledHttpClient client;
+
+    @Before
+    public void before() throws Exception {
+        server = new MockWebServer();
+        server.play();
+        pool = new ConnectionPool(4, 2, 60 * 1000, "TLS");
+        client = new PooledHttpClient(ServiceHelper.getBasicAuthorization(APP_KEY, MASTER_SECRET), null,
+                JMessageConfig.getInstance(), pool);
+    }
+
+    @After
+    public void after() throws Exception {
+        pool.close();
+        server.shutdown();
+    }
+
+    @Test
+    public void testDecodeFromStream() throws Exception {
+        server.enqueue(new MockResponse().setChunkedBody(MESSAGES, 16));
+        server.enqueue(new MockResponse().setBody("{}"));
+
+        MessageListResult result = client.streamGet(server.getUrl("/v2/messages").toString(),
+                MessageListResult.DECODER);
+        client.sendGet(server.getUrl("/v2/messages").toString());
+
+        assertEquals(200, result.getResponseCode());
+        assertEquals(Integer.valueOf(2), result.getTotal());
+        assertEquals("abc", result.getCursor());
+        assertEquals(2, result.getMessages().length);
+        assertEquals(Long.valueOf(2), result.getMessages()[1].getMsgId());
+        assertEquals("junit1", result.getMessages()[1].getFromId());
+        // the connection goes back to the pool after a streamed body
+        server.takeRequest();
+        assertEquals(1, server.takeRequest().getSequenceNumber());
+    }
+
+    @Test
+    public void testVisitor() throws Exception {
+        server.enqueue(new MockResponse().setChunkedBody(MESSAGES, 16));
+        final List<Long> ids = new ArrayList<Long>();
+
+        MessageListResult result = client.streamGet(server.getUrl("/v2/messages").toString(),
+                MessageListResult.DECODER.visiting(new ElementVisitor<MessageResult>() {
+                    @Override
+                    public void visit(MessageResult element) {
+                        ids.add(element.getMsgId());
+                    }
+                }));
+
+        assertEquals(2, ids.size());
+        assertEquals(Long.valueOf(1), ids.get(0));
+        assertNull(result.getMessages());
+        assertEquals("abc", result.getCursor());
+        assertEquals(Integer.valueOf(2), result.getCount());
+    }
+
+    @Test
+    public void testArrayBody() throws Exception {
+        server.enqueue(new MockResponse().setBody("[{\"username\":\"junit\"},{\"username\":\"junit1\"}]"));
+        server.enqueue(new MockResponse().setBody("[{\"username\":\"junit\"}]"));
+        final List<String> names = new ArrayList<String>();
+
+        MemberListResult result = client.streamGet(server.getUrl("/v1/groups/1/members").toString(),
+                MemberListResult.DECODER);
+        client.streamGet(server.getUrl("/v1/groups/1/members").toString(),
+                MemberListResult.DECODER.visiting(new ElementVisitor<MemberResult>() {
+                    @Override
+                    public void visit(MemberResult element) {
+                        names.add(element.getUsername());
+                    }
+                }));
+
+        assertEquals(2, result.getMembers().length);
+        assertEquals("junit1", result.getMembers()[1].getUsername());
+        assertEquals(1, names.size());
+    }
+
+    @Test
+    public void testErrorResponse() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(404)
+                .setBody("{\"error\":{\"code\":899003,\"message\":\"not found\"}}"));
+
+        try {
+            client.streamGet(server.getUrl("/v2/messages").toString(), MessageListResult.DECODER);
+            fail("should throw APIRequestException");
+        } catch (APIRequestException e) {
+            assertEquals(404, e.getStatus());
+            assertEquals(899003, e.getErrorCode());
+        }
+    }
+
+}
@@ -0,0 +1,137 @@
+package cn.jmessage.api.common.async;
+
+import cn.jiguang.common.resp.APIConnectionException;
+import cn.jiguang.common.resp.APIRequestException;
+import cn.jmessage.api.FastTests;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@Category(FastTests.class)
+public class AsyncDispatcherTest {
+
+    private ExecutorService executor;
+
+    @Before
+    public void before() {
+        executor = Executors.newFixedThreadPool(16);
+    }
+
+    @After
+    public void after() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testMaxConcurrentRequests() throws Exception {
+        AsyncDispatcher dispatcher = new AsyncDispatcher(executor, 3);
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        List<ApiFuture<Integer>> futures = new ArrayList<ApiFuture<Integer>>();
+        for (int i = 0; i < 30; i++) {
+            final int index = i;
+            futures.add(dispatcher.submit(new ApiCall<Integer>() {
+                @Override
+                public Integer call() {
+                    int current = inFlight.incrementAndGet();
+                    int max;
+                    while (current > (max = maxInFlight.get()) && !maxInFlight.compareAndSet(max, current)) {
+                    }
+                    try {
+                        Thread.sleep(5);
+                    } catch (InterruptedException ignore) {
+                    }
+                    inFlight.decrementAndGet();
+                    return index;
+                }
+            }));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            assertEquals(Integer.valueOf(i), futures.get(i).getResult());
+        }
+        assertTrue(maxInFlight.get() <= 3);
+        assertEquals(0, dispatcher.getQueuedCount());
+    }
+
+    @Test
+    public void testCallbackAndException() throws Exception {
+        AsyncDispatcher dispatcher = new AsyncDispatcher(executor, 1);
+        final APIConnectionException error = new APIConnectionException("connect timed out", null);
+        final CountDownLatch latch = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        ApiFuture<String> future = dispatcher.submit(new ApiCall<String>() {
+            @Override
+            public String call() throws APIConnectionException, APIRequestException {
+                throw error;
+            }
+        }).addCallback(new ApiCallback<String>() {
+            @Override
+            public void onSuccess(String result) {
+                latch.countDown();
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                failure.set(e);
+                latch.countDown();
+            }
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertSame(error, failure.get());
+        try {
+            future.getResult();
+            fail("should throw APIConnectionException");
+        } catch (APIConnectionException e) {
+            assertSame(error, e);
+        }
+    }
+
+    @Test
+    public void testThrowingCallback() throws Exception {
+        ApiFuture<String> future = new ApiFuture<String>(new ApiCall<String>() {
+            @Override
+            public String call() {
+                return "junit";
+            }
+        });
+        final AtomicReference<String> notified = new AtomicReference<String>();
+        future.addCallback(new ApiCallback<String>() {
+            @Override
+            public void onSuccess(String result) {
+                throw new IllegalStateException("junit callback");
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+            }
+        }).addCallback(new ApiCallback<String>() {
+            @Override
+            public void onSuccess(String result) {
+                notified.set(result);
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+            }
+        });
+        future.run();
+        assertEquals("junit", notified.get());
+        assertEquals("junit", future.getResult());
+    }
+
+}
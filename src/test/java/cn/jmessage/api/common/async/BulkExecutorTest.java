@@ -0,0 +1,166 @@
+package cn.jmessage.api.common.async;
+
+import cn.jiguang.common.resp.APIConnectionException;
+import cn.jmessage.api.FastTests;
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@Category(FastTests.class)
+public class BulkExecutorTest {
+
+    @Test
+    public void testMaxConcurrency() throws Exception {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        List<ApiCall<Integer>> calls = new ArrayList<ApiCall<Integer>>();
+        for (int i = 0; i < 200; i++) {
+            final int index = i;
+            calls.add(new ApiCall<Integer>() {
+                @Override
+                public Integer call() throws APIConnectionException {
+                    int current = inFlight.incrementAndGet();
+                    int max;
+                    while (current > (max = maxInFlight.get()) && !maxInFlight.compareAndSet(max, current)) {
+                    }
+                    try {
+                        Thread.sleep(2);
+                    } catch (InterruptedException ignore) {
+                    }
+                    inFlight.decrementAndGet();
+                    if (index == 7) {
+                        throw new APIConnectionException("connect failed", null);
+                    }
+                    return index;
+                }
+            });
+        }
+
+        BulkExecutor bulk = new BulkExecutor(8);
+        List<ApiFuture<Integer>> futures;
+        try {
+            assertEquals(VirtualThreads.isSupported(), bulk.isVirtual());
+            futures = bulk.invokeAll(calls);
+        } finally {
+            bulk.close();
+        }
+
+        assertEquals(200, futures.size());
+        for (int i = 0; i < futures.size(); i++) {
+            assertTrue(futures.get(i).isDone());
+            if (i == 7) {
+                try {
+                    futures.get(i).getResult();
+                    fail("Should throw APIConnectionException");
+                } catch (APIConnectionException expected) {
+                }
+            } else {
+                assertEquals(Integer.valueOf(i), futures.get(i).getResult());
+            }
+        }
+        assertTrue(maxInFlight.get() <= 8);
+        assertEquals(0, bulk.getRunningCount());
+    }
+
+    @Test
+    public void testThreadFactory() throws Exception {
+        ThreadFactory factory = VirtualThreads.newThreadFactory("jmessage-test", true);
+        final AtomicInteger ran = new AtomicInteger();
+        Thread thread = factory.newThread(new Runnable() {
+            @Override
+            public void run() {
+                ran.incrementAndGet();
+            }
+        });
+        assertEquals("jmessage-test-1", thread.getName());
+        thread.start();
+        thread.join();
+        assertEquals(1, ran.get());
+
+        thread = VirtualThreads.newThreadFactory("jmessage-test", false).newThread(null);
+        assertTrue(thread.isDaemon());
+        assertEquals("jmessage-test-1", thread.getName());
+    }
+
+    @Test
+    public void testExecuteAndAwaitIdle() throws Exception {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final AtomicInteger done = new AtomicInteger();
+        BulkExecutor bulk = new BulkExecutor("jmessage-test", 4, false);
+        try {
+            assertFalse(bulk.isVirtual());
+            for (int i = 0; i < 50; i++) {
+                bulk.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        int current = inFlight.incrementAndGet();
+                        int max;
+                        while (current > (max = maxInFlight.get()) && !maxInFlight.compareAndSet(max, current)) {
+                        }
+                        try {
+                            Thread.sleep(2);
+                        } catch (InterruptedException ignore) {
+                        }
+                        inFlight.decrementAndGet();
+                        done.incrementAndGet();
+                    }
+                });
+            }
+            bulk.awaitIdle();
+            assertEquals(50, done.get());
+            assertEquals(0, bulk.getRunningCount());
+        } finally {
+            bulk.close();
+        }
+        assertTrue(maxInFlight.get() <= 4);
+    }
+
+    @Test
+    public void testVirtualThreads() throws Exception {
+        Assume.assumeTrue(VirtualThreads.isSupported());
+        final Method isVirtual = Thread.class.getMethod("isVirtual");
+        List<ApiCall<Boolean>> calls = new ArrayList<ApiCall<Boolean>>();
+        for (int i = 0; i < 20; i++) {
+            calls.add(new ApiCall<Boolean>() {
+                @Override
+                public Boolean call() throws APIConnectionException {
+                    try {
+                        return (Boolean) isVirtual.invoke(Thread.currentThread());
+                    } catch (ReflectiveOperationException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            });
+        }
+
+        BulkExecutor bulk = new BulkExecutor("jmessage-test", 4, true);
+        try {
+            assertTrue(bulk.isVirtual());
+            for (ApiFuture<Boolean> future : bulk.invokeAll(calls)) {
+                assertTrue(future.getResult());
+            }
+        } finally {
+            bulk.close();
+        }
+
+        Thread thread = VirtualThreads.newThreadFactory("jmessage-test", true).newThread(new Runnable() {
+            @Override
+            public void run() {
+            }
+        });
+        assertTrue((Boolean) isVirtual.invoke(thread));
+    }
+
+}
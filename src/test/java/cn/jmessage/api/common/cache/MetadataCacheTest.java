@@ -0,0 +1,137 @@
+package cn.jmessage.api.common.cache;
+
+import cn.jiguang.common.resp.APIConnectionException;
+import cn.jiguang.common.resp.APIRequestException;
+import cn.jmessage.api.FastTests;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+@Category(FastTests.class)
+public class MetadataCacheTest {
+
+    @Test
+    public void testHitMissAndEviction() throws Exception {
+        MetadataCache<String, String> cache = new MetadataCache<String, String>("users", 60 * 1000, 2);
+        CountingLoader loader = new CountingLoader();
+
+        assertEquals("junit1", cache.get("junit", loader));
+        assertEquals("junit1", cache.get("junit", loader));
+        cache.get("junit1", loader);
+        // junit is used after junit1, so junit1 is the eldest
+        cache.get("junit", loader);
+        cache.get("junit2", loader);
+
+        assertNull(cache.getIfPresent("junit1"));
+        assertEquals("junit1", cache.getIfPresent("junit"));
+        CacheStats stats = cache.getStats();
+        assertEquals(2, stats.getHitCount());
+        assertEquals(3, stats.getMissCount());
+        assertEquals(1, stats.getEvictionCount());
+        assertEquals(2, stats.getSize());
+        assertEquals(3, loader.calls.get());
+    }
+
+    @Test
+    public void testExpiration() throws Exception {
+        MetadataCache<String, String> cache = new MetadataCache<String, String>("users", 20, 10);
+        CountingLoader loader = new CountingLoader();
+
+        cache.get("junit", loader);
+        Thread.sleep(40);
+        assertEquals("junit2", cache.get("junit", loader));
+        assertEquals(1, cache.getStats().getExpirationCount());
+    }
+
+    @Test
+    public void testFailedLoadNotCached() throws Exception {
+        MetadataCache<String, String> cache = new MetadataCache<String, String>("users", 60 * 1000, 10);
+        CountingLoader loader = new CountingLoader();
+        loader.fail = true;
+
+        try {
+            cache.get("junit", loader);
+            fail("should throw APIConnectionException");
+        } catch (APIConnectionException e) {
+            // not cached
+        }
+        loader.fail = false;
+        assertEquals("junit2", cache.get("junit", loader));
+        assertEquals(1, cache.getStats().getLoadFailureCount());
+    }
+
+    @Test
+    public void testCoalescingAndInvalidateDuringLoad() throws Exception {
+        final MetadataCache<String, String> cache = new MetadataCache<String, String>("users", 60 * 1000, 10);
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountingLoader loader = new CountingLoader() {
+            @Override
+            public String load() throws APIConnectionException, APIRequestException {
+                loading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new APIConnectionException("interrupted", e);
+                }
+                return super.load();
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> first = executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return cache.get("junit", loader);
+                }
+            });
+            loading.await(5, TimeUnit.SECONDS);
+            Future<String> second = executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return cache.get("junit", loader);
+                }
+            });
+            while (cache.getStats().getCoalescedCount() == 0) {
+                Thread.sleep(5);
+            }
+            cache.invalidate("junit");
+            release.countDown();
+
+            assertEquals("junit1", first.get(5, TimeUnit.SECONDS));
+            assertEquals("junit1", second.get(5, TimeUnit.SECONDS));
+            assertEquals(1, loader.calls.get());
+            // the load started before the invalidation does not fill the cache
+            assertNull(cache.getIfPresent("junit"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static class CountingLoader implements MetadataCache.Loader<String> {
+
+        final AtomicInteger calls = new AtomicInteger();
+        volatile boolean fail;
+
+        @Override
+        public String load() throws APIConnectionException, APIRequestException {
+            int call = calls.incrementAndGet();
+            if (fail) {
+                throw new APIConnectionException("connect timed out", null);
+            }
+            return "junit" + call;
+        }
+    }
+
+}
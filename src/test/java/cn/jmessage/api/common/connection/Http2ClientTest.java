@@ -0,0 +1,123 @@
+package cn.jmessage.api.common.connection;
+
+import cn.jiguang.common.ServiceHelper;
+import cn.jiguang.common.resp.APIConnectionException;
+import cn.jiguang.common.resp.APIRequestException;
+import cn.jiguang.common.resp.ResponseWrapper;
+import cn.jmessage.api.BaseTest;
+import cn.jmessage.api.FastTests;
+import cn.jmessage.api.common.JMessageConfig;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Assume;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@Category(FastTests.class)
+public class Http2ClientTest extends BaseTest {
+
+    /**
+     * The JDK server only speaks HTTP/1.1 and plain http urls are not upgraded, the requests go over HTTP/1.1.
+     * MockWebServer is not used, it rejects the Content-Length: 0 header the JDK client sends with a GET.
+     */
+    @Test
+    public void testFallbackToHttp1() throws Exception {
+        Assume.assumeTrue(Http2Client.isSupported());
+        final List<String> requests = new CopyOnWriteArrayList<String>();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                String path = exchange.getRequestURI().getPath();
+                byte[] received = PooledHttpClient.readFully(exchange.getRequestBody());
+                requests.add(exchange.getRequestMethod() + " " + path + " " + new String(received, "UTF-8") + " "
+                        + exchange.getRequestHeaders().getFirst("Authorization"));
+                int status = 200;
+                String body;
+                if (path.equals("/v1/users/junit_missing")) {
+                    status = 403;
+                    body = "{\"error\":{\"code\":899002,\"message\":\"user not exist\"}}";
+                } else if (path.equals("/v1/messages")) {
+                    status = 201;
+                    body = "{\"msg_id\":1}";
+                } else if (path.equals("/v1/groups")) {
+                    body = "[1,2,3]";
+                } else {
+                    body = "{\"username\":\"junit_user\"}";
+                    exchange.getResponseHeaders().add("X-Rate-Limit-Limit", "600");
+                    exchange.getResponseHeaders().add("X-Rate-Limit-Remaining", "599");
+                    exchange.getResponseHeaders().add("X-Rate-Limit-Reset", "60");
+                }
+                byte[] content = body.getBytes("UTF-8");
+                exchange.sendResponseHeaders(status, content.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(content);
+                out.close();
+            }
+        });
+        server.start();
+        String host = "http://127.0.0.1:" + server.getAddress().getPort();
+        String authCode = ServiceHelper.getBasicAuthorization(APP_KEY, MASTER_SECRET);
+        JMessageConfig config = JMessageConfig.getInstance().setHttp2(true);
+        try {
+            PooledHttpClient client = HttpClients.newHttpClient(authCode, null, config);
+            assertTrue(client instanceof Http2Client);
+            Http2Client http2Client = (Http2Client) client;
+
+            ResponseWrapper wrapper = client.sendGet(host + "/v1/users/junit_user");
+            assertEquals(200, wrapper.responseCode);
+            assertEquals("{\"username\":\"junit_user\"}", wrapper.responseContent);
+            assertEquals(599, wrapper.rateLimitRemaining);
+
+            byte[] content = "{\"msg_type\":\"text\"}".getBytes("UTF-8");
+            wrapper = client.sendPost(host + "/v1/messages", content, 0, content.length);
+            assertEquals(201, wrapper.responseCode);
+
+            String streamed = client.streamGet(host + "/v1/groups", new ResponseBodyHandler<String>() {
+                @Override
+                public String handle(ResponseWrapper wrapper, InputStream body) throws IOException {
+                    return new String(PooledHttpClient.readFully(body), "UTF-8");
+                }
+            });
+            assertEquals("[1,2,3]", streamed);
+
+            try {
+                client.sendGet(host + "/v1/users/junit_missing");
+                fail("Should throw APIRequestException");
+            } catch (APIRequestException e) {
+                assertEquals(899002, e.getErrorCode());
+            }
+
+            assertEquals("GET /v1/users/junit_user  " + authCode, requests.get(0));
+            assertEquals("POST /v1/messages {\"msg_type\":\"text\"} " + authCode, requests.get(1));
+            assertEquals(4, requests.size());
+            assertEquals(4, http2Client.getHttp1ResponseCount());
+            assertEquals(0, http2Client.getHttp2ResponseCount());
+            assertEquals(0, http2Client.getActiveStreamCount());
+
+            client.close();
+            try {
+                client.sendGet(host + "/v1/users/junit_user");
+                fail("Should throw APIConnectionException");
+            } catch (APIConnectionException e) {
+                assertEquals(4, requests.size());
+            }
+        } finally {
+            config.setHttp2(false);
+            server.stop(0);
+        }
+    }
+
+}
@@ -0,0 +1,178 @@
+package cn.jmessage.api.common.connection;
+
+import cn.jiguang.common.ServiceHelper;
+import cn.jiguang.common.connection.HttpProxy;
+import cn.jiguang.common.connection.IHttpClient;
+import cn.jiguang.common.resp.APIConnectionException;
+import cn.jiguang.common.resp.APIRequestException;
+import cn.jiguang.common.resp.ResponseWrapper;
+import cn.jmessage.api.BaseTest;
+import cn.jmessage.api.FastTests;
+import cn.jmessage.api.common.JMessageConfig;
+import cn.jmessage.api.common.retry.RetryPolicy;
+import cn.jmessage.api.common.trace.CallTrace;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import com.squareup.okhttp.mockwebserver.SocketPolicy;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+@Category(FastTests.class)
+public class PooledHttpClientTest extends BaseTest {
+
+    private MockWebServer server;
+    private ConnectionPool pool;
+    private String authCode;
+
+    @Before
+    public void before() throws Exception {
+        server = new MockWebServer();
+        server.play();
+        pool = new ConnectionPool(4, 2, 60 * 1000, "TLS");
+        authCode = ServiceHelper.getBasicAuthorization(APP_KEY, MASTER_SECRET);
+    }
+
+    @After
+    public void after() throws Exception {
+        pool.close();
+        server.shutdown();
+    }
+
+    @Test
+    public void testConnectionReused() throws Exception {
+        server.enqueue(new MockResponse().setBody("{\"username\":\"junit\"}"));
+        server.enqueue(new MockResponse().setBody("{\"username\":\"junit1\"}"));
+        PooledHttpClient client = new PooledHttpClient(authCode, null, JMessageConfig.getInstance(), pool);
+
+        ResponseWrapper first = client.sendGet(server.getUrl("/v1/users/junit").toString());
+        ResponseWrapper second = client.sendGet(server.getUrl("/v1/users/junit1").toString());
+
+        assertEquals(200, first.responseCode);
+        assertEquals("{\"username\":\"junit1\"}", second.responseContent);
+        assertEquals(0, server.takeRequest().getSequenceNumber());
+        assertEquals(1, server.takeRequest().getSequenceNumber());
+        assertEquals(1, pool.getIdleCount());
+        assertEquals(0, pool.getLeasedCount());
+    }
+
+    @Test
+    public void testPoolSharedBetweenClients() throws Exception {
+        server.enqueue(new MockResponse().setBody("{}"));
+        server.enqueue(new MockResponse().setBody("{}"));
+        PooledHttpClient userClient = new PooledHttpClient(authCode, null, JMessageConfig.getInstance(), pool);
+        PooledHttpClient groupClient = new PooledHttpClient(authCode, null, JMessageConfig.getInstance(), pool);
+
+        userClient.sendGet(server.getUrl("/v1/users/junit").toString());
+        groupClient.sendPost(server.getUrl("/v1/groups").toString(), "{\"name\":\"junit\"}");
+
+        server.takeRequest();
+        RecordedRequest post = server.takeRequest();
+        assertEquals(1, post.getSequenceNumber());
+        assertEquals("{\"name\":\"junit\"}", post.getUtf8Body());
+        assertEquals(authCode, post.getHeader("Authorization"));
+    }
+
+    @Test
+    public void testChunkedResponse() throws Exception {
+        server.enqueue(new MockResponse().setChunkedBody("{\"total\":3,\"count\":3}", 4));
+        server.enqueue(new MockResponse().setBody("{}"));
+        PooledHttpClient client = new PooledHttpClient(authCode, null, JMessageConfig.getInstance(), pool);
+
+        ResponseWrapper response = client.sendGet(server.getUrl("/v2/messages").toString());
+        client.sendGet(server.getUrl("/v2/messages").toString());
+
+        assertEquals("{\"total\":3,\"count\":3}", response.responseContent);
+        server.takeRequest();
+        assertEquals(1, server.takeRequest().getSequenceNumber());
+    }
+
+    @Test
+    public void testErrorResponse() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(400)
+                .setBody("{\"error\":{\"code\":899003,\"message\":\"parameter invalid\"}}"));
+        server.enqueue(new MockResponse().setBody("{}"));
+        PooledHttpClient client = new PooledHttpClient(authCode, null, JMessageConfig.getInstance(), pool);
+
+        try {
+            client.sendGet(server.getUrl("/v1/users/junit").toString());
+            fail("should throw APIRequestException");
+        } catch (APIRequestException e) {
+            assertEquals(400, e.getStatus());
+            assertEquals(899003, e.getErrorCode());
+        }
+        // the error body was read to the end, connection is still usable
+        client.sendGet(server.getUrl("/v1/users/junit").toString());
+        server.takeRequest();
+        assertEquals(1, server.takeRequest().getSequenceNumber());
+    }
+
+    @Test
+    public void testSendPostBytes() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(201).setBody("{\"msg_id\":1}"));
+        PooledHttpClient client = new PooledHttpClient(authCode, null, JMessageConfig.getInstance(), pool);
+        byte[] content = "xx{\"text\":\"中文\"}xx".getBytes("UTF-8");
+
+        ResponseWrapper response = client.sendPost(server.getUrl("/v1/messages").toString(), content, 2,
+                content.length - 4);
+
+        assertEquals(201, response.responseCode);
+        RecordedRequest post = server.takeRequest();
+        assertEquals("{\"text\":\"中文\"}", post.getUtf8Body());
+        assertEquals(String.valueOf(content.length - 4), post.getHeader("Content-Length"));
+    }
+
+    @Test
+    public void testPostNotSentAgainOnReusedConnection() throws Exception {
+        server.enqueue(new MockResponse().setBody("{}"));
+        server.enqueue(new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST));
+        server.enqueue(new MockResponse().setResponseCode(201).setBody("{\"msg_id\":1}"));
+        PooledHttpClient client = new PooledHttpClient(authCode, null, JMessageConfig.getInstance(), pool);
+
+        client.sendGet(server.getUrl("/v1/users/junit").toString());
+        try {
+            client.sendPost(server.getUrl("/v1/messages").toString(), "{}");
+            fail("Should throw APIConnectionException");
+        } catch (APIConnectionException e) {
+            // the server may have processed the message
+        }
+        assertEquals(2, server.getRequestCount());
+    }
+
+    @Test
+    public void testConnectTimeoutIsNotSent() throws Exception {
+        ConnectionPool timingOut = new ConnectionPool(4, 2, 60 * 1000, "TLS") {
+            @Override
+            public HttpConnection lease(URL url, HttpProxy proxy, int connectTimeout, int readTimeout,
+                                        CallTrace trace) throws IOException {
+                // as reported since JDK 13
+                throw new SocketTimeoutException("Connect timed out");
+            }
+        };
+        JMessageConfig config = JMessageConfig.newBuilder()
+                .setRetryPolicy(RetryPolicy.newBuilder().setMaxRetries(0).build())
+                .build();
+        PooledHttpClient client = new PooledHttpClient(authCode, null, config, timingOut);
+        try {
+            client.sendPost(server.getUrl("/v1/messages").toString(), "{}");
+            fail("Should throw APIConnectionException");
+        } catch (APIConnectionException e) {
+            assertEquals(IHttpClient.CONNECT_TIMED_OUT_MESSAGE, e.getMessage());
+            assertFalse(e.isReadTimedout());
+        } finally {
+            timingOut.close();
+        }
+        assertEquals(0, server.getRequestCount());
+    }
+
+}
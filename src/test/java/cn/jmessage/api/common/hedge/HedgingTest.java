@@ -0,0 +1,96 @@
+package cn.jmessage.api.common.hedge;
+
+import cn.jiguang.common.ServiceHelper;
+import cn.jiguang.common.resp.ResponseWrapper;
+import cn.jmessage.api.BaseTest;
+import cn.jmessage.api.FastTests;
+import cn.jmessage.api.common.JMessageConfig;
+import cn.jmessage.api.common.async.VirtualThreads;
+import cn.jmessage.api.common.connection.ConnectionPool;
+import cn.jmessage.api.common.connection.PooledHttpClient;
+import cn.jmessage.api.common.metrics.Endpoint;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@Category(FastTests.class)
+public class HedgingTest extends BaseTest {
+
+    @Test
+    public void testHedgeDelay() {
+        HedgingPolicy policy = HedgingPolicy.newBuilder()
+                .setDelay(100)
+                .setDelayPercentile(90, 10, 10)
+                .exclude("/v1/users/{username}/blacklist")
+                .build();
+        Endpoint endpoint = Endpoint.of("GET", "/v1/users/junit_user");
+        assertTrue(policy.isHedged(endpoint));
+        assertFalse(policy.isHedged(Endpoint.of("POST", "/v1/messages")));
+        assertFalse(policy.isHedged(Endpoint.of("GET", "/v1/users/junit_user/blacklist")));
+
+        assertEquals(100, policy.hedgeDelay(endpoint));
+        for (int i = 0; i < 10; i++) {
+            policy.recordSuccess(endpoint, TimeUnit.MILLISECONDS.toNanos(i < 9 ? 40 : 1000), false);
+        }
+        long delay = policy.hedgeDelay(endpoint);
+        assertTrue(delay >= 40 && delay <= 45);
+        for (int i = 0; i < 100; i++) {
+            policy.recordSuccess(endpoint, TimeUnit.MICROSECONDS.toNanos(100), false);
+        }
+        assertEquals(10, policy.hedgeDelay(endpoint));
+    }
+
+    @Test
+    public void testSlowResponseHedged() throws Exception {
+        final AtomicInteger requests = new AtomicInteger();
+        MockWebServer server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                int n = requests.incrementAndGet();
+                if (n == 1 && request.getPath().startsWith("/v1/users")) {
+                    Thread.sleep(3000);
+                }
+                return new MockResponse().setBody("{\"request\":" + n + "}");
+            }
+        });
+        server.play();
+        ConnectionPool pool = new ConnectionPool(4, 4, 60 * 1000, "TLS");
+        HedgingPolicy policy = HedgingPolicy.newBuilder().setDelay(300).setDelayPercentile(0, 0, 1).build();
+        PooledHttpClient transport = new PooledHttpClient(ServiceHelper.getBasicAuthorization(APP_KEY, MASTER_SECRET),
+                null, JMessageConfig.getInstance(), pool);
+        HedgedHttpClient client = new HedgedHttpClient(transport, policy, transport,
+                VirtualThreads.newThreadFactory("jmessage-hedge", false));
+        try {
+            long start = System.nanoTime();
+            ResponseWrapper wrapper = client.sendGet(server.getUrl("/v1/users/junit_user").toString());
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertEquals("{\"request\":2}", wrapper.responseContent);
+            assertTrue("took " + millis + " ms", millis < 2000);
+            assertEquals(1, policy.getHedgeCount());
+            assertEquals(1, policy.getHedgeWinCount());
+
+            // never hedged
+            requests.set(0);
+            wrapper = client.sendPost(server.getUrl("/v1/messages").toString(), "{}");
+            assertEquals("{\"request\":1}", wrapper.responseContent);
+            assertEquals(1, requests.get());
+            assertEquals(1, policy.getHedgeCount());
+        } finally {
+            client.close();
+            pool.close();
+            server.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,130 @@
+package cn.jmessage.api.common.hostpool;
+
+import cn.jiguang.common.ServiceHelper;
+import cn.jiguang.common.resp.APIRequestException;
+import cn.jiguang.common.resp.ResponseWrapper;
+import cn.jmessage.api.BaseTest;
+import cn.jmessage.api.FastTests;
+import cn.jmessage.api.common.JMessageConfig;
+import cn.jmessage.api.common.connection.ConnectionPool;
+import cn.jmessage.api.common.connection.PooledHttpClient;
+import cn.jmessage.api.common.retry.RetryPolicy;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@Category(FastTests.class)
+public class HostPoolTest extends BaseTest {
+
+    private static final String API_BASE_URL = "http://api.test";
+
+    @Test
+    public void testRewrite() {
+        HostPoolPolicy policy = HostPoolPolicy.newBuilder()
+                .setApiHosts("http://gw1.test:8080", "http://gw2.test")
+                .build();
+        HostPool pool = new HostPool(API_BASE_URL, policy.getApiHosts(), policy);
+        assertTrue(pool.matches(API_BASE_URL + "/v1/users"));
+        assertTrue(pool.matches(API_BASE_URL + "?count=1"));
+        assertFalse(pool.matches(API_BASE_URL + ".cn/v1/users"));
+        assertFalse(pool.matches("http://report.test/v2/messages"));
+        assertEquals("http://gw1.test:8080/v1/users?start=0",
+                pool.rewrite(API_BASE_URL + "/v1/users?start=0", pool.getHosts().get(0)));
+    }
+
+    @Test
+    public void testFailoverAndEjection() throws Exception {
+        final AtomicInteger healthyRequests = new AtomicInteger();
+        MockWebServer healthy = newServer(200, healthyRequests);
+        final AtomicInteger failingRequests = new AtomicInteger();
+        MockWebServer failing = newServer(503, failingRequests);
+        ConnectionPool connections = new ConnectionPool(4, 4, 60 * 1000, "TLS");
+        HostPoolPolicy policy = HostPoolPolicy.newBuilder()
+                .setApiHosts(baseUrlOf(healthy), baseUrlOf(failing))
+                .setSelection(HostPoolPolicy.Selection.LEAST_OUTSTANDING)
+                .setEjection(2, 60 * 1000, 50)
+                .setProbe(0, 1000)
+                .build();
+        // the failed attempts are not retried on the same host
+        JMessageConfig config = JMessageConfig.getInstance()
+                .setRetryPolicy(RetryPolicy.newBuilder().setMaxRetries(0).build());
+        PooledHttpClient transport = new PooledHttpClient(ServiceHelper.getBasicAuthorization(APP_KEY, MASTER_SECRET),
+                null, config, connections);
+        HostPoolHttpClient client = new HostPoolHttpClient(transport, policy, API_BASE_URL, null);
+        try {
+            // a GET failing with 503 is sent to the other host
+            for (int i = 0; i < 30; i++) {
+                ResponseWrapper wrapper = client.sendGet(API_BASE_URL + "/v1/users/junit_user");
+                assertEquals(200, wrapper.responseCode);
+            }
+            assertEquals(30, healthyRequests.get());
+            Host failingHost = client.getHostPools().get(0).getHosts().get(1);
+            assertEquals(2, failingRequests.get());
+            assertTrue(failingHost.isEjected());
+            assertEquals(1, failingHost.getEjectionCount());
+
+            // a POST refused by a host is sent to another one, but does not fail over on 5xx
+            HostPoolPolicy refusing = HostPoolPolicy.newBuilder()
+                    .setApiHosts(refusedBaseUrl(), baseUrlOf(failing))
+                    .setProbe(0, 1000)
+                    .build();
+            HostPoolHttpClient postClient = new HostPoolHttpClient(transport, refusing, API_BASE_URL, null);
+            try {
+                postClient.sendPost(API_BASE_URL + "/v1/messages", "{}");
+                fail("the POST should not fail over");
+            } catch (APIRequestException e) {
+                assertEquals(503, e.getStatus());
+            }
+            assertEquals(3, failingRequests.get());
+        } finally {
+            config.setRetryPolicy(null);
+            client.close();
+            connections.close();
+            healthy.shutdown();
+            failing.shutdown();
+        }
+    }
+
+    private static MockWebServer newServer(final int status, final AtomicInteger requests) throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                requests.incrementAndGet();
+                return new MockResponse().setResponseCode(status).setBody("{}");
+            }
+        });
+        server.play();
+        return server;
+    }
+
+    /**
+     * @return base url of a port nothing listens on
+     */
+    private static String refusedBaseUrl() throws IOException {
+        ServerSocket socket = new ServerSocket(0);
+        try {
+            return "http://localhost:" + socket.getLocalPort();
+        } finally {
+            socket.close();
+        }
+    }
+
+    private static String baseUrlOf(MockWebServer server) {
+        String url = server.getUrl("/").toString();
+        return url.substring(0, url.length() - 1);
+    }
+
+}
@@ -0,0 +1,229 @@
+package cn.jmessage.api.common.isolation;
+
+import cn.jiguang.common.connection.IHttpClient;
+import cn.jiguang.common.resp.APIConnectionException;
+import cn.jiguang.common.resp.APIRequestException;
+import cn.jiguang.common.resp.ResponseWrapper;
+import cn.jmessage.api.BaseTest;
+import cn.jmessage.api.FastTests;
+import cn.jmessage.api.common.connection.ResponseBodyHandler;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.InputStream;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@Category(FastTests.class)
+public class IsolationTest extends BaseTest {
+
+    @Test
+    public void testCircuitBreakerStates() throws Exception {
+        IsolationPolicy policy = IsolationPolicy.newBuilder()
+                .setWindow(4, 4)
+                .setOpenDurationMillis(50)
+                .setHalfOpenProbes(1)
+                .build();
+        CircuitBreaker breaker = policy.newCircuitBreaker(CallFamily.REPORT);
+        for (int i = 0; i < 3; i++) {
+            breaker.acquirePermission();
+            breaker.onSuccess(0);
+        }
+        breaker.acquirePermission();
+        breaker.onFailure(0);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(25f, breaker.getFailureRate(), 0.01);
+        breaker.acquirePermission();
+        breaker.onFailure(0);
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        try {
+            breaker.acquirePermission();
+            fail("Should throw CallRejectedException");
+        } catch (CallRejectedException e) {
+            assertEquals(CallRejectedException.Reason.CIRCUIT_OPEN, e.getReason());
+            assertEquals(CallFamily.REPORT, e.getFamily());
+            assertTrue(e.getRetryAfterMillis() <= 50);
+        }
+
+        Thread.sleep(60);
+        breaker.acquirePermission();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        try {
+            breaker.acquirePermission();
+            fail("Should throw CallRejectedException, the probe is in flight");
+        } catch (CallRejectedException e) {
+            assertEquals(CallRejectedException.Reason.CIRCUIT_OPEN, e.getReason());
+        }
+        breaker.onSuccess(0);
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertEquals(1, breaker.getOpenedCount());
+        assertEquals(2, breaker.getNotPermittedCount());
+
+        // slow calls open the breaker too
+        IsolationPolicy slowPolicy = IsolationPolicy.newBuilder().setWindow(2, 2).setSlowCallThreshold(10, 100).build();
+        CircuitBreaker slow = slowPolicy.newCircuitBreaker(CallFamily.USER);
+        slow.onSuccess(TimeUnit.MILLISECONDS.toNanos(20));
+        slow.onSuccess(TimeUnit.MILLISECONDS.toNanos(20));
+        assertEquals(CircuitBreaker.State.OPEN, slow.getState());
+    }
+
+    @Test
+    public void testFamiliesIsolated() throws Exception {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        FakeHttpClient delegate = new FakeHttpClient(entered, release);
+        final IsolatedHttpClient client = new IsolatedHttpClient(delegate, IsolationPolicy.newBuilder()
+                .setMaxConcurrentCalls(CallFamily.REPORT, 1)
+                .setWindow(2, 2)
+                .build());
+        // uploads are not routed to a delegate which can not stream them
+        assertFalse(client.canStreamRequestBody());
+        assertEquals(CallFamily.CHATROOM, CallFamily.of("https://api.im.jpush.cn/v1/chatroom/10001"));
+        assertEquals(CallFamily.REPORT, CallFamily.of("https://report.im.jpush.cn/v2/chatrooms/10001/messages"));
+        assertEquals(CallFamily.USER, CallFamily.of("/v1/cross/users"));
+        assertEquals(CallFamily.RESOURCE, CallFamily.of("https://api.im.jpush.cn/v1/resource?type=image"));
+        assertEquals(CallFamily.OTHER, CallFamily.of("https://api.im.jpush.cn/v1/sensitiveword"));
+
+        Thread slowReport = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    client.sendGet("https://report.im.jpush.cn/v2/messages?count=10");
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        slowReport.start();
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        try {
+            client.sendGet("https://report.im.jpush.cn/v2/users/junit_user/messages");
+            fail("Should throw CallRejectedException");
+        } catch (CallRejectedException e) {
+            assertEquals(CallRejectedException.Reason.BULKHEAD_FULL, e.getReason());
+        }
+        // messages still go through
+        assertEquals(201, client.sendPost("https://api.im.jpush.cn/v1/messages", "{}").responseCode);
+        release.countDown();
+        slowReport.join();
+        assertEquals(1, client.getBulkhead(CallFamily.REPORT).getRejectedCount());
+        assertEquals(0, client.getBulkhead(CallFamily.REPORT).getActiveCount());
+
+        // 403 means the server is healthy, 503 does not
+        for (int i = 0; i < 2; i++) {
+            try {
+                client.sendGet("https://api.im.jpush.cn/v1/users/forbidden");
+                fail("Should throw APIRequestException");
+            } catch (APIRequestException e) {
+                assertEquals(403, e.getStatus());
+            }
+        }
+        assertEquals(CircuitBreaker.State.CLOSED, client.getCircuitBreaker(CallFamily.USER).getState());
+        // a failing handler of the caller is not a failure of the server
+        for (int i = 0; i < 2; i++) {
+            try {
+                client.streamGet("https://api.im.jpush.cn/v1/groups/10001", new ResponseBodyHandler<Object>() {
+                    @Override
+                    public Object handle(ResponseWrapper wrapper, InputStream body) {
+                        throw new IllegalStateException("junit handler");
+                    }
+                });
+                fail("Should throw IllegalStateException");
+            } catch (IllegalStateException e) {
+                assertEquals("junit handler", e.getMessage());
+            }
+        }
+        assertEquals(-1f, client.getCircuitBreaker(CallFamily.GROUP).getFailureRate(), 0f);
+        assertEquals(CircuitBreaker.State.CLOSED, client.getCircuitBreaker(CallFamily.GROUP).getState());
+        // one failure of the last two calls reaches the 50% threshold
+        try {
+            client.sendGet("https://api.im.jpush.cn/v1/users/unavailable");
+            fail("Should throw APIRequestException");
+        } catch (APIRequestException e) {
+            assertEquals(503, e.getStatus());
+        }
+        assertEquals(CircuitBreaker.State.OPEN, client.getCircuitBreaker(CallFamily.USER).getState());
+        int calls = delegate.calls;
+        try {
+            client.sendGet("https://api.im.jpush.cn/v1/users/junit_user");
+            fail("Should throw CallRejectedException");
+        } catch (CallRejectedException e) {
+            assertEquals(CallRejectedException.Reason.CIRCUIT_OPEN, e.getReason());
+        }
+        assertEquals(calls, delegate.calls);
+        assertEquals(CircuitBreaker.State.CLOSED, client.getCircuitBreaker(CallFamily.GROUP).getState());
+    }
+
+    private static class FakeHttpClient implements IHttpClient {
+
+        private final CountDownLatch entered;
+        private final CountDownLatch release;
+        volatile int calls;
+
+        FakeHttpClient(CountDownLatch entered, CountDownLatch release) {
+            this.entered = entered;
+            this.release = release;
+        }
+
+        @Override
+        public ResponseWrapper sendGet(String url) throws APIConnectionException, APIRequestException {
+            calls++;
+            if (url.contains("/v2/messages")) {
+                entered.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new APIConnectionException("interrupted", e);
+                }
+            } else if (url.endsWith("/forbidden")) {
+                throw new APIRequestException(response(403, "{\"error\":{\"code\":899002,\"message\":\"no\"}}"));
+            } else if (url.endsWith("/unavailable")) {
+                throw new APIRequestException(response(503, "{\"error\":{\"code\":899000,\"message\":\"no\"}}"));
+            }
+            return response(200, "{}");
+        }
+
+        @Override
+        public ResponseWrapper sendGet(String url, String content) throws APIConnectionException, APIRequestException {
+            return sendGet(url);
+        }
+
+        @Override
+        public ResponseWrapper sendDelete(String url) throws APIConnectionException, APIRequestException {
+            return response(200, "");
+        }
+
+        @Override
+        public ResponseWrapper sendDelete(String url, String content)
+                throws APIConnectionException, APIRequestException {
+            return response(200, "");
+        }
+
+        @Override
+        public ResponseWrapper sendPost(String url, String content) throws APIConnectionException, APIRequestException {
+            calls++;
+            return response(201, "{\"msg_id\":1}");
+        }
+
+        @Override
+        public ResponseWrapper sendPut(String url, String content) throws APIConnectionException, APIRequestException {
+            return response(200, "");
+        }
+
+        private static ResponseWrapper response(int status, String content) {
+            ResponseWrapper wrapper = new ResponseWrapper();
+            wrapper.responseCode = status;
+            wrapper.responseContent = content;
+            if (status >= 300) {
+                wrapper.setErrorObject();
+            }
+            return wrapper;
+        }
+    }
+
+}
@@ -0,0 +1,83 @@
+package cn.jmessage.api.common.metrics;
+
+import cn.jiguang.common.ServiceHelper;
+import cn.jiguang.common.resp.APIRequestException;
+import cn.jmessage.api.BaseTest;
+import cn.jmessage.api.FastTests;
+import cn.jmessage.api.common.JMessageConfig;
+import cn.jmessage.api.common.connection.ConnectionPool;
+import cn.jmessage.api.common.connection.PooledHttpClient;
+import cn.jmessage.api.common.ratelimit.ApiFamily;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@Category(FastTests.class)
+public class MetricsRegistryTest extends BaseTest {
+
+    @Test
+    public void testEndpointTemplate() {
+        Endpoint user = Endpoint.of("GET", "https://api.im.jpush.cn/v1/users/junit_user");
+        assertEquals("GET /v1/users/{}", user.getName());
+        assertEquals(ApiFamily.USER, user.getFamily());
+        assertSame(user, Endpoint.of("GET", "https://api.im.jpush.cn/v1/users/junit_user1"));
+        assertEquals("PUT /v1/groups/{}/members/{}/silence",
+                Endpoint.of("PUT", "/v1/groups/10001/members/junit_user/silence").getName());
+        assertEquals("GET /v2/messages", Endpoint.of("GET", "https://report.im.jpush.cn/v2/messages?count=10")
+                .getName());
+        assertEquals("POST /v1/users/", Endpoint.of("POST", "https://api.im.jpush.cn/v1/users/").getName());
+        assertEquals("GET /", Endpoint.of("GET", "https://api.im.jpush.cn").getName());
+    }
+
+    @Test
+    public void testCallsRecorded() throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.play();
+        DefaultMetricsRegistry registry = new DefaultMetricsRegistry();
+        JMessageConfig config = JMessageConfig.getInstance().setMetricsRegistry(registry);
+        ConnectionPool pool = new ConnectionPool(4, 2, 60 * 1000, "TLS");
+        try {
+            PooledHttpClient client = new PooledHttpClient(ServiceHelper.getBasicAuthorization(APP_KEY, MASTER_SECRET),
+                    null, config, pool);
+            server.enqueue(new MockResponse().setBody("{\"username\":\"junit_user\"}")
+                    .addHeader("X-Rate-Limit-Limit", "600")
+                    .addHeader("X-Rate-Limit-Remaining", "599")
+                    .addHeader("X-Rate-Limit-Reset", "60"));
+            server.enqueue(new MockResponse().setResponseCode(403)
+                    .setBody("{\"error\":{\"code\":899002,\"message\":\"user not exist\"}}"));
+
+            client.sendGet(server.getUrl("/v1/users/junit_user").toString());
+            try {
+                client.sendGet(server.getUrl("/v1/users/junit_missing").toString());
+                fail("Should throw APIRequestException");
+            } catch (APIRequestException e) {
+                assertEquals(899002, e.getErrorCode());
+            }
+        } finally {
+            config.setMetricsRegistry(null);
+            pool.close();
+            server.shutdown();
+        }
+
+        EndpointMetrics metrics = registry.getEndpointMetrics(Endpoint.of("GET", "/v1/users/junit_user"));
+        assertEquals(2, metrics.getCallCount());
+        assertEquals(1, metrics.getStatusClassCount(2));
+        assertEquals(1, metrics.getStatusClassCount(4));
+        assertEquals(1, metrics.getErrorCount());
+        assertEquals(Long.valueOf(1), metrics.getErrorCodeCounts().get(899002));
+        assertEquals(0, metrics.getRetryCount());
+        assertTrue(metrics.getBytesSent() > 0);
+        assertTrue(metrics.getBytesReceived() > "{\"username\":\"junit_user\"}".length());
+        assertEquals(2, metrics.getLatencies().getCount());
+        assertEquals(599, registry.getRateLimitRemaining(ApiFamily.USER));
+        assertEquals(600, registry.getRateLimitQuota(ApiFamily.USER));
+        assertEquals(-1, registry.getRateLimitQuota(ApiFamily.GROUP));
+    }
+
+}
@@ -0,0 +1,89 @@
+package cn.jmessage.api.common.model;
+
+import cn.jmessage.api.FastTests;
+import cn.jmessage.api.common.model.message.MessageBody;
+import cn.jmessage.api.common.model.message.MessagePayload;
+import cn.jmessage.api.common.model.message.Notification;
+import cn.jmessage.api.message.MessageType;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+@Category(FastTests.class)
+public class JsonBufferTest {
+
+    @Test
+    public void testMessagePayloadSameAsGson() {
+        Map<String, String> extras = new HashMap<String, String>();
+        extras.put("kind", "<b>\"quoted\" & 'escaped'</b>");
+        extras.put("empty", null);
+        extras.put("count", "replaced by the number extra");
+        MessageBody body = MessageBody.newBuilder()
+                .setText("tab\t newline\n ctrl\u0001 sep\u2028\u2029 中文 emoji 😀 end\\")
+                .addExtras(extras)
+                .addExtra("count", 42)
+                .addExtra("ratio", 0.5)
+                .addExtra("flag", true)
+                .addExtra("count", Long.MIN_VALUE)
+                .build();
+        MessagePayload payload = MessagePayload.newBuilder()
+                .setVersion(1)
+                .setTargetType("single")
+                .setTargetId("junit")
+                .setFromType("admin")
+                .setFromId("junit_admin")
+                .setFromName("管理员")
+                .setNoOffline(true)
+                .setMessageType(MessageType.TEXT)
+                .setMessageBody(body)
+                .setNotification(Notification.newBuilder().setTitle("title").setAlert("alert = 1").build())
+                .build();
+
+        assertWritesAsGson(payload.toString(), payload);
+    }
+
+    @Test
+    public void testMediaBodySameAsGson() {
+        MessageBody body = MessageBody.newBuilder()
+                .setMediaId("qiniu/image/F3A6C2F8D3A1B45B")
+                .setMediaCrc32(2778919613L)
+                .setWidth(720)
+                .setHeight(-1280)
+                .setFormat("jpg")
+                .setFsize(10240)
+                .setDuration(0)
+                .setHash("Fp1Mxf-Jb8f2Bh0qkkkV3zkHW8WW")
+                .build();
+
+        assertWritesAsGson(body.toString(), body);
+    }
+
+    @Test
+    public void testPooledBufferReused() {
+        JsonBuffer buffer = JsonBuffer.acquire();
+        MessageBody.text("junit").writeJSON(buffer);
+        buffer.release();
+
+        JsonBuffer reused = JsonBuffer.acquire();
+        assertSame(buffer, reused);
+        assertEquals(0, reused.size());
+        Notification.newBuilder().setAlert("junit").build().writeJSON(reused);
+        assertEquals("{\"alert\":\"junit\"}", reused.toString());
+        reused.release();
+    }
+
+    private static void assertWritesAsGson(String expected, JsonWritable model) {
+        JsonBuffer buffer = new JsonBuffer(16);
+        model.writeJSON(buffer);
+        assertEquals(expected, buffer.toString());
+        assertArrayEquals(expected.getBytes(Charset.forName("UTF-8")), buffer.toByteArray());
+    }
+
+}
@@ -0,0 +1,116 @@
+package cn.jmessage.api.common.ratelimit;
+
+import cn.jiguang.common.ServiceHelper;
+import cn.jiguang.common.resp.APIConnectionException;
+import cn.jiguang.common.resp.APIRequestException;
+import cn.jmessage.api.BaseTest;
+import cn.jmessage.api.FastTests;
+import cn.jmessage.api.common.JMessageConfig;
+import cn.jmessage.api.common.connection.PooledHttpClient;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@Category(FastTests.class)
+public class RateLimitThrottlerTest extends BaseTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void testApiFamily() {
+        assertEquals(ApiFamily.USER, ApiFamily.of("https://api.im.jpush.cn/v1/users/junit"));
+        assertEquals(ApiFamily.USER, ApiFamily.of("https://api.im.jpush.cn/v1/cross/users/junit/blacklist"));
+        assertEquals(ApiFamily.GROUP, ApiFamily.of("https://api.im.jpush.cn/v1/groups/10000"));
+        assertEquals(ApiFamily.MESSAGE, ApiFamily.of("https://api.im.jpush.cn/v1/messages"));
+        assertEquals(ApiFamily.REPORT, ApiFamily.of("https://report.im.jpush.cn/v2/messages?count=10"));
+        assertEquals(ApiFamily.OTHER, ApiFamily.of("https://api.im.jpush.cn/v1/sensitiveword"));
+    }
+
+    @Test
+    public void testPaceRemainingBudget() {
+        RateLimitBucket bucket = new RateLimitBucket();
+        long now = 1000 * SECOND;
+        assertEquals(0, bucket.reserve(now, SECOND));
+
+        // 10 calls left in the next 10 seconds, one call per second
+        bucket.update(600, 10, 10, now);
+        assertEquals(0, bucket.reserve(now, 60 * SECOND));
+        assertEquals(SECOND, bucket.reserve(now, 60 * SECOND));
+        assertEquals(2 * SECOND, bucket.reserve(now, 60 * SECOND));
+        // not reserved if the wait is too long
+        assertEquals(-1, bucket.reserve(now, SECOND));
+        assertEquals(SECOND, bucket.reserve(now + 2 * SECOND, 60 * SECOND));
+
+        RateLimitBudget budget = bucket.snapshot(ApiFamily.USER, now);
+        assertEquals(600, budget.getQuota());
+        assertEquals(6, budget.getRemaining());
+        assertEquals(10 * 1000, budget.getResetMillis());
+    }
+
+    @Test
+    public void testExhaustedWaitsForReset() {
+        RateLimitBucket bucket = new RateLimitBucket();
+        long now = 1000 * SECOND;
+        bucket.update(600, 0, 5, now);
+        assertEquals(-1, bucket.reserve(now, SECOND));
+        assertEquals(5 * SECOND, bucket.reserve(now, 60 * SECOND));
+
+        // after the reset the full quota is spread over the window, 600 calls in 5 seconds
+        RateLimitBudget budget = bucket.snapshot(ApiFamily.USER, now + 6 * SECOND);
+        assertEquals(120, budget.getPermitsPerSecond(), 0.001);
+        assertEquals(600, budget.getRemaining());
+    }
+
+    @Test
+    public void testLearnFromResponseHeaders() throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.play();
+        try {
+            server.enqueue(new MockResponse().setBody("{}")
+                    .addHeader("X-Rate-Limit-Limit", "600")
+                    .addHeader("X-Rate-Limit-Remaining", "599")
+                    .addHeader("X-Rate-Limit-Reset", "60"));
+            server.enqueue(new MockResponse().setResponseCode(429)
+                    .setBody("{\"error\":{\"code\":899023,\"message\":\"too many requests\"}}")
+                    .addHeader("X-Rate-Limit-Limit", "600")
+                    .addHeader("X-Rate-Limit-Remaining", "0")
+                    .addHeader("X-Rate-Limit-Reset", "30"));
+            RateLimitThrottler throttler = new RateLimitThrottler(100);
+            ThrottledHttpClient client = new ThrottledHttpClient(new PooledHttpClient(
+                    ServiceHelper.getBasicAuthorization(APP_KEY, MASTER_SECRET), null, JMessageConfig.getInstance()),
+                    throttler);
+
+            assertFalse(throttler.getBudget(ApiFamily.GROUP).isKnown());
+            client.sendGet(server.getUrl("/v1/groups/10000").toString());
+            RateLimitBudget budget = throttler.getBudget(ApiFamily.GROUP);
+            assertTrue(budget.isKnown());
+            assertEquals(599, budget.getRemaining());
+            assertFalse(throttler.getBudget(ApiFamily.USER).isKnown());
+
+            try {
+                client.sendGet(server.getUrl("/v1/groups/10000").toString());
+                fail("should throw APIRequestException");
+            } catch (APIRequestException e) {
+                assertEquals(429, e.getStatus());
+            }
+            // budget exhausted for 30 seconds, longer than the max wait
+            try {
+                client.sendGet(server.getUrl("/v1/groups/10000").toString());
+                fail("should throw APIConnectionException");
+            } catch (APIConnectionException e) {
+                assertEquals(2, server.getRequestCount());
+            }
+        } finally {
+            server.shutdown();
+        }
+    }
+
+}
@@ -0,0 +1,117 @@
+package cn.jmessage.api.common.retry;
+
+import cn.jiguang.common.ServiceHelper;
+import cn.jiguang.common.resp.APIRequestException;
+import cn.jiguang.common.resp.ResponseWrapper;
+import cn.jmessage.api.BaseTest;
+import cn.jmessage.api.FastTests;
+import cn.jmessage.api.common.JMessageConfig;
+import cn.jmessage.api.common.connection.ConnectionPool;
+import cn.jmessage.api.common.connection.PooledHttpClient;
+import cn.jmessage.api.common.metrics.Endpoint;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@Category(FastTests.class)
+public class RetryPolicyTest extends BaseTest {
+
+    private static final String ERROR = "{\"error\":{\"code\":899000,\"message\":\"server error\"}}";
+
+    @Test
+    public void testIdempotency() {
+        RetryPolicy policy = RetryPolicy.newBuilder()
+                .setIdempotent("POST", "/v1/groups/{gid}/members", true)
+                .build();
+        assertTrue(policy.isIdempotent(Endpoint.of("GET", "/v1/users/junit_user")));
+        assertTrue(policy.isIdempotent(Endpoint.of("PUT", "/v1/users/junit_user/blacklist")));
+        assertTrue(policy.isIdempotent(Endpoint.of("POST", "https://api.im.jpush.cn/v1/groups/10001/members")));
+        assertFalse(policy.isIdempotent(Endpoint.of("POST", "/v1/messages")));
+
+        Endpoint send = Endpoint.of("POST", "/v1/messages");
+        // not sent, 429, or sent to an idempotent endpoint
+        assertTrue(policy.retryDelay(send, 0, 0, false, true, 0, -1) >= 0);
+        assertTrue(policy.retryDelay(send, 0, 0, true, true, 429, -1) >= 0);
+        assertEquals(-1, policy.retryDelay(send, 0, 0, true, true, 503, -1));
+        assertEquals(-1, policy.retryDelay(send, 0, 0, true, true, 0, -1));
+        Endpoint get = Endpoint.of("GET", "/v1/users/junit_user");
+        assertTrue(policy.retryDelay(get, 0, 0, true, true, 503, -1) >= 0);
+        assertEquals(-1, policy.retryDelay(get, 0, 0, true, true, 400, -1));
+        assertEquals(-1, policy.retryDelay(get, 0, 0, true, false, 503, -1));
+        assertEquals(-1, policy.retryDelay(get, 3, 0, false, true, 0, -1));
+        // the server asks to wait longer than the max delay
+        assertEquals(-1, policy.retryDelay(get, 0, 0, true, true, 429, 60 * 1000));
+        assertEquals(3000, policy.retryDelay(get, 0, 0, true, true, 429, 3000));
+    }
+
+    @Test
+    public void testBackoffAndBudget() {
+        RetryPolicy policy = RetryPolicy.newBuilder().setDelays(100, 1000).build();
+        long delay = 0;
+        for (int i = 0; i < 20; i++) {
+            long next = policy.backoff(delay);
+            assertTrue(next >= 100 && next <= Math.min(1000, Math.max(100, delay * 3)));
+            delay = next;
+        }
+
+        RetryBudget budget = new RetryBudget(0.5, 1);
+        assertTrue(budget.tryWithdraw());
+        assertFalse(budget.tryWithdraw());
+        budget.deposit();
+        assertFalse(budget.tryWithdraw());
+        budget.deposit();
+        assertTrue(budget.tryWithdraw());
+
+        assertEquals(120 * 1000, RetryPolicy.parseRetryAfter("120", 0));
+        assertEquals(2000, RetryPolicy.parseRetryAfter("Thu, 01 Jan 1970 00:00:02 GMT", 0));
+        assertEquals(-1, RetryPolicy.parseRetryAfter("soon", 0));
+    }
+
+    @Test
+    public void testRetriedByClient() throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.play();
+        RetryPolicy policy = RetryPolicy.newBuilder().setDelays(1, 50).build();
+        JMessageConfig config = JMessageConfig.getInstance().setRetryPolicy(policy);
+        ConnectionPool pool = new ConnectionPool(4, 2, 60 * 1000, "TLS");
+        try {
+            PooledHttpClient client = new PooledHttpClient(ServiceHelper.getBasicAuthorization(APP_KEY, MASTER_SECRET),
+                    null, config, pool);
+            server.enqueue(new MockResponse().setResponseCode(503).setBody(ERROR));
+            server.enqueue(new MockResponse().setBody("{\"username\":\"junit_user\"}"));
+            ResponseWrapper wrapper = client.sendGet(server.getUrl("/v1/users/junit_user").toString());
+            assertEquals(200, wrapper.responseCode);
+            assertEquals(2, server.getRequestCount());
+
+            // a message is not sent twice
+            server.enqueue(new MockResponse().setResponseCode(503).setBody(ERROR));
+            try {
+                client.sendPost(server.getUrl("/v1/messages").toString(), "{}");
+                fail("Should throw APIRequestException");
+            } catch (APIRequestException e) {
+                assertEquals(503, e.getStatus());
+            }
+            assertEquals(3, server.getRequestCount());
+
+            // a rejected message was not processed, it is sent again after Retry-After
+            server.enqueue(new MockResponse().setResponseCode(429).setBody(ERROR).addHeader("Retry-After", "0"));
+            server.enqueue(new MockResponse().setResponseCode(201).setBody("{\"msg_id\":1}"));
+            wrapper = client.sendPost(server.getUrl("/v1/messages").toString(), "{}");
+            assertEquals(201, wrapper.responseCode);
+            assertEquals(5, server.getRequestCount());
+            assertEquals(2, policy.getRetryCount());
+            assertEquals(3, policy.getCallCount());
+        } finally {
+            config.setRetryPolicy(null);
+            pool.close();
+            server.shutdown();
+        }
+    }
+
+}
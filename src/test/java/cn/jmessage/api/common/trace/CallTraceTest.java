@@ -0,0 +1,97 @@
+package cn.jmessage.api.common.trace;
+
+import cn.jiguang.common.ServiceHelper;
+import cn.jiguang.common.resp.APIRequestException;
+import cn.jmessage.api.BaseTest;
+import cn.jmessage.api.FastTests;
+import cn.jmessage.api.common.JMessageConfig;
+import cn.jmessage.api.common.connection.ConnectionPool;
+import cn.jmessage.api.common.connection.PooledHttpClient;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@Category(FastTests.class)
+public class CallTraceTest extends BaseTest {
+
+    @Test
+    public void testPhasesTraced() throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.play();
+        final List<Phase> phases = new ArrayList<Phase>();
+        final List<CallTrace> ended = new ArrayList<CallTrace>();
+        CallListener recorder = new CallListener() {
+            @Override
+            public void phaseEnd(CallTrace trace, Phase phase, long startNanos, long endNanos) {
+                assertTrue(endNanos >= startNanos);
+                phases.add(phase);
+            }
+
+            @Override
+            public void callEnd(CallTrace trace) {
+                ended.add(trace);
+            }
+        };
+        // a failing listener must not fail the call
+        CallListener failing = new CallListener() {
+            @Override
+            public void callStart(CallTrace trace) {
+                throw new IllegalStateException("listener failure");
+            }
+        };
+        JMessageConfig config = JMessageConfig.getInstance().addCallListener(failing).addCallListener(recorder);
+        ConnectionPool pool = new ConnectionPool(4, 2, 60 * 1000, "TLS");
+        try {
+            PooledHttpClient client = new PooledHttpClient(ServiceHelper.getBasicAuthorization(APP_KEY, MASTER_SECRET),
+                    null, config, pool);
+            server.enqueue(new MockResponse().setBody("{\"username\":\"junit_user\"}"));
+            server.enqueue(new MockResponse().setResponseCode(403)
+                    .setBody("{\"error\":{\"code\":899002,\"message\":\"user not exist\"}}"));
+
+            client.sendGet(server.getUrl("/v1/users/junit_user/blacklist").toString());
+            assertEquals(Arrays.asList(Phase.QUEUE_WAIT, Phase.DNS, Phase.CONNECT, Phase.REQUEST_WRITE,
+                    Phase.TIME_TO_FIRST_BYTE, Phase.BODY_READ), phases);
+            phases.clear();
+            try {
+                client.sendGet(server.getUrl("/v1/users/junit_missing/blacklist").toString());
+                fail("Should throw APIRequestException");
+            } catch (APIRequestException e) {
+                assertEquals(899002, e.getErrorCode());
+            }
+            // the pooled connection is reused
+            assertEquals(Arrays.asList(Phase.QUEUE_WAIT, Phase.REQUEST_WRITE, Phase.TIME_TO_FIRST_BYTE,
+                    Phase.BODY_READ), phases);
+        } finally {
+            config.removeCallListener(failing).removeCallListener(recorder);
+            pool.close();
+            server.shutdown();
+        }
+
+        assertEquals(2, ended.size());
+        CallTrace ok = ended.get(0);
+        assertEquals("GET /v1/users/{}/blacklist", ok.getEndpoint().getName());
+        assertEquals(200, ok.getStatus());
+        assertNull(ok.getFailure());
+        assertTrue(ok.getDurationNanos() >= ok.getPhaseNanos(Phase.TIME_TO_FIRST_BYTE));
+        assertTrue(ok.getPhaseStartNanos(Phase.REQUEST_WRITE) >= ok.getStartNanos());
+        assertEquals(0, ok.getPhaseNanos(Phase.TLS_HANDSHAKE));
+        assertTrue(ok.toString().startsWith("GET /v1/users/{}/blacklist 200 in "));
+
+        CallTrace failed = ended.get(1);
+        assertEquals(ok.getEndpoint(), failed.getEndpoint());
+        assertEquals(403, failed.getStatus());
+        assertTrue(failed.getFailure() instanceof APIRequestException);
+        assertEquals(0, failed.getPhaseStartNanos(Phase.CONNECT));
+    }
+
+}
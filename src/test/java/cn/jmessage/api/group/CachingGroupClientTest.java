@@ -0,0 +1,136 @@
+package cn.jmessage.api.group;
+
+import cn.jiguang.common.connection.IHttpClient;
+import cn.jiguang.common.resp.APIConnectionException;
+import cn.jiguang.common.resp.APIRequestException;
+import cn.jiguang.common.resp.ResponseWrapper;
+import cn.jmessage.api.BaseTest;
+import cn.jmessage.api.FastTests;
+import cn.jmessage.api.common.JMessageConfig;
+import cn.jmessage.api.common.cache.MetadataCaches;
+import cn.jmessage.api.common.model.Members;
+import cn.jmessage.api.common.model.UserPayload;
+import cn.jmessage.api.common.model.cross.CrossGroup;
+import cn.jmessage.api.crossapp.CachingCrossAppClient;
+import cn.jmessage.api.user.CachingUserClient;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+@Category(FastTests.class)
+public class CachingGroupClientTest extends BaseTest {
+
+    @Test
+    public void testReadThroughAndInvalidate() throws Exception {
+        JMessageConfig config = JMessageConfig.getInstance();
+        MetadataCaches caches = new MetadataCaches(config);
+        CachingGroupClient groupClient = new CachingGroupClient(APP_KEY, MASTER_SECRET, null, config, caches);
+        CachingUserClient userClient = new CachingUserClient(APP_KEY, MASTER_SECRET, null, config, caches);
+        FakeHttpClient http = new FakeHttpClient();
+        groupClient.setHttpClient(http);
+        userClient.setHttpClient(http);
+
+        groupClient.getGroupInfo(10);
+        groupClient.getGroupInfo(10);
+        groupClient.getGroupMembers(10);
+        userClient.getGroupList("junit");
+        userClient.getGroupList("junit");
+        assertEquals(3, http.gets.size());
+
+        groupClient.addOrRemoveMembers(10, Members.newBuilder().addMember("junit").build(), null);
+        groupClient.getGroupInfo(10);
+        groupClient.getGroupMembers(10);
+        userClient.getGroupList("junit");
+        assertEquals(6, http.gets.size());
+
+        userClient.getGroupList("junit1");
+        groupClient.updateGroupInfo(10, "junit", null, null);
+        // members are cached, only their groups are dropped
+        userClient.getGroupList("junit");
+        userClient.getGroupList("junit1");
+        assertEquals(9, http.gets.size());
+        assertEquals(1, caches.getGroupMembers().getStats().getSize());
+    }
+
+    @Test
+    public void testProfileAndCrossAppWritesInvalidateMembers() throws Exception {
+        JMessageConfig config = JMessageConfig.getInstance();
+        MetadataCaches caches = new MetadataCaches(config);
+        CachingGroupClient groupClient = new CachingGroupClient(APP_KEY, MASTER_SECRET, config, new FakeHttpClient(),
+                caches);
+        CachingUserClient userClient = new CachingUserClient(APP_KEY, MASTER_SECRET, config,
+                groupClient.getHttpClient(), caches);
+        CachingCrossAppClient crossAppClient = new CachingCrossAppClient(APP_KEY, MASTER_SECRET, config,
+                groupClient.getHttpClient(), caches);
+        FakeHttpClient http = (FakeHttpClient) groupClient.getHttpClient();
+
+        groupClient.getGroupMembers(10);
+        userClient.getGroupList("junit");
+        // the members of the groups of the user carry its nickname
+        userClient.updateUserInfo("junit", UserPayload.newBuilder().setNickname("junit").build());
+        groupClient.getGroupMembers(10);
+        assertEquals(3, http.gets.size());
+
+        userClient.getGroupList("junit2");
+        crossAppClient.addOrRemoveCrossGroupMembers(10, new CrossGroup[]{
+                new CrossGroup.Builder().setAppKey("junit_app").setAddUsers("junit2").build()});
+        groupClient.getGroupMembers(10);
+        userClient.getGroupList("junit2");
+        assertEquals(6, http.gets.size());
+    }
+
+    private static class FakeHttpClient implements IHttpClient {
+
+        final List<String> gets = Collections.synchronizedList(new ArrayList<String>());
+
+        @Override
+        public ResponseWrapper sendGet(String url) throws APIConnectionException, APIRequestException {
+            gets.add(url);
+            if (url.endsWith("/members")) {
+                return response("[{\"username\":\"junit\"},{\"username\":\"junit1\"}]");
+            } else if (url.endsWith("/groups")) {
+                return response("[{\"gid\":10,\"name\":\"junit\"}]");
+            }
+            return response("{\"gid\":10,\"name\":\"junit\"}");
+        }
+
+        @Override
+        public ResponseWrapper sendGet(String url, String content) throws APIConnectionException, APIRequestException {
+            return sendGet(url);
+        }
+
+        @Override
+        public ResponseWrapper sendDelete(String url) throws APIConnectionException, APIRequestException {
+            return response("");
+        }
+
+        @Override
+        public ResponseWrapper sendDelete(String url, String content)
+                throws APIConnectionException, APIRequestException {
+            return response("");
+        }
+
+        @Override
+        public ResponseWrapper sendPost(String url, String content) throws APIConnectionException, APIRequestException {
+            return response("");
+        }
+
+        @Override
+        public ResponseWrapper sendPut(String url, String content) throws APIConnectionException, APIRequestException {
+            return response("");
+        }
+
+        private static ResponseWrapper response(String content) {
+            ResponseWrapper wrapper = new ResponseWrapper();
+            wrapper.responseCode = 200;
+            wrapper.responseContent = content;
+            return wrapper;
+        }
+    }
+
+}
@@ -0,0 +1,220 @@
+package cn.jmessage.api.message;
+
+import cn.jiguang.common.resp.APIConnectionException;
+import cn.jiguang.common.resp.APIRequestException;
+import cn.jmessage.api.BaseTest;
+import cn.jmessage.api.FastTests;
+import cn.jmessage.api.common.async.ApiCallback;
+import cn.jmessage.api.common.async.ApiFuture;
+import cn.jmessage.api.common.model.message.MessageBody;
+import cn.jmessage.api.common.model.message.MessagePayload;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@Category(FastTests.class)
+public class MessageSenderTest extends BaseTest {
+
+    @Test
+    public void testOrderPerTargetAndMaxInFlight() throws Exception {
+        FakeMessageClient client = new FakeMessageClient(5);
+        MessageSender sender = MessageSender.newBuilder(client)
+                .setWorkerCount(4)
+                .setMaxInFlight(2)
+                .build();
+
+        Map<String, List<MessagePayload>> expected = new HashMap<String, List<MessagePayload>>();
+        List<ApiFuture<SendMessageResult>> futures = new ArrayList<ApiFuture<SendMessageResult>>();
+        for (int i = 0; i < 20; i++) {
+            for (String target : new String[]{"junit1", "junit2", "junit3", "junit4"}) {
+                MessagePayload payload = payload(target, i);
+                if (!expected.containsKey(target)) {
+                    expected.put(target, new ArrayList<MessagePayload>());
+                }
+                expected.get(target).add(payload);
+                futures.add(sender.submit(payload));
+            }
+        }
+        for (ApiFuture<SendMessageResult> future : futures) {
+            future.getResult();
+        }
+        sender.shutdown();
+        assertTrue(sender.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(expected, client.sent);
+        assertTrue(client.maxConcurrent.get() <= 2);
+        assertEquals(0, sender.getQueuedCount());
+    }
+
+    @Test
+    public void testRejectPolicy() throws Exception {
+        FakeMessageClient client = new FakeMessageClient(0);
+        client.gate = new CountDownLatch(1);
+        MessageSender sender = MessageSender.newBuilder(client)
+                .setWorkerCount(1)
+                .setQueueCapacity(2)
+                .setOverflowPolicy(MessageSender.OverflowPolicy.REJECT)
+                .build();
+
+        ApiFuture<SendMessageResult> running = sender.submit(payload("junit", 0));
+        client.started.await(5, TimeUnit.SECONDS);
+        sender.submit(payload("junit", 1));
+        sender.submit(payload("junit", 2));
+        final AtomicInteger failures = new AtomicInteger();
+        ApiFuture<SendMessageResult> rejected = sender.submit(payload("junit", 3), new ApiCallback<SendMessageResult>() {
+            @Override
+            public void onSuccess(SendMessageResult result) {
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                if (e instanceof RejectedExecutionException) {
+                    failures.incrementAndGet();
+                }
+            }
+        });
+        assertEquals(1, failures.get());
+        try {
+            rejected.getResult();
+            fail("should throw RejectedExecutionException");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+
+        client.gate.countDown();
+        running.getResult();
+        sender.shutdown();
+        assertTrue(sender.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(3, client.sent.get("junit").size());
+    }
+
+    @Test
+    public void testDropOldestPolicy() throws Exception {
+        FakeMessageClient client = new FakeMessageClient(0);
+        client.gate = new CountDownLatch(1);
+        MessageSender sender = MessageSender.newBuilder(client)
+                .setWorkerCount(1)
+                .setQueueCapacity(2)
+                .setOverflowPolicy(MessageSender.OverflowPolicy.DROP_OLDEST)
+                .build();
+
+        sender.submit(payload("junit", 0));
+        client.started.await(5, TimeUnit.SECONDS);
+        ApiFuture<SendMessageResult> oldest = sender.submit(payload("junit", 1));
+        ApiFuture<SendMessageResult> second = sender.submit(payload("junit", 2));
+        ApiFuture<SendMessageResult> newest = sender.submit(payload("junit", 3));
+        try {
+            oldest.getResult();
+            fail("should throw RejectedExecutionException");
+        } catch (RejectedExecutionException e) {
+            // expected
+        }
+
+        client.gate.countDown();
+        second.getResult();
+        newest.getResult();
+        assertEquals(1, sender.getDroppedCount());
+        assertEquals(0, sender.shutdownNow());
+    }
+
+    @Test
+    public void testThrowingCallbackKeepsWorker() throws Exception {
+        FakeMessageClient client = new FakeMessageClient(0);
+        MessageSender sender = MessageSender.newBuilder(client)
+                .setWorkerCount(1)
+                .build();
+
+        sender.submit(payload("junit", 0), new ApiCallback<SendMessageResult>() {
+            @Override
+            public void onSuccess(SendMessageResult result) {
+                throw new IllegalStateException("junit callback");
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+            }
+        });
+        // the worker goes on with the lane
+        sender.submit(payload("junit", 1)).get(5, TimeUnit.SECONDS);
+        sender.shutdown();
+        assertTrue(sender.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(2, client.sent.get("junit").size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMaxInFlightMoreThanWorkers() {
+        MessageSender.newBuilder(new FakeMessageClient(0))
+                .setWorkerCount(2)
+                .setMaxInFlight(4)
+                .build();
+    }
+
+    private static MessagePayload payload(String target, int index) {
+        return MessagePayload.newBuilder()
+                .setVersion(1)
+                .setTargetType("single")
+                .setTargetId(target)
+                .setFromType("admin")
+                .setFromId("junit_admin")
+                .setMessageType(MessageType.TEXT)
+                .setMessageBody(MessageBody.text("message " + index))
+                .build();
+    }
+
+    private static class FakeMessageClient extends MessageClient {
+
+        final Map<String, List<MessagePayload>> sent = new HashMap<String, List<MessagePayload>>();
+        final AtomicInteger concurrent = new AtomicInteger();
+        final AtomicInteger maxConcurrent = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        volatile CountDownLatch gate;
+        private final long sleepMillis;
+
+        FakeMessageClient(long sleepMillis) {
+            super(APP_KEY, MASTER_SECRET);
+            this.sleepMillis = sleepMillis;
+        }
+
+        @Override
+        public SendMessageResult sendMessage(MessagePayload payload)
+                throws APIConnectionException, APIRequestException {
+            int current = concurrent.incrementAndGet();
+            while (true) {
+                int max = maxConcurrent.get();
+                if (current <= max || maxConcurrent.compareAndSet(max, current)) {
+                    break;
+                }
+            }
+            started.countDown();
+            try {
+                if (null != gate) {
+                    gate.await(5, TimeUnit.SECONDS);
+                }
+                Thread.sleep(sleepMillis);
+            } catch (InterruptedException e) {
+                throw new APIConnectionException("interrupted", e);
+            }
+            synchronized (sent) {
+                if (!sent.containsKey(payload.getTargetId())) {
+                    sent.put(payload.getTargetId(), new ArrayList<MessagePayload>());
+                }
+                sent.get(payload.getTargetId()).add(payload);
+            }
+            concurrent.decrementAndGet();
+            return new SendMessageResult();
+        }
+    }
+
+}
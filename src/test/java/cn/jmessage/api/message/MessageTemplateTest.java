@@ -0,0 +1,116 @@
+package cn.jmessage.api.message;
+
+import cn.jiguang.common.connection.IHttpClient;
+import cn.jiguang.common.resp.APIConnectionException;
+import cn.jiguang.common.resp.APIRequestException;
+import cn.jiguang.common.resp.ResponseWrapper;
+import cn.jmessage.api.BaseTest;
+import cn.jmessage.api.FastTests;
+import cn.jmessage.api.common.JMessageConfig;
+import cn.jmessage.api.common.model.message.MessageBody;
+import cn.jmessage.api.common.model.message.MessagePayload;
+import cn.jmessage.api.common.model.message.MessageTemplate;
+import cn.jmessage.api.common.model.message.Notification;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+@Category(FastTests.class)
+public class MessageTemplateTest extends BaseTest {
+
+    @Test
+    public void testRenderSameAsPayload() {
+        MessagePayload.Builder builder = MessagePayload.newBuilder()
+                .setVersion(1)
+                .setFromType("admin")
+                .setFromId("junit_admin")
+                .setTargetAppKey(APP_KEY)
+                .setNoNotification(true)
+                .setMessageType(MessageType.TEXT)
+                .setMessageBody(MessageBody.newBuilder()
+                        .setText("campaign <b>text</b>")
+                        .addExtra("campaign", 20)
+                        .build())
+                .setNotification(Notification.newBuilder().setTitle("title").setAlert("alert").build());
+        MessageTemplate template = builder.buildTemplate();
+
+        String expected = builder.setTargetType("single").setTargetId("junit_user").build().toString();
+        assertEquals(expected, template.render(" junit_user ", "single").toString());
+        assertEquals(builder.setTargetType("group").setTargetId("10000").build().toString(),
+                template.render("10000", "group").toString());
+        try {
+            template.render("a", "single");
+            fail("should throw IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // username too short, as for MessagePayload.Builder.build()
+        }
+    }
+
+    @Test
+    public void testSendTemplate() throws Exception {
+        MessageClient client = new MessageClient(APP_KEY, MASTER_SECRET, null, JMessageConfig.getInstance());
+        RecordingHttpClient http = new RecordingHttpClient();
+        client.setHttpClient(http);
+        MessageTemplate template = MessagePayload.newBuilder()
+                .setVersion(1)
+                .setFromType("admin")
+                .setFromId("junit_admin")
+                .setMessageType(MessageType.TEXT)
+                .setMessageBody(MessageBody.text("junit"))
+                .buildTemplate();
+
+        SendMessageResult result = client.sendMessage(template, "junit_user", "single");
+        client.sendMessage(template, "junit_user1", "single");
+
+        assertEquals(Long.valueOf(43), result.getMsg_id());
+        assertEquals(2, http.posts.size());
+        assertEquals("{\"version\":1,\"target_type\":\"single\",\"target_id\":\"junit_user1\",\"from_type\":\"admin\","
+                + "\"from_id\":\"junit_admin\",\"msg_type\":\"text\",\"msg_body\":{\"text\":\"junit\"}}",
+                http.posts.get(1));
+    }
+
+    private static class RecordingHttpClient implements IHttpClient {
+
+        final List<String> posts = new ArrayList<String>();
+
+        @Override
+        public ResponseWrapper sendGet(String url) throws APIConnectionException, APIRequestException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ResponseWrapper sendGet(String url, String content) throws APIConnectionException, APIRequestException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ResponseWrapper sendDelete(String url) throws APIConnectionException, APIRequestException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ResponseWrapper sendDelete(String url, String content) throws APIConnectionException, APIRequestException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ResponseWrapper sendPost(String url, String content) throws APIConnectionException, APIRequestException {
+            posts.add(content);
+            ResponseWrapper wrapper = new ResponseWrapper();
+            wrapper.responseCode = 201;
+            wrapper.responseContent = "{\"msg_id\":43,\"msg_ctime\":1500000000000}";
+            return wrapper;
+        }
+
+        @Override
+        public ResponseWrapper sendPut(String url, String content) throws APIConnectionException, APIRequestException {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+}
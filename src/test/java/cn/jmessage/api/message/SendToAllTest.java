@@ -0,0 +1,111 @@
+package cn.jmessage.api.message;
+
+import cn.jiguang.common.connection.IHttpClient;
+import cn.jiguang.common.resp.APIConnectionException;
+import cn.jiguang.common.resp.APIRequestException;
+import cn.jiguang.common.resp.ResponseWrapper;
+import cn.jmessage.api.BaseTest;
+import cn.jmessage.api.FastTests;
+import cn.jmessage.api.common.JMessageConfig;
+import cn.jmessage.api.common.model.message.MessageBody;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@Category(FastTests.class)
+public class SendToAllTest extends BaseTest {
+
+    @Test
+    public void testSendToAll() throws Exception {
+        MessageClient client = new MessageClient(APP_KEY, MASTER_SECRET, null, JMessageConfig.getInstance());
+        FakeHttpClient http = new FakeHttpClient();
+        client.setHttpClient(http);
+        List<String> targets = new ArrayList<String>();
+        for (int i = 0; i < 100; i++) {
+            targets.add("junit_user" + i);
+        }
+        targets.add("junit_user0");
+        targets.add("junit_missing");
+        targets.add("a");
+
+        SendToAllResult result = client.sendToAll(MessageBody.text("junit"), targets,
+                SendToAllOptions.newBuilder().setFromId("junit_admin").setMaxInFlight(4).build());
+
+        assertEquals(100, result.getSuccessCount());
+        assertEquals(101, http.requests.get());
+        assertTrue(http.maxInFlight.get() <= 4);
+        assertEquals(Long.valueOf(7), result.getMessageIds().get("junit_user7"));
+        Map<Integer, List<SendToAllResult.Failure>> failures = result.getFailuresByErrorCode();
+        assertEquals(2, result.getFailureCount());
+        assertEquals("a", failures.get(SendToAllResult.ERROR_CODE_INVALID_TARGET).get(0).getTarget());
+        assertEquals("junit_missing", failures.get(899002).get(0).getTarget());
+        assertEquals(101, result.getLatencyHistogram().getCount());
+    }
+
+    private static class FakeHttpClient implements IHttpClient {
+
+        final AtomicInteger requests = new AtomicInteger();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+
+        @Override
+        public ResponseWrapper sendPost(String url, String content) throws APIConnectionException, APIRequestException {
+            requests.incrementAndGet();
+            int current = inFlight.incrementAndGet();
+            try {
+                synchronized (maxInFlight) {
+                    maxInFlight.set(Math.max(maxInFlight.get(), current));
+                }
+                Thread.sleep(2);
+                ResponseWrapper wrapper = new ResponseWrapper();
+                if (content.contains("junit_missing")) {
+                    wrapper.responseCode = 403;
+                    wrapper.responseContent = "{\"error\":{\"code\":899002,\"message\":\"user not exist\"}}";
+                    wrapper.setErrorObject();
+                    throw new APIRequestException(wrapper);
+                }
+                String target = content.substring(content.indexOf("junit_user") + "junit_user".length());
+                wrapper.responseCode = 201;
+                wrapper.responseContent = "{\"msg_id\":" + target.substring(0, target.indexOf('"')) + "}";
+                return wrapper;
+            } catch (InterruptedException e) {
+                throw new APIConnectionException("interrupted", e);
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+
+        @Override
+        public ResponseWrapper sendGet(String url) throws APIConnectionException, APIRequestException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ResponseWrapper sendGet(String url, String content) throws APIConnectionException, APIRequestException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ResponseWrapper sendDelete(String url) throws APIConnectionException, APIRequestException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ResponseWrapper sendDelete(String url, String content) throws APIConnectionException, APIRequestException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ResponseWrapper sendPut(String url, String content) throws APIConnectionException, APIRequestException {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+}
@@ -0,0 +1,159 @@
+package cn.jmessage.api.reportv2;
+
+import cn.jiguang.common.resp.APIConnectionException;
+import cn.jiguang.common.resp.APIRequestException;
+import cn.jiguang.common.resp.ResponseWrapper;
+import cn.jmessage.api.BaseTest;
+import cn.jmessage.api.FastTests;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+@Category(FastTests.class)
+public class MessageExporterTest extends BaseTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testExportAndResume() throws Exception {
+        FakeReportClient client = new FakeReportClient();
+        client.failDay = "2017-01-02";
+        MessageExporter exporter = MessageExporter.newBuilder(client)
+                .setParallelism(2)
+                .setSlice(1, TimeUnit.DAYS)
+                .setPageSize(2)
+                .build();
+        Path dir = folder.getRoot().toPath();
+
+        try {
+            exporter.export("2017-01-01 00:00:00", "2017-01-03 23:59:59", dir);
+            fail("should throw APIConnectionException");
+        } catch (APIConnectionException e) {
+            // the other slices are done
+        }
+        List<String> done = Files.readAllLines(dir.resolve(MessageExporter.DEFAULT_CHECKPOINT_FILE), UTF_8);
+        Collections.sort(done);
+        assertEquals(2, done.size());
+        assertEquals("messages-20170101000000-20170101235959.ndjson", done.get(0));
+
+        List<String> lines = Files.readAllLines(dir.resolve(done.get(0)), UTF_8);
+        assertEquals(3, lines.size());
+        assertEquals("{\"msgid\":1,\"create_time\":1483200010000,\"msg_body\":{\"text\":\"a\\nb\",\"extras\":{}}}",
+                lines.get(0));
+        assertEquals("{\"msgid\":3,\"create_time\":1483200030000,\"msg_body\":{\"text\":\"c\",\"extras\":{}}}",
+                lines.get(2));
+
+        client.failDay = null;
+        client.queries.clear();
+        MessageExporter.ExportResult result = exporter.export("2017-01-01 00:00:00", "2017-01-03 23:59:59", dir);
+        assertEquals(3, result.getSliceCount());
+        assertEquals(2, result.getSkippedSliceCount());
+        assertEquals(3, result.getMessageCount());
+        assertEquals(1, client.queries.size());
+        assertEquals("2017-01-02 00:00:00", client.queries.get(0));
+        assertFalse(Files.exists(dir.resolve("messages-20170102000000-20170102235959.ndjson.part")));
+    }
+
+    @Test
+    public void testGzipAndRestartWhenCursorRejected() throws Exception {
+        FakeReportClient client = new FakeReportClient();
+        client.rejectCursor = true;
+        MessageExporter exporter = MessageExporter.newBuilder(client)
+                .setSlice(1, TimeUnit.DAYS)
+                .setPageSize(2)
+                .setGzip(true)
+                .build();
+        Path dir = folder.getRoot().toPath();
+
+        MessageExporter.ExportResult result = exporter.export("2017-01-01 00:00:00", "2017-01-01 23:59:59", dir);
+        assertEquals(3, result.getMessageCount());
+        assertEquals("2017-01-01 00:00:20", client.queries.get(1));
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(
+                Files.newInputStream(dir.resolve("messages-20170101000000-20170101235959.ndjson.gz"))), UTF_8));
+        List<String> lines = new ArrayList<String>();
+        String line;
+        while (null != (line = reader.readLine())) {
+            lines.add(line);
+        }
+        reader.close();
+        assertEquals(3, lines.size());
+    }
+
+    private static String message(long msgId, long createTime, String text) {
+        return "{\"msgid\":" + msgId + ",\"create_time\":" + createTime + ",\"msg_body\":{\"text\":\"" + text
+                + "\",\"extras\":{}}}";
+    }
+
+    private static ResponseWrapper response(String content) {
+        ResponseWrapper wrapper = new ResponseWrapper();
+        wrapper.responseCode = 200;
+        wrapper.responseContent = content;
+        return wrapper;
+    }
+
+    /**
+     * Every day has messages 1, 2 and 3 at second 10, 20 and 30 of the day, two messages for each page.
+     */
+    private static class FakeReportClient extends ReportClient {
+
+        final List<String> queries = Collections.synchronizedList(new ArrayList<String>());
+        volatile String failDay;
+        volatile boolean rejectCursor;
+
+        FakeReportClient() {
+            super(APP_KEY, MASTER_SECRET);
+        }
+
+        @Override
+        ResponseWrapper sendMessageList(int count, String begin_time, String end_time)
+                throws APIConnectionException, APIRequestException {
+            queries.add(begin_time);
+            String day = begin_time.substring(0, 10);
+            if (day.equals(failDay)) {
+                throw new APIConnectionException("connect timed out", null);
+            }
+            long dayBegin = MessageIterator.parse(day + " 00:00:00");
+            if (begin_time.endsWith("00:00:20")) {
+                // restart from the last message of the first page, message 2 comes again
+                return response("{\"total\":2,\"count\":2,\"messages\":[" + message(2, dayBegin + 20000, "b") + ","
+                        + message(3, dayBegin + 30000, "c") + "]}");
+            }
+            return response("{\"total\":3,\"cursor\":\"" + day + "\",\"count\":2,\"messages\":["
+                    + message(1, dayBegin + 10000, "a\\nb") + "," + message(2, dayBegin + 20000, "b") + "]}");
+        }
+
+        @Override
+        ResponseWrapper sendMessageListByCursor(String cursor) throws APIConnectionException, APIRequestException {
+            if (rejectCursor) {
+                ResponseWrapper wrapper = new ResponseWrapper();
+                wrapper.responseCode = 400;
+                wrapper.responseContent = "{\"error\":{\"code\":899003,\"message\":\"cursor expired\"}}";
+                wrapper.setErrorObject();
+                throw new APIRequestException(wrapper);
+            }
+            long dayBegin = MessageIterator.parse(cursor + " 00:00:00");
+            return response("{\"total\":3,\"count\":1,\"messages\":[" + message(3, dayBegin + 30000, "c") + "]}");
+        }
+    }
+
+}
@@ -0,0 +1,136 @@
+package cn.jmessage.api.reportv2;
+
+import cn.jiguang.common.resp.APIConnectionException;
+import cn.jiguang.common.resp.APIRequestException;
+import cn.jiguang.common.resp.ResponseWrapper;
+import cn.jmessage.api.FastTests;
+import cn.jmessage.api.message.MessageListResult;
+import com.google.gson.Gson;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.fail;
+
+@Category(FastTests.class)
+public class MessageIteratorTest {
+
+    // 2017-01-01 00:00:00 +08:00
+    private static final long BEGIN = 1483200000000L;
+
+    @Test
+    public void testSplitWindowsAndSkipDuplicates() {
+        FakeSource source = new FakeSource();
+        source.pages.add(page("c1", message(1, 10), message(2, 20)));
+        source.pages.add(page("c2", message(3, 30), message(4, 7 * 24 * 3600)));
+        source.pages.add(page(null));
+        // next window starts at the end second of the first one, message 4 comes again
+        source.pages.add(page(null, message(4, 7 * 24 * 3600), message(5, 7 * 24 * 3600 + 1)));
+
+        MessageIterator iterator = new MessageIterator(source, 2, "2017-01-01 00:00:00", "2017-01-11 00:00:00", null);
+        assertEquals(ids(1, 2, 3, 4, 5), drain(iterator));
+        assertEquals("query 2017-01-01 00:00:00 2017-01-08 00:00:00", source.requests.get(0));
+        assertEquals("next c1", source.requests.get(1));
+        assertEquals("next c2", source.requests.get(2));
+        assertEquals("query 2017-01-08 00:00:00 2017-01-11 00:00:00", source.requests.get(3));
+    }
+
+    @Test
+    public void testRestartWhenCursorRejected() {
+        FakeSource source = new FakeSource();
+        source.pages.add(page("c1", message(1, 10), message(2, 20)));
+        source.pages.add(null);
+        source.pages.add(page(null, message(2, 20), message(3, 20), message(4, 40)));
+
+        MessageIterator iterator = new MessageIterator(source, 2, "2017-01-01 00:00:00", "2017-01-02 00:00:00", null);
+        assertEquals(ids(1, 2, 3, 4), drain(iterator));
+        assertEquals("next c1", source.requests.get(1));
+        assertEquals("query 2017-01-01 00:00:20 2017-01-02 00:00:00", source.requests.get(2));
+    }
+
+    @Test
+    public void testFailure() {
+        FakeSource source = new FakeSource();
+        MessageIterator iterator = new MessageIterator(source, 2, "2017-01-01 00:00:00", "2017-01-02 00:00:00", null);
+        try {
+            iterator.hasNext();
+            fail("should throw MessageHistoryException");
+        } catch (MessageHistoryException e) {
+            assertEquals(APIConnectionException.class, e.getCause().getClass());
+        }
+        assertFalse(iterator.hasNext());
+    }
+
+    private static List<Long> drain(MessageIterator iterator) {
+        List<Long> ids = new ArrayList<Long>();
+        while (iterator.hasNext()) {
+            ids.add(iterator.next().getMsgId());
+        }
+        return ids;
+    }
+
+    private static List<Long> ids(long... ids) {
+        List<Long> list = new ArrayList<Long>();
+        for (long id : ids) {
+            list.add(id);
+        }
+        return list;
+    }
+
+    private static String message(long msgId, long second) {
+        return "{\"msgid\":" + msgId + ",\"create_time\":" + (BEGIN + second * 1000) + "}";
+    }
+
+    private static MessageListResult page(String cursor, String... messages) {
+        StringBuilder json = new StringBuilder("{\"count\":").append(messages.length);
+        if (null != cursor) {
+            json.append(",\"cursor\":\"").append(cursor).append("\"");
+        }
+        json.append(",\"messages\":[");
+        for (int i = 0; i < messages.length; i++) {
+            json.append(i > 0 ? "," : "").append(messages[i]);
+        }
+        json.append("]}");
+        return new Gson().fromJson(json.toString(), MessageListResult.class);
+    }
+
+    private static class FakeSource implements MessageIterator.PageSource {
+
+        final LinkedList<MessageListResult> pages = new LinkedList<MessageListResult>();
+        final List<String> requests = new ArrayList<String>();
+
+        @Override
+        public synchronized MessageListResult query(int count, String beginTime, String endTime)
+                throws APIConnectionException, APIRequestException {
+            requests.add("query " + beginTime + " " + endTime);
+            return take();
+        }
+
+        @Override
+        public synchronized MessageListResult next(String cursor) throws APIConnectionException, APIRequestException {
+            requests.add("next " + cursor);
+            return take();
+        }
+
+        private MessageListResult take() throws APIConnectionException, APIRequestException {
+            if (pages.isEmpty()) {
+                throw new APIConnectionException("no more pages", null);
+            }
+            MessageListResult page = pages.removeFirst();
+            if (null == page) {
+                ResponseWrapper wrapper = new ResponseWrapper();
+                wrapper.responseCode = 400;
+                wrapper.responseContent = "{\"error\":{\"code\":899003,\"message\":\"cursor expired\"}}";
+                wrapper.setErrorObject();
+                throw new APIRequestException(wrapper);
+            }
+            return page;
+        }
+    }
+
+}
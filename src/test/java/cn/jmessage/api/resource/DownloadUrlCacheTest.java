@@ -0,0 +1,188 @@
+package cn.jmessage.api.resource;
+
+import cn.jiguang.common.connection.IHttpClient;
+import cn.jiguang.common.resp.APIConnectionException;
+import cn.jiguang.common.resp.APIRequestException;
+import cn.jiguang.common.resp.ResponseWrapper;
+import cn.jmessage.api.BaseTest;
+import cn.jmessage.api.FastTests;
+import cn.jmessage.api.common.JMessageConfig;
+import cn.jmessage.api.message.MessageListResult;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@Category(FastTests.class)
+public class DownloadUrlCacheTest extends BaseTest {
+
+    private ResourceClient client;
+    private FakeHttpClient http;
+
+    @Before
+    public void before() {
+        JMessageConfig config = JMessageConfig.getInstance();
+        config.setDownloadCache(true);
+        try {
+            client = new ResourceClient(APP_KEY, MASTER_SECRET, null, config);
+        } finally {
+            config.setDownloadCache(false);
+        }
+        http = new FakeHttpClient();
+        client.setHttpClient(http);
+    }
+
+    @After
+    public void after() {
+        client.getDownloadCache().invalidateAll();
+    }
+
+    @Test
+    public void testDeadline() {
+        assertEquals(1500000000000L, DownloadUrlCache.deadlineOf("http://media.junit/a?e=1500000000&token=t"));
+        assertEquals(1500000000000L, DownloadUrlCache.deadlineOf("http://media.junit/a?X-Id=1&Expires=1500000000"));
+        assertEquals(0, DownloadUrlCache.deadlineOf("http://media.junit/a?token=t"));
+        assertEquals(0, DownloadUrlCache.deadlineOf("http://media.junit/a"));
+    }
+
+    @Test
+    public void testExpiringUrlNotCached() throws Exception {
+        // expires within the default margin of 1 minute
+        http.deadline = System.currentTimeMillis() / 1000 + 30;
+        client.downloadFile("qiniu/image/j/a");
+        client.downloadFile("qiniu/image/j/a");
+        assertEquals(2, http.requests.get());
+
+        http.deadline = System.currentTimeMillis() / 1000 + 3600;
+        client.downloadFile("qiniu/image/j/b");
+        client.downloadFile("qiniu/image/j/b");
+        assertEquals(3, http.requests.get());
+    }
+
+    @Test
+    public void testConcurrentLookupsShared() throws Exception {
+        http.delayMillis = 50;
+        final CountDownLatch start = new CountDownLatch(1);
+        final Map<String, String> urls = new ConcurrentHashMap<String, String>();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 8; i++) {
+            final String name = "junit" + i;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        urls.put(name, client.downloadFile("qiniu/image/j/a").getUrl());
+                    } catch (Exception e) {
+                        urls.put(name, e.toString());
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(1, http.requests.get());
+        assertEquals(8, urls.size());
+        assertEquals(1, new HashSet<String>(urls.values()).size());
+    }
+
+    @Test
+    public void testPrefetchPage() throws Exception {
+        StringBuilder messages = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            if (i > 0) {
+                messages.append(',');
+            }
+            if (i == 9) {
+                messages.append("{\"msg_type\":\"text\",\"msg_body\":{\"text\":\"junit\"}}");
+            } else {
+                messages.append("{\"msg_type\":\"image\",\"msg_body\":{\"media_id\":\"qiniu/image/j/")
+                        .append(i % 4).append("\"}}");
+            }
+        }
+        ResponseWrapper wrapper = new ResponseWrapper();
+        wrapper.responseCode = 200;
+        wrapper.responseContent = "{\"total\":10,\"count\":10,\"messages\":[" + messages + "]}";
+        MessageListResult page = MessageListResult.fromResponse(wrapper, MessageListResult.class);
+        http.failing = "qiniu/image/j/3";
+
+        Map<String, DownloadResult> results = client.prefetchDownloads(page, 4);
+
+        assertEquals(3, results.size());
+        assertNull(results.get("qiniu/image/j/3"));
+        assertEquals("qiniu/image/j/0", results.keySet().iterator().next());
+        assertEquals(4, http.requests.get());
+        client.downloadFile("qiniu/image/j/1");
+        assertEquals(4, http.requests.get());
+    }
+
+    private static class FakeHttpClient implements IHttpClient {
+
+        final AtomicInteger requests = new AtomicInteger();
+        volatile long deadline = System.currentTimeMillis() / 1000 + 3600;
+        volatile long delayMillis;
+        volatile String failing;
+
+        @Override
+        public ResponseWrapper sendGet(String url) throws APIConnectionException, APIRequestException {
+            requests.incrementAndGet();
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                throw new APIConnectionException("interrupted", e);
+            }
+            String mediaId = url.substring(url.indexOf("mediaId=") + "mediaId=".length());
+            ResponseWrapper wrapper = new ResponseWrapper();
+            if (mediaId.equals(failing)) {
+                wrapper.responseCode = 404;
+                wrapper.responseContent = "{\"error\":{\"code\":899003,\"message\":\"media not found\"}}";
+                wrapper.setErrorObject();
+                throw new APIRequestException(wrapper);
+            }
+            wrapper.responseCode = 200;
+            wrapper.responseContent = "{\"url\":\"http://media.junit/" + mediaId + "?e=" + deadline + "\"}";
+            return wrapper;
+        }
+
+        @Override
+        public ResponseWrapper sendGet(String url, String content) throws APIConnectionException, APIRequestException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ResponseWrapper sendPost(String url, String content) throws APIConnectionException, APIRequestException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ResponseWrapper sendDelete(String url) throws APIConnectionException, APIRequestException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ResponseWrapper sendDelete(String url, String content) throws APIConnectionException, APIRequestException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public ResponseWrapper sendPut(String url, String content) throws APIConnectionException, APIRequestException {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+}
@@ -0,0 +1,150 @@
+package cn.jmessage.api.resource;
+
+import cn.jmessage.api.BaseTest;
+import cn.jmessage.api.FastTests;
+import cn.jmessage.api.common.JMessageConfig;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@Category(FastTests.class)
+public class UploadCacheTest extends BaseTest {
+
+    private static final long TTL = 60 * 1000;
+
+    private MockWebServer server;
+    private String apiHostName;
+    private File index;
+
+    @Before
+    public void before() throws Exception {
+        server = new MockWebServer();
+        server.play();
+        JMessageConfig config = JMessageConfig.getInstance();
+        apiHostName = (String) config.get(JMessageConfig.API_HOST_NAME);
+        config.setApiHostName("http://" + server.getHostName() + ":" + server.getPort());
+        index = File.createTempFile("junit-upload-cache", ".idx");
+        index.delete();
+    }
+
+    @After
+    public void after() throws Exception {
+        JMessageConfig.getInstance().setApiHostName(apiHostName);
+        server.shutdown();
+        index.delete();
+    }
+
+    @Test
+    public void testHitPersisted() throws Exception {
+        server.enqueue(uploaded("qiniu/image/j/a"));
+        UploadCache cache = new UploadCache(index, TTL, 100, -1);
+        ResourceClient client = client(cache);
+
+        UploadResult first = client.upload(content("a"), "image");
+        UploadResult second = client.upload(content("a"), "image");
+        cache.close();
+
+        assertFalse(first.isFromCache());
+        assertTrue(second.isFromCache());
+        assertTrue(second.isResultOK());
+        assertEquals("qiniu/image/j/a", second.getMediaId());
+        assertEquals(first.getMediaCrc32(), second.getMediaCrc32());
+        assertEquals(1, server.getRequestCount());
+
+        UploadCache reopened = new UploadCache(index, TTL, 100, -1);
+        UploadResult third = client(reopened).upload(content("a"), "image");
+        reopened.close();
+        assertTrue(third.isFromCache());
+        assertEquals("qiniu/image/j/a", third.getMediaId());
+        assertEquals(1, server.getRequestCount());
+    }
+
+    @Test
+    public void testVerify() throws Exception {
+        server.enqueue(uploaded("qiniu/image/j/a"));
+        server.enqueue(new MockResponse().setResponseCode(404)
+                .setBody("{\"error\":{\"code\":899003,\"message\":\"media not found\"}}"));
+        server.enqueue(uploaded("qiniu/image/j/b"));
+        server.enqueue(new MockResponse().setBody("{\"url\":\"http://media.junit/b\"}"));
+        UploadCache cache = new UploadCache(null, TTL, 100, 0);
+        ResourceClient client = client(cache);
+
+        client.upload(content("a"), "image");
+        UploadResult uploadedAgain = client.upload(content("a"), "image");
+        UploadResult verified = client.upload(content("a"), "image");
+
+        assertFalse(uploadedAgain.isFromCache());
+        assertEquals("qiniu/image/j/b", uploadedAgain.getMediaId());
+        assertTrue(verified.isFromCache());
+        assertEquals("qiniu/image/j/b", verified.getMediaId());
+        assertEquals(2, cache.getVerificationCount());
+        assertEquals(1, cache.getVerificationFailureCount());
+        server.takeRequest();
+        assertEquals("/v1/resource?mediaId=qiniu/image/j/a", server.takeRequest().getPath());
+    }
+
+    @Test
+    public void testVerifyBypassesDownloadCache() throws Exception {
+        server.enqueue(uploaded("qiniu/image/j/a"));
+        server.enqueue(new MockResponse().setBody("{\"url\":\"http://media.junit/a\"}"));
+        server.enqueue(new MockResponse().setResponseCode(404)
+                .setBody("{\"error\":{\"code\":899003,\"message\":\"media not found\"}}"));
+        server.enqueue(uploaded("qiniu/image/j/b"));
+        UploadCache cache = new UploadCache(null, TTL, 100, 0);
+        JMessageConfig config = JMessageConfig.getInstance().toBuilder().setDownloadCache(true).build();
+        CachingResourceClient client = new CachingResourceClient(APP_KEY, MASTER_SECRET, null, config, cache);
+
+        client.upload(content("a"), "image");
+        client.downloadFile("qiniu/image/j/a");
+        UploadResult uploadedAgain = client.upload(content("a"), "image");
+
+        assertFalse(uploadedAgain.isFromCache());
+        assertEquals("qiniu/image/j/b", uploadedAgain.getMediaId());
+        assertEquals(1, cache.getVerificationFailureCount());
+        assertEquals(0, client.getDownloadCache().getStats().getSize());
+        assertEquals(4, server.getRequestCount());
+    }
+
+    @Test
+    public void testEvictionAndStreams() throws Exception {
+        for (int i = 0; i < 4; i++) {
+            server.enqueue(uploaded("qiniu/file/j/" + i));
+        }
+        UploadCache cache = new UploadCache(null, TTL, 1, -1);
+        ResourceClient client = client(cache);
+
+        client.upload(content("a"), "file");
+        client.upload(content("b"), "file");
+        UploadResult evicted = client.upload(content("a"), "file");
+        client.upload(UploadSource.of(new ByteArrayInputStream(new byte[]{'a'}), 1, "a"), "file");
+
+        assertFalse(evicted.isFromCache());
+        assertEquals(2, cache.getEvictionCount());
+        assertEquals(0, cache.getHitCount());
+        assertEquals(4, server.getRequestCount());
+    }
+
+    private CachingResourceClient client(UploadCache cache) {
+        return new CachingResourceClient(APP_KEY, MASTER_SECRET, null, JMessageConfig.getInstance(), cache);
+    }
+
+    private static UploadSource content(String content) {
+        return UploadSource.of(ByteBuffer.wrap(content.getBytes()), content + ".bin");
+    }
+
+    private static MockResponse uploaded(String mediaId) {
+        return new MockResponse().setBody("{\"media_id\":\"" + mediaId + "\",\"fname\":\"junit\"}");
+    }
+
+}
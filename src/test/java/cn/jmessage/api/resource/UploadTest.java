@@ -0,0 +1,150 @@
+package cn.jmessage.api.resource;
+
+import cn.jiguang.common.resp.APIRequestException;
+import cn.jmessage.api.BaseTest;
+import cn.jmessage.api.FastTests;
+import cn.jmessage.api.common.JMessageConfig;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@Category(FastTests.class)
+public class UploadTest extends BaseTest {
+
+    private static final String UPLOADED = "{\"media_id\":\"qiniu/image/j/junit\",\"fname\":\"junit.png\"}";
+
+    private MockWebServer server;
+    private String apiHostName;
+    private ResourceClient client;
+
+    @Before
+    public void before() throws Exception {
+        server = new MockWebServer();
+        server.play();
+        JMessageConfig config = JMessageConfig.getInstance();
+        apiHostName = (String) config.get(JMessageConfig.API_HOST_NAME);
+        config.setApiHostName("http://" + server.getHostName() + ":" + server.getPort());
+        client = new ResourceClient(APP_KEY, MASTER_SECRET, null, config);
+    }
+
+    @After
+    public void after() throws Exception {
+        JMessageConfig.getInstance().setApiHostName(apiHostName);
+        server.shutdown();
+    }
+
+    @Test
+    public void testUploadBuffer() throws Exception {
+        server.enqueue(new MockResponse().setBody(UPLOADED));
+        byte[] png = png(3, 2);
+
+        UploadResult result = client.upload(UploadSource.of(ByteBuffer.wrap(png), "junit.png"), "image");
+
+        assertEquals("qiniu/image/j/junit", result.getMediaId());
+        assertEquals(Long.valueOf(crc32(png)), result.getMediaCrc32());
+        assertEquals("png", result.getFormat());
+        assertEquals(Integer.valueOf(3), result.getWidth());
+        assertEquals(Integer.valueOf(2), result.getHeight());
+        assertEquals(Integer.valueOf(png.length), result.getFileSize());
+
+        RecordedRequest request = server.takeRequest();
+        assertEquals("/v1/resource?type=image", request.getPath());
+        assertTrue(request.getHeader("Content-Type").startsWith("multipart/form-data; boundary="));
+        assertEquals(String.valueOf(request.getBodySize()), request.getHeader("Content-Length"));
+        String body = new String(request.getBody(), "ISO-8859-1");
+        assertTrue(body.contains("Content-Disposition: form-data; name=\"image\"; filename=\"junit.png\"\r\n"));
+        assertTrue(body.contains(new String(png, "ISO-8859-1")));
+    }
+
+    @Test
+    public void testUploadStreamChunked() throws Exception {
+        server.enqueue(new MockResponse().setBody(UPLOADED));
+        byte[] content = new byte[100 * 1024];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+
+        UploadResult result = client.upload(
+                UploadSource.of(new ByteArrayInputStream(content), -1, "junit.bin"), "file");
+
+        assertEquals(Long.valueOf(crc32(content)), result.getMediaCrc32());
+        assertNull(result.getMediaInfo().getFormat());
+        RecordedRequest request = server.takeRequest();
+        assertEquals("chunked", request.getHeader("Transfer-Encoding"));
+        assertNull(request.getHeader("Content-Length"));
+        assertTrue(new String(request.getBody(), "ISO-8859-1").contains(new String(content, "ISO-8859-1")));
+    }
+
+    @Test
+    public void testUploadErrorThrown() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(403)
+                .setBody("{\"error\":{\"code\":899008,\"message\":\"basic auth failed\"}}"));
+        File file = File.createTempFile("junit", ".png");
+        try {
+            Files.write(file.toPath(), png(1, 1));
+            client.uploadFile(file.getPath(), "image");
+            fail("Should throw APIRequestException");
+        } catch (APIRequestException e) {
+            assertEquals(899008, e.getErrorCode());
+        } finally {
+            file.delete();
+        }
+        assertTrue(new String(server.takeRequest().getBody(), "ISO-8859-1")
+                .contains("filename=\"" + file.getName() + "\""));
+    }
+
+    @Test
+    public void testUploadAll() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            server.enqueue(new MockResponse().setBody(UPLOADED));
+        }
+        List<UploadSource> sources = new ArrayList<UploadSource>();
+        for (int i = 0; i < 5; i++) {
+            sources.add(UploadSource.of(ByteBuffer.wrap(png(i + 1, i + 1)), "junit" + i + ".png"));
+        }
+
+        UploadAllResult result = client.uploadAll(sources, "image", 2);
+
+        assertTrue(result.isAllSucceeded());
+        assertEquals(5, result.getSuccessCount());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(Integer.valueOf(i + 1), result.getResults().get(i).getWidth());
+        }
+    }
+
+    /**
+     * Signature and IHDR chunk, enough for the dimensions.
+     */
+    private static byte[] png(int width, int height) {
+        ByteBuffer png = ByteBuffer.allocate(33);
+        png.put(new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1a, '\n'});
+        png.putInt(13).put(new byte[]{'I', 'H', 'D', 'R'});
+        png.putInt(width).putInt(height).put(new byte[]{8, 6, 0, 0, 0});
+        png.putInt(0);
+        return png.array();
+    }
+
+    private static long crc32(byte[] bytes) {
+        CRC32 crc32 = new CRC32();
+        crc32.update(bytes);
+        return crc32.getValue();
+    }
+
+}
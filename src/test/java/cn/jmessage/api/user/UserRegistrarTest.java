@@ -0,0 +1,136 @@
+package cn.jmessage.api.user;
+
+import cn.jiguang.common.resp.APIConnectionException;
+import cn.jiguang.common.resp.APIRequestException;
+import cn.jiguang.common.resp.ResponseWrapper;
+import cn.jmessage.api.BaseTest;
+import cn.jmessage.api.FastTests;
+import cn.jmessage.api.common.model.RegisterInfo;
+import cn.jmessage.api.common.model.RegisterPayload;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@Category(FastTests.class)
+public class UserRegistrarTest extends BaseTest {
+
+    @Test
+    public void testRegisterAndRetryFailed() throws Exception {
+        FakeUserClient client = new FakeUserClient();
+        UserRegistrar registrar = UserRegistrar.newBuilder(client)
+                .setChunkSize(3)
+                .setConcurrency(2)
+                .setRetryInterval(0)
+                .build();
+
+        UserRegistrar.RegistrationResult result = registrar.register(
+                users("junit1", "junit2", "exist1", "bad1", "flaky", "junit3", "busy"));
+
+        assertEquals(5, result.getCreatedCount());
+        assertEquals(Collections.singletonList("exist1"), result.getExistingUsers());
+        assertEquals(1, result.getFailures().size());
+        assertEquals("bad1", result.getFailures().get(0).getUsername());
+        assertEquals(899003, result.getFailures().get(0).getErrorCode());
+        assertEquals(5, result.getRequestCount());
+        assertEquals(4, result.getRetriedCount());
+        // only the failed users are sent again
+        assertEquals(11, client.sent.size());
+        assertEquals(1, client.sentCount("junit1"));
+        assertEquals(2, client.sentCount("junit3"));
+        assertTrue(client.maxChunk <= 3);
+    }
+
+    @Test
+    public void testGiveUpAfterRetries() throws Exception {
+        FakeUserClient client = new FakeUserClient();
+        client.status = 503;
+        UserRegistrar registrar = UserRegistrar.newBuilder(client)
+                .setMaxRetries(1)
+                .setRetryInterval(0)
+                .build();
+
+        UserRegistrar.RegistrationResult result = registrar.register(users("junit1", "junit2"));
+
+        assertEquals(0, result.getCreatedCount());
+        assertEquals(2, result.getFailures().size());
+        assertEquals(899000, result.getFailures().get(0).getErrorCode());
+        assertEquals(2, result.getRequestCount());
+    }
+
+    private static List<RegisterInfo> users(String... names) {
+        List<RegisterInfo> users = new ArrayList<RegisterInfo>();
+        for (String name : names) {
+            users.add(RegisterInfo.newBuilder().setUsername(name).setPassword("password").build());
+        }
+        return users;
+    }
+
+    /**
+     * "exist" users are registered already, "bad" users are invalid, "busy" gets a server error once and the
+     * first request with "flaky" gets no response.
+     */
+    private static class FakeUserClient extends UserClient {
+
+        final List<String> sent = Collections.synchronizedList(new ArrayList<String>());
+        final Set<String> seen = Collections.synchronizedSet(new HashSet<String>());
+        volatile int status = 201;
+        volatile int maxChunk;
+
+        FakeUserClient() {
+            super(APP_KEY, MASTER_SECRET);
+        }
+
+        int sentCount(String username) {
+            return Collections.frequency(sent, username);
+        }
+
+        @Override
+        public ResponseWrapper registerUsers(RegisterPayload payload)
+                throws APIConnectionException, APIRequestException {
+            JsonArray users = payload.toJSON().getAsJsonArray();
+            maxChunk = Math.max(maxChunk, users.size());
+            ResponseWrapper wrapper = new ResponseWrapper();
+            wrapper.responseCode = status;
+            if (status >= 500) {
+                wrapper.responseContent = "{\"error\":{\"code\":899000,\"message\":\"server error\"}}";
+                wrapper.setErrorObject();
+                throw new APIRequestException(wrapper);
+            }
+            StringBuilder content = new StringBuilder("[");
+            boolean flaky = false;
+            for (JsonElement user : users) {
+                String name = user.getAsJsonObject().get("username").getAsString();
+                sent.add(name);
+                flaky |= name.equals("flaky") && seen.add(name);
+                if (content.length() > 1) {
+                    content.append(",");
+                }
+                content.append("{\"username\":\"").append(name).append("\"");
+                if (name.startsWith("exist")) {
+                    content.append(",\"error\":{\"code\":899001,\"message\":\"user exist\"}");
+                } else if (name.startsWith("bad")) {
+                    content.append(",\"error\":{\"code\":899003,\"message\":\"invalid username\"}");
+                } else if (name.equals("busy") && seen.add(name)) {
+                    content.append(",\"error\":{\"code\":899000,\"message\":\"server error\"}");
+                }
+                content.append("}");
+            }
+            if (flaky) {
+                throw new APIConnectionException("connect timed out", null);
+            }
+            wrapper.responseContent = content.append("]").toString();
+            return wrapper;
+        }
+    }
+
+}